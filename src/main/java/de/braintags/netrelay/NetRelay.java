@@ -14,10 +14,17 @@ package de.braintags.netrelay;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 
+import de.braintags.netrelay.cache.CacheManager;
+import de.braintags.netrelay.controller.Action;
 import de.braintags.netrelay.controller.BodyController;
 import de.braintags.netrelay.controller.CookieController;
 import de.braintags.netrelay.controller.FailureController;
@@ -25,19 +32,32 @@ import de.braintags.netrelay.controller.FavIconController;
 import de.braintags.netrelay.controller.SessionController;
 import de.braintags.netrelay.controller.StaticController;
 import de.braintags.netrelay.controller.TimeoutController;
+import de.braintags.netrelay.datastore.DatastoreManager;
+import de.braintags.netrelay.datastore.EntityWriter;
+import de.braintags.netrelay.datastore.IFieldUpdater;
+import de.braintags.netrelay.datastore.KeyAllocator;
+import de.braintags.netrelay.datastore.ShardRouter;
+import de.braintags.netrelay.datastore.WriteBehindQueue;
+import de.braintags.netrelay.datastore.WriteBehindSettings;
+import de.braintags.netrelay.exception.NoSuchMapperException;
+import de.braintags.netrelay.geo.GeoIndexManager;
 import de.braintags.netrelay.init.Settings;
+import de.braintags.netrelay.mapping.MapperBindingPlan;
 import de.braintags.netrelay.mapping.NetRelayMapperFactory;
 import de.braintags.netrelay.mapping.NetRelayStoreObjectFactory;
 import de.braintags.netrelay.processor.ProcessorDefinition;
 import de.braintags.netrelay.routing.RouterDefinition;
 import de.braintags.netrelay.routing.RoutingInit;
+import de.braintags.netrelay.typehandler.HttpTypehandlerFactory;
 import de.braintags.vertx.jomnigate.IDataStore;
 import de.braintags.vertx.jomnigate.init.IDataStoreInit;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
 import de.braintags.vertx.jomnigate.mapping.IMapperFactory;
 import de.braintags.vertx.jomnigate.mongo.init.MongoDataStoreInit;
 import de.braintags.vertx.util.exception.InitException;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.http.HttpServer;
@@ -48,6 +68,7 @@ import io.vertx.core.net.SelfSignedCertificate;
 import io.vertx.ext.mail.MailClient;
 import io.vertx.ext.mail.MailConfig;
 import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
 
 /**
  *
@@ -64,8 +85,9 @@ public class NetRelay extends AbstractVerticle {
    */
   public static final String NETRELAY_PROPERTY = "NetRelay";
 
-  // to be able to handle multiple datastores, an IDatastoreCollection will come from pojo-mapper later
+  // the default datastore; replicas and named datastores are handled by the DatastoreManager
   private IDataStore<?, ?> datastore;
+  private DatastoreManager datastoreManager;
   private Settings settings;
   private Router router;
   private MailClient mailClient;
@@ -74,6 +96,11 @@ public class NetRelay extends AbstractVerticle {
    */
   private NetRelayMapperFactory mapperFactory;
   private NetRelayStoreObjectFactory storeObjectFactory;
+  private CacheManager cacheManager;
+  private EntityWriter entityWriter;
+  private WriteBehindQueue writeBehindQueue;
+  private GeoIndexManager geoIndexManager;
+  private final Map<Class<?>, KeyAllocator> keyAllocators = new HashMap<>();
 
   private HttpServer server;
 
@@ -115,9 +142,42 @@ public class NetRelay extends AbstractVerticle {
       initRouter(router);
       mapperFactory = new NetRelayMapperFactory(this);
       storeObjectFactory = new NetRelayStoreObjectFactory(this);
+      cacheManager = new CacheManager(vertx, settings);
+      WriteBehindSettings writeBehindSettings = settings.getWriteBehindSettings() == null ? new WriteBehindSettings()
+          : settings.getWriteBehindSettings();
+      IFieldUpdater fieldUpdater = WriteBehindQueue.createFieldUpdater(writeBehindSettings);
+      entityWriter = new EntityWriter(this, fieldUpdater);
+      writeBehindQueue = new WriteBehindQueue(this, writeBehindSettings, fieldUpdater);
+      geoIndexManager = new GeoIndexManager(this);
       initMailClient();
       initController(router);
       initProcessors();
+      prewarmMappers(prewarmResult -> {
+        if (prewarmResult.failed()) {
+          handler.handle(Future.failedFuture(prewarmResult.cause()));
+        } else {
+          initKeyAllocators(keyResult -> {
+            if (keyResult.failed()) {
+              handler.handle(Future.failedFuture(keyResult.cause()));
+            } else {
+              geoIndexManager.init(settings.getGeoIndexDefinitions(), geoResult -> {
+                if (geoResult.failed()) {
+                  handler.handle(Future.failedFuture(geoResult.cause()));
+                } else {
+                  initServers(handler);
+                }
+              });
+            }
+          });
+        }
+      });
+    } catch (Exception e) {
+      handler.handle(Future.failedFuture(e));
+    }
+  }
+
+  private void initServers(final Handler<AsyncResult<Void>> handler) {
+    try {
       initHttpServer(router, res -> {
         if (res.failed()) {
           handler.handle(Future.failedFuture(res.cause()));
@@ -136,6 +196,62 @@ public class NetRelay extends AbstractVerticle {
     }
   }
 
+  /**
+   * Creates the mappers of all classes of {@link Settings#getMappingDefinitions()} before the servers are started, so
+   * that the first requests after a start don't have to pay for the reflection. The mappers are created inside the
+   * {@link NetRelayMapperFactory}, together with their {@link MapperBindingPlan}, and inside the mapper factories of
+   * the datastores, where the records of the mapper are stored. The factories are processed in parallel on worker
+   * threads, the mappers of one factory one after another. If a mapper can not be created, the start of NetRelay fails
+   *
+   * @param handler
+   *          the handler to be informed
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  protected void prewarmMappers(final Handler<AsyncResult<Void>> handler) {
+    long start = System.currentTimeMillis();
+    Map<IMapperFactory, List<Class>> factories = new IdentityHashMap<>();
+    for (Class mapperClass : settings.getMappingDefinitions().getMapperMap().values()) {
+      factories.computeIfAbsent(mapperFactory, f -> new ArrayList<>()).add(mapperClass);
+      for (IDataStore<?, ?> store : getDatastores(mapperClass)) {
+        if (store != null && store.getMapperFactory() != null) {
+          factories.computeIfAbsent(store.getMapperFactory(), f -> new ArrayList<>()).add(mapperClass);
+        }
+      }
+    }
+    List<Future> futures = new ArrayList<>();
+    factories.forEach((factory, classes) -> {
+      Future<Void> f = Future.future();
+      futures.add(f);
+      vertx.executeBlocking(blockingFuture -> {
+        for (Class mapperClass : classes) {
+          try {
+            IMapper mapper = factory.getMapper(mapperClass);
+            if (factory == mapperFactory) {
+              mapperFactory.getBindingPlan(mapper);
+            }
+          } catch (Exception e) {
+            blockingFuture.fail(new InitException("could not create the mapper " + mapperClass.getName(), e));
+            return;
+          }
+        }
+        blockingFuture.complete();
+      }, false, f);
+    });
+    CompositeFuture.all(futures).setHandler(result -> {
+      if (result.failed()) {
+        handler.handle(Future.failedFuture(result.cause()));
+      } else {
+        LOGGER.info("created the mappers of " + factories.size() + " mapper factories in "
+            + (System.currentTimeMillis() - start) + " ms");
+        if (mapperFactory.getTypeHandlerFactory() instanceof HttpTypehandlerFactory) {
+          HttpTypehandlerFactory thf = (HttpTypehandlerFactory) mapperFactory.getTypeHandlerFactory();
+          LOGGER.info("type handler cache: " + thf.getHits() + " hits, " + thf.getMisses() + " misses");
+        }
+        handler.handle(Future.succeededFuture());
+      }
+    });
+  }
+
   protected void initRouter(final Router router) {
   }
 
@@ -148,6 +264,39 @@ public class NetRelay extends AbstractVerticle {
     startFuture.complete();
   }
 
+  /**
+   * Create the {@link KeyAllocator}s of {@link Settings#getKeyBlockSizes()}. The keys of an allocator are starting
+   * above the maximum id of the existing records
+   */
+  @SuppressWarnings("rawtypes")
+  private void initKeyAllocators(final Handler<AsyncResult<Void>> handler) {
+    keyAllocators.clear();
+    List<Future> futures = new ArrayList<>();
+    if (settings.getKeyBlockSizes() != null) {
+      for (Map.Entry<String, Integer> entry : settings.getKeyBlockSizes().entrySet()) {
+        Class<?> mapperClass = settings.getMappingDefinitions().getMapperClass(entry.getKey());
+        if (mapperClass == null) {
+          handler.handle(Future.failedFuture(new NoSuchMapperException(entry.getKey())));
+          return;
+        }
+        Future<Void> f = Future.future();
+        futures.add(f);
+        KeyAllocator.findMaximumKey(getDatastores(mapperClass), mapperClass, mr -> {
+          if (mr.failed()) {
+            f.fail(mr.cause());
+          } else {
+            String keyName = entry.getKey() + ".hilo." + entry.getValue();
+            keyAllocators.put(mapperClass, new KeyAllocator(vertx, keyName, entry.getValue(), mr.result() + 1));
+            LOGGER.info("keys of " + entry.getKey() + " are allocated above " + mr.result());
+            f.complete();
+          }
+        });
+      }
+    }
+    CompositeFuture.all(futures).setHandler(result -> handler
+        .handle(result.failed() ? Future.failedFuture(result.cause()) : Future.succeededFuture()));
+  }
+
   private void initMailClient() {
     MailConfig mailConfig = settings.getMailConfig();
     if (mailConfig != null) {
@@ -176,6 +325,58 @@ public class NetRelay extends AbstractVerticle {
     return storeObjectFactory;
   }
 
+  /**
+   * Get the {@link CacheManager}, which holds the caches of NetRelay. Records, which are written by the
+   * {@link #getEntityWriter()}, are invalidated automatically
+   *
+   * @return the cacheManager
+   */
+  public CacheManager getCacheManager() {
+    return cacheManager;
+  }
+
+  /**
+   * Get the {@link EntityWriter}, by which records are saved and deleted, so that the caches, the geo indexes and the
+   * read replicas are informed about the changes
+   *
+   * @return the entityWriter
+   */
+  public EntityWriter getEntityWriter() {
+    return entityWriter;
+  }
+
+  /**
+   * Get the {@link WriteBehindQueue}, where updates of fields can be queued, which are not critical for the current
+   * request, like counters. The updates are written into the {@link #getDatastore()} in batches
+   *
+   * @return the writeBehindQueue
+   */
+  public WriteBehindQueue getWriteBehindQueue() {
+    return writeBehindQueue;
+  }
+
+  /**
+   * Get the {@link GeoIndexManager}, which holds the in-memory indexes of GeoPoint fields, which are defined by
+   * {@link Settings#getGeoIndexDefinitions()}
+   *
+   * @return the geoIndexManager
+   */
+  public GeoIndexManager getGeoIndexManager() {
+    return geoIndexManager;
+  }
+
+  /**
+   * Get the {@link KeyAllocator}, which creates the keys of new records of the given mapper. The allocators are
+   * defined by {@link Settings#getKeyBlockSizes()}
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the allocator or null, if the keys of the mapper are not created by NetRelay
+   */
+  public KeyAllocator getKeyAllocator(final Class<?> mapperClass) {
+    return keyAllocators.get(mapperClass);
+  }
+
   /**
    * Get the router, which is used by NetRelay
    *
@@ -256,7 +457,22 @@ public class NetRelay extends AbstractVerticle {
         handler.handle(Future.failedFuture(dsInitResult.cause()));
       } else {
         datastore = dsInitResult.result();
-        handler.handle(Future.succeededFuture());
+        datastoreManager = new DatastoreManager(datastore, settings.getReadYourWritesWindow());
+        Future<Void> replicaFuture = Future.future();
+        Future<Void> namedFuture = Future.future();
+        if (settings.getReadReplicaSettings() == null || settings.getReadReplicaSettings().isEmpty()) {
+          replicaFuture.complete();
+        } else {
+          datastoreManager.initReplicas(vertx, settings.getReadReplicaSettings(), replicaFuture);
+        }
+        datastoreManager.initNamedDatastores(vertx, settings, namedFuture);
+        CompositeFuture.all(replicaFuture, namedFuture).setHandler(result -> {
+          if (result.failed()) {
+            handler.handle(Future.failedFuture(result.cause()));
+          } else {
+            handler.handle(Future.succeededFuture());
+          }
+        });
       }
     });
   }
@@ -346,17 +562,45 @@ public class NetRelay extends AbstractVerticle {
    */
   @Override
   public void stop(final Future<Void> stopFuture) throws Exception {
+    if (cacheManager != null) {
+      cacheManager.close();
+    }
+    Future<Void> serverCloseFuture = Future.future();
     if (server != null) {
-      Future<Void> serverCloseFuture = Future.future();
       server.close(serverCloseFuture);
-      serverCloseFuture.compose(v -> {
-        Future<Void> datastoreClose = Future.future();
-        getDatastore().shutdown(datastoreClose);
-        return datastoreClose;
-      }).setHandler(stopFuture);
-    } else if (getDatastore() != null) {
-      getDatastore().shutdown(stopFuture);
+    } else {
+      serverCloseFuture.complete();
     }
+    serverCloseFuture.compose(v -> {
+      Future<Void> queueClose = Future.future();
+      if (writeBehindQueue != null) {
+        writeBehindQueue.close(qr -> {
+          if (qr.failed()) {
+            LOGGER.error("queued updates could not be written completely", qr.cause());
+          }
+          queueClose.complete();
+        });
+      } else {
+        queueClose.complete();
+      }
+      return queueClose;
+    }).compose(v -> {
+      Future<Void> secondaryClose = Future.future();
+      if (datastoreManager != null) {
+        datastoreManager.shutdown(secondaryClose);
+      } else {
+        secondaryClose.complete();
+      }
+      return secondaryClose;
+    }).compose(v -> {
+      Future<Void> datastoreClose = Future.future();
+      if (getDatastore() != null) {
+        getDatastore().shutdown(datastoreClose);
+      } else {
+        datastoreClose.complete();
+      }
+      return datastoreClose;
+    }).setHandler(stopFuture);
   }
 
   /**
@@ -400,6 +644,111 @@ public class NetRelay extends AbstractVerticle {
     return datastore;
   }
 
+  /**
+   * Get the {@link IDataStore}, which shall be used for the given action of the current request. For
+   * {@link Action#DISPLAY} this can be a read replica, for all other actions it is the primary datastore
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param action
+   *          the action, which is performed
+   * @return the datastore to be used
+   */
+  public final IDataStore<?, ?> getDatastore(final RoutingContext context, final Action action) {
+    return datastoreManager == null ? datastore : datastoreManager.getDatastore(context, action);
+  }
+
+  /**
+   * Get the {@link IDataStore}, where the records of the given mapper are stored
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the named datastore, which is assigned to the mapper, or the default datastore
+   */
+  public final IDataStore<?, ?> getDatastore(final Class<?> mapperClass) {
+    return datastoreManager == null ? datastore : datastoreManager.getDatastore(mapperClass);
+  }
+
+  /**
+   * Get the {@link IDataStore}, which shall be used for the given mapper and action of the current request
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param action
+   *          the action, which is performed
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the datastore to be used
+   */
+  public final IDataStore<?, ?> getDatastore(final RoutingContext context, final Action action,
+      final Class<?> mapperClass) {
+    return datastoreManager == null ? datastore : datastoreManager.getDatastore(context, action, mapperClass);
+  }
+
+  /**
+   * Get the {@link IDataStore}, which shall be used for the record of the given mapper with the given key. For
+   * sharded mappers this is the shard of the key
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param action
+   *          the action, which is performed
+   * @param mapperClass
+   *          the class of the mapper
+   * @param key
+   *          the key of the record; required for sharded mappers
+   * @return the datastore to be used
+   */
+  public final IDataStore<?, ?> getDatastore(final RoutingContext context, final Action action,
+      final Class<?> mapperClass, final Object key) {
+    return datastoreManager == null ? datastore
+        : datastoreManager.getDatastore(context, action, mapperClass, key);
+  }
+
+  /**
+   * Get all datastores, where records of the given mapper are stored. For sharded mappers these are the datastores of
+   * all shards, otherwise the datastore of {@link #getDatastore(Class)}
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the datastores of the mapper
+   */
+  public final List<IDataStore<?, ?>> getDatastores(final Class<?> mapperClass) {
+    ShardRouter<IDataStore<?, ?>> shardRouter = datastoreManager == null ? null
+        : datastoreManager.getShardRouter(mapperClass);
+    return shardRouter != null ? shardRouter.getShards() : Collections.singletonList(getDatastore(mapperClass));
+  }
+
+  /**
+   * Get all datastores, which shall be used for the records of the given mapper and the action of the current request.
+   * For sharded mappers these are the datastores of all shards, otherwise the datastore of
+   * {@link #getDatastore(RoutingContext, Action, Class)}, which is a read replica for {@link Action#DISPLAY}
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param action
+   *          the action, which is performed
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the datastores to be used
+   */
+  public final List<IDataStore<?, ?>> getDatastores(final RoutingContext context, final Action action,
+      final Class<?> mapperClass) {
+    ShardRouter<IDataStore<?, ?>> shardRouter = datastoreManager == null ? null
+        : datastoreManager.getShardRouter(mapperClass);
+    return shardRouter != null ? shardRouter.getShards()
+        : Collections.singletonList(getDatastore(context, action, mapperClass));
+  }
+
+  /**
+   * Get the {@link DatastoreManager}, which holds the primary datastore, the read replicas and the named datastores
+   *
+   * @return the datastoreManager
+   */
+  public final DatastoreManager getDatastoreManager() {
+    return datastoreManager;
+  }
+
   /**
    * Get the {@link Settings} which are configuring NetRelay
    *
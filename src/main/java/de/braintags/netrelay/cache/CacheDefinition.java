@@ -0,0 +1,63 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.cache;
+
+/**
+ * The definition of the limits of one cache
+ *
+ * @author Michael Remme
+ *
+ */
+public class CacheDefinition {
+  private int maxSize = 1000;
+  private long timeToLive = 60000;
+
+  /**
+   * The maximum number of entries of the cache
+   *
+   * @return the maxSize
+   */
+  public final int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * The maximum number of entries of the cache
+   *
+   * @param maxSize
+   *          the maxSize to set
+   */
+  public final void setMaxSize(final int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * The time in milliseconds, how long an entry of the cache is valid. A value <= 0 means no time limit
+   *
+   * @return the timeToLive
+   */
+  public final long getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * The time in milliseconds, how long an entry of the cache is valid. A value <= 0 means no time limit
+   *
+   * @param timeToLive
+   *          the timeToLive to set
+   */
+  public final void setTimeToLive(final long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+}
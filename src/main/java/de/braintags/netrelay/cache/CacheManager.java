@@ -0,0 +1,258 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.braintags.netrelay.datastore.EntityWriter;
+import de.braintags.netrelay.exception.NoSuchMapperException;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.vertx.jomnigate.dataaccess.delete.IDelete;
+import de.braintags.vertx.jomnigate.dataaccess.write.IWrite;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The CacheManager holds the caches of NetRelay, which are defined by the {@link CacheSettings}: the caches of
+ * entities, the caches of IDs, where no record exists, and the cache of query results. Records must be written and
+ * deleted through the {@link EntityWriter} of NetRelay, which informs the CacheManager about each written record.
+ * Writes, which are executed by an {@link IWrite} or {@link IDelete} of the datastore directly, are not seen by the
+ * caches, so that code like this must call {@link #entityWritten(Class, Object)} or {@link #mapperWritten(Class)}
+ * itself. If {@link CacheSettings#isClusterInvalidation()} is set, the invalidation is
+ * published over the event bus under the address {@link #INVALIDATION_ADDRESS} to all other instances.
+ *
+ * @author Michael Remme
+ *
+ */
+public class CacheManager {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(CacheManager.class);
+
+  /**
+   * The address of the event bus, where invalidations are published
+   */
+  public static final String INVALIDATION_ADDRESS = "netrelay.cache.invalidate";
+
+  private static final String MAPPER_KEY = "mapper";
+  private static final String ID_KEY = "id";
+  private static final String ORIGIN_KEY = "origin";
+
+  private final Vertx vertx;
+  private final CacheSettings cacheSettings;
+  private final String origin = UUID.randomUUID().toString();
+  private final Map<Class<?>, EntityCache<?>> entityCaches = new ConcurrentHashMap<>();
+  private final Map<Class<?>, NegativeCache> negativeCaches = new ConcurrentHashMap<>();
+  private QueryCache queryCache;
+  private MessageConsumer<JsonObject> consumer;
+
+  /**
+   * Create a new instance and the caches, which are defined inside the {@link CacheSettings}
+   *
+   * @param vertx
+   *          the instance of vertx
+   * @param settings
+   *          the settings of NetRelay
+   */
+  public CacheManager(final Vertx vertx, final Settings settings) {
+    this.vertx = vertx;
+    this.cacheSettings = settings.getCacheSettings() == null ? new CacheSettings() : settings.getCacheSettings();
+    for (Entry<String, CacheDefinition> entry : cacheSettings.getEntityCaches().entrySet()) {
+      Class<?> mapperClass = resolveMapper(settings, entry.getKey());
+      entityCaches.put(mapperClass, new EntityCache<>(mapperClass, entry.getValue()));
+      LOGGER.info("entity cache created for mapper " + entry.getKey());
+    }
+    for (Entry<String, CacheDefinition> entry : cacheSettings.getNegativeCaches().entrySet()) {
+      Class<?> mapperClass = resolveMapper(settings, entry.getKey());
+      negativeCaches.put(mapperClass, new NegativeCache(mapperClass, entry.getValue()));
+      LOGGER.info("negative cache created for mapper " + entry.getKey());
+    }
+    if (cacheSettings.getQueryCacheMemory() > 0) {
+      queryCache = new QueryCache(cacheSettings.getQueryCacheMemory(), cacheSettings.getQueryCacheTimeToLive());
+      LOGGER.info("query cache created with " + cacheSettings.getQueryCacheMemory() + " bytes");
+    }
+    if (cacheSettings.isClusterInvalidation()) {
+      consumer = vertx.eventBus().consumer(INVALIDATION_ADDRESS, this::handleInvalidation);
+    }
+  }
+
+  /**
+   * Get the entity cache for the given mapper
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the cache or null, if no cache is defined for the mapper
+   */
+  @SuppressWarnings("unchecked")
+  public <T> EntityCache<T> getEntityCache(final Class<T> mapperClass) {
+    return (EntityCache<T>) entityCaches.get(mapperClass);
+  }
+
+  private static Class<?> resolveMapper(final Settings settings, final String mapperName) {
+    Class<?> mapperClass = settings.getMappingDefinitions().getMapperClass(mapperName);
+    if (mapperClass == null) {
+      throw new NoSuchMapperException(mapperName);
+    }
+    return mapperClass;
+  }
+
+  /**
+   * Get the cache of missing IDs for the given mapper
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the cache or null, if no cache is defined for the mapper
+   */
+  public NegativeCache getNegativeCache(final Class<?> mapperClass) {
+    return negativeCaches.get(mapperClass);
+  }
+
+  /**
+   * Get the cache for the results of queries
+   *
+   * @return the cache or null, if no cache of queries is defined
+   */
+  public QueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  /**
+   * Get all existing entity caches
+   *
+   * @return the entity caches
+   */
+  public Collection<EntityCache<?>> getEntityCaches() {
+    return Collections.unmodifiableCollection(entityCaches.values());
+  }
+
+  /**
+   * Informs the manager, that the record with the given id was saved or deleted
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the record
+   */
+  public void entityWritten(final Class<?> mapperClass, final Object id) {
+    invalidateLocal(mapperClass, id);
+    publish(mapperClass, id);
+  }
+
+  /**
+   * Informs the manager, that an unknown number of records of the given mapper was changed, like by a delete query
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   */
+  public void mapperWritten(final Class<?> mapperClass) {
+    invalidateLocal(mapperClass, null);
+    publish(mapperClass, null);
+  }
+
+  /**
+   * Get the statistics of all caches
+   *
+   * @return the statistics as {@link JsonArray}
+   */
+  public JsonArray getStatistics() {
+    JsonArray array = new JsonArray();
+    entityCaches.values().forEach(ec -> array.add(ec.getStatistics().toJson()));
+    negativeCaches.values().forEach(nc -> array.add(nc.getStatistics().toJson()));
+    if (queryCache != null) {
+      array.add(queryCache.getStatistics().toJson().put("memory", queryCache.getMemory()));
+    }
+    return array;
+  }
+
+  /**
+   * Unregisters from the event bus
+   */
+  public void close() {
+    if (consumer != null) {
+      consumer.unregister();
+      consumer = null;
+    }
+  }
+
+  /**
+   * Removes the given entity or - if id is null - all entities of the given mapper from the caches of this instance
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the record or null
+   */
+  protected void invalidateLocal(final Class<?> mapperClass, final Object id) {
+    EntityCache<?> ec = entityCaches.get(mapperClass);
+    if (ec != null) {
+      if (id == null) {
+        ec.clear();
+      } else {
+        ec.invalidate(id);
+      }
+    }
+    if (queryCache != null) {
+      queryCache.invalidate(mapperClass);
+    }
+    NegativeCache nc = negativeCaches.get(mapperClass);
+    if (nc != null) {
+      if (id == null) {
+        nc.clear();
+      } else {
+        nc.invalidate(id);
+      }
+    }
+  }
+
+  private void publish(final Class<?> mapperClass, final Object id) {
+    if (cacheSettings.isClusterInvalidation()) {
+      JsonObject message = new JsonObject().put(MAPPER_KEY, mapperClass.getName()).put(ORIGIN_KEY, origin);
+      if (id != null) {
+        message.put(ID_KEY, String.valueOf(id));
+      }
+      vertx.eventBus().publish(INVALIDATION_ADDRESS, message);
+    }
+  }
+
+  private void handleInvalidation(final Message<JsonObject> message) {
+    JsonObject body = message.body();
+    if (origin.equals(body.getString(ORIGIN_KEY))) {
+      return;
+    }
+    String mapperName = body.getString(MAPPER_KEY);
+    if (queryCache != null) {
+      queryCache.invalidate(mapperName);
+    }
+    for (Class<?> mapperClass : knownMappers()) {
+      if (mapperClass.getName().equals(mapperName)) {
+        invalidateLocal(mapperClass, body.getString(ID_KEY));
+      }
+    }
+  }
+
+  private Set<Class<?>> knownMappers() {
+    Set<Class<?>> mappers = new HashSet<>(entityCaches.keySet());
+    mappers.addAll(negativeCaches.keySet());
+    return mappers;
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.braintags.netrelay.init.MappingDefinitions;
+import de.braintags.netrelay.init.Settings;
+
+/**
+ * The CacheSettings are part of the {@link Settings} and define, for which mappers entities are cached by NetRelay.
+ * Mappers are referenced by the name, by which they are defined inside the {@link MappingDefinitions}
+ *
+ * @author Michael Remme
+ *
+ */
+public class CacheSettings {
+  private Map<String, CacheDefinition> entityCaches = new HashMap<>();
+  private Map<String, CacheDefinition> negativeCaches = new HashMap<>();
+  private boolean clusterInvalidation = false;
+  private long queryCacheMemory = 0;
+  private long queryCacheTimeToLive = 60000;
+
+  /**
+   * The definitions of the entity caches. The key is the name of the mapper, like it is defined inside the
+   * {@link MappingDefinitions}, the value defines the limits of the cache
+   *
+   * @return the entityCaches
+   */
+  public final Map<String, CacheDefinition> getEntityCaches() {
+    return entityCaches;
+  }
+
+  /**
+   * The definitions of the entity caches. The key is the name of the mapper, like it is defined inside the
+   * {@link MappingDefinitions}, the value defines the limits of the cache
+   *
+   * @param entityCaches
+   *          the entityCaches to set
+   */
+  public final void setEntityCaches(final Map<String, CacheDefinition> entityCaches) {
+    this.entityCaches = entityCaches;
+  }
+
+  /**
+   * The definitions of the caches for IDs, where no record exists. The key is the name of the mapper, like it is
+   * defined inside the {@link MappingDefinitions}, the value defines the limits of the cache. The time to live should
+   * be short, since records, which are inserted by other applications, are not noticed
+   *
+   * @return the negativeCaches
+   */
+  public final Map<String, CacheDefinition> getNegativeCaches() {
+    return negativeCaches;
+  }
+
+  /**
+   * The definitions of the caches for IDs, where no record exists. The key is the name of the mapper, like it is
+   * defined inside the {@link MappingDefinitions}, the value defines the limits of the cache. The time to live should
+   * be short, since records, which are inserted by other applications, are not noticed
+   *
+   * @param negativeCaches
+   *          the negativeCaches to set
+   */
+  public final void setNegativeCaches(final Map<String, CacheDefinition> negativeCaches) {
+    this.negativeCaches = negativeCaches;
+  }
+
+  /**
+   * If true, invalidations are published over the event bus, so that other instances of NetRelay, which are using the
+   * same datastore, are removing the changed entities from their caches as well
+   *
+   * @return the clusterInvalidation
+   */
+  public final boolean isClusterInvalidation() {
+    return clusterInvalidation;
+  }
+
+  /**
+   * If true, invalidations are published over the event bus, so that other instances of NetRelay, which are using the
+   * same datastore, are removing the changed entities from their caches as well
+   *
+   * @param clusterInvalidation
+   *          the clusterInvalidation to set
+   */
+  public final void setClusterInvalidation(final boolean clusterInvalidation) {
+    this.clusterInvalidation = clusterInvalidation;
+  }
+
+  /**
+   * The maximum estimated memory in bytes, which is used by the {@link QueryCache}. A value <= 0 disables the cache
+   * of queries
+   *
+   * @return the queryCacheMemory
+   */
+  public final long getQueryCacheMemory() {
+    return queryCacheMemory;
+  }
+
+  /**
+   * The maximum estimated memory in bytes, which is used by the {@link QueryCache}. A value <= 0 disables the cache
+   * of queries
+   *
+   * @param queryCacheMemory
+   *          the queryCacheMemory to set
+   */
+  public final void setQueryCacheMemory(final long queryCacheMemory) {
+    this.queryCacheMemory = queryCacheMemory;
+  }
+
+  /**
+   * The time in milliseconds, how long the result of a query is kept inside the {@link QueryCache}. A value <= 0 means
+   * no time limit
+   *
+   * @return the queryCacheTimeToLive
+   */
+  public final long getQueryCacheTimeToLive() {
+    return queryCacheTimeToLive;
+  }
+
+  /**
+   * The time in milliseconds, how long the result of a query is kept inside the {@link QueryCache}. A value <= 0 means
+   * no time limit
+   *
+   * @param queryCacheTimeToLive
+   *          the queryCacheTimeToLive to set
+   */
+  public final void setQueryCacheTimeToLive(final long queryCacheTimeToLive) {
+    this.queryCacheTimeToLive = queryCacheTimeToLive;
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Counts hits, misses and evictions of a cache
+ *
+ * @author Michael Remme
+ *
+ */
+public class CacheStatistics {
+  private final String name;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param name
+   *          the name of the cache, which is used for display
+   */
+  public CacheStatistics(final String name) {
+    this.name = name;
+  }
+
+  void hit() {
+    hits.incrementAndGet();
+  }
+
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  void eviction() {
+    evictions.incrementAndGet();
+  }
+
+  /**
+   * The name of the cache
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * The number of requests, which were answered by the cache
+   *
+   * @return the hits
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * The number of requests, which were not answered by the cache
+   *
+   * @return the misses
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * The number of entries, which were removed because of size or time limits
+   *
+   * @return the evictions
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * The rate of hits in relation to all requests
+   *
+   * @return the hit rate between 0 and 1
+   */
+  public double getHitRate() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  /**
+   * Get the statistics as {@link JsonObject}
+   *
+   * @return the statistics as json
+   */
+  public JsonObject toJson() {
+    return new JsonObject().put("name", name).put("hits", getHits()).put("misses", getMisses())
+        .put("evictions", getEvictions()).put("hitRate", getHitRate());
+  }
+
+  @Override
+  public String toString() {
+    return toJson().encode();
+  }
+
+}
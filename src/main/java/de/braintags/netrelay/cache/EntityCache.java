@@ -0,0 +1,251 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.cache;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import de.braintags.vertx.util.exception.InitException;
+import io.vertx.core.json.Json;
+
+/**
+ * A cache for the entities of one mapper. The entities are stored as serialized json, so that each call to
+ * {@link #get(Object)} returns a new copy of the entity. By this the cached instance can't be changed, when the
+ * request data are bound into the returned entity.
+ * <br>
+ * Because the copies are created by {@link Json#mapper} and not by the mapper of jomnigate, only classes can be
+ * cached, where each persistent field is a simple value, which Jackson reads and writes completely: no references or
+ * embedded entities, no fields, which are ignored by Jackson or which it can't access. This is checked, when the cache
+ * is created.
+ *
+ * @author Michael Remme
+ *
+ * @param <T>
+ *          the class of the mapper
+ */
+public class EntityCache<T> {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(EntityCache.class);
+
+  private final Class<T> mapperClass;
+  private final LruCache<String, byte[]> cache;
+  private long generation = 0;
+
+  /**
+   * Create a new instance
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param definition
+   *          the definition of the limits of the cache
+   */
+  public EntityCache(final Class<T> mapperClass, final CacheDefinition definition) {
+    checkCacheable(mapperClass);
+    this.mapperClass = mapperClass;
+    this.cache = new LruCache<>(definition.getMaxSize(), definition.getTimeToLive(),
+        new CacheStatistics(mapperClass.getSimpleName()));
+  }
+
+  /**
+   * Checks, that each persistent field of the given class is a simple value, which is serialized and deserialized by
+   * {@link Json#mapper}, so that a cached copy is equal to the stored record
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @throws InitException
+   *           if the class can't be cached
+   */
+  public static void checkCacheable(final Class<?> mapperClass) {
+    JavaType type = Json.mapper.constructType(mapperClass);
+    BeanDescription serialization = Json.mapper.getSerializationConfig().introspect(type);
+    BeanDescription deserialization = Json.mapper.getDeserializationConfig().introspect(type);
+    if (deserialization.findDefaultConstructor() == null) {
+      throw new InitException("Entities of " + mapperClass.getName() + " can't be cached: no default constructor");
+    }
+    for (Class<?> cls = mapperClass; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+      for (Field field : cls.getDeclaredFields()) {
+        int mod = field.getModifiers();
+        if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || field.isSynthetic()) {
+          continue;
+        }
+        String reason = null;
+        if (!isSimple(field.getGenericType())) {
+          reason = "the type " + field.getGenericType().getTypeName() + " is not a simple value";
+        } else if (!isAccessible(serialization, field, true)) {
+          reason = "it is not serialized by Json.mapper";
+        } else if (!isAccessible(deserialization, field, false)) {
+          reason = "it is not deserialized by Json.mapper";
+        }
+        if (reason != null) {
+          throw new InitException("Entities of " + mapperClass.getName() + " can't be cached because of the field "
+              + field.getName() + ": " + reason);
+        }
+      }
+    }
+  }
+
+  private static boolean isAccessible(final BeanDescription description, final Field field,
+      final boolean serialization) {
+    for (BeanPropertyDefinition property : description.findProperties()) {
+      if (property.getInternalName().equals(field.getName())) {
+        return serialization ? property.couldSerialize() : property.couldDeserialize();
+      }
+    }
+    return false;
+  }
+
+  private static boolean isSimple(final Type type) {
+    if (type instanceof ParameterizedType) {
+      ParameterizedType pt = (ParameterizedType) type;
+      Class<?> raw = (Class<?>) pt.getRawType();
+      if (!Collection.class.isAssignableFrom(raw) && !Map.class.isAssignableFrom(raw)) {
+        return false;
+      }
+      for (Type argument : pt.getActualTypeArguments()) {
+        if (!(argument instanceof Class) || !isSimpleClass((Class<?>) argument)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return type instanceof Class && isSimpleClass((Class<?>) type);
+  }
+
+  private static boolean isSimpleClass(final Class<?> cls) {
+    return cls.isPrimitive() || cls.isEnum() || cls == byte[].class || CharSequence.class.isAssignableFrom(cls)
+        || Number.class.isAssignableFrom(cls) || cls == Boolean.class || cls == Character.class
+        || Date.class.isAssignableFrom(cls) || cls == Instant.class || cls == UUID.class;
+  }
+
+  /**
+   * Get a copy of the entity with the given id
+   *
+   * @param id
+   *          the id of the entity
+   * @return a new instance of the entity or null, if not cached
+   */
+  public T get(final Object id) {
+    byte[] data = cache.get(String.valueOf(id));
+    if (data != null) {
+      try {
+        return Json.mapper.readValue(data, mapperClass);
+      } catch (IOException e) {
+        LOGGER.warn("could not read cached entity " + mapperClass.getSimpleName() + " with ID " + id, e);
+        cache.remove(String.valueOf(id));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The current generation, which is increased by each invalidation. It must be read before the query for an entity is
+   * executed
+   *
+   * @return the generation
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Store the state of an entity, which was loaded by a query. The entity is not stored, if the cache was invalidated
+   * since the given generation was read, because the query may have returned an outdated record
+   *
+   * @param id
+   *          the id of the entity
+   * @param entity
+   *          the entity to be stored
+   * @param queryGeneration
+   *          the result of {@link #getGeneration()} before the query was executed
+   */
+  public synchronized void put(final Object id, final T entity, final long queryGeneration) {
+    if (queryGeneration == generation) {
+      put(id, entity);
+    }
+  }
+
+  /**
+   * Store the current state of the entity. If the entity can't be serialized, it is not cached
+   *
+   * @param id
+   *          the id of the entity
+   * @param entity
+   *          the entity to be stored
+   */
+  public void put(final Object id, final T entity) {
+    try {
+      cache.put(String.valueOf(id), Json.mapper.writeValueAsBytes(entity));
+    } catch (IOException e) {
+      LOGGER.warn("could not cache entity " + mapperClass.getSimpleName() + " with ID " + id, e);
+    }
+  }
+
+  /**
+   * Remove the entity with the given id from the cache
+   *
+   * @param id
+   *          the id of the entity
+   */
+  public synchronized void invalidate(final Object id) {
+    generation++;
+    cache.remove(String.valueOf(id));
+  }
+
+  /**
+   * Remove all entities from the cache
+   */
+  public synchronized void clear() {
+    generation++;
+    cache.clear();
+  }
+
+  /**
+   * The number of cached entities
+   *
+   * @return the size
+   */
+  public int size() {
+    return cache.size();
+  }
+
+  /**
+   * The class of the mapper, which is cached by this instance
+   *
+   * @return the mapperClass
+   */
+  public Class<T> getMapperClass() {
+    return mapperClass;
+  }
+
+  /**
+   * The statistics of the cache
+   *
+   * @return the statistics
+   */
+  public CacheStatistics getStatistics() {
+    return cache.getStatistics();
+  }
+
+}
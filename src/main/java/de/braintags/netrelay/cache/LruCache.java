@@ -0,0 +1,210 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * A simple cache, which is bounded by a maximum number of entries or by a maximum weight and an optional time to
+ * live. When the limit is reached, the least recently used entries are removed. The access to an instance is
+ * synchronized.
+ *
+ * @author Michael Remme
+ *
+ * @param <K>
+ *          the class of the keys
+ * @param <V>
+ *          the class of the values
+ */
+public class LruCache<K, V> {
+  private final long maxWeight;
+  private final long timeToLive;
+  private final CacheStatistics statistics;
+  private final ToLongBiFunction<K, V> weigher;
+  private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+  private long weight = 0;
+
+  /**
+   * Create a new instance, which is bounded by the number of entries
+   *
+   * @param maxSize
+   *          the maximum number of entries
+   * @param timeToLive
+   *          the time in milliseconds, how long an entry is valid. A value <= 0 means no limit
+   * @param statistics
+   *          the statistics, where hits, misses and evictions are counted
+   */
+  public LruCache(final int maxSize, final long timeToLive, final CacheStatistics statistics) {
+    this(maxSize, timeToLive, statistics, (k, v) -> 1);
+  }
+
+  /**
+   * Create a new instance, which is bounded by the sum of the weights of the entries
+   *
+   * @param maxWeight
+   *          the maximum sum of the weights of all entries
+   * @param timeToLive
+   *          the time in milliseconds, how long an entry is valid. A value <= 0 means no limit
+   * @param statistics
+   *          the statistics, where hits, misses and evictions are counted
+   * @param weigher
+   *          computes the weight of an entry, like the estimated memory size
+   */
+  public LruCache(final long maxWeight, final long timeToLive, final CacheStatistics statistics,
+      final ToLongBiFunction<K, V> weigher) {
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("maximum must be > 0");
+    }
+    this.maxWeight = maxWeight;
+    this.timeToLive = timeToLive;
+    this.statistics = statistics;
+    this.weigher = weigher;
+  }
+
+  /**
+   * Get the value for the given key
+   *
+   * @param key
+   *          the key
+   * @return the value or null, if not existing or expired
+   */
+  public synchronized V get(final K key) {
+    Entry<V> entry = map.get(key);
+    if (entry != null && entry.isExpired()) {
+      removeEntry(key);
+      statistics.eviction();
+      entry = null;
+    }
+    if (entry == null) {
+      statistics.miss();
+      return null;
+    }
+    statistics.hit();
+    return entry.value;
+  }
+
+  /**
+   * Store the value for the given key
+   *
+   * @param key
+   *          the key
+   * @param value
+   *          the value
+   */
+  public synchronized void put(final K key, final V value) {
+    long entryWeight = weigher.applyAsLong(key, value);
+    Entry<V> old = map.put(key,
+        new Entry<>(value, entryWeight, timeToLive > 0 ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE));
+    weight += entryWeight - (old == null ? 0 : old.weight);
+    Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+    while (weight > maxWeight && it.hasNext()) {
+      Map.Entry<K, Entry<V>> eldest = it.next();
+      it.remove();
+      weight -= eldest.getValue().weight;
+      statistics.eviction();
+    }
+  }
+
+  /**
+   * Remove the entry with the given key
+   *
+   * @param key
+   *          the key
+   * @return true, if an entry was removed
+   */
+  public synchronized boolean remove(final K key) {
+    return removeEntry(key);
+  }
+
+  private boolean removeEntry(final K key) {
+    Entry<V> entry = map.remove(key);
+    if (entry != null) {
+      weight -= entry.weight;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Remove all entries, where the key matches the given predicate
+   *
+   * @param predicate
+   *          the predicate to check the keys
+   */
+  public synchronized void removeIf(final Predicate<K> predicate) {
+    Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<K, Entry<V>> entry = it.next();
+      if (predicate.test(entry.getKey())) {
+        it.remove();
+        weight -= entry.getValue().weight;
+      }
+    }
+  }
+
+  /**
+   * Remove all entries
+   */
+  public synchronized void clear() {
+    map.clear();
+    weight = 0;
+  }
+
+  /**
+   * The current number of entries, including expired ones, which were not yet removed
+   *
+   * @return the size
+   */
+  public synchronized int size() {
+    return map.size();
+  }
+
+  /**
+   * The sum of the weights of all entries
+   *
+   * @return the weight
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  /**
+   * The statistics of the current instance
+   *
+   * @return the statistics
+   */
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final long weight;
+    private final long expires;
+
+    Entry(final V value, final long weight, final long expires) {
+      this.value = value;
+      this.weight = weight;
+      this.expires = expires;
+    }
+
+    boolean isExpired() {
+      return System.currentTimeMillis() >= expires;
+    }
+  }
+
+}
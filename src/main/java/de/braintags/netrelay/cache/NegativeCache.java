@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.cache;
+
+/**
+ * The NegativeCache stores the IDs of one mapper, for which no record exists inside the datastore, so that repeated
+ * requests for missing records are answered without a query. It should be defined with a short time to live, since
+ * records, which are inserted by other applications, are not noticed.
+ * <br>
+ * Each invalidation increases the generation of the cache. A query reads the generation before it is executed and
+ * passes it to {@link #markMissing(Object, long)}, so that a miss is not stored, if a record was inserted while the
+ * query was running.
+ *
+ * @author Michael Remme
+ *
+ */
+public class NegativeCache {
+  private final LruCache<String, Boolean> cache;
+  private long generation = 0;
+
+  /**
+   * Create a new instance
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param definition
+   *          the definition of the limits of the cache
+   */
+  public NegativeCache(final Class<?> mapperClass, final CacheDefinition definition) {
+    this.cache = new LruCache<>(definition.getMaxSize(), definition.getTimeToLive(),
+        new CacheStatistics(mapperClass.getSimpleName() + " (missing)"));
+  }
+
+  /**
+   * Returns true, if the record with the given id is known as missing
+   *
+   * @param id
+   *          the id of the record
+   * @return true, if the record is known as missing
+   */
+  public boolean isMissing(final Object id) {
+    return cache.get(String.valueOf(id)) != null;
+  }
+
+  /**
+   * The current generation, which must be read before the query for a record is executed
+   *
+   * @return the generation
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Store the information, that no record exists with the given id. The information is dropped, if the cache was
+   * invalidated since the given generation was read
+   *
+   * @param id
+   *          the id of the record
+   * @param queryGeneration
+   *          the result of {@link #getGeneration()} before the query was executed
+   */
+  public synchronized void markMissing(final Object id, final long queryGeneration) {
+    if (queryGeneration == generation) {
+      cache.put(String.valueOf(id), Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Remove the given id, because a record with this id was inserted
+   *
+   * @param id
+   *          the id of the record
+   */
+  public synchronized void invalidate(final Object id) {
+    generation++;
+    cache.remove(String.valueOf(id));
+  }
+
+  /**
+   * Remove all entries
+   */
+  public synchronized void clear() {
+    generation++;
+    cache.clear();
+  }
+
+  /**
+   * The statistics of the cache
+   *
+   * @return the statistics
+   */
+  public CacheStatistics getStatistics() {
+    return cache.getStatistics();
+  }
+
+}
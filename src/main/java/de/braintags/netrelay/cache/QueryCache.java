@@ -0,0 +1,249 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.braintags.netrelay.mapping.EntityBatchLoader;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.util.IteratorAsync;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * The QueryCache stores the IDs of the records, which were found by a query, and the number of records of count
+ * queries. Queries are identified by a {@link QueryCacheKey}, which is derived from the query. The cache is bounded
+ * by the estimated memory of the entries and all entries of a mapper are removed, when the {@link CacheManager} is
+ * informed about a write of a record of this mapper.
+ * <br>
+ * When the IDs of a query are taken from the cache, the records are loaded from the datastore of the query by the
+ * {@link EntityBatchLoader}, so that one query by ID is needed instead of executing the original query. Queries with
+ * search conditions, which can't be described by a key, are executed without the cache.
+ *
+ * @author Michael Remme
+ *
+ */
+public class QueryCache {
+  private final LruCache<QueryCacheKey, Object> cache;
+  private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+  /**
+   * Create a new instance
+   *
+   * @param maxMemory
+   *          the maximum estimated memory of all entries in bytes
+   * @param timeToLive
+   *          the time in milliseconds, how long an entry is valid. A value <= 0 means no limit
+   */
+  public QueryCache(final long maxMemory, final long timeToLive) {
+    this.cache = new LruCache<>(maxMemory, timeToLive, new CacheStatistics("queries"), QueryCache::estimateSize);
+  }
+
+  /**
+   * Get the records of the given query from the cache or by executing the query
+   *
+   * @param query
+   *          the query to be executed, if the result is not cached
+   * @param loader
+   *          the loader, which is used to load the records of cached IDs
+   * @param handler
+   *          the handler to be informed about the records
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void find(final IQuery<T> query, final EntityBatchLoader loader,
+      final Handler<AsyncResult<List<T>>> handler) {
+    QueryCacheKey key = QueryCacheKey.of(query);
+    List<Object> ids = key == null ? null : (List<Object>) cache.get(key);
+    if (ids != null) {
+      loadRecords(key.getDatastore(), query.getMapper(), ids, loader, handler);
+      return;
+    }
+    long generation = key == null ? 0 : getGeneration(key.getMapperName());
+    query.execute(qrr -> {
+      if (qrr.failed()) {
+        handler.handle(Future.failedFuture(qrr.cause()));
+      } else {
+        readRecords(qrr.result().iterator(), new ArrayList<>(), result -> {
+          if (result.succeeded() && key != null) {
+            List<Object> foundIds = new ArrayList<>(result.result().size());
+            IProperty idField = query.getMapper().getIdInfo().getField();
+            result.result().forEach(entity -> foundIds.add(idField.getPropertyAccessor().readData(entity)));
+            store(key, generation, Collections.unmodifiableList(foundIds));
+          }
+          handler.handle(result);
+        });
+      }
+    });
+  }
+
+  /**
+   * Get the number of records of the given query from the cache or by executing a count query
+   *
+   * @param query
+   *          the query to be executed, if the number is not cached
+   * @param handler
+   *          the handler to be informed about the number of records
+   */
+  public void count(final IQuery<?> query, final Handler<AsyncResult<Long>> handler) {
+    QueryCacheKey key = QueryCacheKey.of(query);
+    QueryCacheKey countKey = key == null ? null : key.forCount();
+    Long count = countKey == null ? null : (Long) cache.get(countKey);
+    if (count != null) {
+      handler.handle(Future.succeededFuture(count));
+      return;
+    }
+    long generation = countKey == null ? 0 : getGeneration(countKey.getMapperName());
+    query.executeCount(cr -> {
+      if (cr.failed()) {
+        handler.handle(Future.failedFuture(cr.cause()));
+      } else {
+        long result = cr.result().getCount();
+        if (countKey != null) {
+          store(countKey, generation, result);
+        }
+        handler.handle(Future.succeededFuture(result));
+      }
+    });
+  }
+
+  /**
+   * Remove all entries of the given mapper
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   */
+  public void invalidate(final Class<?> mapperClass) {
+    invalidate(mapperClass.getName());
+  }
+
+  /**
+   * Remove all entries of the mapper with the given class name
+   *
+   * @param mapperName
+   *          the name of the class of the mapper
+   */
+  public void invalidate(final String mapperName) {
+    generations.computeIfAbsent(mapperName, n -> new AtomicLong()).incrementAndGet();
+    cache.removeIf(key -> key.getMapperName().equals(mapperName));
+  }
+
+  /**
+   * The estimated memory of all entries in bytes
+   *
+   * @return the estimated memory
+   */
+  public long getMemory() {
+    return cache.getWeight();
+  }
+
+  /**
+   * The statistics of the cache
+   *
+   * @return the statistics
+   */
+  public CacheStatistics getStatistics() {
+    return cache.getStatistics();
+  }
+
+  /**
+   * Results of queries, which were started before an invalidation of the mapper, are not stored
+   */
+  private synchronized void store(final QueryCacheKey key, final long generation, final Object value) {
+    if (getGeneration(key.getMapperName()) == generation) {
+      cache.put(key, value);
+    }
+  }
+
+  private long getGeneration(final String mapperName) {
+    AtomicLong generation = generations.get(mapperName);
+    return generation == null ? 0 : generation.get();
+  }
+
+  private static <T> void readRecords(final IteratorAsync<T> iterator, final List<T> records,
+      final Handler<AsyncResult<List<T>>> handler) {
+    if (!iterator.hasNext()) {
+      handler.handle(Future.succeededFuture(records));
+      return;
+    }
+    iterator.next(ir -> {
+      if (ir.failed()) {
+        handler.handle(Future.failedFuture(ir.cause()));
+      } else {
+        records.add(ir.result());
+        readRecords(iterator, records, handler);
+      }
+    });
+  }
+
+  /**
+   * Load the records of cached IDs. Records, which were deleted in between, are skipped
+   */
+  private static <T> void loadRecords(final IDataStore<?, ?> datastore, final IMapper<T> mapper,
+      final List<Object> ids, final EntityBatchLoader loader, final Handler<AsyncResult<List<T>>> handler) {
+    if (ids.isEmpty()) {
+      handler.handle(Future.succeededFuture(new ArrayList<>()));
+      return;
+    }
+    Object[] records = new Object[ids.size()];
+    AtomicInteger open = new AtomicInteger(ids.size());
+    AtomicInteger failed = new AtomicInteger();
+    for (int i = 0; i < ids.size(); i++) {
+      int index = i;
+      loader.load(datastore, mapper, ids.get(i), lr -> {
+        if (lr.succeeded()) {
+          records[index] = lr.result();
+        } else if (!(lr.cause() instanceof NoSuchRecordException) && failed.getAndIncrement() == 0) {
+          handler.handle(Future.failedFuture(lr.cause()));
+        }
+        if (open.decrementAndGet() == 0 && failed.get() == 0) {
+          handler.handle(Future.succeededFuture(toList(records)));
+        }
+      });
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> List<T> toList(final Object[] records) {
+    List<T> list = new ArrayList<>(records.length);
+    for (Object record : records) {
+      if (record != null) {
+        list.add((T) record);
+      }
+    }
+    return list;
+  }
+
+  private static long estimateSize(final QueryCacheKey key, final Object value) {
+    long size = key.estimateSize() + 32;
+    if (value instanceof List) {
+      for (Object id : (List<?>) value) {
+        size += 40 + 2L * String.valueOf(id).length();
+      }
+    } else {
+      size += 16;
+    }
+    return size;
+  }
+
+}
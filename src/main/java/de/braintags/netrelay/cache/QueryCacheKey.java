@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.cache;
+
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.query.IFieldCondition;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.dataaccess.query.ISearchCondition;
+import de.braintags.vertx.jomnigate.dataaccess.query.ISearchConditionContainer;
+import de.braintags.vertx.jomnigate.dataaccess.query.ISortDefinition;
+import de.braintags.vertx.jomnigate.dataaccess.query.SortArgument;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+
+/**
+ * The key of a query inside the {@link QueryCache}. The key is derived from the {@link IQuery} itself: the datastore,
+ * the mapper, the search condition, the sort order, start and limit. The order of conditions, sort arguments and
+ * values is kept, so that two queries only share a key, if they are defined identically.
+ *
+ * @author Michael Remme
+ *
+ */
+public class QueryCacheKey {
+  private final IDataStore<?, ?> datastore;
+  private final String mapperName;
+  private final String canonical;
+  private final boolean count;
+
+  private QueryCacheKey(final IDataStore<?, ?> datastore, final String mapperName, final String canonical,
+      final boolean count) {
+    this.datastore = datastore;
+    this.mapperName = mapperName;
+    this.canonical = canonical;
+    this.count = count;
+  }
+
+  /**
+   * Create the key for the result of a query
+   *
+   * @param query
+   *          the query
+   * @return the key or null, if the search condition contains parts, which can't be described by a key. The result of
+   *         such a query must not be cached
+   */
+  public static QueryCacheKey of(final IQuery<?> query) {
+    StringBuilder builder = new StringBuilder("{\"condition\":");
+    if (!append(builder, query.getSearchCondition())) {
+      return null;
+    }
+    builder.append(",\"sort\":[");
+    ISortDefinition<?> sort = query.getSortDefinitions();
+    if (sort != null && !sort.isEmpty()) {
+      boolean first = true;
+      for (SortArgument argument : sort.getSortArguments()) {
+        builder.append(first ? "" : ",").append(Json.encode(argument.getFieldName()))
+            .append(argument.isAscending() ? ":1" : ":-1");
+        first = false;
+      }
+    }
+    builder.append("],\"start\":").append(query.getStart()).append(",\"limit\":").append(query.getLimit())
+        .append('}');
+    return new QueryCacheKey(query.getDataStore(), query.getMapper().getMapperClass().getName(), builder.toString(),
+        false);
+  }
+
+  /**
+   * Get the key for the number of records of the current query
+   *
+   * @return the key for the count
+   */
+  public QueryCacheKey forCount() {
+    return count ? this : new QueryCacheKey(datastore, mapperName, canonical, true);
+  }
+
+  private static boolean append(final StringBuilder builder, final ISearchCondition condition) {
+    if (condition == null) {
+      builder.append("null");
+    } else if (condition instanceof IFieldCondition) {
+      IFieldCondition fieldCondition = (IFieldCondition) condition;
+      builder.append("{\"field\":").append(Json.encode(fieldCondition.getField().getFieldName()))
+          .append(",\"operator\":\"").append(fieldCondition.getOperator()).append("\",\"value\":");
+      try {
+        builder.append(Json.encode(fieldCondition.getValue())).append('}');
+      } catch (EncodeException e) {
+        return false;
+      }
+    } else if (condition instanceof ISearchConditionContainer) {
+      ISearchConditionContainer container = (ISearchConditionContainer) condition;
+      builder.append("{\"logic\":\"").append(container.getQueryLogic()).append("\",\"conditions\":[");
+      boolean first = true;
+      for (ISearchCondition child : container.getConditions()) {
+        builder.append(first ? "" : ",");
+        if (!append(builder, child)) {
+          return false;
+        }
+        first = false;
+      }
+      builder.append("]}");
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * The datastore, which is queried
+   *
+   * @return the datastore
+   */
+  public IDataStore<?, ?> getDatastore() {
+    return datastore;
+  }
+
+  /**
+   * The name of the class of the mapper, which is queried
+   *
+   * @return the mapperName
+   */
+  public String getMapperName() {
+    return mapperName;
+  }
+
+  /**
+   * Returns true, if the key is used for the number of records of a query
+   *
+   * @return true for a count
+   */
+  public boolean isCount() {
+    return count;
+  }
+
+  /**
+   * An estimation of the memory, which is used by the key
+   *
+   * @return the estimated size in bytes
+   */
+  long estimateSize() {
+    return 64L + 2L * (canonical.length() + mapperName.length());
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 31 * System.identityHashCode(datastore) + mapperName.hashCode();
+    return 31 * (31 * hash + canonical.hashCode()) + (count ? 1 : 0);
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof QueryCacheKey)) {
+      return false;
+    }
+    QueryCacheKey other = (QueryCacheKey) obj;
+    return count == other.count && datastore == other.datastore && mapperName.equals(other.mapperName)
+        && canonical.equals(other.canonical);
+  }
+
+  @Override
+  public String toString() {
+    return mapperName + (count ? " count " : " ") + canonical;
+  }
+
+}
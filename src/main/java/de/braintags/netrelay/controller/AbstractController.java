@@ -12,16 +12,24 @@
  */
 package de.braintags.netrelay.controller;
 
+import java.io.IOException;
 import java.util.Properties;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import de.braintags.netrelay.NetRelay;
 import de.braintags.netrelay.routing.CaptureCollection;
 import de.braintags.netrelay.routing.RouterDefinition;
+import de.braintags.netrelay.util.PayloadFormat;
+import de.braintags.netrelay.util.ResponseOutputStream;
 import de.braintags.vertx.util.HttpContentType;
 import de.braintags.vertx.util.exception.ParameterRequiredException;
 import de.braintags.vertx.util.request.RequestUtil;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.EncodeException;
 import io.vertx.ext.web.RoutingContext;
 
 /**
@@ -363,6 +371,103 @@ public abstract class AbstractController implements IController {
         .end(content);
   }
 
+  /**
+   * Send a reply as Json, which is serialized directly into the response. The Accept header of the request is not
+   * regarded; use {@link #writePayload(RoutingContext, Object)} to answer in the format requested by the client
+   *
+   * @param context
+   *          the context of the current request
+   * @param value
+   *          the object to be serialized
+   * @see #writeJson(RoutingContext, Object, int)
+   */
+  protected void writeJson(final RoutingContext context, final Object value) {
+    writeJson(context, value, 200);
+  }
+
+  /**
+   * Send a reply as Json, which is serialized directly into the response
+   *
+   * @param context
+   *          the context of the current request
+   * @param value
+   *          the object to be serialized
+   * @param statusCode
+   *          the status code of the response
+   * @see #writePayload(RoutingContext, Object, int, PayloadFormat)
+   */
+  protected void writeJson(final RoutingContext context, final Object value, final int statusCode) {
+    writePayload(context, value, statusCode, PayloadFormat.JSON);
+  }
+
+  /**
+   * Send a reply in the format, which is requested by the Accept header of the request. JSON is used, if no binary
+   * format of {@link PayloadFormat} is accepted
+   *
+   * @param context
+   *          the context of the current request
+   * @param value
+   *          the object to be serialized
+   */
+  protected void writePayload(final RoutingContext context, final Object value) {
+    writePayload(context, value, 200);
+  }
+
+  /**
+   * Send a reply in the format, which is requested by the Accept header of the request. JSON is used, if no binary
+   * format of {@link PayloadFormat} is accepted
+   *
+   * @param context
+   *          the context of the current request
+   * @param value
+   *          the object to be serialized
+   * @param statusCode
+   *          the status code of the response
+   */
+  protected void writePayload(final RoutingContext context, final Object value, final int statusCode) {
+    context.response().putHeader("Vary", "Accept");
+    writePayload(context, value, statusCode, PayloadFormat.negotiate(context));
+  }
+
+  /**
+   * Send a reply in the given format, which is serialized directly into the response. The object is serialized by a
+   * streaming generator into a {@link ResponseOutputStream}, without creating a String before. Small contents are sent
+   * with a content-length, large contents are sent in chunks. If the serialization fails before the first chunk was
+   * written, an {@link EncodeException} is thrown, otherwise the connection is closed
+   *
+   * @param context
+   *          the context of the current request
+   * @param value
+   *          the object to be serialized
+   * @param statusCode
+   *          the status code of the response
+   * @param format
+   *          the format of the response
+   */
+  protected void writePayload(final RoutingContext context, final Object value, final int statusCode,
+      final PayloadFormat format) {
+    LOGGER.debug("writing result as " + format);
+    HttpServerResponse response = context.response();
+    String contentType = format == PayloadFormat.JSON ? HttpContentType.APPLICATION_JSON.toString()
+        : format.getContentType();
+    response.putHeader("content-type", contentType).setStatusCode(statusCode);
+    ObjectMapper mapper = format.getMapper();
+    ResponseOutputStream out = new ResponseOutputStream(response);
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      mapper.writeValue(generator, value);
+    } catch (IOException | RuntimeException e) {
+      out.discard();
+      if (response.isChunked()) {
+        LOGGER.error("error while writing " + format, e);
+        response.close();
+        return;
+      }
+      throw new EncodeException("Failed to encode as " + format + ": " + e.getMessage());
+    }
+    out.close();
+  }
+
   /**
    * Get the name of the definition
    *
@@ -0,0 +1,405 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.controller;
+
+import java.util.List;
+import java.util.Properties;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import de.braintags.netrelay.exception.FieldNotFoundException;
+import de.braintags.netrelay.exception.NoSuchMapperException;
+import de.braintags.netrelay.mapping.FieldBinder;
+import de.braintags.netrelay.mapping.FieldSelection;
+import de.braintags.netrelay.mapping.MapperBindingPlan;
+import de.braintags.netrelay.routing.RouterDefinition;
+import de.braintags.netrelay.typehandler.CoordinateCodec;
+import de.braintags.netrelay.util.RequestDeadline;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.dataaccess.query.ISearchCondition;
+import de.braintags.vertx.jomnigate.datatypes.geojson.GeoPoint;
+import de.braintags.vertx.jomnigate.mapping.IIdInfo;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.util.IteratorAsync;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * The ExportController streams all records of the configured mapper as NDJSON, as JSON array or as CSV. The records
+ * are read page by page from the datastores of the mapper, which are the read replicas, if they are defined. The pages
+ * are sorted by the id and each page continues after the last id of the previous one, so that no record is skipped or
+ * repeated and the datastore doesn't have to skip the records of the previous pages. Each page is serialized into one
+ * buffer and the next page is read, when the write queue of the response is not full anymore. By this the memory
+ * usage does not depend on the number of exported records. If the connection is closed by the client, the export is
+ * stopped.
+ * <br>
+ * The mapper is only taken from the configuration, so that a client can't export any other mapper. JSON and NDJSON
+ * contain the same fields as CSV: the fields of the mapper or the selected ones. An unknown format or field of a
+ * request is answered with status 400.
+ * <br>
+ * Since an export can take longer than the timeout of a request, a {@link RequestDeadline} of the request is
+ * cancelled. If an error occurs after the response was started, the connection is closed, so that the client can
+ * recognize the incomplete export.
+ * <br>
+ * <br>
+ * Config-Parameter:<br/>
+ * <UL>
+ * <LI>{@value #MAPPER_PROP} - the name of the mapper to be exported, like it is defined inside the MappingDefinitions;
+ * required
+ * <LI>{@value #FORMAT_PROP} - the format of the export: ndjson, json or csv; default is ndjson
+ * <LI>{@value #PAGE_SIZE_PROP} - the number of records, which are read by one query; default is
+ * {@value #DEFAULT_PAGE_SIZE}
+ * </UL>
+ * <br>
+ * Request-Parameter:<br/>
+ * <UL>
+ * <LI>{@value #FORMAT_PROP} - overwrites the format of the configuration
+ * <LI>{@value FieldSelection#FIELDS_PARAMETER} - a comma separated list of the fields to be exported; by default all
+ * fields are exported
+ * </UL>
+ * <br/>
+ * Result-Parameter:<br/>
+ * <br/>
+ *
+ * @author Michael Remme
+ */
+public class ExportController extends AbstractController {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(ExportController.class);
+
+  /**
+   * The property, by which the name of the mapper is defined
+   */
+  public static final String MAPPER_PROP = "mapper";
+
+  /**
+   * The property, by which the format of the export is defined
+   */
+  public static final String FORMAT_PROP = "format";
+
+  /**
+   * The property, by which the number of records per query is defined
+   */
+  public static final String PAGE_SIZE_PROP = "pageSize";
+
+  /**
+   * The default number of records per query
+   */
+  public static final int DEFAULT_PAGE_SIZE = 500;
+
+  private String mapperName;
+  private int pageSize;
+
+  /**
+   * The formats of an export
+   */
+  public enum Format {
+    /**
+     * one json object per line
+     */
+    NDJSON("application/x-ndjson", "ndjson"),
+    /**
+     * one json array, which contains all records
+     */
+    JSON("application/json", "json"),
+    /**
+     * comma separated values with a header line, which contains the names of the fields
+     */
+    CSV("text/csv; charset=utf-8", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    Format(final String contentType, final String extension) {
+      this.contentType = contentType;
+      this.extension = extension;
+    }
+
+    /**
+     * Get the format by its name
+     *
+     * @param name
+     *          the name of the format, case insensitive
+     * @return the format
+     * @throws IllegalArgumentException
+     *           if the format is unknown
+     */
+    public static Format fromName(final String name) {
+      for (Format format : values()) {
+        if (format.extension.equalsIgnoreCase(name)) {
+          return format;
+        }
+      }
+      throw new IllegalArgumentException("unknown export format: " + name);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see de.braintags.netrelay.controller.AbstractController#handleController(io.vertx.ext.web.RoutingContext)
+   */
+  @Override
+  protected void handleController(final RoutingContext context) {
+    Class<?> mapperClass = getNetRelay().getSettings().getMappingDefinitions().getMapperClass(mapperName);
+    if (mapperClass == null) {
+      throw new NoSuchMapperException(mapperName);
+    }
+    Export<?> export;
+    try {
+      Format format = Format.fromName(readParameterOrProperty(context, FORMAT_PROP, Format.NDJSON.extension, false));
+      export = new Export<>(context, mapperClass, format);
+    } catch (IllegalArgumentException | FieldNotFoundException e) {
+      LOGGER.info("invalid export request: " + e.getMessage());
+      context.fail(HttpResponseStatus.BAD_REQUEST.code());
+      return;
+    }
+    RequestDeadline deadline = RequestDeadline.get(context);
+    if (deadline != null) {
+      deadline.cancel();
+    }
+    export.start();
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see de.braintags.netrelay.controller.AbstractController#initProperties(java.util.Properties)
+   */
+  @Override
+  public void initProperties(final Properties properties) {
+    mapperName = readProperty(MAPPER_PROP, null, true);
+    pageSize = Integer.parseInt(readProperty(PAGE_SIZE_PROP, String.valueOf(DEFAULT_PAGE_SIZE), false));
+  }
+
+  /**
+   * Escapes a value for CSV: values, which contain a separator, a quote or a line break, are quoted
+   *
+   * @param value
+   *          the value
+   * @return the escaped value
+   */
+  public static String escapeCsv(final String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+        return '"' + value.replace("\"", "\"\"") + '"';
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Creates a default definition for the given mapper. The mapper must be given, because an ExportController exports
+   * the records of exactly one mapper
+   *
+   * @param mapperName
+   *          the name of the mapper, like it is defined inside the MappingDefinitions
+   * @return the definition
+   */
+  public static RouterDefinition createDefaultRouterDefinition(final String mapperName) {
+    RouterDefinition def = new RouterDefinition();
+    def.setName(ExportController.class.getSimpleName());
+    def.setBlocking(false);
+    def.setController(ExportController.class);
+    def.setHandlerProperties(getDefaultProperties(mapperName));
+    def.setRoutes(new String[] { "/export" });
+    return def;
+  }
+
+  /**
+   * Get the default properties for an implementation of ExportController
+   *
+   * @param mapperName
+   *          the name of the mapper, like it is defined inside the MappingDefinitions
+   * @return the properties
+   */
+  public static Properties getDefaultProperties(final String mapperName) {
+    Properties json = new Properties();
+    json.put(MAPPER_PROP, mapperName);
+    json.put(FORMAT_PROP, Format.NDJSON.extension);
+    json.put(PAGE_SIZE_PROP, String.valueOf(DEFAULT_PAGE_SIZE));
+    return json;
+  }
+
+  /**
+   * The state of one running export
+   */
+  private class Export<T> {
+    private final RoutingContext context;
+    private final HttpServerResponse response;
+    private final Class<T> mapperClass;
+    private final Format format;
+    private final List<IDataStore<?, ?>> datastores;
+    private final MapperBindingPlan<T> bindingPlan;
+    private final FieldSelection fieldSelection;
+    private int datastoreIndex = 0;
+    // the id of the last exported record of the current datastore
+    private Object lastId;
+    private long count = 0;
+    private boolean closed = false;
+
+    Export(final RoutingContext context, final Class<T> mapperClass, final Format format) {
+      this.context = context;
+      this.response = context.response();
+      this.mapperClass = mapperClass;
+      this.format = format;
+      this.datastores = getNetRelay().getDatastores(context, Action.DISPLAY, mapperClass);
+      IMapper<T> mapper = getNetRelay().getNetRelayMapperFactory().getMapper(mapperClass);
+      this.bindingPlan = getNetRelay().getNetRelayMapperFactory().getBindingPlan(mapper);
+      FieldSelection selection = FieldSelection.fromRequest(context, mapper);
+      this.fieldSelection = selection != null ? selection : FieldSelection.all(mapper);
+    }
+
+    void start() {
+      response.setChunked(true).putHeader("content-type", format.contentType).putHeader("Content-Disposition",
+          "attachment; filename=\"" + mapperClass.getSimpleName() + "." + format.extension + "\"");
+      response.closeHandler(v -> closed = true);
+      Buffer buffer = Buffer.buffer();
+      if (format == Format.JSON) {
+        buffer.appendString("[");
+      } else if (format == Format.CSV) {
+        boolean first = true;
+        for (int i = 0; i < bindingPlan.size(); i++) {
+          if (fieldSelection.contains(bindingPlan.getProperty(i))) {
+            buffer.appendString(first ? "" : ",").appendString(escapeCsv(bindingPlan.getProperty(i).getName()));
+            first = false;
+          }
+        }
+        buffer.appendString("\r\n");
+      }
+      response.write(buffer);
+      nextPage();
+    }
+
+    private void nextPage() {
+      if (closed) {
+        LOGGER.info("export of " + mapperClass.getSimpleName() + " stopped by client after " + count + " records");
+        return;
+      }
+      if (datastoreIndex >= datastores.size()) {
+        response.end(format == Format.JSON ? "]" : "");
+        return;
+      }
+      IDataStore<?, ?> datastore = datastores.get(datastoreIndex);
+      IIdInfo idInfo = datastore.getMapperFactory().getMapper(mapperClass).getIdInfo();
+      IQuery<T> query = datastore.createQuery(mapperClass);
+      if (lastId != null) {
+        query.setSearchCondition(ISearchCondition.larger(idInfo.getIndexedField(), lastId));
+      }
+      query.addSort(idInfo.getField().getName());
+      query.setLimit(pageSize);
+      query.execute(qrr -> {
+        if (qrr.failed()) {
+          fail(qrr.cause());
+          return;
+        }
+        Buffer buffer = Buffer.buffer();
+        writeRecords(qrr.result().iterator(), idInfo, buffer, 0, result -> {
+          if (result.failed()) {
+            fail(result.cause());
+            return;
+          }
+          if (result.result() < pageSize) {
+            datastoreIndex++;
+            lastId = null;
+          }
+          if (closed) {
+            nextPage();
+            return;
+          }
+          response.write(buffer);
+          if (response.writeQueueFull()) {
+            response.drainHandler(v -> {
+              response.drainHandler(null);
+              nextPage();
+            });
+          } else {
+            nextPage();
+          }
+        });
+      });
+    }
+
+    private void writeRecords(final IteratorAsync<T> iterator, final IIdInfo idInfo, final Buffer buffer,
+        final int read, final Handler<AsyncResult<Integer>> handler) {
+      if (!iterator.hasNext()) {
+        handler.handle(Future.succeededFuture(read));
+        return;
+      }
+      iterator.next(ir -> {
+        if (ir.failed()) {
+          handler.handle(Future.failedFuture(ir.cause()));
+          return;
+        }
+        try {
+          writeRecord(ir.result(), buffer);
+        } catch (JsonProcessingException e) {
+          handler.handle(Future.failedFuture(e));
+          return;
+        }
+        lastId = idInfo.getField().getPropertyAccessor().readData(ir.result());
+        writeRecords(iterator, idInfo, buffer, read + 1, handler);
+      });
+    }
+
+    private void writeRecord(final T entity, final Buffer buffer) throws JsonProcessingException {
+      switch (format) {
+      case CSV:
+        boolean first = true;
+        for (int i = 0; i < bindingPlan.size(); i++) {
+          if (fieldSelection.contains(bindingPlan.getProperty(i))) {
+            FieldBinder binder = bindingPlan.getBinder(i);
+            Object value = binder != null ? binder.read(entity)
+                : bindingPlan.getProperty(i).getPropertyAccessor().readData(entity);
+            buffer.appendString(first ? "" : ",").appendString(escapeCsv(toCsvValue(value)));
+            first = false;
+          }
+        }
+        buffer.appendString("\r\n");
+        break;
+      case JSON:
+        if (count > 0) {
+          buffer.appendString(",");
+        }
+        buffer.appendBytes(Json.mapper.writeValueAsBytes(fieldSelection.extract(entity)));
+        break;
+      default:
+        buffer.appendBytes(Json.mapper.writeValueAsBytes(fieldSelection.extract(entity))).appendString("\n");
+      }
+      count++;
+    }
+
+    private String toCsvValue(final Object value) {
+      if (value == null) {
+        return "";
+      }
+      return value instanceof GeoPoint ? CoordinateCodec.encode((GeoPoint) value) : value.toString();
+    }
+
+    private void fail(final Throwable cause) {
+      LOGGER.error("export of " + mapperClass.getSimpleName() + " failed after " + count + " records", cause);
+      if (!closed) {
+        response.close();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,314 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.controller;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import de.braintags.netrelay.cache.QueryCache;
+import de.braintags.netrelay.datastore.ShardRouter;
+import de.braintags.netrelay.datastore.ShardedQuery;
+import de.braintags.netrelay.exception.DeadlineExceededException;
+import de.braintags.netrelay.exception.FieldNotFoundException;
+import de.braintags.netrelay.exception.NoSuchMapperException;
+import de.braintags.netrelay.mapping.EntityBatchLoader;
+import de.braintags.netrelay.mapping.FieldSelection;
+import de.braintags.netrelay.mapping.MapperBindingPlan;
+import de.braintags.netrelay.mapping.NetRelayStoreObjectFactory;
+import de.braintags.netrelay.mapping.QueryDeadlineGuard;
+import de.braintags.netrelay.routing.RouterDefinition;
+import de.braintags.netrelay.util.PayloadFormat;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.util.IteratorAsync;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * The RecordController answers a request for one record of a mapper. The record is loaded by the
+ * {@link NetRelayStoreObjectFactory} for {@link Action#DISPLAY} with the context of the request, so that the
+ * {@link QueryDeadlineGuard} applies the deadline of the request to the query. If the record does not exist, the
+ * request is answered with 404.
+ * <br>
+ * If the request contains no id, a page of records is answered, sorted by their id. The result of the query is taken
+ * from the {@link QueryCache}, if it is activated and the query is executed on the primary datastore. The pages of
+ * sharded mappers are read by a {@link ShardedQuery} from all shards.
+ * <br>
+ * Records are sent as JSON or in the binary {@link PayloadFormat}, which is requested by the Accept header. If the
+ * request contains a {@link FieldSelection}, only the selected fields of each record are sent; an unknown field is
+ * answered with 400.
+ * <br>
+ * <br>
+ * Config-Parameter:<br/>
+ * <UL>
+ * <LI>{@value #MAPPER_PROP} - the name of the mapper, like it is defined inside the MappingDefinitions
+ * <LI>{@value #MAX_LIMIT_PROP} - the maximum number of records of a page, default is {@value #DEFAULT_MAX_LIMIT}
+ * <LI>{@value #MAX_START_PROP} - the maximum position of the first record of a page, default is
+ * {@value #DEFAULT_MAX_START}. A larger start is answered with 400, since each shard of a sharded mapper reads all
+ * records up to the end of the page
+ * </UL>
+ * <br>
+ * Request-Parameter:<br/>
+ * <UL>
+ * <LI>{@value #ID_PARAMETER} - the id of the record
+ * <LI>{@value #START_PARAMETER} - the position of the first record of a page, if no id is requested
+ * <LI>{@value #LIMIT_PARAMETER} - the number of records of a page, if no id is requested
+ * <LI>{@value FieldSelection#FIELDS_PARAMETER} - a comma separated list of the fields to be sent; by default all
+ * fields are sent
+ * </UL>
+ * <br/>
+ * Result-Parameter:<br/>
+ * <br/>
+ *
+ * @author Michael Remme
+ */
+public class RecordController extends AbstractController {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(RecordController.class);
+
+  /**
+   * The property, by which the name of the mapper is defined
+   */
+  public static final String MAPPER_PROP = "mapper";
+
+  /**
+   * The request parameter, which contains the id of the record
+   */
+  public static final String ID_PARAMETER = "id";
+
+  /**
+   * The request parameter, which contains the position of the first record of a page
+   */
+  public static final String START_PARAMETER = "start";
+
+  /**
+   * The request parameter, which contains the number of records of a page
+   */
+  public static final String LIMIT_PARAMETER = "limit";
+
+  /**
+   * The property, by which the maximum number of records of a page is defined
+   */
+  public static final String MAX_LIMIT_PROP = "maxLimit";
+
+  /**
+   * The default maximum number of records of a page
+   */
+  public static final int DEFAULT_MAX_LIMIT = 100;
+
+  /**
+   * The property, by which the maximum position of the first record of a page is defined
+   */
+  public static final String MAX_START_PROP = "maxStart";
+
+  /**
+   * The default maximum position of the first record of a page
+   */
+  public static final int DEFAULT_MAX_START = 10000;
+
+  private String mapperName;
+  private int maxLimit;
+  private int maxStart;
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see de.braintags.netrelay.controller.AbstractController#handleController(io.vertx.ext.web.RoutingContext)
+   */
+  @Override
+  protected void handleController(final RoutingContext context) {
+    Class<?> mapperClass = getNetRelay().getSettings().getMappingDefinitions().getMapperClass(mapperName);
+    if (mapperClass == null) {
+      throw new NoSuchMapperException(mapperName);
+    }
+    IMapper<?> mapper = getNetRelay().getNetRelayMapperFactory().getMapper(mapperClass);
+    FieldSelection selection;
+    try {
+      selection = FieldSelection.fromRequest(context, mapper);
+    } catch (FieldNotFoundException e) {
+      LOGGER.info("invalid field selection: " + e.getMessage());
+      context.fail(HttpResponseStatus.BAD_REQUEST.code());
+      return;
+    }
+    String id = readParameter(context, ID_PARAMETER, false);
+    if (id == null) {
+      list(context, mapper, selection);
+    } else {
+      display(context, mapper, id, selection);
+    }
+  }
+
+  private <T> void list(final RoutingContext context, final IMapper<T> mapper, final FieldSelection selection) {
+    int start;
+    int limit;
+    try {
+      start = Integer.parseInt(readParameter(context, START_PARAMETER, "0", false));
+      limit = Math.min(Integer.parseInt(readParameter(context, LIMIT_PARAMETER, String.valueOf(maxLimit), false)),
+          maxLimit);
+    } catch (NumberFormatException e) {
+      context.fail(HttpResponseStatus.BAD_REQUEST.code());
+      return;
+    }
+    if (start < 0 || start > maxStart || limit <= 0) {
+      context.fail(HttpResponseStatus.BAD_REQUEST.code());
+      return;
+    }
+    QueryDeadlineGuard guard = getNetRelay().getStoreObjectFactory().getQueryDeadlineGuard();
+    String description = "query " + mapper.getMapperClass().getSimpleName();
+    if (guard.isExpired(context)) {
+      handleError(context, new DeadlineExceededException(description));
+      return;
+    }
+    Handler<AsyncResult<List<T>>> handler = guard.guard(context, description, result -> {
+      if (result.failed()) {
+        handleError(context, result.cause());
+      } else if (selection == null) {
+        writePayload(context, result.result());
+      } else {
+        writePayload(context, result.result().stream().map(selection::extract).collect(Collectors.toList()));
+      }
+    });
+    IProperty idField = mapper.getIdInfo().getField();
+    ShardRouter<IDataStore<?, ?>> shardRouter = getNetRelay().getDatastoreManager() == null ? null
+        : getNetRelay().getDatastoreManager().getShardRouter(mapper.getMapperClass());
+    if (shardRouter != null) {
+      // each shard delivers the records up to the end of the page, the merged records before the page are skipped
+      ShardedQuery.find(shardRouter.getShards(), mapper.getMapperClass(), q -> q.addSort(idField.getName()),
+          idOrder(idField), Math.addExact(start, limit), result -> handler.handle(result.failed() ? result
+              : Future.succeededFuture(result.result().subList(Math.min(start, result.result().size()),
+                  result.result().size()))));
+      return;
+    }
+    IDataStore<?, ?> datastore = getNetRelay().getDatastore(context, Action.DISPLAY, mapper.getMapperClass());
+    IQuery<T> query = datastore.createQuery(mapper.getMapperClass());
+    query.addSort(idField.getName());
+    query.setStart(start);
+    query.setLimit(limit);
+    QueryCache queryCache = getNetRelay().getCacheManager() == null ? null
+        : getNetRelay().getCacheManager().getQueryCache();
+    // results of read replicas may be outdated, so they are not cached
+    if (queryCache != null && (getNetRelay().getDatastoreManager() == null
+        || getNetRelay().getDatastoreManager().isPrimary(datastore))) {
+      queryCache.find(query, EntityBatchLoader.get(context, getNetRelay()), handler);
+    } else {
+      query.execute(qrr -> {
+        if (qrr.failed()) {
+          handler.handle(Future.failedFuture(qrr.cause()));
+        } else {
+          readRecords(qrr.result().iterator(), new ArrayList<>(), handler);
+        }
+      });
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static <T> Comparator<T> idOrder(final IProperty idField) {
+    return (a, b) -> ((Comparable) idField.getPropertyAccessor().readData(a))
+        .compareTo(idField.getPropertyAccessor().readData(b));
+  }
+
+  private static <T> void readRecords(final IteratorAsync<T> iterator, final List<T> records,
+      final Handler<AsyncResult<List<T>>> handler) {
+    if (!iterator.hasNext()) {
+      handler.handle(Future.succeededFuture(records));
+      return;
+    }
+    iterator.next(ir -> {
+      if (ir.failed()) {
+        handler.handle(Future.failedFuture(ir.cause()));
+      } else {
+        records.add(ir.result());
+        readRecords(iterator, records, handler);
+      }
+    });
+  }
+
+  private <T> void display(final RoutingContext context, final IMapper<T> mapper, final String id,
+      final FieldSelection selection) {
+    Map<String, String> requestMap = new HashMap<>();
+    requestMap.put(MapperBindingPlan.computeKey(mapper.getIdInfo().getField()), id);
+    getNetRelay().getStoreObjectFactory().createStoreObject(context, Action.DISPLAY, requestMap, null, mapper,
+        result -> {
+          if (result.failed()) {
+            if (result.cause() instanceof NoSuchRecordException) {
+              context.fail(HttpResponseStatus.NOT_FOUND.code());
+            } else {
+              handleError(context, result.cause());
+            }
+          } else {
+            T entity = result.result().getEntity();
+            writePayload(context, selection == null ? entity : selection.extract(entity));
+          }
+        });
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see de.braintags.netrelay.controller.AbstractController#initProperties(java.util.Properties)
+   */
+  @Override
+  public void initProperties(final Properties properties) {
+    mapperName = readProperty(MAPPER_PROP, null, true);
+    maxLimit = Integer.parseInt(readProperty(MAX_LIMIT_PROP, String.valueOf(DEFAULT_MAX_LIMIT), false));
+    maxStart = Integer.parseInt(readProperty(MAX_START_PROP, String.valueOf(DEFAULT_MAX_START), false));
+    if (maxLimit <= 0 || maxStart < 0 || maxStart > Integer.MAX_VALUE - maxLimit) {
+      throw new IllegalArgumentException("invalid maxLimit " + maxLimit + " or maxStart " + maxStart);
+    }
+  }
+
+  /**
+   * Creates a default definition for the given mapper. The mapper must be given, because a RecordController answers
+   * the records of exactly one mapper
+   *
+   * @param mapperName
+   *          the name of the mapper, like it is defined inside the MappingDefinitions
+   * @return the definition
+   */
+  public static RouterDefinition createDefaultRouterDefinition(final String mapperName) {
+    RouterDefinition def = new RouterDefinition();
+    def.setName(RecordController.class.getSimpleName());
+    def.setBlocking(false);
+    def.setController(RecordController.class);
+    def.setHandlerProperties(getDefaultProperties(mapperName));
+    def.setRoutes(new String[] { "/record" });
+    return def;
+  }
+
+  /**
+   * Get the default properties for an implementation of RecordController
+   *
+   * @param mapperName
+   *          the name of the mapper, like it is defined inside the MappingDefinitions
+   * @return the properties
+   */
+  public static Properties getDefaultProperties(final String mapperName) {
+    Properties json = new Properties();
+    json.put(MAPPER_PROP, mapperName);
+    json.put(MAX_LIMIT_PROP, String.valueOf(DEFAULT_MAX_LIMIT));
+    json.put(MAX_START_PROP, String.valueOf(DEFAULT_MAX_START));
+    return json;
+  }
+
+}
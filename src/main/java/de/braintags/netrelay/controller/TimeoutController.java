@@ -15,33 +15,47 @@ package de.braintags.netrelay.controller;
 import java.util.Properties;
 
 import de.braintags.netrelay.routing.RouterDefinition;
+import de.braintags.netrelay.util.HashedTimingWheel;
+import de.braintags.netrelay.util.RequestDeadline;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.handler.TimeoutHandler;
 
 /**
- * This controller defines for the specified routes, after how long time the request processing is stopped. It uses
- * internally a {@link TimeoutHandler}
+ * This controller defines for the specified routes, after how long time the request processing is stopped. It creates
+ * a {@link RequestDeadline} for the request, which is scheduled inside the {@link HashedTimingWheel} of the current
+ * context and which is stored inside the context, so that following controllers can read the remaining time budget.
+ * The timeout can be overwritten for single routes by {@link RouterDefinition#setTimeout(long)}
  * <br>
  * <br>
  * Config-Parameter:<br/>
  * <UL>
  * <LI>{@value #TIMEOUT_PROP}<br/>
+ * <LI>{@value #TICK_DURATION_PROP}<br/>
  * </UL>
  * <br>
  * Request-Parameter:<br/>
  * <br/>
  * Result-Parameter:<br/>
+ * <UL>
+ * <LI>{@value RequestDeadline#DEADLINE_PROPERTY} - the {@link RequestDeadline} of the current request
+ * </UL>
  * <br/>
  * 
  * @author Michael Remme
  */
 public class TimeoutController extends AbstractController {
-  private TimeoutHandler timeoutHandler;
+  private long timeout;
+  private long tickDuration;
 
   /**
    * The property, by which the timeout in milliseconds is defined
    */
   public static final String TIMEOUT_PROP = "timeout";
+
+  /**
+   * The property, by which the precision of the timeouts in milliseconds is defined. The default is
+   * {@link HashedTimingWheel#DEFAULT_TICK_DURATION}
+   */
+  public static final String TICK_DURATION_PROP = "tickDuration";
   public static final long DEFAULT_TIMEOUT = 30000;
 
   /*
@@ -51,7 +65,8 @@ public class TimeoutController extends AbstractController {
    */
   @Override
   public void handleController(RoutingContext event) {
-    timeoutHandler.handle(event);
+    RequestDeadline.start(event, HashedTimingWheel.getInstance(getVertx(), tickDuration), timeout);
+    event.next();
   }
 
   /*
@@ -61,8 +76,9 @@ public class TimeoutController extends AbstractController {
    */
   @Override
   public void initProperties(Properties properties) {
-    long timeout = Long.parseLong((String) properties.getOrDefault(TIMEOUT_PROP, String.valueOf(DEFAULT_TIMEOUT)));
-    timeoutHandler = TimeoutHandler.create(timeout);
+    timeout = Long.parseLong((String) properties.getOrDefault(TIMEOUT_PROP, String.valueOf(DEFAULT_TIMEOUT)));
+    tickDuration = Long.parseLong((String) properties.getOrDefault(TICK_DURATION_PROP,
+        String.valueOf(HashedTimingWheel.DEFAULT_TICK_DURATION)));
   }
 
   /**
@@ -0,0 +1,392 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.braintags.netrelay.controller.Action;
+import de.braintags.netrelay.exception.NoSuchMapperException;
+import de.braintags.netrelay.init.MappingDefinitions;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.init.DataStoreSettings;
+import de.braintags.vertx.jomnigate.init.IDataStoreInit;
+import de.braintags.vertx.util.exception.InitException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.Session;
+
+/**
+ * The DatastoreManager holds the primary {@link IDataStore} of NetRelay, the read replicas, which are defined by
+ * {@link Settings#getReadReplicaSettings()}, and the named datastores, which are defined by
+ * {@link Settings#getNamedDatastoreSettings()}.
+ * <br>
+ * Mappers, which are assigned to a named datastore by {@link MappingDefinitions#getDatastoreMap()}, are always using
+ * this datastore. The records of mappers, which are defined by {@link Settings#getShardDefinitions()}, are
+ * distributed over several named datastores by their id. For all other mappers requests with the
+ * {@link Action#DISPLAY} are executed by one of the replicas, which are used in turn; all other actions are executed
+ * by the primary datastore.
+ * <br>
+ * If {@link Settings#getReadYourWritesWindow()} is set, a session, which has written a record, is reading from the
+ * primary datastore until the window has passed, so that the user sees his own changes, even if the replicas are not
+ * yet up to date. Writing code informs the manager by {@link #markWritten(RoutingContext)}.
+ *
+ * @author Michael Remme
+ *
+ */
+public class DatastoreManager {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(DatastoreManager.class);
+
+  /**
+   * The key, by which the time of the last write is stored inside the session and the {@link RoutingContext}
+   */
+  public static final String LAST_WRITE_PROPERTY = "netrelayLastWrite";
+
+  private final IDataStore<?, ?> primary;
+  private final long readYourWritesWindow;
+  private final List<IDataStore<?, ?>> replicas = new ArrayList<>();
+  private final AtomicInteger nextReplica = new AtomicInteger();
+  private final Map<String, IDataStore<?, ?>> namedDatastores = new HashMap<>();
+  private final Map<Class<?>, IDataStore<?, ?>> mapperDatastores = new HashMap<>();
+  private final Map<Class<?>, ShardRouter<IDataStore<?, ?>>> shardRouters = new HashMap<>();
+
+  /**
+   * Create a new instance
+   *
+   * @param primary
+   *          the primary datastore, which is used for all writes
+   * @param readYourWritesWindow
+   *          the time in milliseconds after a write, in which a session reads from the primary datastore
+   */
+  public DatastoreManager(final IDataStore<?, ?> primary, final long readYourWritesWindow) {
+    this.primary = primary;
+    this.readYourWritesWindow = readYourWritesWindow;
+  }
+
+  /**
+   * Initialize the read replicas in parallel
+   *
+   * @param vertx
+   *          the instance of vertx
+   * @param replicaSettings
+   *          the settings of the replicas
+   * @param handler
+   *          the handler to be informed, when all replicas were initialized
+   */
+  public void initReplicas(final Vertx vertx, final List<DataStoreSettings> replicaSettings,
+      final Handler<AsyncResult<Void>> handler) {
+    List<Future> futures = new ArrayList<>();
+    for (DataStoreSettings rs : replicaSettings) {
+      Future<IDataStore> f = Future.future();
+      futures.add(f);
+      initDataStore(vertx, rs, f);
+    }
+    CompositeFuture.all(futures).setHandler(result -> {
+      if (result.failed()) {
+        handler.handle(Future.failedFuture(result.cause()));
+      } else {
+        futures.forEach(f -> replicas.add((IDataStore<?, ?>) f.result()));
+        LOGGER.info(replicas.size() + " read replicas initialized");
+        handler.handle(Future.succeededFuture());
+      }
+    });
+  }
+
+  /**
+   * Initialize the named datastores in parallel and assign the mappers to them
+   *
+   * @param vertx
+   *          the instance of vertx
+   * @param settings
+   *          the settings of NetRelay
+   * @param handler
+   *          the handler to be informed, when all datastores were initialized
+   */
+  public void initNamedDatastores(final Vertx vertx, final Settings settings,
+      final Handler<AsyncResult<Void>> handler) {
+    Map<String, DataStoreSettings> dsSettings = settings.getNamedDatastoreSettings() == null ? new HashMap<>()
+        : settings.getNamedDatastoreSettings();
+    MappingDefinitions md = settings.getMappingDefinitions();
+    for (Entry<String, String> entry : md.getDatastoreMap().entrySet()) {
+      if (md.getMapperClass(entry.getKey()) == null) {
+        handler.handle(Future.failedFuture(new NoSuchMapperException(entry.getKey())));
+        return;
+      }
+      if (!dsSettings.containsKey(entry.getValue())) {
+        handler.handle(Future.failedFuture(new InitException("No datastore defined with name " + entry.getValue())));
+        return;
+      }
+    }
+    Map<String, ShardDefinition> shardDefinitions = settings.getShardDefinitions() == null ? new HashMap<>()
+        : settings.getShardDefinitions();
+    for (Entry<String, ShardDefinition> entry : shardDefinitions.entrySet()) {
+      try {
+        checkShardDefinition(md, dsSettings, entry.getKey(), entry.getValue());
+      } catch (RuntimeException e) {
+        handler.handle(Future.failedFuture(e));
+        return;
+      }
+    }
+    List<String> names = new ArrayList<>(dsSettings.keySet());
+    List<Future> futures = new ArrayList<>();
+    for (String name : names) {
+      Future<IDataStore> f = Future.future();
+      futures.add(f);
+      initDataStore(vertx, dsSettings.get(name), f);
+    }
+    CompositeFuture.all(futures).setHandler(result -> {
+      if (result.failed()) {
+        handler.handle(Future.failedFuture(result.cause()));
+      } else {
+        for (int i = 0; i < names.size(); i++) {
+          namedDatastores.put(names.get(i), (IDataStore<?, ?>) futures.get(i).result());
+        }
+        for (Entry<String, String> entry : md.getDatastoreMap().entrySet()) {
+          mapperDatastores.put(md.getMapperClass(entry.getKey()), namedDatastores.get(entry.getValue()));
+        }
+        for (Entry<String, ShardDefinition> entry : shardDefinitions.entrySet()) {
+          List<IDataStore<?, ?>> shards = new ArrayList<>();
+          entry.getValue().getDatastores().forEach(name -> shards.add(namedDatastores.get(name)));
+          shardRouters.put(md.getMapperClass(entry.getKey()), new ShardRouter<>(entry.getValue(), shards));
+        }
+        LOGGER.info(names.size() + " named datastores initialized");
+        handler.handle(Future.succeededFuture());
+      }
+    });
+  }
+
+  private static void checkShardDefinition(final MappingDefinitions md, final Map<String, DataStoreSettings> dsSettings,
+      final String mapperName, final ShardDefinition definition) {
+    if (md.getMapperClass(mapperName) == null) {
+      throw new NoSuchMapperException(mapperName);
+    }
+    if (md.getDatastoreName(mapperName) != null) {
+      throw new InitException("Mapper " + mapperName + " is sharded and can't be assigned to a datastore");
+    }
+    for (String name : definition.getDatastores()) {
+      if (!dsSettings.containsKey(name)) {
+        throw new InitException("No datastore defined with name " + name);
+      }
+    }
+    try {
+      new ShardRouter<>(definition, definition.getDatastores());
+    } catch (IllegalArgumentException e) {
+      throw new InitException("Invalid shard definition for mapper " + mapperName, e);
+    }
+  }
+
+  /**
+   * Create an {@link IDataStore} by using the given settings
+   *
+   * @param vertx
+   *          the instance of vertx
+   * @param settings
+   *          the settings of the datastore
+   * @param handler
+   *          the handler to be informed about the datastore
+   */
+  static void initDataStore(final Vertx vertx, final DataStoreSettings settings,
+      final Handler<AsyncResult<IDataStore>> handler) {
+    try {
+      IDataStoreInit dsInit = settings.getDatastoreInit().newInstance();
+      dsInit.initDataStore(vertx, settings, handler);
+    } catch (Exception e) {
+      handler.handle(Future.failedFuture(e));
+    }
+  }
+
+  /**
+   * Get the datastore, which shall be used for the given action of the current request
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param action
+   *          the action, which is performed
+   * @return the read replica for {@link Action#DISPLAY}, if one exists and the read-your-writes window of the session
+   *         has passed; otherwise the primary datastore
+   */
+  public IDataStore<?, ?> getDatastore(final RoutingContext context, final Action action) {
+    if (action != Action.DISPLAY || replicas.isEmpty() || isInReadYourWritesWindow(context)) {
+      return primary;
+    }
+    return replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+  }
+
+  /**
+   * Get the datastore, where the records of the given mapper are stored. For a sharded mapper the first shard is
+   * returned, which can be used to access the metadata of the mapper; records must be accessed by
+   * {@link #getDatastore(RoutingContext, Action, Class, Object)}
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the named datastore, which is assigned to the mapper, or the primary datastore
+   */
+  public IDataStore<?, ?> getDatastore(final Class<?> mapperClass) {
+    ShardRouter<IDataStore<?, ?>> router = shardRouters.get(mapperClass);
+    if (router != null) {
+      return router.getShards().get(0);
+    }
+    IDataStore<?, ?> datastore = mapperDatastores.get(mapperClass);
+    return datastore == null ? primary : datastore;
+  }
+
+  /**
+   * Get the datastore, which shall be used for the given mapper and action of the current request
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param action
+   *          the action, which is performed
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the named datastore, which is assigned to the mapper, or the result of
+   *         {@link #getDatastore(RoutingContext, Action)}
+   */
+  public IDataStore<?, ?> getDatastore(final RoutingContext context, final Action action,
+      final Class<?> mapperClass) {
+    IDataStore<?, ?> datastore = mapperDatastores.get(mapperClass);
+    return datastore == null ? getDatastore(context, action) : datastore;
+  }
+
+  /**
+   * Get the datastore, which shall be used for the record with the given key. For a sharded mapper this is the shard
+   * of the key, otherwise the result of {@link #getDatastore(RoutingContext, Action, Class)}
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param action
+   *          the action, which is performed
+   * @param mapperClass
+   *          the class of the mapper
+   * @param key
+   *          the key of the record; required for sharded mappers
+   * @return the datastore to be used
+   */
+  public IDataStore<?, ?> getDatastore(final RoutingContext context, final Action action, final Class<?> mapperClass,
+      final Object key) {
+    ShardRouter<IDataStore<?, ?>> router = shardRouters.get(mapperClass);
+    return router == null ? getDatastore(context, action, mapperClass) : router.getShard(key);
+  }
+
+  /**
+   * Get the {@link ShardRouter} of the given mapper
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @return the router or null, if the mapper is not sharded
+   */
+  public ShardRouter<IDataStore<?, ?>> getShardRouter(final Class<?> mapperClass) {
+    return shardRouters.get(mapperClass);
+  }
+
+  /**
+   * Get the datastore with the given name
+   *
+   * @param name
+   *          the name of the datastore, like it is defined inside {@link Settings#getNamedDatastoreSettings()}
+   * @return the datastore or null, if none exists with this name
+   */
+  public IDataStore<?, ?> getNamedDatastore(final String name) {
+    return namedDatastores.get(name);
+  }
+
+  /**
+   * Returns true, if the given datastore is the primary one or a named datastore, which is never outdated like a read
+   * replica
+   *
+   * @param datastore
+   *          the datastore to be checked
+   * @return true, if primary
+   */
+  public boolean isPrimary(final IDataStore<?, ?> datastore) {
+    return datastore == primary || namedDatastores.containsValue(datastore);
+  }
+
+  /**
+   * Informs the manager, that the current request has written records into the primary datastore
+   *
+   * @param context
+   *          the context of the current request, may be null
+   */
+  public void markWritten(final RoutingContext context) {
+    if (context == null || readYourWritesWindow <= 0 || replicas.isEmpty()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    context.put(LAST_WRITE_PROPERTY, now);
+    Session session = context.session();
+    if (session != null) {
+      session.put(LAST_WRITE_PROPERTY, now);
+    }
+  }
+
+  private boolean isInReadYourWritesWindow(final RoutingContext context) {
+    if (context == null || readYourWritesWindow <= 0) {
+      return false;
+    }
+    Long lastWrite = context.get(LAST_WRITE_PROPERTY);
+    if (lastWrite == null && context.session() != null) {
+      lastWrite = context.session().get(LAST_WRITE_PROPERTY);
+    }
+    return lastWrite != null && System.currentTimeMillis() - lastWrite < readYourWritesWindow;
+  }
+
+  /**
+   * The primary datastore
+   *
+   * @return the primary datastore
+   */
+  public IDataStore<?, ?> getPrimary() {
+    return primary;
+  }
+
+  /**
+   * The read replicas
+   *
+   * @return the replicas
+   */
+  public List<IDataStore<?, ?>> getReplicas() {
+    return Collections.unmodifiableList(replicas);
+  }
+
+  /**
+   * Shut down the read replicas and the named datastores. The primary datastore is shut down by NetRelay
+   *
+   * @param handler
+   *          the handler to be informed
+   */
+  public void shutdown(final Handler<AsyncResult<Void>> handler) {
+    List<IDataStore<?, ?>> datastores = new ArrayList<>(replicas);
+    datastores.addAll(namedDatastores.values());
+    List<Future> futures = new ArrayList<>();
+    for (IDataStore<?, ?> replica : datastores) {
+      Future<Void> f = Future.future();
+      futures.add(f);
+      replica.shutdown(f);
+    }
+    CompositeFuture.join(futures).setHandler(result -> handler
+        .handle(result.failed() ? Future.failedFuture(result.cause()) : Future.succeededFuture()));
+  }
+
+}
@@ -0,0 +1,335 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.cache.CacheManager;
+import de.braintags.netrelay.controller.Action;
+import de.braintags.netrelay.geo.GeoIndexManager;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.delete.IDelete;
+import de.braintags.vertx.jomnigate.dataaccess.delete.IDeleteResult;
+import de.braintags.vertx.jomnigate.dataaccess.write.IWrite;
+import de.braintags.vertx.jomnigate.dataaccess.write.IWriteEntry;
+import de.braintags.vertx.jomnigate.dataaccess.write.IWriteResult;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * The EntityWriter is the one place, where NetRelay saves and deletes records. The entities are written by one
+ * {@link IWrite} or {@link IDelete} per datastore; for sharded mappers per shard of their id. After each successful
+ * write the {@link CacheManager} and the {@link GeoIndexManager} are informed about the written records and the
+ * {@link DatastoreManager} marks the request as writing, so that it reads its own writes from the primary datastore.
+ * If the write of one datastore fails, the records of the other datastores are written and invalidated nevertheless
+ * and the handler is informed about the failure.
+ * <br>
+ * The changed fields of an existing record can be written by the {@link IFieldUpdater} without writing the complete
+ * record, so that concurrent changes of other fields are kept.
+ *
+ * @author Michael Remme
+ *
+ */
+public class EntityWriter {
+  private final NetRelay netRelay;
+  private final IFieldUpdater fieldUpdater;
+
+  /**
+   * Create a new instance, which writes complete records only
+   *
+   * @param netRelay
+   *          the instance of NetRelay, from where the datastores and caches are taken
+   */
+  public EntityWriter(final NetRelay netRelay) {
+    this(netRelay, null);
+  }
+
+  /**
+   * Create a new instance
+   *
+   * @param netRelay
+   *          the instance of NetRelay, from where the datastores and caches are taken
+   * @param fieldUpdater
+   *          the updater, which writes the changed fields of existing records; may be null
+   */
+  public EntityWriter(final NetRelay netRelay, final IFieldUpdater fieldUpdater) {
+    this.netRelay = netRelay;
+    this.fieldUpdater = fieldUpdater;
+  }
+
+  /**
+   * Save the given entities. For sharded mappers the id of each entity must be set before
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param mapper
+   *          the mapper of the entities
+   * @param entities
+   *          the entities to be saved
+   * @param handler
+   *          the handler to be informed with the results of the writes, one per datastore; the list is empty, if no
+   *          entity was given. If one of the writes failed, the handler fails with its cause
+   */
+  public <T> void save(final RoutingContext context, final IMapper<T> mapper, final List<T> entities,
+      final Handler<AsyncResult<List<IWriteResult>>> handler) {
+    write(context, mapper, entities, written -> {
+      Throwable failure = written.entityResults.stream().filter(AsyncResult::failed).map(AsyncResult::cause)
+          .findFirst().orElse(null);
+      handler.handle(failure != null ? Future.failedFuture(failure) : Future.succeededFuture(written.writeResults));
+    });
+  }
+
+  /**
+   * Save the given entities like {@link #save(RoutingContext, IMapper, List, Handler)} and inform the handler about
+   * the result of each entity. The result of an entity fails with the cause of the write of its datastore
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param mapper
+   *          the mapper of the entities
+   * @param entities
+   *          the entities to be saved
+   * @param handler
+   *          the handler to be informed with one result per entity, in the order of the given entities
+   */
+  public <T> void saveEach(final RoutingContext context, final IMapper<T> mapper, final List<T> entities,
+      final Handler<List<AsyncResult<Void>>> handler) {
+    write(context, mapper, entities, written -> handler.handle(written.entityResults));
+  }
+
+  private <T> void write(final RoutingContext context, final IMapper<T> mapper, final List<T> entities,
+      final Handler<Written> handler) {
+    Class<T> mapperClass = mapper.getMapperClass();
+    Written written = new Written(entities.size());
+    Map<IDataStore<?, ?>, List<Integer>> groups = new LinkedHashMap<>();
+    IProperty idField = mapper.getIdInfo().getField();
+    for (int i = 0; i < entities.size(); i++) {
+      try {
+        IDataStore<?, ?> datastore = netRelay.getDatastore(context, Action.UPDATE, mapperClass,
+            idField.getPropertyAccessor().readData(entities.get(i)));
+        groups.computeIfAbsent(datastore, ds -> new ArrayList<>()).add(i);
+      } catch (IllegalArgumentException e) {
+        written.entityResults.set(i, Future.failedFuture(e));
+      }
+    }
+    List<Future> futures = new ArrayList<>();
+    for (Entry<IDataStore<?, ?>, List<Integer>> group : groups.entrySet()) {
+      Future<IWriteResult> f = Future.future();
+      futures.add(f);
+      List<T> groupEntities = new ArrayList<>();
+      group.getValue().forEach(i -> groupEntities.add(entities.get(i)));
+      IWrite<T> write = group.getKey().createWrite(mapperClass);
+      groupEntities.forEach(write::add);
+      write.save(wr -> {
+        if (wr.succeeded()) {
+          written(context, mapperClass, groupEntities, wr.result());
+        }
+        AsyncResult<Void> result = wr.succeeded() ? Future.succeededFuture() : Future.failedFuture(wr.cause());
+        group.getValue().forEach(i -> written.entityResults.set(i, result));
+        f.complete(wr.succeeded() ? wr.result() : null);
+      });
+    }
+    CompositeFuture.all(futures).setHandler(result -> {
+      futures.stream().map(f -> (IWriteResult) f.result()).filter(Objects::nonNull).forEach(written.writeResults::add);
+      handler.handle(written);
+    });
+  }
+
+  /**
+   * The results of one call of {@link EntityWriter#write(RoutingContext, IMapper, List, Handler)}
+   */
+  private static class Written {
+    private final List<IWriteResult> writeResults = new ArrayList<>();
+    private final List<AsyncResult<Void>> entityResults;
+
+    Written(final int size) {
+      entityResults = new ArrayList<>(Collections.nCopies(size, null));
+    }
+  }
+
+  /**
+   * Write the given fields of an existing record by the {@link IFieldUpdater}, so that other fields of the record are
+   * not overwritten. If no IFieldUpdater is defined or the datastore does not support partial updates, the handler
+   * fails with an {@link UnsupportedOperationException}, so that the caller can save the complete record instead
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param mapper
+   *          the mapper of the entity
+   * @param entity
+   *          the entity, whose id must be set
+   * @param properties
+   *          the properties to be written
+   * @param handler
+   *          the handler to be informed
+   */
+  public <T> void updateFields(final RoutingContext context, final IMapper<T> mapper, final T entity,
+      final Collection<IProperty> properties, final Handler<AsyncResult<Void>> handler) {
+    if (fieldUpdater == null) {
+      handler.handle(Future.failedFuture(new UnsupportedOperationException("no field updater defined")));
+      return;
+    }
+    Class<T> mapperClass = mapper.getMapperClass();
+    Object id = mapper.getIdInfo().getField().getPropertyAccessor().readData(entity);
+    IDataStore<?, ?> datastore;
+    try {
+      datastore = netRelay.getDatastore(context, Action.UPDATE, mapperClass, id);
+    } catch (IllegalArgumentException e) {
+      handler.handle(Future.failedFuture(e));
+      return;
+    }
+    Map<IProperty, Object> values = new LinkedHashMap<>();
+    Map<String, Object> written = new HashMap<>();
+    for (IProperty property : properties) {
+      Object value = property.getPropertyAccessor().readData(entity);
+      values.put(property, value);
+      written.put(property.getName(), value);
+    }
+    fieldUpdater.update(datastore, mapper, id, values, Collections.emptyMap(), result -> {
+      if (result.succeeded()) {
+        fieldsWritten(context, mapperClass, id, written);
+      }
+      handler.handle(result);
+    });
+  }
+
+  /**
+   * Informs the caches and indexes about the records, which were written by one datastore
+   */
+  private <T> void written(final RoutingContext context, final Class<T> mapperClass, final List<T> entities,
+      final IWriteResult result) {
+    markWritten(context);
+    if (netRelay.getGeoIndexManager() != null) {
+      entities.forEach(entity -> netRelay.getGeoIndexManager().entityWritten(mapperClass, entity));
+    }
+    if (netRelay.getCacheManager() != null) {
+      for (IWriteEntry entry : result) {
+        netRelay.getCacheManager().entityWritten(mapperClass, entry.getId());
+      }
+    }
+  }
+
+  /**
+   * Delete the given entities. The id of each entity must be set
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param mapper
+   *          the mapper of the entities
+   * @param entities
+   *          the entities to be deleted
+   * @param handler
+   *          the handler to be informed
+   */
+  public <T> void delete(final RoutingContext context, final IMapper<T> mapper, final List<T> entities,
+      final Handler<AsyncResult<Void>> handler) {
+    Class<T> mapperClass = mapper.getMapperClass();
+    IProperty idField = mapper.getIdInfo().getField();
+    Map<IDataStore<?, ?>, List<T>> groups;
+    try {
+      groups = group(context, mapper, entities);
+    } catch (IllegalArgumentException e) {
+      handler.handle(Future.failedFuture(e));
+      return;
+    }
+    List<Future> futures = new ArrayList<>();
+    for (Entry<IDataStore<?, ?>, List<T>> group : groups.entrySet()) {
+      Future<IDeleteResult> f = Future.future();
+      futures.add(f);
+      IDelete<T> delete = group.getKey().createDelete(mapperClass);
+      group.getValue().forEach(delete::add);
+      delete.delete(dr -> {
+        if (dr.succeeded()) {
+          deleted(context, mapperClass, idField, group.getValue());
+        }
+        f.handle(dr);
+      });
+    }
+    CompositeFuture.join(futures).setHandler(result -> handler
+        .handle(result.failed() ? Future.failedFuture(result.cause()) : Future.succeededFuture()));
+  }
+
+  /**
+   * Informs the caches and indexes about the records, which were deleted by one datastore
+   */
+  private <T> void deleted(final RoutingContext context, final Class<T> mapperClass, final IProperty idField,
+      final List<T> entities) {
+    markWritten(context);
+    for (T entity : entities) {
+      Object id = idField.getPropertyAccessor().readData(entity);
+      if (netRelay.getGeoIndexManager() != null) {
+        netRelay.getGeoIndexManager().entityDeleted(mapperClass, id);
+      }
+      if (netRelay.getCacheManager() != null) {
+        netRelay.getCacheManager().entityWritten(mapperClass, id);
+      }
+    }
+  }
+
+  /**
+   * Informs the caches and indexes about a record, which was changed by a partial update like the ones of the
+   * {@link WriteBehindQueue}, which are not written by this instance
+   *
+   * @param context
+   *          the context of the current request, may be null
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the updated record
+   * @param values
+   *          the new values of the fields, which were set by the update, by the name of the field
+   */
+  public void fieldsWritten(final RoutingContext context, final Class<?> mapperClass, final Object id,
+      final Map<String, Object> values) {
+    markWritten(context);
+    if (netRelay.getGeoIndexManager() != null) {
+      values.forEach((name, value) -> netRelay.getGeoIndexManager().fieldWritten(mapperClass, id, name, value));
+    }
+    if (netRelay.getCacheManager() != null) {
+      netRelay.getCacheManager().entityWritten(mapperClass, id);
+    }
+  }
+
+  private <T> Map<IDataStore<?, ?>, List<T>> group(final RoutingContext context, final IMapper<T> mapper,
+      final List<T> entities) {
+    IProperty idField = mapper.getIdInfo().getField();
+    Map<IDataStore<?, ?>, List<T>> groups = new LinkedHashMap<>();
+    for (T entity : entities) {
+      IDataStore<?, ?> datastore = netRelay.getDatastore(context, Action.UPDATE, mapper.getMapperClass(),
+          idField.getPropertyAccessor().readData(entity));
+      groups.computeIfAbsent(datastore, ds -> new ArrayList<>()).add(entity);
+    }
+    return groups;
+  }
+
+  private void markWritten(final RoutingContext context) {
+    if (netRelay.getDatastoreManager() != null) {
+      netRelay.getDatastoreManager().markWritten(context);
+    }
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+import java.util.Map;
+
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+
+/**
+ * An IFieldUpdater writes single fields of a record into the datastore without loading and saving the complete
+ * record, so that the update does not overwrite other fields, which were changed in the meantime. It is used by the
+ * {@link WriteBehindQueue} and by the {@link EntityWriter} for the changed fields of existing records. It must be
+ * implemented for each type of datastore, since jomnigate has no API for partial updates. Implementations are
+ * defined by {@link WriteBehindSettings#getFieldUpdater()} and need a public default constructor.
+ *
+ * @author Michael Remme
+ *
+ */
+public interface IFieldUpdater {
+
+  /**
+   * Update the given fields of one record. Increments must be applied atomically by the datastore, so that increments
+   * of several instances of NetRelay are not lost. If the datastore is not supported, the handler fails with an
+   * {@link UnsupportedOperationException}; if the record does not exist, it fails with a
+   * {@link NoSuchRecordException}
+   *
+   * @param datastore
+   *          the datastore, where the record is stored
+   * @param mapper
+   *          the mapper of the record inside the datastore
+   * @param id
+   *          the id of the record
+   * @param values
+   *          the new values of fields
+   * @param increments
+   *          the values, which are added to numeric fields
+   * @param handler
+   *          the handler to be informed
+   */
+  void update(IDataStore<?, ?> datastore, IMapper<?> mapper, Object id, Map<IProperty, Object> values,
+      Map<IProperty, Long> increments, Handler<AsyncResult<Void>> handler);
+
+}
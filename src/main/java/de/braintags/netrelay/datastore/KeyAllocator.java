@@ -0,0 +1,241 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.keygenerator.KeyGeneratorVerticle;
+import de.braintags.vertx.util.IteratorAsync;
+import de.braintags.vertx.util.exception.InitException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * The KeyAllocator creates keys for new records of one mapper by using the hi/lo algorithm. A hi value is leased from
+ * the {@link KeyGeneratorVerticle} and the keys hi * blockSize + lo for lo from 0 to blockSize - 1 are served locally,
+ * without a request over the event bus. When a quarter of a block is remaining, the next hi value is leased in the
+ * background.
+ * <br>
+ * Since each hi value is leased only once, the keys of several instances are not overlapping. The keys of a mapper
+ * must not be created by another key generator as well, since the ranges would collide. To avoid collisions with the
+ * keys of existing records, like those created by the key generator of jomnigate before, no key below a minimum key
+ * is served; blocks, which are completely below it, are skipped. NetRelay sets the minimum above the maximum id
+ * found by {@link #findMaximumKey(List, Class, Handler)} and adds the block size to the name of the key, so that a
+ * changed block size starts a new sequence above the existing records.
+ * <br>
+ * An instance is NOT thread safe and must be used from the context it was created in.
+ *
+ * @author Michael Remme
+ *
+ */
+public class KeyAllocator {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(KeyAllocator.class);
+
+  private final Vertx vertx;
+  private final String keyName;
+  private final int blockSize;
+  private final int prefetchThreshold;
+  private final long minKey;
+  private long hi = -1;
+  private int lo = 0;
+  private long nextHi = -1;
+  private boolean leasing = false;
+  private List<Handler<AsyncResult<Long>>> waiting = new ArrayList<>();
+
+  /**
+   * Create a new instance
+   *
+   * @param vertx
+   *          the instance of vertx
+   * @param keyName
+   *          the name, by which the hi values are requested from the {@link KeyGeneratorVerticle}
+   * @param blockSize
+   *          the number of keys, which are served for one hi value
+   */
+  public KeyAllocator(final Vertx vertx, final String keyName, final int blockSize) {
+    this(vertx, keyName, blockSize, 0);
+  }
+
+  /**
+   * Create a new instance, which serves no keys below the given minimum
+   *
+   * @param vertx
+   *          the instance of vertx
+   * @param keyName
+   *          the name, by which the hi values are requested from the {@link KeyGeneratorVerticle}
+   * @param blockSize
+   *          the number of keys, which are served for one hi value
+   * @param minKey
+   *          the smallest key, which may be served
+   */
+  public KeyAllocator(final Vertx vertx, final String keyName, final int blockSize, final long minKey) {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("blockSize must be > 0");
+    }
+    this.vertx = vertx;
+    this.keyName = keyName;
+    this.blockSize = blockSize;
+    this.prefetchThreshold = blockSize / 4;
+    this.minKey = minKey;
+  }
+
+  /**
+   * Find the maximum numeric id of the records of the given mapper in the given datastores
+   *
+   * @param datastores
+   *          the datastores, where the records of the mapper are stored
+   * @param mapperClass
+   *          the class of the mapper
+   * @param handler
+   *          the handler to be informed about the maximum id or 0, if no record exists
+   */
+  public static void findMaximumKey(final List<IDataStore<?, ?>> datastores, final Class<?> mapperClass,
+      final Handler<AsyncResult<Long>> handler) {
+    IProperty idField = datastores.get(0).getMapperFactory().getMapper(mapperClass).getIdInfo().getField();
+    Class<?> type = idField.getType();
+    if (type != long.class && type != Long.class && type != int.class && type != Integer.class) {
+      handler.handle(Future.failedFuture(new InitException(
+          "keys of " + mapperClass.getName() + " can't be allocated, since the id field is not numeric")));
+      return;
+    }
+    List<Future> futures = new ArrayList<>();
+    for (IDataStore<?, ?> datastore : datastores) {
+      Future<Long> f = Future.future();
+      futures.add(f);
+      IQuery<?> query = datastore.createQuery(mapperClass);
+      query.addSort(idField.getName(), false);
+      query.setLimit(1);
+      query.execute(qrr -> {
+        if (qrr.failed()) {
+          f.fail(qrr.cause());
+        } else {
+          IteratorAsync<?> iterator = qrr.result().iterator();
+          if (!iterator.hasNext()) {
+            f.complete(0L);
+            return;
+          }
+          iterator.next(ir -> {
+            if (ir.failed()) {
+              f.fail(ir.cause());
+            } else {
+              Object id = idField.getPropertyAccessor().readData(ir.result());
+              f.complete(id == null ? 0L : ((Number) id).longValue());
+            }
+          });
+        }
+      });
+    }
+    CompositeFuture.all(futures).setHandler(result -> {
+      if (result.failed()) {
+        handler.handle(Future.failedFuture(result.cause()));
+      } else {
+        long max = 0;
+        for (Future f : futures) {
+          max = Math.max(max, (Long) f.result());
+        }
+        handler.handle(Future.succeededFuture(max));
+      }
+    });
+  }
+
+  /**
+   * Get the next key. The handler is informed immediately, as long as the current block is not exhausted
+   *
+   * @param handler
+   *          the handler to be informed about the key
+   */
+  public void nextKey(final Handler<AsyncResult<Long>> handler) {
+    if (hi < 0 || lo >= blockSize) {
+      if (nextHi < 0) {
+        waiting.add(handler);
+        lease();
+        return;
+      }
+      hi = nextHi;
+      nextHi = -1;
+      lo = (int) Math.max(0, minKey - hi * blockSize);
+    }
+    long key = hi * blockSize + lo++;
+    if (blockSize - lo <= prefetchThreshold && nextHi < 0) {
+      lease();
+    }
+    handler.handle(Future.succeededFuture(key));
+  }
+
+  private void lease() {
+    if (leasing) {
+      return;
+    }
+    leasing = true;
+    vertx.eventBus().send(KeyGeneratorVerticle.SERVICE_NAME, keyName, reply -> {
+      leasing = false;
+      Object body = reply.succeeded() ? reply.result().body() : null;
+      if (body instanceof Number && ((Number) body).longValue() >= 0) {
+        long leased = ((Number) body).longValue();
+        if ((leased + 1) * blockSize <= minKey) {
+          // all keys of the block are below the keys of existing records
+          LOGGER.debug("skipping key block " + leased + " of " + keyName);
+          lease();
+          return;
+        }
+        nextHi = leased;
+        List<Handler<AsyncResult<Long>>> current = waiting;
+        waiting = new ArrayList<>();
+        current.forEach(this::nextKey);
+      } else {
+        Throwable cause = reply.failed() ? reply.cause()
+            : new IllegalStateException("invalid reply of the key generator for " + keyName + ": " + body);
+        LOGGER.error("could not lease key block for " + keyName, cause);
+        List<Handler<AsyncResult<Long>>> current = waiting;
+        waiting = new ArrayList<>();
+        current.forEach(h -> h.handle(Future.failedFuture(cause)));
+      }
+    });
+  }
+
+  /**
+   * The name, by which the hi values are requested
+   *
+   * @return the keyName
+   */
+  public String getKeyName() {
+    return keyName;
+  }
+
+  /**
+   * The number of keys, which are served for one hi value
+   *
+   * @return the blockSize
+   */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * The smallest key, which may be served
+   *
+   * @return the minKey
+   */
+  public long getMinKey() {
+    return minKey;
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.jomnigate.mongo.MongoDataStore;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * An {@link IFieldUpdater} for the {@link MongoDataStore}, which writes the fields of a record by one update command
+ * with $set and $inc. The values and the id are converted by the type handlers of the mapper of the datastore, like
+ * they are converted, when a record is saved.
+ *
+ * @author Michael Remme
+ *
+ */
+public class MongoFieldUpdater implements IFieldUpdater {
+
+  @Override
+  public void update(final IDataStore<?, ?> datastore, final IMapper<?> mapper, final Object id,
+      final Map<IProperty, Object> values, final Map<IProperty, Long> increments,
+      final Handler<AsyncResult<Void>> handler) {
+    if (!(datastore instanceof MongoDataStore)) {
+      handler.handle(Future.failedFuture(new UnsupportedOperationException(
+          "partial updates are not supported by " + datastore.getClass().getName())));
+      return;
+    }
+    IProperty idField = mapper.getIdInfo().getField();
+    List<Future> futures = new ArrayList<>();
+    Future<Object> idFuture = intoStore(idField, id);
+    futures.add(idFuture);
+    JsonObject set = new JsonObject();
+    for (Entry<IProperty, Object> entry : values.entrySet()) {
+      Future<Object> f = intoStore(entry.getKey(), entry.getValue());
+      futures.add(f.map(value -> {
+        set.put(columnName(mapper, entry.getKey()), value);
+        return value;
+      }));
+    }
+    JsonObject inc = new JsonObject();
+    increments.forEach((field, delta) -> inc.put(columnName(mapper, field), delta));
+    CompositeFuture.all(futures).setHandler(result -> {
+      if (result.failed()) {
+        handler.handle(Future.failedFuture(result.cause()));
+        return;
+      }
+      JsonObject update = new JsonObject();
+      if (!set.isEmpty()) {
+        update.put("$set", set);
+      }
+      if (!inc.isEmpty()) {
+        update.put("$inc", inc);
+      }
+      JsonObject query = new JsonObject().put(columnName(mapper, idField), idFuture.result());
+      ((MongoDataStore) datastore).getClient().updateCollection(mapper.getTableInfo().getName(), query, update,
+          ur -> {
+            if (ur.failed()) {
+              handler.handle(Future.failedFuture(ur.cause()));
+            } else if (ur.result().getDocMatched() == 0) {
+              handler.handle(Future.failedFuture(new NoSuchRecordException("Could not find record with ID " + id)));
+            } else {
+              handler.handle(Future.succeededFuture());
+            }
+          });
+    });
+  }
+
+  private static String columnName(final IMapper<?> mapper, final IProperty field) {
+    return mapper.getTableInfo().getColumnInfo(field).getName();
+  }
+
+  private static Future<Object> intoStore(final IProperty field, final Object value) {
+    Future<Object> f = Future.future();
+    if (value == null) {
+      f.complete(null);
+    } else {
+      field.getTypeHandler().intoStore(value, field, result -> {
+        if (result.failed()) {
+          f.fail(result.cause());
+        } else {
+          f.complete(result.result().getResult());
+        }
+      });
+    }
+    return f;
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.braintags.netrelay.init.Settings;
+
+/**
+ * The ShardDefinition defines, how the records of one mapper are distributed over several datastores. The shards are
+ * referenced by the names of the datastores inside {@link Settings#getNamedDatastoreSettings()}. The shard key is the
+ * id of a record.
+ *
+ * @author Michael Remme
+ *
+ */
+public class ShardDefinition {
+  private List<String> datastores = new ArrayList<>();
+  private ShardStrategy strategy = ShardStrategy.HASH;
+  private List<Long> rangeBounds = new ArrayList<>();
+
+  /**
+   * The names of the datastores, which are the shards of the mapper. The order must not be changed, once records
+   * were stored
+   *
+   * @return the datastores
+   */
+  public final List<String> getDatastores() {
+    return datastores;
+  }
+
+  /**
+   * The names of the datastores, which are the shards of the mapper. The order must not be changed, once records
+   * were stored
+   *
+   * @param datastores
+   *          the datastores to set
+   */
+  public final void setDatastores(final List<String> datastores) {
+    this.datastores = datastores;
+  }
+
+  /**
+   * The strategy, by which the records are distributed
+   *
+   * @return the strategy
+   */
+  public final ShardStrategy getStrategy() {
+    return strategy;
+  }
+
+  /**
+   * The strategy, by which the records are distributed
+   *
+   * @param strategy
+   *          the strategy to set
+   */
+  public final void setStrategy(final ShardStrategy strategy) {
+    this.strategy = strategy;
+  }
+
+  /**
+   * The bounds of the ranges for {@link ShardStrategy#RANGE}. The list contains one bound less than the number of
+   * shards; keys lower than the first bound are stored in the first shard, keys lower than the second one in the
+   * second shard and so on
+   *
+   * @return the rangeBounds
+   */
+  public final List<Long> getRangeBounds() {
+    return rangeBounds;
+  }
+
+  /**
+   * The bounds of the ranges for {@link ShardStrategy#RANGE}. The list contains one bound less than the number of
+   * shards; keys lower than the first bound are stored in the first shard, keys lower than the second one in the
+   * second shard and so on
+   *
+   * @param rangeBounds
+   *          the rangeBounds to set
+   */
+  public final void setRangeBounds(final List<Long> rangeBounds) {
+    this.rangeBounds = rangeBounds;
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ShardRouter computes the shard of a record from its key by using the rules of a {@link ShardDefinition}.
+ * <br>
+ * With {@link ShardStrategy#HASH} a numeric key is stored in the shard key mod n. The keys of new records are taken
+ * from the {@link KeyAllocator} like for other mappers, so that the shard of a new record follows from its key.
+ *
+ * @author Michael Remme
+ *
+ * @param <S>
+ *          the class of the shards
+ */
+public class ShardRouter<S> {
+  private final ShardStrategy strategy;
+  private final List<S> shards;
+  private final long[] rangeBounds;
+
+  /**
+   * Create a new instance
+   *
+   * @param definition
+   *          the definition of the sharding
+   * @param shards
+   *          the shards in the order of {@link ShardDefinition#getDatastores()}
+   */
+  public ShardRouter(final ShardDefinition definition, final List<S> shards) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("at least one shard is required");
+    }
+    this.strategy = definition.getStrategy();
+    this.shards = new ArrayList<>(shards);
+    this.rangeBounds = new long[definition.getRangeBounds().size()];
+    for (int i = 0; i < rangeBounds.length; i++) {
+      rangeBounds[i] = definition.getRangeBounds().get(i);
+      if (i > 0 && rangeBounds[i] <= rangeBounds[i - 1]) {
+        throw new IllegalArgumentException("range bounds must be ascending");
+      }
+    }
+    if (strategy == ShardStrategy.RANGE && rangeBounds.length != shards.size() - 1) {
+      throw new IllegalArgumentException("the number of range bounds must be the number of shards - 1");
+    }
+  }
+
+  /**
+   * Get the index of the shard for the given key
+   *
+   * @param key
+   *          the key of a record
+   * @return the index of the shard
+   */
+  public int getShardIndex(final Object key) {
+    if (key == null) {
+      throw new IllegalArgumentException("the shard key must not be null");
+    }
+    Long numeric = toNumber(key);
+    if (strategy == ShardStrategy.RANGE) {
+      if (numeric == null) {
+        throw new IllegalArgumentException("range sharding needs numeric keys: " + key);
+      }
+      int i = 0;
+      while (i < rangeBounds.length && numeric >= rangeBounds[i]) {
+        i++;
+      }
+      return i;
+    }
+    return numeric != null ? (int) Math.floorMod(numeric, (long) shards.size())
+        : Math.floorMod(String.valueOf(key).hashCode(), shards.size());
+  }
+
+  /**
+   * Get the shard for the given key
+   *
+   * @param key
+   *          the key of a record
+   * @return the shard
+   */
+  public S getShard(final Object key) {
+    return shards.get(getShardIndex(key));
+  }
+
+  /**
+   * All shards, like they are needed to execute a query on all shards
+   *
+   * @return the shards
+   */
+  public List<S> getShards() {
+    return Collections.unmodifiableList(shards);
+  }
+
+  private static Long toNumber(final Object key) {
+    if (key instanceof Number) {
+      return ((Number) key).longValue();
+    }
+    String s = String.valueOf(key);
+    if (s.isEmpty() || s.length() > 18) {
+      return null;
+    }
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        if (i > 0 || c != '-' || s.length() == 1) {
+          return null;
+        }
+      }
+    }
+    return Long.parseLong(s);
+  }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+/**
+ * The strategy, by which the records of a mapper are distributed over the shards of a {@link ShardDefinition}
+ *
+ * @author Michael Remme
+ *
+ */
+public enum ShardStrategy {
+  /**
+   * Numeric keys are distributed by the modulo of the number of shards, all other keys by a stable hash of their
+   * string value
+   */
+  HASH,
+  /**
+   * Numeric keys are distributed by the ranges, which are defined by {@link ShardDefinition#getRangeBounds()}
+   */
+  RANGE;
+}
@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.util.IteratorAsync;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * Executes a query on all shards of a mapper and merges the results. The caller defines the query by a
+ * {@link Consumer}, which is applied to the query of each shard, and the sort order of the merge by a
+ * {@link Comparator}, which must match the sort order of the query. It is used by the RecordController to list the
+ * records of sharded mappers.
+ *
+ * @author Michael Remme
+ *
+ */
+public class ShardedQuery {
+
+  private ShardedQuery() {
+    // static helper
+  }
+
+  /**
+   * Execute the query on all shards and merge the results
+   *
+   * @param shards
+   *          the datastores of all shards
+   * @param mapperClass
+   *          the class of the mapper
+   * @param definition
+   *          defines the search condition, sort order and limit of the query of one shard
+   * @param order
+   *          the sort order of the query; if null, the results of the shards are concatenated
+   * @param limit
+   *          the maximum number of records in the merged result; a value <= 0 means no limit
+   * @param handler
+   *          the handler to be informed about the merged records
+   */
+  public static <T> void find(final List<IDataStore<?, ?>> shards, final Class<T> mapperClass,
+      final Consumer<IQuery<T>> definition, final Comparator<? super T> order, final int limit,
+      final Handler<AsyncResult<List<T>>> handler) {
+    List<Future> futures = new ArrayList<>(shards.size());
+    for (IDataStore<?, ?> shard : shards) {
+      Future<List<T>> f = Future.future();
+      futures.add(f);
+      IQuery<T> query = shard.createQuery(mapperClass);
+      definition.accept(query);
+      if (limit > 0) {
+        query.setLimit(limit);
+      }
+      query.execute(qrr -> {
+        if (qrr.failed()) {
+          f.fail(qrr.cause());
+        } else {
+          readRecords(qrr.result().iterator(), new ArrayList<>(), f);
+        }
+      });
+    }
+    CompositeFuture.all(futures).setHandler(result -> {
+      if (result.failed()) {
+        handler.handle(Future.failedFuture(result.cause()));
+      } else {
+        List<List<T>> lists = new ArrayList<>(futures.size());
+        futures.forEach(f -> lists.add((List<T>) f.result()));
+        handler.handle(Future.succeededFuture(merge(lists, order, limit)));
+      }
+    });
+  }
+
+  /**
+   * Merge the sorted results of several shards
+   *
+   * @param lists
+   *          the results of the shards, each sorted by the given order
+   * @param order
+   *          the sort order; if null, the lists are concatenated
+   * @param limit
+   *          the maximum number of records; a value <= 0 means no limit
+   * @return the merged records
+   */
+  public static <T> List<T> merge(final List<List<T>> lists, final Comparator<? super T> order, final int limit) {
+    int max = limit > 0 ? limit : Integer.MAX_VALUE;
+    List<T> merged = new ArrayList<>();
+    if (order == null) {
+      for (List<T> list : lists) {
+        for (T record : list) {
+          if (merged.size() >= max) {
+            return merged;
+          }
+          merged.add(record);
+        }
+      }
+      return merged;
+    }
+    // each cursor is an array of the list index and the position inside this list
+    PriorityQueue<int[]> queue = new PriorityQueue<>(Math.max(lists.size(), 1),
+        (a, b) -> order.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1])));
+    for (int i = 0; i < lists.size(); i++) {
+      if (!lists.get(i).isEmpty()) {
+        queue.add(new int[] { i, 0 });
+      }
+    }
+    while (!queue.isEmpty() && merged.size() < max) {
+      int[] cursor = queue.poll();
+      List<T> list = lists.get(cursor[0]);
+      merged.add(list.get(cursor[1]));
+      if (++cursor[1] < list.size()) {
+        queue.add(cursor);
+      }
+    }
+    return merged;
+  }
+
+  private static <T> void readRecords(final IteratorAsync<T> iterator, final List<T> records,
+      final Handler<AsyncResult<List<T>>> handler) {
+    if (!iterator.hasNext()) {
+      handler.handle(Future.succeededFuture(records));
+      return;
+    }
+    iterator.next(ir -> {
+      if (ir.failed()) {
+        handler.handle(Future.failedFuture(ir.cause()));
+      } else {
+        records.add(ir.result());
+        readRecords(iterator, records, handler);
+      }
+    });
+  }
+
+}
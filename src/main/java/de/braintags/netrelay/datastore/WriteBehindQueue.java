@@ -0,0 +1,424 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.controller.Action;
+import de.braintags.netrelay.exception.FieldNotFoundException;
+import de.braintags.netrelay.mapping.IdNormalizer;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.util.exception.InitException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * The WriteBehindQueue collects updates of single fields, which are not critical for the current request, like view
+ * counters or the time of the last visit, and writes them into the datastore in batches. Updates of the same field of
+ * the same record are coalesced in memory: a value replaces all former updates, increments are summed up. The IDs are
+ * converted by the {@link IdNormalizer}, so that "5" and 5L are the same record.
+ * <br>
+ * The queue is written, when the flush interval of the {@link WriteBehindSettings} is reached or when the number of
+ * pending updates exceeds the defined maximum. Each record is written by the {@link IFieldUpdater} of the settings,
+ * which changes only the queued fields and adds increments inside the datastore, so that the queue does not overwrite
+ * other changes of a record and increments of several instances are not lost. Only one flush is running at a time.
+ * Updates, which could not be written, are queued again; updates of missing records or of datastores, which are not
+ * supported by the IFieldUpdater, are dropped. When NetRelay is stopped, the queue is written before the datastore is
+ * shut down; updates, which are queued after {@link #close(Handler)}, are rejected.
+ *
+ * @author Michael Remme
+ *
+ */
+public class WriteBehindQueue {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(WriteBehindQueue.class);
+
+  private final NetRelay netRelay;
+  private final WriteBehindSettings settings;
+  private final IFieldUpdater fieldUpdater;
+  private boolean closed = false;
+  private Map<Class<?>, Map<Object, Map<String, FieldUpdate>>> pending = new LinkedHashMap<>();
+  private int pendingCount = 0;
+  private boolean flushing = false;
+  private boolean flushRequested = false;
+  private List<Handler<AsyncResult<Void>>> flushHandlers = new ArrayList<>();
+  private long timerId = -1;
+
+  /**
+   * Create a new instance and start the timer for the periodic flush
+   *
+   * @param netRelay
+   *          the instance of NetRelay, from where the datastore is taken
+   * @param settings
+   *          the settings of the queue
+   */
+  public WriteBehindQueue(final NetRelay netRelay, final WriteBehindSettings settings) {
+    this(netRelay, settings, createFieldUpdater(settings));
+  }
+
+  /**
+   * Create a new instance, which writes the updates by the given {@link IFieldUpdater}, and start the timer for the
+   * periodic flush
+   *
+   * @param netRelay
+   *          the instance of NetRelay, from where the datastore is taken
+   * @param settings
+   *          the settings of the queue
+   * @param fieldUpdater
+   *          the updater, which writes the updates into the datastore
+   */
+  public WriteBehindQueue(final NetRelay netRelay, final WriteBehindSettings settings,
+      final IFieldUpdater fieldUpdater) {
+    this.netRelay = netRelay;
+    this.settings = settings;
+    this.fieldUpdater = fieldUpdater;
+    if (settings.getFlushInterval() > 0) {
+      timerId = netRelay.getVertx().setPeriodic(settings.getFlushInterval(), id -> flush(null));
+    }
+  }
+
+  /**
+   * Create the {@link IFieldUpdater}, which is defined by the given settings
+   *
+   * @param settings
+   *          the settings of the queue
+   * @return the new instance
+   */
+  public static IFieldUpdater createFieldUpdater(final WriteBehindSettings settings) {
+    try {
+      return settings.getFieldUpdater().newInstance();
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new InitException("could not create the field updater " + settings.getFieldUpdater().getName(), e);
+    }
+  }
+
+  /**
+   * Queue the update of a field to the given value
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the record
+   * @param fieldName
+   *          the name of the field
+   * @param value
+   *          the new value
+   * @throws IllegalStateException
+   *           if the queue was closed
+   * @throws IllegalArgumentException
+   *           if the value does not match the type of the field
+   */
+  public void set(final Class<?> mapperClass, final Object id, final String fieldName, final Object value) {
+    IMapper<?> mapper = getMapper(mapperClass);
+    IProperty field = checkField(mapper, fieldName);
+    if (!isAssignable(field.getType(), value)) {
+      throw new IllegalArgumentException("value of type " + value.getClass().getName() + " does not match the field "
+          + field.getFullName() + " of type " + field.getType().getName());
+    }
+    enqueue(mapperClass, normalize(mapper, id), fieldName, FieldUpdate.set(value));
+  }
+
+  /**
+   * Queue the increment of a numeric field
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the record
+   * @param fieldName
+   *          the name of the field
+   * @param delta
+   *          the value to be added
+   * @throws IllegalStateException
+   *           if the queue was closed
+   */
+  public void increment(final Class<?> mapperClass, final Object id, final String fieldName, final long delta) {
+    IMapper<?> mapper = getMapper(mapperClass);
+    IProperty field = checkField(mapper, fieldName);
+    if (!isNumeric(field.getType())) {
+      throw new IllegalArgumentException("field " + field.getFullName() + " is not numeric");
+    }
+    enqueue(mapperClass, normalize(mapper, id), fieldName, FieldUpdate.increment(delta));
+  }
+
+  /**
+   * Write all pending updates into the datastore. If a flush is running currently, the pending updates are written
+   * after the running one has finished
+   *
+   * @param handler
+   *          the handler to be informed, when the updates were written; may be null
+   */
+  public void flush(final Handler<AsyncResult<Void>> handler) {
+    Map<Class<?>, Map<Object, Map<String, FieldUpdate>>> current;
+    List<Handler<AsyncResult<Void>>> handlers;
+    synchronized (this) {
+      if (handler != null) {
+        flushHandlers.add(handler);
+      }
+      if (flushing) {
+        flushRequested = true;
+        return;
+      }
+      flushing = true;
+      current = pending;
+      handlers = flushHandlers;
+      pending = new LinkedHashMap<>();
+      flushHandlers = new ArrayList<>();
+      pendingCount = 0;
+    }
+    List<Future> futures = new ArrayList<>();
+    for (Entry<Class<?>, Map<Object, Map<String, FieldUpdate>>> entry : current.entrySet()) {
+      Future<Void> f = Future.future();
+      futures.add(f);
+      writeMapper(entry.getKey(), entry.getValue(), f);
+    }
+    CompositeFuture.join(futures).setHandler(result -> {
+      if (result.failed()) {
+        LOGGER.error("error while writing queued updates", result.cause());
+      }
+      boolean again;
+      synchronized (this) {
+        flushing = false;
+        again = flushRequested;
+        flushRequested = false;
+      }
+      AsyncResult<Void> ar = result.failed() ? Future.failedFuture(result.cause()) : Future.succeededFuture();
+      handlers.forEach(h -> h.handle(ar));
+      if (again) {
+        flush(null);
+      }
+    });
+  }
+
+  /**
+   * Stop the periodic flush and write all pending updates. Updates, which are queued afterwards, are rejected
+   *
+   * @param handler
+   *          the handler to be informed, when the updates were written
+   */
+  public void close(final Handler<AsyncResult<Void>> handler) {
+    synchronized (this) {
+      closed = true;
+    }
+    if (timerId >= 0) {
+      netRelay.getVertx().cancelTimer(timerId);
+      timerId = -1;
+    }
+    flush(handler);
+  }
+
+  /**
+   * The number of queued field updates
+   *
+   * @return the number of pending updates
+   */
+  public synchronized int getPendingUpdates() {
+    return pendingCount;
+  }
+
+  private IMapper<?> getMapper(final Class<?> mapperClass) {
+    return netRelay.getDatastore(mapperClass).getMapperFactory().getMapper(mapperClass);
+  }
+
+  private static Object normalize(final IMapper<?> mapper, final Object id) {
+    Objects.requireNonNull(id, "id must not be null");
+    return IdNormalizer.normalize(mapper.getIdInfo().getField(), id);
+  }
+
+  private IProperty checkField(final IMapper<?> mapper, final String fieldName) {
+    IProperty field = mapper.getField(fieldName);
+    if (field == null) {
+      throw new FieldNotFoundException(mapper, fieldName);
+    }
+    return field;
+  }
+
+  private void enqueue(final Class<?> mapperClass, final Object id, final String fieldName, final FieldUpdate update) {
+    boolean flushNow;
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("the queue is closed, the update of " + mapperClass.getSimpleName() + "."
+            + fieldName + " is rejected");
+      }
+      Map<String, FieldUpdate> fields = pending.computeIfAbsent(mapperClass, c -> new LinkedHashMap<>())
+          .computeIfAbsent(id, i -> new HashMap<>());
+      FieldUpdate existing = fields.get(fieldName);
+      if (existing == null) {
+        pendingCount++;
+      }
+      fields.put(fieldName, existing == null ? update : existing.then(update));
+      flushNow = settings.getMaxPendingUpdates() > 0 && pendingCount >= settings.getMaxPendingUpdates();
+    }
+    if (flushNow) {
+      flush(null);
+    }
+  }
+
+  /**
+   * Queue updates again, which could not be written. Updates, which were queued in between, are applied after them
+   */
+  private synchronized void requeue(final Class<?> mapperClass, final Object id,
+      final Map<String, FieldUpdate> fields) {
+    Map<String, FieldUpdate> current = pending.computeIfAbsent(mapperClass, c -> new LinkedHashMap<>())
+        .computeIfAbsent(id, i -> new HashMap<>());
+    for (Entry<String, FieldUpdate> entry : fields.entrySet()) {
+      FieldUpdate later = current.get(entry.getKey());
+      if (later == null) {
+        pendingCount++;
+      }
+      current.put(entry.getKey(), later == null ? entry.getValue() : entry.getValue().then(later));
+    }
+  }
+
+  private void writeMapper(final Class<?> mapperClass, final Map<Object, Map<String, FieldUpdate>> records,
+      final Handler<AsyncResult<Void>> handler) {
+    List<Future> futures = new ArrayList<>();
+    for (Entry<Object, Map<String, FieldUpdate>> entry : records.entrySet()) {
+      Future<Void> f = Future.future();
+      futures.add(f);
+      try {
+        writeRecord(mapperClass, entry.getKey(), entry.getValue(), f);
+      } catch (RuntimeException e) {
+        // the updates of the record can never be written, so they are dropped instead of blocking the queue
+        LOGGER.error("queued update of " + mapperClass.getSimpleName() + " with ID " + entry.getKey() + " dropped", e);
+        f.tryComplete();
+      }
+    }
+    CompositeFuture.join(futures).setHandler(result -> handler
+        .handle(result.failed() ? Future.failedFuture(result.cause()) : Future.succeededFuture()));
+  }
+
+  private void writeRecord(final Class<?> mapperClass, final Object id, final Map<String, FieldUpdate> fields,
+      final Handler<AsyncResult<Void>> handler) {
+    IDataStore<?, ?> datastore = netRelay.getDatastore(null, Action.UPDATE, mapperClass, id);
+    IMapper<?> mapper = datastore.getMapperFactory().getMapper(mapperClass);
+    Map<IProperty, Object> values = new LinkedHashMap<>();
+    Map<IProperty, Long> increments = new LinkedHashMap<>();
+    Map<String, Object> written = new HashMap<>();
+    for (Entry<String, FieldUpdate> entry : fields.entrySet()) {
+      IProperty field = mapper.getField(entry.getKey());
+      FieldUpdate update = entry.getValue();
+      if (update.hasValue) {
+        // a value, which was incremented afterwards, is known completely
+        Object value = update.delta == 0 ? update.value : add(field.getType(), (Number) update.value, update.delta);
+        values.put(field, value);
+        written.put(field.getName(), value);
+      } else {
+        increments.put(field, update.delta);
+      }
+    }
+    fieldUpdater.update(datastore, mapper, id, values, increments, result -> {
+      if (result.succeeded()) {
+        netRelay.getEntityWriter().fieldsWritten(null, mapperClass, id, written);
+        handler.handle(result);
+      } else if (result.cause() instanceof NoSuchRecordException
+          || result.cause() instanceof UnsupportedOperationException) {
+        LOGGER.warn("queued update of " + mapperClass.getSimpleName() + " with ID " + id + " skipped: "
+            + result.cause().getMessage());
+        handler.handle(Future.succeededFuture());
+      } else {
+        LOGGER.warn("queued update of " + mapperClass.getSimpleName() + " with ID " + id + " is retried: "
+            + result.cause().getMessage());
+        requeue(mapperClass, id, fields);
+        handler.handle(result);
+      }
+    });
+  }
+
+  private static boolean isAssignable(final Class<?> type, final Object value) {
+    if (value == null) {
+      return !type.isPrimitive();
+    }
+    Class<?> valueClass = value.getClass();
+    if (type == int.class) {
+      return valueClass == Integer.class;
+    } else if (type == long.class) {
+      return valueClass == Long.class;
+    } else if (type == short.class) {
+      return valueClass == Short.class;
+    } else if (type == double.class) {
+      return valueClass == Double.class;
+    } else if (type == float.class) {
+      return valueClass == Float.class;
+    } else if (type == boolean.class) {
+      return valueClass == Boolean.class;
+    } else if (type == byte.class) {
+      return valueClass == Byte.class;
+    } else if (type == char.class) {
+      return valueClass == Character.class;
+    }
+    return type.isAssignableFrom(valueClass);
+  }
+
+  private static boolean isNumeric(final Class<?> type) {
+    return Number.class.isAssignableFrom(type) || type == int.class || type == long.class || type == short.class
+        || type == double.class || type == float.class;
+  }
+
+  private static Object add(final Class<?> type, final Number current, final long delta) {
+    Number n = current == null ? 0 : current;
+    if (type == Integer.class || type == int.class) {
+      return (int) (n.intValue() + delta);
+    } else if (type == Short.class || type == short.class) {
+      return (short) (n.shortValue() + delta);
+    } else if (type == Double.class || type == double.class) {
+      return n.doubleValue() + delta;
+    } else if (type == Float.class || type == float.class) {
+      return (float) (n.floatValue() + delta);
+    }
+    return n.longValue() + delta;
+  }
+
+  /**
+   * The coalesced update of one field: an optional new value, followed by an increment
+   */
+  private static class FieldUpdate {
+    private final boolean hasValue;
+    private final Object value;
+    private final long delta;
+
+    private FieldUpdate(final boolean hasValue, final Object value, final long delta) {
+      this.hasValue = hasValue;
+      this.value = value;
+      this.delta = delta;
+    }
+
+    static FieldUpdate set(final Object value) {
+      return new FieldUpdate(true, value, 0);
+    }
+
+    static FieldUpdate increment(final long delta) {
+      return new FieldUpdate(false, null, delta);
+    }
+
+    /**
+     * Combine this update with a later one
+     */
+    FieldUpdate then(final FieldUpdate later) {
+      return later.hasValue ? later : new FieldUpdate(hasValue, value, delta + later.delta);
+    }
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.datastore;
+
+/**
+ * The settings of the {@link WriteBehindQueue}
+ *
+ * @author Michael Remme
+ *
+ */
+public class WriteBehindSettings {
+  private long flushInterval = 1000;
+  private int maxPendingUpdates = 1000;
+  private Class<? extends IFieldUpdater> fieldUpdater = MongoFieldUpdater.class;
+
+  /**
+   * The interval in milliseconds, in which the queued updates are written into the datastore
+   *
+   * @return the flushInterval
+   */
+  public final long getFlushInterval() {
+    return flushInterval;
+  }
+
+  /**
+   * The interval in milliseconds, in which the queued updates are written into the datastore
+   *
+   * @param flushInterval
+   *          the flushInterval to set
+   */
+  public final void setFlushInterval(final long flushInterval) {
+    this.flushInterval = flushInterval;
+  }
+
+  /**
+   * The number of queued field updates, which triggers a write before the flush interval is reached
+   *
+   * @return the maxPendingUpdates
+   */
+  public final int getMaxPendingUpdates() {
+    return maxPendingUpdates;
+  }
+
+  /**
+   * The number of queued field updates, which triggers a write before the flush interval is reached
+   *
+   * @param maxPendingUpdates
+   *          the maxPendingUpdates to set
+   */
+  public final void setMaxPendingUpdates(final int maxPendingUpdates) {
+    this.maxPendingUpdates = maxPendingUpdates;
+  }
+
+  /**
+   * The implementation of {@link IFieldUpdater}, which writes the queued updates and the changed fields of existing
+   * records into the datastore
+   *
+   * @return the fieldUpdater
+   */
+  public final Class<? extends IFieldUpdater> getFieldUpdater() {
+    return fieldUpdater;
+  }
+
+  /**
+   * The implementation of {@link IFieldUpdater}, which writes the queued updates and the changed fields of existing
+   * records into the datastore
+   *
+   * @param fieldUpdater
+   *          the fieldUpdater to set
+   */
+  public final void setFieldUpdater(final Class<? extends IFieldUpdater> fieldUpdater) {
+    this.fieldUpdater = fieldUpdater;
+  }
+
+}
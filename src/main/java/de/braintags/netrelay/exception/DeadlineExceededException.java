@@ -0,0 +1,35 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.exception;
+
+import de.braintags.netrelay.util.RequestDeadline;
+
+/**
+ * Exception is thrown, when an action like a datastore query is not executed or not awaited, because the
+ * {@link RequestDeadline} of the current request is reached
+ * 
+ * @author Michael Remme
+ * 
+ */
+public class DeadlineExceededException extends RuntimeException {
+  private static final String MESSAGE = "Deadline of request exceeded: %s";
+
+  /**
+   * @param action
+   *          the description of the action, which was cancelled
+   */
+  public DeadlineExceededException(String action) {
+    super(String.format(MESSAGE, action));
+  }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.geo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory index of points, which divides the earth into a grid of cells of a fixed size in degrees. Each cell
+ * contains the points inside, so that a search for points inside a radius or a bounding box only has to check the
+ * points of the cells, which are touching the searched area. The points are identified by the id of their record.
+ * Longitudes and latitudes are used in degrees, distances in meters.
+ * <br>
+ * The cell size should be near to the typical radius of a search. All methods are synchronized. Invalid positions are
+ * not added, but logged, so that a bad record can't break the loading of the index or the request, which wrote it.
+ *
+ * @author Michael Remme
+ *
+ */
+public class GeoGridIndex {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(GeoGridIndex.class);
+
+  /**
+   * The mean radius of the earth in meters
+   */
+  public static final double EARTH_RADIUS = 6371008.8;
+
+  private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180;
+  private static final double MAX_DISTANCE = Math.PI * EARTH_RADIUS;
+
+  private final double cellSize;
+  private final int columns;
+  private final int rows;
+  private final Map<Long, List<GeoEntry>> cells = new HashMap<>();
+  private final Map<Object, GeoEntry> entries = new HashMap<>();
+
+  /**
+   * Create a new instance
+   *
+   * @param cellSize
+   *          the size of one cell in degrees
+   */
+  public GeoGridIndex(final double cellSize) {
+    if (!(cellSize > 0 && cellSize <= 180)) {
+      throw new IllegalArgumentException("cellSize must be > 0 and <= 180");
+    }
+    this.cellSize = cellSize;
+    this.columns = (int) Math.ceil(360 / cellSize);
+    this.rows = (int) Math.ceil(180 / cellSize);
+  }
+
+  /**
+   * Add a point or move an existing point to a new position. If the position is outside the valid range of longitude
+   * and latitude, the point is not added and an existing point of the record is removed
+   *
+   * @param id
+   *          the id of the record
+   * @param lon
+   *          the longitude
+   * @param lat
+   *          the latitude
+   * @return true, if the point was added; false, if the position is invalid
+   */
+  public synchronized boolean put(final Object id, final double lon, final double lat) {
+    remove(id);
+    if (!(lon >= -180 && lon <= 180 && lat >= -90 && lat <= 90)) {
+      LOGGER.warn("ignoring invalid position of record " + id + ": " + lon + ", " + lat);
+      return false;
+    }
+    GeoEntry entry = new GeoEntry(id, lon, lat, cellKey(column(lon), row(lat)));
+    entries.put(id, entry);
+    cells.computeIfAbsent(entry.cell, k -> new ArrayList<>()).add(entry);
+    return true;
+  }
+
+  /**
+   * Remove the point of the given record
+   *
+   * @param id
+   *          the id of the record
+   * @return true, if the point existed
+   */
+  public synchronized boolean remove(final Object id) {
+    GeoEntry entry = entries.remove(id);
+    if (entry == null) {
+      return false;
+    }
+    List<GeoEntry> cell = cells.get(entry.cell);
+    cell.remove(entry);
+    if (cell.isEmpty()) {
+      cells.remove(entry.cell);
+    }
+    return true;
+  }
+
+  /**
+   * Find the records, whose points are inside the given radius around a position
+   *
+   * @param lon
+   *          the longitude of the center
+   * @param lat
+   *          the latitude of the center
+   * @param radius
+   *          the radius in meters
+   * @return the ids of the records, sorted by the distance to the center
+   */
+  public synchronized List<Object> findWithinRadius(final double lon, final double lat, final double radius) {
+    return toIds(collectWithinRadius(lon, lat, radius), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Find the records, whose points are nearest to a position
+   *
+   * @param lon
+   *          the longitude of the position
+   * @param lat
+   *          the latitude of the position
+   * @param count
+   *          the maximum number of records
+   * @return the ids of the records, sorted by the distance to the position
+   */
+  public synchronized List<Object> findNearest(final double lon, final double lat, final int count) {
+    double radius = cellSize * METERS_PER_DEGREE;
+    List<GeoEntry> found = collectWithinRadius(lon, lat, radius);
+    while (found.size() < Math.min(count, entries.size()) && radius < MAX_DISTANCE) {
+      radius *= 2;
+      found = collectWithinRadius(lon, lat, radius);
+    }
+    return toIds(found, count);
+  }
+
+  /**
+   * Find the records, whose points are inside the given bounding box. If minLon is greater than maxLon, the box is
+   * crossing the antimeridian
+   *
+   * @param minLon
+   *          the western longitude
+   * @param minLat
+   *          the southern latitude
+   * @param maxLon
+   *          the eastern longitude
+   * @param maxLat
+   *          the northern latitude
+   * @return the ids of the records
+   */
+  public synchronized List<Object> findWithinBox(final double minLon, final double minLat, final double maxLon,
+      final double maxLat) {
+    List<Object> result = new ArrayList<>();
+    if (minLon > maxLon) {
+      collectWithinBox(minLon, minLat, 180, maxLat, result);
+      collectWithinBox(-180, minLat, maxLon, maxLat, result);
+    } else {
+      collectWithinBox(minLon, minLat, maxLon, maxLat, result);
+    }
+    return result;
+  }
+
+  /**
+   * The number of points inside the index
+   *
+   * @return the number of points
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Remove all points
+   */
+  public synchronized void clear() {
+    entries.clear();
+    cells.clear();
+  }
+
+  /**
+   * The size of one cell in degrees
+   *
+   * @return the cellSize
+   */
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * Computes the great circle distance between two positions by the haversine formula
+   *
+   * @return the distance in meters
+   */
+  public static double distance(final double lon1, final double lat1, final double lon2, final double lat2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+    return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  private List<GeoEntry> collectWithinRadius(final double lon, final double lat, final double radius) {
+    double dLat = radius / METERS_PER_DEGREE;
+    double minLat = Math.max(lat - dLat, -90);
+    double maxLat = Math.min(lat + dLat, 90);
+    double cos = Math.min(Math.cos(Math.toRadians(minLat)), Math.cos(Math.toRadians(maxLat)));
+    // near the poles or for large radiuses all longitudes are searched
+    double dLon = maxLat >= 90 || minLat <= -90 || cos <= 0 ? 180 : Math.min(dLat / cos, 180);
+    int firstColumn = (int) Math.floor((lon - dLon + 180) / cellSize);
+    int lastColumn = Math.min((int) Math.floor((lon + dLon + 180) / cellSize), firstColumn + columns - 1);
+    List<GeoEntry> found = new ArrayList<>();
+    for (int row = row(minLat); row <= row(maxLat); row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        List<GeoEntry> cell = cells.get(cellKey(Math.floorMod(column, columns), row));
+        if (cell != null) {
+          for (GeoEntry entry : cell) {
+            entry.distance = distance(lon, lat, entry.lon, entry.lat);
+            if (entry.distance <= radius) {
+              found.add(entry);
+            }
+          }
+        }
+      }
+    }
+    found.sort(Comparator.comparingDouble(entry -> entry.distance));
+    return found;
+  }
+
+  private void collectWithinBox(final double minLon, final double minLat, final double maxLon, final double maxLat,
+      final List<Object> result) {
+    for (int row = row(minLat); row <= row(maxLat); row++) {
+      for (int column = column(minLon); column <= column(maxLon); column++) {
+        List<GeoEntry> cell = cells.get(cellKey(column, row));
+        if (cell != null) {
+          for (GeoEntry entry : cell) {
+            if (entry.lon >= minLon && entry.lon <= maxLon && entry.lat >= minLat && entry.lat <= maxLat) {
+              result.add(entry.id);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static List<Object> toIds(final List<GeoEntry> entries, final int count) {
+    List<Object> ids = new ArrayList<>(Math.min(entries.size(), count));
+    for (int i = 0; i < entries.size() && i < count; i++) {
+      ids.add(entries.get(i).id);
+    }
+    return ids;
+  }
+
+  private int column(final double lon) {
+    return Math.max(0, Math.min((int) Math.floor((lon + 180) / cellSize), columns - 1));
+  }
+
+  private int row(final double lat) {
+    return Math.max(0, Math.min((int) Math.floor((lat + 90) / cellSize), rows - 1));
+  }
+
+  private static long cellKey(final int column, final int row) {
+    return ((long) column << 32) | (row & 0xffffffffL);
+  }
+
+  private static class GeoEntry {
+    private final Object id;
+    private final double lon;
+    private final double lat;
+    private final long cell;
+    // the distance to the center of the current search
+    private double distance;
+
+    GeoEntry(final Object id, final double lon, final double lat, final long cell) {
+      this.id = id;
+      this.lon = lon;
+      this.lat = lat;
+      this.cell = cell;
+    }
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.geo;
+
+/**
+ * Defines a {@link GeoGridIndex} for a field of type GeoPoint of a mapper
+ *
+ * @author Michael Remme
+ *
+ */
+public class GeoIndexDefinition {
+  private String mapper;
+  private String field;
+  private double cellSize = 0.1;
+
+  /**
+   * The name of the mapper, like it is used inside the MappingDefinitions
+   *
+   * @return the mapper
+   */
+  public final String getMapper() {
+    return mapper;
+  }
+
+  /**
+   * The name of the mapper, like it is used inside the MappingDefinitions
+   *
+   * @param mapper
+   *          the mapper to set
+   */
+  public final void setMapper(final String mapper) {
+    this.mapper = mapper;
+  }
+
+  /**
+   * The name of the field of type GeoPoint
+   *
+   * @return the field
+   */
+  public final String getField() {
+    return field;
+  }
+
+  /**
+   * The name of the field of type GeoPoint
+   *
+   * @param field
+   *          the field to set
+   */
+  public final void setField(final String field) {
+    this.field = field;
+  }
+
+  /**
+   * The size of one cell of the index in degrees. The default is 0.1, which is about 11 km in north-south direction
+   *
+   * @return the cellSize
+   */
+  public final double getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * The size of one cell of the index in degrees. The default is 0.1, which is about 11 km in north-south direction
+   *
+   * @param cellSize
+   *          the cellSize to set
+   */
+  public final void setCellSize(final double cellSize) {
+    this.cellSize = cellSize;
+  }
+
+}
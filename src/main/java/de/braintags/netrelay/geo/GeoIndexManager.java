@@ -0,0 +1,241 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.geo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.exception.FieldNotFoundException;
+import de.braintags.netrelay.exception.NoSuchMapperException;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.datatypes.geojson.GeoPoint;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.util.IteratorAsync;
+import de.braintags.vertx.util.exception.InitException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * The GeoIndexManager holds the instances of {@link GeoGridIndex}, which are defined by the
+ * {@link GeoIndexDefinition}s of the Settings. The indexes are filled with the records of the datastore during the
+ * start of NetRelay and are updated, when NetRelay is writing or deleting records of an indexed mapper. Records, which
+ * are written by other instances or applications, are not updated inside the index. Invalid positions are logged and
+ * left out of the index.
+ *
+ * @author Michael Remme
+ *
+ */
+public class GeoIndexManager {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(GeoIndexManager.class);
+
+  private final NetRelay netRelay;
+  private final Map<Class<?>, List<IndexedField>> indexes = new ConcurrentHashMap<>();
+
+  /**
+   * Create a new instance
+   *
+   * @param netRelay
+   *          the instance of NetRelay
+   */
+  public GeoIndexManager(final NetRelay netRelay) {
+    this.netRelay = netRelay;
+  }
+
+  /**
+   * Create the indexes for the given definitions and fill them with the records of the datastore
+   *
+   * @param definitions
+   *          the definitions of the indexes
+   * @param handler
+   *          the handler to be informed, when all indexes are loaded
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public void init(final List<GeoIndexDefinition> definitions, final Handler<AsyncResult<Void>> handler) {
+    indexes.clear();
+    List<Future> futures = new ArrayList<>();
+    try {
+      for (GeoIndexDefinition definition : definitions) {
+        Class mapperClass = netRelay.getSettings().getMappingDefinitions().getMapperClass(definition.getMapper());
+        if (mapperClass == null) {
+          throw new NoSuchMapperException(definition.getMapper());
+        }
+        IMapper mapper = netRelay.getDatastore(mapperClass).getMapperFactory().getMapper(mapperClass);
+        IProperty field = mapper.getField(definition.getField());
+        if (field == null) {
+          throw new FieldNotFoundException(mapper, definition.getField());
+        } else if (field.getType() != GeoPoint.class) {
+          throw new InitException("field " + field.getFullName() + " is not of type GeoPoint");
+        }
+        IndexedField indexed = new IndexedField(mapper, field, new GeoGridIndex(definition.getCellSize()));
+        indexes.computeIfAbsent(mapperClass, c -> new ArrayList<>()).add(indexed);
+        for (IDataStore<?, ?> datastore : netRelay.getDatastores(mapperClass)) {
+          Future<Void> f = Future.future();
+          futures.add(f);
+          IQuery<?> query = datastore.createQuery(mapperClass);
+          query.execute(qrr -> {
+            if (qrr.failed()) {
+              f.fail(qrr.cause());
+            } else {
+              readRecords(indexed, (IteratorAsync<Object>) qrr.result().iterator(), f);
+            }
+          });
+        }
+      }
+    } catch (RuntimeException e) {
+      handler.handle(Future.failedFuture(e));
+      return;
+    }
+    CompositeFuture.all(futures).setHandler(result -> {
+      if (result.failed()) {
+        handler.handle(Future.failedFuture(result.cause()));
+      } else {
+        indexes.values().forEach(list -> list.forEach(indexed -> LOGGER.info("loaded geo index "
+            + indexed.field.getFullName() + " with " + indexed.index.size() + " records")));
+        handler.handle(Future.succeededFuture());
+      }
+    });
+  }
+
+  private void readRecords(final IndexedField indexed, final IteratorAsync<Object> iterator,
+      final Handler<AsyncResult<Void>> handler) {
+    if (!iterator.hasNext()) {
+      handler.handle(Future.succeededFuture());
+      return;
+    }
+    iterator.next(ir -> {
+      if (ir.failed()) {
+        handler.handle(Future.failedFuture(ir.cause()));
+      } else {
+        try {
+          indexed.update(ir.result());
+        } catch (RuntimeException e) {
+          handler.handle(Future.failedFuture(e));
+          return;
+        }
+        readRecords(indexed, iterator, handler);
+      }
+    });
+  }
+
+  /**
+   * Get the index of the given field
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param fieldName
+   *          the name of the field of type GeoPoint
+   * @return the index or null, if no index is defined for the field
+   */
+  public GeoGridIndex getIndex(final Class<?> mapperClass, final String fieldName) {
+    for (IndexedField indexed : indexes.getOrDefault(mapperClass, Collections.emptyList())) {
+      if (indexed.field.getName().equals(fieldName)) {
+        return indexed.index;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Informs the indexes of the mapper, that the given entity was written. If the GeoPoint of the entity is null, the
+   * record is removed from the index
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param entity
+   *          the written entity
+   */
+  public void entityWritten(final Class<?> mapperClass, final Object entity) {
+    for (IndexedField indexed : indexes.getOrDefault(mapperClass, Collections.emptyList())) {
+      indexed.update(entity);
+    }
+  }
+
+  /**
+   * Informs the index of the given field, that its value was written by a partial update of the record. Updates of
+   * fields, which are not indexed, are ignored
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the record
+   * @param fieldName
+   *          the name of the updated field
+   * @param value
+   *          the new value of the field; null removes the record from the index
+   */
+  public void fieldWritten(final Class<?> mapperClass, final Object id, final String fieldName, final Object value) {
+    for (IndexedField indexed : indexes.getOrDefault(mapperClass, Collections.emptyList())) {
+      if (indexed.field.getName().equals(fieldName)) {
+        indexed.update(id, (GeoPoint) value);
+      }
+    }
+  }
+
+  /**
+   * Informs the indexes of the mapper, that the record with the given id was deleted
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the deleted record
+   */
+  public void entityDeleted(final Class<?> mapperClass, final Object id) {
+    for (IndexedField indexed : indexes.getOrDefault(mapperClass, Collections.emptyList())) {
+      indexed.index.remove(id);
+    }
+  }
+
+  private static class IndexedField {
+    private final IProperty idField;
+    private final IProperty field;
+    private final GeoGridIndex index;
+
+    IndexedField(final IMapper<?> mapper, final IProperty field, final GeoGridIndex index) {
+      this.idField = mapper.getIdInfo().getField();
+      this.field = field;
+      this.index = index;
+    }
+
+    void update(final Object entity) {
+      Object id = idField.getPropertyAccessor().readData(entity);
+      if (id == null) {
+        return;
+      }
+      update(id, (GeoPoint) field.getPropertyAccessor().readData(entity));
+    }
+
+    void update(final Object id, final GeoPoint point) {
+      if (point == null) {
+        index.remove(id);
+      } else {
+        List<Double> values = point.getCoordinates() == null ? null : point.getCoordinates().getValues();
+        if (values == null || values.size() < 2) {
+          LOGGER.warn("ignoring GeoPoint without coordinates in " + field.getFullName() + " of record " + id);
+          index.remove(id);
+        } else {
+          index.put(id, values.get(0), values.get(1));
+        }
+      }
+    }
+  }
+
+}
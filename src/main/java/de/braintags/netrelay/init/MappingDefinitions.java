@@ -28,6 +28,7 @@ import de.braintags.netrelay.controller.IController;
  */
 public class MappingDefinitions {
   private Map<String, Class> mapperMap = new HashMap<>();
+  private Map<String, String> datastoreMap = new HashMap<>();
 
   /**
    * The mappermap contains the key, by which a template for instance can refer to a mapper and the mapper class as
@@ -87,4 +88,38 @@ public class MappingDefinitions {
     return mapperMap.get(name);
   }
 
+  /**
+   * The datastoremap assigns mappers to the named datastores of {@link Settings#getNamedDatastoreSettings()}. The key
+   * is the name of the mapper, like it is used inside the mappermap, the value is the name of the datastore. Mappers,
+   * which are not contained, are stored inside the default datastore
+   *
+   * @return the datastoreMap
+   */
+  public Map<String, String> getDatastoreMap() {
+    return datastoreMap;
+  }
+
+  /**
+   * The datastoremap assigns mappers to the named datastores of {@link Settings#getNamedDatastoreSettings()}. The key
+   * is the name of the mapper, like it is used inside the mappermap, the value is the name of the datastore. Mappers,
+   * which are not contained, are stored inside the default datastore
+   *
+   * @param datastoreMap
+   *          the datastoreMap to set
+   */
+  public void setDatastoreMap(Map<String, String> datastoreMap) {
+    this.datastoreMap = datastoreMap;
+  }
+
+  /**
+   * Get the name of the datastore, where the records of the mapper with the given name are stored
+   *
+   * @param mapperName
+   *          the name of the mapper
+   * @return the name of the datastore or null, if the mapper is stored inside the default datastore
+   */
+  public String getDatastoreName(String mapperName) {
+    return datastoreMap.get(mapperName);
+  }
+
 }
@@ -12,7 +12,17 @@
  */
 package de.braintags.netrelay.init;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.cache.CacheSettings;
+import de.braintags.netrelay.datastore.KeyAllocator;
+import de.braintags.netrelay.datastore.ShardDefinition;
+import de.braintags.netrelay.datastore.WriteBehindSettings;
+import de.braintags.netrelay.geo.GeoIndexDefinition;
 import de.braintags.netrelay.processor.ProcessorDefinitions;
 import de.braintags.netrelay.routing.RouterDefinitions;
 import de.braintags.vertx.jomnigate.init.DataStoreSettings;
@@ -60,6 +70,12 @@ public class Settings {
   private boolean edited = false;
   private String defaultLoginPage = "/login.html";
   private DataStoreSettings datastoreSettings;
+  private List<DataStoreSettings> readReplicaSettings = new ArrayList<>();
+  private long readYourWritesWindow = 0;
+  private Map<String, DataStoreSettings> namedDatastoreSettings = new HashMap<>();
+  private Map<String, ShardDefinition> shardDefinitions = new HashMap<>();
+  private Map<String, Integer> keyBlockSizes = new HashMap<>();
+  private List<GeoIndexDefinition> geoIndexDefinitions = new ArrayList<>();
   private RouterDefinitions routerDefinitions = new RouterDefinitions();
   private ProcessorDefinitions processorDefinitons = new ProcessorDefinitions();
   private MailConfig mailConfig;
@@ -70,6 +86,8 @@ public class Settings {
   private String certificatePath;
   private String certificateKeyPath;
   private boolean compressionEnabled = true;
+  private CacheSettings cacheSettings = new CacheSettings();
+  private WriteBehindSettings writeBehindSettings = new WriteBehindSettings();
 
   /**
    * The port, where the server shall run on
@@ -150,6 +168,136 @@ public class Settings {
     this.datastoreSettings = datastoreSettings;
   }
 
+  /**
+   * The {@link DataStoreSettings} of the read replicas of the datastore. Requests, which are only displaying records,
+   * are executed by the replicas, all writes are executed by the datastore defined by {@link #getDatastoreSettings()}
+   *
+   * @return the readReplicaSettings
+   */
+  public final List<DataStoreSettings> getReadReplicaSettings() {
+    return readReplicaSettings;
+  }
+
+  /**
+   * The {@link DataStoreSettings} of the read replicas of the datastore. Requests, which are only displaying records,
+   * are executed by the replicas, all writes are executed by the datastore defined by {@link #getDatastoreSettings()}
+   *
+   * @param readReplicaSettings
+   *          the readReplicaSettings to set
+   */
+  public final void setReadReplicaSettings(final List<DataStoreSettings> readReplicaSettings) {
+    this.readReplicaSettings = readReplicaSettings;
+  }
+
+  /**
+   * The time in milliseconds after a write, in which all reads of the same session are executed by the primary
+   * datastore instead of a read replica. A value <= 0 disables this behaviour
+   *
+   * @return the readYourWritesWindow
+   */
+  public final long getReadYourWritesWindow() {
+    return readYourWritesWindow;
+  }
+
+  /**
+   * The time in milliseconds after a write, in which all reads of the same session are executed by the primary
+   * datastore instead of a read replica. A value <= 0 disables this behaviour
+   *
+   * @param readYourWritesWindow
+   *          the readYourWritesWindow to set
+   */
+  public final void setReadYourWritesWindow(final long readYourWritesWindow) {
+    this.readYourWritesWindow = readYourWritesWindow;
+  }
+
+  /**
+   * Additional datastores, which are referenced by their name. The datastore of a mapper is defined by
+   * {@link MappingDefinitions#getDatastoreMap()}; mappers without a definition are using the datastore of
+   * {@link #getDatastoreSettings()}
+   *
+   * @return the namedDatastoreSettings
+   */
+  public final Map<String, DataStoreSettings> getNamedDatastoreSettings() {
+    return namedDatastoreSettings;
+  }
+
+  /**
+   * Additional datastores, which are referenced by their name. The datastore of a mapper is defined by
+   * {@link MappingDefinitions#getDatastoreMap()}; mappers without a definition are using the datastore of
+   * {@link #getDatastoreSettings()}
+   *
+   * @param namedDatastoreSettings
+   *          the namedDatastoreSettings to set
+   */
+  public final void setNamedDatastoreSettings(final Map<String, DataStoreSettings> namedDatastoreSettings) {
+    this.namedDatastoreSettings = namedDatastoreSettings;
+  }
+
+  /**
+   * The definitions of mappers, whose records are distributed over several datastores. The key is the name of the
+   * mapper, like it is used inside the {@link MappingDefinitions}, the value defines the shards, which are named
+   * datastores of {@link #getNamedDatastoreSettings()}
+   *
+   * @return the shardDefinitions
+   */
+  public final Map<String, ShardDefinition> getShardDefinitions() {
+    return shardDefinitions;
+  }
+
+  /**
+   * The definitions of mappers, whose records are distributed over several datastores. The key is the name of the
+   * mapper, like it is used inside the {@link MappingDefinitions}, the value defines the shards, which are named
+   * datastores of {@link #getNamedDatastoreSettings()}
+   *
+   * @param shardDefinitions
+   *          the shardDefinitions to set
+   */
+  public final void setShardDefinitions(final Map<String, ShardDefinition> shardDefinitions) {
+    this.shardDefinitions = shardDefinitions;
+  }
+
+  /**
+   * The mappers, whose keys are created by a {@link KeyAllocator}. The key is the name of the mapper, like it is used
+   * inside the {@link MappingDefinitions}, the value is the number of keys, which are leased by one request to the key
+   * generator. The id field of these mappers must be numeric
+   *
+   * @return the keyBlockSizes
+   */
+  public final Map<String, Integer> getKeyBlockSizes() {
+    return keyBlockSizes;
+  }
+
+  /**
+   * The mappers, whose keys are created by a {@link KeyAllocator}. The key is the name of the mapper, like it is used
+   * inside the {@link MappingDefinitions}, the value is the number of keys, which are leased by one request to the key
+   * generator. The id field of these mappers must be numeric
+   *
+   * @param keyBlockSizes
+   *          the keyBlockSizes to set
+   */
+  public final void setKeyBlockSizes(final Map<String, Integer> keyBlockSizes) {
+    this.keyBlockSizes = keyBlockSizes;
+  }
+
+  /**
+   * The definitions of in-memory indexes of GeoPoint fields, which are loaded during the start of NetRelay
+   *
+   * @return the geoIndexDefinitions
+   */
+  public final List<GeoIndexDefinition> getGeoIndexDefinitions() {
+    return geoIndexDefinitions;
+  }
+
+  /**
+   * The definitions of in-memory indexes of GeoPoint fields, which are loaded during the start of NetRelay
+   *
+   * @param geoIndexDefinitions
+   *          the geoIndexDefinitions to set
+   */
+  public final void setGeoIndexDefinitions(final List<GeoIndexDefinition> geoIndexDefinitions) {
+    this.geoIndexDefinitions = geoIndexDefinitions;
+  }
+
   /**
    * Loads existing settings from the context, when the property {@link #SETTINGS_LOCATION_PROPERTY} is defined;
    * or loads or generates default settings and stores them in the local user directory, subdirectory .netrelay
@@ -405,4 +553,42 @@ public class Settings {
     this.compressionEnabled = compressionEnabled;
   }
 
+  /**
+   * The {@link CacheSettings}, which define the caches used by NetRelay
+   *
+   * @return the cacheSettings
+   */
+  public final CacheSettings getCacheSettings() {
+    return cacheSettings;
+  }
+
+  /**
+   * The {@link CacheSettings}, which define the caches used by NetRelay
+   *
+   * @param cacheSettings
+   *          the cacheSettings to set
+   */
+  public final void setCacheSettings(final CacheSettings cacheSettings) {
+    this.cacheSettings = cacheSettings;
+  }
+
+  /**
+   * The {@link WriteBehindSettings}, which define, how often queued updates are written into the datastore
+   *
+   * @return the writeBehindSettings
+   */
+  public final WriteBehindSettings getWriteBehindSettings() {
+    return writeBehindSettings;
+  }
+
+  /**
+   * The {@link WriteBehindSettings}, which define, how often queued updates are written into the datastore
+   *
+   * @param writeBehindSettings
+   *          the writeBehindSettings to set
+   */
+  public final void setWriteBehindSettings(final WriteBehindSettings writeBehindSettings) {
+    this.writeBehindSettings = writeBehindSettings;
+  }
+
 }
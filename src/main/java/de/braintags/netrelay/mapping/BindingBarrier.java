@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.mapping;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * The BindingBarrier is used by {@link NetRelayStoreObject} to wait for the binding of all fields of an entity. One
+ * instance is used as result handler for all fields, so that fields, which are completed synchronously like most
+ * type handlers do, don't need an own {@link Future} and no {@link CompositeFuture} must be created. Fields, which
+ * are completed asynchronously, are simply counted until they finish.
+ * <br>
+ * Like {@link CompositeFuture#all(java.util.List)} the handler is informed about the first failure immediately.
+ * Usage:
+ *
+ * <pre>
+ * BindingBarrier barrier = new BindingBarrier(handler);
+ * for (...) {
+ *   field.getPropertyMapper().fromStoreObject(entity, storeObject, field, barrier.add());
+ * }
+ * barrier.arm();
+ * </pre>
+ *
+ * @author Michael Remme
+ *
+ */
+public class BindingBarrier implements Handler<AsyncResult<Void>> {
+  private final Handler<AsyncResult<Void>> handler;
+  // one additional count, which is released by arm
+  private final AtomicInteger pending = new AtomicInteger(1);
+  private final AtomicBoolean done = new AtomicBoolean(false);
+
+  /**
+   * @param handler
+   *          the handler to be informed, when all fields are finished or one failed
+   */
+  public BindingBarrier(final Handler<AsyncResult<Void>> handler) {
+    this.handler = handler;
+  }
+
+  /**
+   * Register a new field, which must be finished before the handler is informed
+   *
+   * @return the handler to be informed by the field
+   */
+  public Handler<AsyncResult<Void>> add() {
+    pending.incrementAndGet();
+    return this;
+  }
+
+  /**
+   * Must be called after all fields were added. If all of them are finished already, the handler is informed
+   * immediately
+   */
+  public void arm() {
+    release();
+  }
+
+  /**
+   * Returns true, if the handler was informed already
+   *
+   * @return true, if done
+   */
+  public boolean isDone() {
+    return done.get();
+  }
+
+  @Override
+  public void handle(final AsyncResult<Void> result) {
+    if (result.failed()) {
+      if (done.compareAndSet(false, true)) {
+        handler.handle(Future.failedFuture(result.cause()));
+      }
+    } else {
+      release();
+    }
+  }
+
+  private void release() {
+    if (pending.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+      handler.handle(Future.succeededFuture());
+    }
+  }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.mapping;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.controller.Action;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.query.IIndexedField;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.dataaccess.query.ISearchCondition;
+import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.util.IteratorAsync;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * The EntityBatchLoader collects the IDs of entities, which are requested during one tick of the event loop, and loads
+ * them by one query per datastore and mapper. By this a request, which is binding several entities of the same mapper,
+ * like a form to edit a list of records, needs one round trip to the datastore instead of one per entity. The IDs are
+ * converted by the {@link IdNormalizer}, so that an ID like "05" of a request matches the stored record 5.
+ * <br>
+ * An instance is bound to a request and stored inside the {@link RoutingContext} under the property
+ * {@link #CONTEXT_PROPERTY}. It is NOT thread safe and must be used from the thread of the request.
+ *
+ * @author Michael Remme
+ *
+ */
+public class EntityBatchLoader {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(EntityBatchLoader.class);
+
+  /**
+   * The name of the property, by which the instance is stored inside the {@link RoutingContext}
+   */
+  public static final String CONTEXT_PROPERTY = "netrelayEntityBatchLoader";
+
+  private final NetRelay netRelay;
+  private Map<BatchKey, Batch<?>> batches = new LinkedHashMap<>();
+  private boolean flushScheduled = false;
+
+  /**
+   * Create a new instance
+   *
+   * @param netRelay
+   *          the instance of NetRelay, from where the datastore is taken
+   */
+  public EntityBatchLoader(final NetRelay netRelay) {
+    this.netRelay = netRelay;
+  }
+
+  /**
+   * Get the loader of the current request. If none exists, it is created
+   *
+   * @param context
+   *          the context of the current request
+   * @param netRelay
+   *          the instance of NetRelay
+   * @return the loader of the request
+   */
+  public static EntityBatchLoader get(final RoutingContext context, final NetRelay netRelay) {
+    EntityBatchLoader loader = context.get(CONTEXT_PROPERTY);
+    if (loader == null) {
+      loader = new EntityBatchLoader(netRelay);
+      context.put(CONTEXT_PROPERTY, loader);
+    }
+    return loader;
+  }
+
+  /**
+   * Request the entity with the given id from the datastore of the mapper or the shard of the id. The query is
+   * executed together with all other requests of the current tick of the event loop. If the record does not exist, the
+   * handler fails with a {@link NoSuchRecordException}
+   *
+   * @param mapper
+   *          the mapper of the entity
+   * @param id
+   *          the id of the entity
+   * @param handler
+   *          the handler to be informed about the entity
+   */
+  public <T> void load(final IMapper<T> mapper, final Object id, final Handler<AsyncResult<T>> handler) {
+    load(netRelay.getDatastore(null, Action.UPDATE, mapper.getMapperClass(), id), mapper, id, handler);
+  }
+
+  /**
+   * Request the entity with the given id from the given datastore. The query is executed together with all other
+   * requests for the same datastore and mapper of the current tick of the event loop. If the record does not exist,
+   * the handler fails with a {@link NoSuchRecordException}
+   *
+   * @param datastore
+   *          the datastore to be used
+   * @param mapper
+   *          the mapper of the entity
+   * @param id
+   *          the id of the entity
+   * @param handler
+   *          the handler to be informed about the entity
+   */
+  public <T> void load(final IDataStore<?, ?> datastore, final IMapper<T> mapper, final Object id,
+      final Handler<AsyncResult<T>> handler) {
+    load(datastore, mapper, id, null, handler);
+  }
+
+  /**
+   * Request the entity with the given id from the given datastore. The query is executed together with all other
+   * requests for the same datastore and mapper of the current tick of the event loop. If the record does not exist,
+   * the handler fails with a {@link NoSuchRecordException}.
+   * <br>
+   * All requests for the same id receive the same instance. The loadedHandler of the first request for an id is
+   * executed once with the loaded record, before the record is handed to any handler, so that caches can store the
+   * record before it is modified by one of the handlers
+   *
+   * @param datastore
+   *          the datastore to be used
+   * @param mapper
+   *          the mapper of the entity
+   * @param id
+   *          the id of the entity
+   * @param loadedHandler
+   *          executed once with the loaded record, may be null
+   * @param handler
+   *          the handler to be informed about the entity
+   */
+  @SuppressWarnings("unchecked")
+  public <T> void load(final IDataStore<?, ?> datastore, final IMapper<T> mapper, final Object id,
+      final Handler<T> loadedHandler, final Handler<AsyncResult<T>> handler) {
+    Object key;
+    try {
+      key = IdNormalizer.normalize(mapper.getIdInfo().getField(), id);
+    } catch (IllegalArgumentException | ArithmeticException e) {
+      handler.handle(Future.failedFuture(new NoSuchRecordException("Could not find record with ID " + id)));
+      return;
+    }
+    Batch<T> batch = (Batch<T>) batches.computeIfAbsent(new BatchKey(datastore, mapper),
+        k -> new Batch<>(datastore, mapper));
+    batch.waiters.computeIfAbsent(key, k -> new ArrayList<>()).add(handler);
+    if (loadedHandler != null) {
+      batch.loadedHandlers.putIfAbsent(key, loadedHandler);
+    }
+    if (!flushScheduled) {
+      flushScheduled = true;
+      netRelay.getVertx().runOnContext(v -> flush());
+    }
+  }
+
+  /**
+   * Execute the queries for all requests, which were collected until now
+   */
+  public void flush() {
+    flushScheduled = false;
+    if (batches.isEmpty()) {
+      return;
+    }
+    Map<BatchKey, Batch<?>> current = batches;
+    batches = new LinkedHashMap<>();
+    for (Batch<?> batch : current.values()) {
+      execute(batch);
+    }
+  }
+
+  private <T> void execute(final Batch<T> batch) {
+    IQuery<T> query = batch.datastore.createQuery(batch.mapper.getMapperClass());
+    IIndexedField idField = batch.mapper.getIdInfo().getIndexedField();
+    if (batch.waiters.size() == 1) {
+      query.setSearchCondition(ISearchCondition.isEqual(idField, batch.waiters.keySet().iterator().next()));
+    } else {
+      query.setSearchCondition(ISearchCondition.in(idField, new ArrayList<>(batch.waiters.keySet())));
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("loading " + batch.waiters.size() + " records of " + batch.mapper.getMapperClass().getSimpleName());
+    }
+    query.execute(qrr -> {
+      if (qrr.failed()) {
+        batch.fail(qrr.cause());
+      } else {
+        readResults(batch, qrr.result().iterator());
+      }
+    });
+  }
+
+  private <T> void readResults(final Batch<T> batch, final IteratorAsync<T> iterator) {
+    if (!iterator.hasNext()) {
+      batch.finish();
+      return;
+    }
+    iterator.next(ir -> {
+      if (ir.failed()) {
+        batch.fail(ir.cause());
+      } else {
+        batch.found(ir.result());
+        readResults(batch, iterator);
+      }
+    });
+  }
+
+  private static class BatchKey {
+    private final IDataStore<?, ?> datastore;
+    private final IMapper<?> mapper;
+
+    BatchKey(final IDataStore<?, ?> datastore, final IMapper<?> mapper) {
+      this.datastore = datastore;
+      this.mapper = mapper;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(datastore) + System.identityHashCode(mapper);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj instanceof BatchKey && ((BatchKey) obj).datastore == datastore && ((BatchKey) obj).mapper == mapper;
+    }
+  }
+
+  private static class Batch<T> {
+    private final IDataStore<?, ?> datastore;
+    private final IMapper<T> mapper;
+    private final IProperty idProperty;
+    private final Map<Object, List<Handler<AsyncResult<T>>>> waiters = new LinkedHashMap<>();
+    private final Map<Object, Handler<T>> loadedHandlers = new HashMap<>();
+
+    Batch(final IDataStore<?, ?> datastore, final IMapper<T> mapper) {
+      this.datastore = datastore;
+      this.mapper = mapper;
+      this.idProperty = mapper.getIdInfo().getField();
+    }
+
+    void found(final T entity) {
+      Object id = IdNormalizer.normalize(idProperty, idProperty.getPropertyAccessor().readData(entity));
+      List<Handler<AsyncResult<T>>> handlers = waiters.remove(id);
+      Handler<T> loadedHandler = loadedHandlers.remove(id);
+      if (handlers != null) {
+        if (loadedHandler != null) {
+          loadedHandler.handle(entity);
+        }
+        handlers.forEach(h -> h.handle(Future.succeededFuture(entity)));
+      }
+    }
+
+    void finish() {
+      for (Entry<Object, List<Handler<AsyncResult<T>>>> entry : waiters.entrySet()) {
+        NoSuchRecordException e = new NoSuchRecordException("Could not find record with ID " + entry.getKey());
+        entry.getValue().forEach(h -> h.handle(Future.failedFuture(e)));
+      }
+      waiters.clear();
+      loadedHandlers.clear();
+    }
+
+    void fail(final Throwable cause) {
+      waiters.values().forEach(list -> list.forEach(h -> h.handle(Future.failedFuture(cause))));
+      waiters.clear();
+      loadedHandlers.clear();
+    }
+  }
+
+}
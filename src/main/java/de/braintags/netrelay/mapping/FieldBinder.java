@@ -0,0 +1,218 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.mapping;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import de.braintags.netrelay.typehandler.HttpBooleanTypeHandler;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.jomnigate.typehandler.ITypeHandler;
+import de.braintags.vertx.jomnigate.typehandler.ITypeHandlerFactory;
+
+/**
+ * A FieldBinder writes the value of a request directly into a field of an entity and reads it back, by using
+ * {@link MethodHandle}s instead of the chain of property mapper, type handler and property accessor. It is created for
+ * fields of the types String, boolean, int, long, short, byte, double and float and their wrapper classes.
+ * <br>
+ * Properties, which declare a getter or setter method or which are using a type handler other than the default one for
+ * their type, are not bound by a FieldBinder, because the logic of those would be skipped.
+ * <br>
+ * Values, which can not be converted here, like empty or invalid numbers, are not bound, so that the caller can use
+ * the property mapper of the field instead and gets the same result and errors like before.
+ *
+ * @author Michael Remme
+ *
+ */
+public class FieldBinder {
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final Field field;
+  private final Class<?> type;
+  private final MethodHandle getter;
+  private final MethodHandle setter;
+
+  private FieldBinder(final Field field, final MethodHandle getter, final MethodHandle setter) {
+    this.field = field;
+    this.type = field.getType().isPrimitive() ? wrap(field.getType()) : field.getType();
+    this.getter = getter;
+    this.setter = setter;
+  }
+
+  /**
+   * Create a binder for the field of the given property
+   *
+   * @param property
+   *          the property
+   * @param typeHandlerFactory
+   *          the factory, which delivers the default type handler for the type of the property. If null, a property
+   *          with any type handler is not bound by a FieldBinder
+   * @return a new binder or null, if the field can not be bound by a FieldBinder
+   */
+  public static FieldBinder create(final IProperty property, final ITypeHandlerFactory typeHandlerFactory) {
+    Field field = property.getField();
+    if (field == null || hasAccessorMethod(field) || hasCustomTypeHandler(property, typeHandlerFactory)) {
+      return null;
+    }
+    return create(field);
+  }
+
+  /**
+   * Checks wether the class of the field declares a getter or setter method for it, which is used by the property
+   * accessor instead of the field
+   *
+   * @param field
+   *          the field to check
+   * @return true, if a getter or setter exists
+   */
+  static boolean hasAccessorMethod(final Field field) {
+    String suffix = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+    for (Class<?> cls = field.getDeclaringClass(); cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+      for (Method method : cls.getDeclaredMethods()) {
+        if (!Modifier.isStatic(method.getModifiers()) && isAccessor(method, suffix, field.getType())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isAccessor(final Method method, final String suffix, final Class<?> type) {
+    String name = method.getName();
+    if (method.getParameterCount() == 1) {
+      return name.equals("set" + suffix) && method.getParameterTypes()[0] == type;
+    } else if (method.getParameterCount() == 0) {
+      boolean bool = type == boolean.class || type == Boolean.class;
+      return name.equals("get" + suffix) || bool && name.equals("is" + suffix);
+    }
+    return false;
+  }
+
+  private static boolean hasCustomTypeHandler(final IProperty property, final ITypeHandlerFactory typeHandlerFactory) {
+    ITypeHandler typeHandler = property.getTypeHandler();
+    if (typeHandler == null) {
+      return false;
+    }
+    return typeHandlerFactory == null || typeHandler != typeHandlerFactory.getTypeHandler(property.getType(), null);
+  }
+
+  /**
+   * Create a binder for the given field
+   *
+   * @param field
+   *          the field
+   * @return a new binder or null, if the field can not be bound by a FieldBinder
+   */
+  public static FieldBinder create(final Field field) {
+    int modifiers = field.getModifiers();
+    if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || !isSupported(field.getType())) {
+      return null;
+    }
+    try {
+      field.setAccessible(true);
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      return new FieldBinder(field, lookup.unreflectGetter(field).asType(GETTER_TYPE),
+          lookup.unreflectSetter(field).asType(SETTER_TYPE));
+    } catch (IllegalAccessException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static boolean isSupported(final Class<?> type) {
+    return type == String.class || type.isPrimitive() && type != char.class && type != void.class
+        || type == Boolean.class || type == Integer.class || type == Long.class || type == Short.class
+        || type == Byte.class || type == Double.class || type == Float.class;
+  }
+
+  private static Class<?> wrap(final Class<?> primitive) {
+    return MethodType.methodType(primitive).wrap().returnType();
+  }
+
+  /**
+   * Read the value of the field from the given entity
+   *
+   * @param entity
+   *          the entity
+   * @return the value of the field
+   */
+  public Object read(final Object entity) {
+    try {
+      return (Object) getter.invokeExact(entity);
+    } catch (Throwable e) {
+      throw new IllegalStateException("could not read field " + field, e);
+    }
+  }
+
+  /**
+   * Convert the given value of a request and write it into the field of the given entity. Booleans are handled like
+   * the {@link HttpBooleanTypeHandler} does
+   *
+   * @param entity
+   *          the entity
+   * @param value
+   *          the value from the request
+   * @return true, if the value was written; false, if the value can not be converted here
+   */
+  public boolean bind(final Object entity, final String value) {
+    Object converted;
+    if (type == String.class) {
+      converted = value;
+    } else if (type == Boolean.class) {
+      converted = value != null && (value.equalsIgnoreCase("on") || Boolean.parseBoolean(value));
+    } else if (value == null || value.isEmpty()) {
+      return false;
+    } else {
+      try {
+        converted = convertNumber(value);
+      } catch (NumberFormatException e) {
+        return false;
+      }
+    }
+    try {
+      setter.invokeExact(entity, converted);
+      return true;
+    } catch (Throwable e) {
+      throw new IllegalStateException("could not write field " + field, e);
+    }
+  }
+
+  private Object convertNumber(final String value) {
+    if (type == Integer.class) {
+      return Integer.valueOf(value);
+    } else if (type == Long.class) {
+      return Long.valueOf(value);
+    } else if (type == Double.class) {
+      return Double.valueOf(value);
+    } else if (type == Float.class) {
+      return Float.valueOf(value);
+    } else if (type == Short.class) {
+      return Short.valueOf(value);
+    }
+    return Byte.valueOf(value);
+  }
+
+  /**
+   * The field, which is bound by this instance
+   *
+   * @return the field
+   */
+  public Field getField() {
+    return field;
+  }
+
+}
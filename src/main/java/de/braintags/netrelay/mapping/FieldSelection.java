@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.mapping;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import de.braintags.netrelay.exception.FieldNotFoundException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.util.request.RequestUtil;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * A FieldSelection defines the fields of a mapper, which shall be sent to a client. It is read from the request
+ * parameter {@value #FIELDS_PARAMETER} as comma separated list of field names of the mapper, like fields=a,b,c. The
+ * field names are validated against the fields of the mapper; the id field is always part of the selection.
+ *
+ * @author Michael Remme
+ *
+ */
+public class FieldSelection {
+
+  /**
+   * The name of the request parameter, which contains the selected fields
+   */
+  public static final String FIELDS_PARAMETER = "fields";
+
+  private final IMapper<?> mapper;
+  private final Set<String> fieldNames;
+
+  private FieldSelection(final IMapper<?> mapper, final Set<String> fieldNames) {
+    this.mapper = mapper;
+    this.fieldNames = Collections.unmodifiableSet(fieldNames);
+  }
+
+  /**
+   * Read the selection from the parameter {@value #FIELDS_PARAMETER} of the current request
+   *
+   * @param context
+   *          the context of the current request
+   * @param mapper
+   *          the mapper, whose fields are selected
+   * @return the selection or null, if the request does not contain a selection, so that all fields shall be used
+   * @throws FieldNotFoundException
+   *           if a selected field does not exist in the mapper
+   */
+  public static FieldSelection fromRequest(final RoutingContext context, final IMapper<?> mapper) {
+    return parse(mapper, RequestUtil.readParameter(context, FIELDS_PARAMETER, null, false));
+  }
+
+  /**
+   * Create a selection, which contains all fields of the given mapper
+   *
+   * @param mapper
+   *          the mapper, whose fields are selected
+   * @return the selection of all fields
+   */
+  public static FieldSelection all(final IMapper<?> mapper) {
+    Set<String> names = new LinkedHashSet<>();
+    names.add(mapper.getIdInfo().getField().getName());
+    names.addAll(mapper.getFieldNames());
+    return new FieldSelection(mapper, names);
+  }
+
+  /**
+   * Parse a selection from a comma separated list of field names
+   *
+   * @param mapper
+   *          the mapper, whose fields are selected
+   * @param fields
+   *          the comma separated list of field names
+   * @return the selection or null, if the list is null or empty, so that all fields shall be used
+   * @throws FieldNotFoundException
+   *           if a selected field does not exist in the mapper
+   */
+  public static FieldSelection parse(final IMapper<?> mapper, final String fields) {
+    if (fields == null || fields.trim().isEmpty()) {
+      return null;
+    }
+    Set<String> names = new LinkedHashSet<>();
+    names.add(mapper.getIdInfo().getField().getName());
+    for (String name : fields.split(",")) {
+      String fieldName = name.trim();
+      if (!fieldName.isEmpty()) {
+        if (!mapper.getFieldNames().contains(fieldName)) {
+          throw new FieldNotFoundException(mapper, fieldName);
+        }
+        names.add(fieldName);
+      }
+    }
+    return new FieldSelection(mapper, names);
+  }
+
+  /**
+   * Returns true, if the given property is selected
+   *
+   * @param property
+   *          the property to check
+   * @return true, if selected
+   */
+  public boolean contains(final IProperty property) {
+    return fieldNames.contains(property.getName());
+  }
+
+  /**
+   * Read the values of the selected fields of the given entity
+   *
+   * @param entity
+   *          the entity to read from
+   * @return a map with the field names as key, in the order of the selection
+   */
+  public Map<String, Object> extract(final Object entity) {
+    Map<String, Object> values = new LinkedHashMap<>();
+    for (String fieldName : fieldNames) {
+      values.put(fieldName, mapper.getField(fieldName).getPropertyAccessor().readData(entity));
+    }
+    return values;
+  }
+
+  /**
+   * The names of the selected fields, including the id field
+   *
+   * @return the fieldNames
+   */
+  public Set<String> getFieldNames() {
+    return fieldNames;
+  }
+
+}
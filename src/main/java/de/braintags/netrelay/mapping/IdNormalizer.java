@@ -0,0 +1,56 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.mapping;
+
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+
+/**
+ * Converts the ids of records into the java type of the id field of their mapper. Ids are arriving in different forms,
+ * like "05" from a request parameter or as Long from a write result, and must be converted before they are compared
+ * or used as key of a cache, so that all forms of the same id are matching the stored record
+ *
+ * @author Michael Remme
+ *
+ */
+public final class IdNormalizer {
+
+  private IdNormalizer() {
+    // static methods only
+  }
+
+  /**
+   * Convert the given id into the type of the id field. Numeric ids are parsed, all other ids are converted into a
+   * String
+   *
+   * @param idField
+   *          the id field of the mapper
+   * @param id
+   *          the id to be converted
+   * @return the converted id or null, if id is null
+   * @throws IllegalArgumentException
+   *           if the id can't be converted into the type of the id field
+   */
+  public static Object normalize(final IProperty idField, final Object id) {
+    if (id == null) {
+      return null;
+    }
+    Class<?> type = idField.getType();
+    if (type == Long.class || type == long.class) {
+      return id instanceof Number ? ((Number) id).longValue() : Long.valueOf(id.toString().trim());
+    } else if (type == Integer.class || type == int.class) {
+      return id instanceof Number ? Math.toIntExact(((Number) id).longValue()) : Integer.valueOf(id.toString().trim());
+    }
+    return id.toString();
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.mapping;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.jomnigate.typehandler.ITypeHandlerFactory;
+
+/**
+ * The MapperBindingPlan contains the information, which is needed to bind the data of a request to an entity of an
+ * {@link IMapper} and back. It is computed once per mapper and cached inside the {@link NetRelayMapperFactory}. The
+ * keys, by which the fields are stored inside the request map, and the properties are stored inside arrays, so that
+ * a {@link NetRelayStoreObject} can iterate them by index without creating new Strings. For fields of simple types a
+ * {@link FieldBinder} is created, which binds the values without the type handler, as long as the field has no getter
+ * or setter and is using the default type handler of its type.
+ *
+ * @author Michael Remme
+ *
+ * @param <T>
+ *          the class of the mapper
+ */
+public class MapperBindingPlan<T> {
+  private final IMapper<T> mapper;
+  private final String[] keys;
+  private final IProperty[] properties;
+  private final FieldBinder[] binders;
+  private final Map<IProperty, String> keyMap = new IdentityHashMap<>();
+
+  /**
+   * Create a new plan for the given mapper. Fields, which are using any type handler, are bound by their type handler
+   *
+   * @param mapper
+   *          the mapper to be used
+   */
+  public MapperBindingPlan(final IMapper<T> mapper) {
+    this(mapper, null);
+  }
+
+  /**
+   * Create a new plan for the given mapper
+   *
+   * @param mapper
+   *          the mapper to be used
+   * @param typeHandlerFactory
+   *          the factory of the mapper, which is used to decide, wether a field is using the default type handler of
+   *          its type and can be bound by a {@link FieldBinder}
+   */
+  public MapperBindingPlan(final IMapper<T> mapper, final ITypeHandlerFactory typeHandlerFactory) {
+    this.mapper = mapper;
+    Set<String> fieldNames = mapper.getFieldNames();
+    keys = new String[fieldNames.size()];
+    properties = new IProperty[fieldNames.size()];
+    binders = new FieldBinder[fieldNames.size()];
+    IProperty idField = mapper.getIdInfo() == null ? null : mapper.getIdInfo().getField();
+    int i = 0;
+    for (String fieldName : fieldNames) {
+      IProperty property = mapper.getField(fieldName);
+      properties[i] = property;
+      keys[i] = computeKey(property);
+      // the id may need a special conversion by the datastore, so it is always bound by its type handler
+      binders[i] = property == idField ? null : FieldBinder.create(property, typeHandlerFactory);
+      keyMap.put(property, keys[i]);
+      i++;
+    }
+  }
+
+  /**
+   * Computes the key, by which the value of a property is stored inside the request map
+   *
+   * @param property
+   *          the property
+   * @return the key of the property
+   */
+  public static String computeKey(final IProperty property) {
+    return property.getName().toLowerCase();
+  }
+
+  /**
+   * Get the key, by which the value of the given property is stored inside the request map. For properties, which are
+   * not part of the mapper, the key is computed
+   *
+   * @param property
+   *          the property
+   * @return the key of the property
+   */
+  public String getKey(final IProperty property) {
+    String key = keyMap.get(property);
+    return key != null ? key : computeKey(property);
+  }
+
+  /**
+   * The number of fields of the mapper
+   *
+   * @return the number of fields
+   */
+  public int size() {
+    return keys.length;
+  }
+
+  /**
+   * Get the key of the field with the given index
+   *
+   * @param index
+   *          the index of the field
+   * @return the key, by which the field is stored inside the request map
+   */
+  public String getKey(final int index) {
+    return keys[index];
+  }
+
+  /**
+   * Get the property of the field with the given index
+   *
+   * @param index
+   *          the index of the field
+   * @return the property
+   */
+  public IProperty getProperty(final int index) {
+    return properties[index];
+  }
+
+  /**
+   * Get the {@link FieldBinder} of the field with the given index
+   *
+   * @param index
+   *          the index of the field
+   * @return the binder or null, if the field must be bound by its property mapper
+   */
+  public FieldBinder getBinder(final int index) {
+    return binders[index];
+  }
+
+  /**
+   * The mapper, for which the current plan was computed
+   *
+   * @return the mapper
+   */
+  public IMapper<T> getMapper() {
+    return mapper;
+  }
+
+}
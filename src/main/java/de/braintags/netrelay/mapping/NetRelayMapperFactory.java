@@ -12,25 +12,44 @@
  */
 package de.braintags.netrelay.mapping;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import de.braintags.netrelay.NetRelay;
 import de.braintags.netrelay.typehandler.HttpTypehandlerFactory;
 import de.braintags.vertx.jomnigate.json.mapping.JsonPropertyMapperFactory;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
 import de.braintags.vertx.jomnigate.mapping.impl.MapperFactory;
 import de.braintags.vertx.jomnigate.typehandler.ITypeHandlerFactory;
 
 /**
  * NetRelayMapperFactory is used as factory for mapper definitions for the communication with the underlaying
  * template engine and the data coming inside an http request. It is using an {@link ITypeHandlerFactory} which is
- * string based
+ * string based.
+ * Additionally it caches the {@link MapperBindingPlan} for each mapper
  * 
  * @author Michael Remme
  * 
  */
 public class NetRelayMapperFactory extends MapperFactory {
   private NetRelay netRelay;
+  private final Map<IMapper<?>, MapperBindingPlan<?>> bindingPlans = new ConcurrentHashMap<>();
 
   public NetRelayMapperFactory(NetRelay netrelay) {
     super(null, new HttpTypehandlerFactory(), new JsonPropertyMapperFactory());
   }
 
+  /**
+   * Get the {@link MapperBindingPlan} for the given mapper. The plan is computed on first request and cached
+   * 
+   * @param mapper
+   *          the mapper
+   * @return the plan for the mapper
+   */
+  @SuppressWarnings("unchecked")
+  public <T> MapperBindingPlan<T> getBindingPlan(IMapper<T> mapper) {
+    return (MapperBindingPlan<T>) bindingPlans.computeIfAbsent(mapper,
+        m -> new MapperBindingPlan<>(m, getTypeHandlerFactory()));
+  }
+
 }
@@ -13,26 +13,31 @@
 package de.braintags.netrelay.mapping;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
 import de.braintags.netrelay.NetRelay;
-import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
-import de.braintags.vertx.jomnigate.dataaccess.query.IQueryResult;
-import de.braintags.vertx.jomnigate.dataaccess.query.ISearchCondition;
+import de.braintags.netrelay.cache.CacheManager;
+import de.braintags.netrelay.cache.EntityCache;
+import de.braintags.netrelay.cache.NegativeCache;
+import de.braintags.netrelay.controller.Action;
+import de.braintags.netrelay.exception.DeadlineExceededException;
+import de.braintags.vertx.jomnigate.IDataStore;
 import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
 import de.braintags.vertx.jomnigate.mapping.IMapper;
 import de.braintags.vertx.jomnigate.mapping.IObjectReference;
 import de.braintags.vertx.jomnigate.mapping.IProperty;
 import de.braintags.vertx.jomnigate.mapping.IStoreObject;
 import io.vertx.core.AsyncResult;
-import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
 
 /**
  * NetRelayStoreObject is the bridge between http requests and mapper objects
@@ -47,10 +52,18 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
       .getLogger(NetRelayStoreObject.class);
 
   private final IMapper<T> mapper;
+  private final MapperBindingPlan<T> bindingPlan;
   private T entity = null;
   private final Collection<IObjectReference> objectReferences = new ArrayList<>();
   private Map<String, String> requestMap = new HashMap<>();
   private NetRelay netRelay;
+  private RoutingContext context;
+  private Action action = Action.UPDATE;
+  private boolean newEntity = false;
+  private final Set<IProperty> changedProperties = new LinkedHashSet<>();
+  // the values of the entity, when it was loaded; shared with other instances by the RequestIdentityMap
+  private Object[] originalValues;
+  private FieldSelection fieldSelection;
 
   /**
    * Constructor to create an instance from a mapper
@@ -61,10 +74,26 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
    *          the entity to be used
    */
   public NetRelayStoreObject(final IMapper<T> mapper, final T entity) {
+    this(mapper, entity, null);
+  }
+
+  /**
+   * Constructor to create an instance from a mapper
+   * 
+   * @param mapper
+   *          the {@link IMapper} to be used
+   * @param entity
+   *          the entity to be used
+   * @param netRelay
+   *          the instance of NetRelay, from where the cached {@link MapperBindingPlan} is taken
+   */
+  public NetRelayStoreObject(final IMapper<T> mapper, final T entity, final NetRelay netRelay) {
     if (mapper == null)
       throw new NullPointerException("Mapper must not be null");
     this.mapper = mapper;
     this.entity = entity;
+    this.netRelay = netRelay;
+    this.bindingPlan = resolveBindingPlan(mapper, netRelay);
   }
 
   /**
@@ -80,12 +109,40 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
    *          the instance of NetRelay
    */
   public NetRelayStoreObject(final Map<String, String> requestMap, final T entity, final IMapper<T> mapper, final NetRelay netRelay) {
+    this(null, requestMap, entity, mapper, netRelay);
+  }
+
+  /**
+   * Constructor to create an instance from a request. The {@link RoutingContext} of the request is used to apply the
+   * deadline of the request to the queries, which are executed by this instance
+   * 
+   * @param context
+   *          the context of the current request, may be null
+   * @param requestMap
+   *          a {@link Map} with key value pairs, which are describing the object properties
+   * @param entity
+   *          the entity to be used
+   * @param mapper
+   *          the mapper to be used
+   * @param netRelay
+   *          the instance of NetRelay
+   */
+  public NetRelayStoreObject(final RoutingContext context, final Map<String, String> requestMap, final T entity,
+      final IMapper<T> mapper, final NetRelay netRelay) {
     Objects.requireNonNull(mapper, "Mapper must not be null");
     Objects.requireNonNull(requestMap, "requestMap must not be null");
     this.mapper = mapper;
     this.requestMap = requestMap;
     this.netRelay = netRelay;
     this.entity = entity;
+    this.context = context;
+    this.bindingPlan = resolveBindingPlan(mapper, netRelay);
+  }
+
+  private static <T> MapperBindingPlan<T> resolveBindingPlan(final IMapper<T> mapper, final NetRelay netRelay) {
+    return netRelay != null && netRelay.getNetRelayMapperFactory() != null
+        ? netRelay.getNetRelayMapperFactory().getBindingPlan(mapper)
+        : new MapperBindingPlan<>(mapper);
   }
 
   /*
@@ -95,7 +152,7 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
    */
   @Override
   public Object get(final IProperty field) {
-    return requestMap.get(field.getName().toLowerCase());
+    return requestMap.get(bindingPlan.getKey(field));
   }
 
   /*
@@ -106,7 +163,7 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
    */
   @Override
   public boolean hasProperty(final IProperty field) {
-    return requestMap.containsKey(field.getName().toLowerCase());
+    return requestMap.containsKey(bindingPlan.getKey(field));
   }
 
   /*
@@ -117,7 +174,7 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
    */
   @Override
   public IStoreObject<T, Map<String, String>> put(final IProperty field, final Object value) {
-    requestMap.put(field.getName().toLowerCase(), String.valueOf(value));
+    requestMap.put(bindingPlan.getKey(field), String.valueOf(value));
     return this;
   }
 
@@ -126,6 +183,93 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
     return requestMap;
   }
 
+  /**
+   * The context of the request, from which the current instance was created
+   * 
+   * @return the context or null, if not created from a request
+   */
+  public RoutingContext getContext() {
+    return context;
+  }
+
+  /**
+   * The action, for which the current instance is used. Instances for {@link Action#DISPLAY} are loading their entity
+   * from a read replica, if one is defined. The default is {@link Action#UPDATE}
+   * 
+   * @return the action
+   */
+  public Action getAction() {
+    return action;
+  }
+
+  /**
+   * The action, for which the current instance is used. Instances for {@link Action#DISPLAY} are loading their entity
+   * from a read replica, if one is defined. The default is {@link Action#UPDATE}
+   * 
+   * @param action
+   *          the action to set
+   */
+  public void setAction(final Action action) {
+    this.action = action;
+  }
+
+  /**
+   * The fields, which are converted by {@link #initFromEntity(Handler)}. If null, all fields are converted
+   * 
+   * @return the fieldSelection
+   */
+  public FieldSelection getFieldSelection() {
+    return fieldSelection;
+  }
+
+  /**
+   * The fields, which are converted by {@link #initFromEntity(Handler)}. If null, all fields are converted
+   * 
+   * @param fieldSelection
+   *          the fieldSelection to set
+   */
+  public void setFieldSelection(final FieldSelection fieldSelection) {
+    this.fieldSelection = fieldSelection;
+  }
+
+  /**
+   * The {@link MapperBindingPlan} of the mapper, which is used by the current instance
+   * 
+   * @return the bindingPlan
+   */
+  public MapperBindingPlan<T> getBindingPlan() {
+    return bindingPlan;
+  }
+
+  /**
+   * The properties, whose values were changed by binding the request data into the entity. The set is filled by
+   * {@link #initToEntity(Handler)} and can be used to write only the changed fields of an entity
+   * 
+   * @return the changed properties
+   */
+  public Set<IProperty> getChangedProperties() {
+    return Collections.unmodifiableSet(changedProperties);
+  }
+
+  /**
+   * Returns true, if at least one property was changed by binding the request data into the entity
+   * 
+   * @return true, if changes exist
+   */
+  public boolean hasChanges() {
+    return !changedProperties.isEmpty();
+  }
+
+  /**
+   * Returns true, if the entity was created new by {@link #initToEntity(Handler)}, because the request data did not
+   * contain an id
+   * 
+   * @return true, if the entity is new
+   */
+  public boolean isNewEntity() {
+    return newEntity;
+  }
+
   /**
    * @return the mapper
    */
@@ -188,37 +332,95 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
       queryEntity(handler);
     } else {
       T returnObject = getMapper().getObjectFactory().createInstance(getMapper().getMapperClass());
+      newEntity = true;
       handler.handle(Future.succeededFuture(returnObject));
     }
   }
 
   /**
-   * Fetch the entity from datastore by executing a query
+   * Fetch the entity from the {@link RequestIdentityMap} of the current request, from the {@link EntityCache} of the
+   * mapper, if one is defined, or from datastore by executing a query. Queries of one request are collected by the
+   * {@link EntityBatchLoader} of the request, so that entities of the same mapper are loaded together. If the deadline
+   * of the current request is reached or the id is known as missing by the {@link NegativeCache} of the mapper, the
+   * query is not executed. The id is converted by the {@link IdNormalizer}, so that all caches are using the same key
+   * for a record
    * 
    * @param handler
    */
   private void queryEntity(final Handler<AsyncResult<T>> handler) {
-    Object id = get(getMapper().getIdInfo().getField());
-    IQuery<T> query = netRelay.getDatastore().createQuery(getMapper().getMapperClass());
-    ISearchCondition.isEqual(query.getMapper().getIdInfo().getIndexedField(), id);
-    query.execute(qrr -> {
-      if (qrr.failed()) {
-        handler.handle(Future.failedFuture(qrr.cause()));
-      } else {
-        IQueryResult<T> qr = qrr.result();
-        if (!qr.iterator().hasNext()) {
-          handler.handle(Future.failedFuture(new NoSuchRecordException("Could not find record with ID " + id)));
-        } else {
-          qr.iterator().next(ir -> {
-            if (ir.failed()) {
-              handler.handle(Future.failedFuture(ir.cause()));
-            } else {
-              handler.handle(Future.succeededFuture(ir.result()));
-            }
-          });
+    Object requestId = get(getMapper().getIdInfo().getField());
+    Object id;
+    try {
+      id = IdNormalizer.normalize(getMapper().getIdInfo().getField(), requestId);
+    } catch (IllegalArgumentException | ArithmeticException e) {
+      handler.handle(Future.failedFuture(new NoSuchRecordException("Could not find record with ID " + requestId)));
+      return;
+    }
+    Class<T> mapperClass = getMapper().getMapperClass();
+    RequestIdentityMap identityMap = context == null ? null : RequestIdentityMap.get(context);
+    T loaded = identityMap == null ? null : identityMap.get(mapperClass, id);
+    if (loaded != null) {
+      Object[] values = identityMap.getOriginalValues(loaded);
+      originalValues = values != null && values.length == bindingPlan.size() ? values : null;
+      handler.handle(Future.succeededFuture(loaded));
+      return;
+    }
+    CacheManager cacheManager = netRelay.getCacheManager();
+    EntityCache<T> cache = cacheManager == null ? null : cacheManager.getEntityCache(mapperClass);
+    NegativeCache negativeCache = cacheManager == null ? null : cacheManager.getNegativeCache(mapperClass);
+    if (cache != null) {
+      T cached = cache.get(id);
+      if (cached != null) {
+        if (identityMap != null) {
+          originalValues = readValues(cached);
+          identityMap.put(mapperClass, id, cached, originalValues);
         }
+        handler.handle(Future.succeededFuture(cached));
+        return;
       }
-    });
+    }
+    if (negativeCache != null && negativeCache.isMissing(id)) {
+      handler.handle(Future.failedFuture(new NoSuchRecordException("Could not find record with ID " + id)));
+      return;
+    }
+    QueryDeadlineGuard guard = netRelay.getStoreObjectFactory().getQueryDeadlineGuard();
+    String description = "query " + mapperClass.getSimpleName() + " with ID " + id;
+    if (guard.isExpired(context)) {
+      handler.handle(Future.failedFuture(new DeadlineExceededException(description)));
+      return;
+    }
+    Handler<AsyncResult<T>> guardedHandler = guard.guard(context, description, handler);
+    // an invalidation during the query means, that the result may be outdated already
+    long cacheGeneration = cache == null ? 0 : cache.getGeneration();
+    long missingGeneration = negativeCache == null ? 0 : negativeCache.getGeneration();
+    IDataStore<?, ?> datastore = netRelay.getDatastore(context, action, mapperClass, id);
+    // records of read replicas may be outdated, so they are not shared with other callers
+    boolean primary = netRelay.getDatastoreManager() == null || netRelay.getDatastoreManager().isPrimary(datastore);
+    // executed once per loaded record before any instance binds into it, since all instances share the record
+    Handler<T> loadedHandler = !primary ? null : record -> {
+      if (cache != null) {
+        cache.put(id, record, cacheGeneration);
+      }
+      if (identityMap != null) {
+        identityMap.put(mapperClass, id, record, readValues(record));
+      }
+    };
+    Handler<AsyncResult<T>> resultHandler = res -> {
+      if (res.succeeded() && primary && identityMap != null) {
+        Object[] values = identityMap.getOriginalValues(res.result());
+        originalValues = values != null && values.length == bindingPlan.size() ? values : null;
+      } else if (res.failed() && primary && negativeCache != null && res.cause() instanceof NoSuchRecordException) {
+        negativeCache.markMissing(id, missingGeneration);
+      }
+      guardedHandler.handle(res);
+    };
+    if (context != null) {
+      EntityBatchLoader.get(context, netRelay).load(datastore, getMapper(), id, loadedHandler, resultHandler);
+    } else {
+      EntityBatchLoader loader = new EntityBatchLoader(netRelay);
+      loader.load(datastore, getMapper(), id, loadedHandler, resultHandler);
+      loader.flush();
+    }
   }
 
   protected void finishToEntity(final T tmpObject, final Handler<AsyncResult<Void>> handler) {
@@ -232,38 +434,87 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
 
   /**
    * Iterate the fields if the mapper and - if a content exists in the current data -
-   * add the new value into the entity
+   * add the new value into the entity. Fields without content are skipped. Fields with a {@link FieldBinder} are bound
+   * directly, all other fields are awaited by one {@link BindingBarrier}. If the binding fails, the bound fields are
+   * reset to their former values, since the entity may be shared with other instances of the same request
    * 
    * @param tmpObject
    * @param handler
    */
-  @SuppressWarnings({ "unchecked", "rawtypes" })
   protected final void iterateFields(final T tmpObject, final Handler<AsyncResult<Void>> handler) {
     LOGGER.debug("start iterateFields");
-    Set<String> fieldNames = getMapper().getFieldNames();
-    List<Future> fl = new ArrayList<>();
-    for (String fieldName : fieldNames) {
-      Future f = Future.future();
-      fl.add(f);
-      IProperty field = getMapper().getField(fieldName);
-      if (hasProperty(field)) {
-        LOGGER.debug("handling field " + field.getFullName());
-        field.getPropertyMapper().fromStoreObject(tmpObject, this, field, f.completer());
+    BitSet bound = new BitSet(bindingPlan.size());
+    Object[] oldValues = new Object[bindingPlan.size()];
+    BindingBarrier barrier = new BindingBarrier(result -> {
+      if (result.succeeded()) {
+        recordChanges(tmpObject, bound, originalValues != null ? originalValues : oldValues);
       } else {
-        f.complete();
+        resetValues(tmpObject, bound, oldValues);
+      }
+      handler.handle(result);
+    });
+    for (int i = 0; i < bindingPlan.size() && !barrier.isDone(); i++) {
+      if (requestMap.containsKey(bindingPlan.getKey(i))) {
+        IProperty field = bindingPlan.getProperty(i);
+        if (LOGGER.isDebugEnabled())
+          LOGGER.debug("handling field " + field.getFullName());
+        bound.set(i);
+        FieldBinder binder = bindingPlan.getBinder(i);
+        oldValues[i] = readValue(i, tmpObject);
+        if (binder == null || !binder.bind(tmpObject, requestMap.get(bindingPlan.getKey(i)))) {
+          field.getPropertyMapper().fromStoreObject(tmpObject, this, field, barrier.add());
+        }
       }
     }
-    CompositeFuture cf = CompositeFuture.all(fl);
-    cf.setHandler(cfr -> {
-      if (cfr.failed()) {
-        handler.handle(Future.failedFuture(cfr.cause()));
-      } else {
-        handler.handle(Future.succeededFuture());
+    barrier.arm();
+  }
+
+  private Object readValue(final int index, final T tmpObject) {
+    FieldBinder binder = bindingPlan.getBinder(index);
+    return binder != null ? binder.read(tmpObject) : bindingPlan.getProperty(index).getPropertyAccessor()
+        .readData(tmpObject);
+  }
+
+  private Object[] readValues(final T tmpObject) {
+    Object[] values = new Object[bindingPlan.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = readValue(i, tmpObject);
+    }
+    return values;
+  }
+
+  private void resetValues(final T tmpObject, final BitSet bound, final Object[] oldValues) {
+    for (int i = bound.nextSetBit(0); i >= 0; i = bound.nextSetBit(i + 1)) {
+      bindingPlan.getProperty(i).getPropertyAccessor().writeData(tmpObject, oldValues[i]);
+    }
+  }
+
+  /**
+   * Compares the values of the bound fields with the values before binding and stores the changed properties. For a
+   * new entity all bound fields are treated as changed. Collections and maps, which were modified in place, are treated
+   * as changed as well, since the former content is not known anymore. For an entity, which was loaded during the
+   * current request, the values are compared with the values at the time of loading, so that changes, which were
+   * bound by another instance of the same request, are detected as well
+   * 
+   * @param tmpObject
+   *          the entity, where the values were bound into
+   * @param bound
+   *          the indexes of the fields, which were bound
+   * @param oldValues
+   *          the values of the fields before binding or at the time of loading
+   */
+  private void recordChanges(final T tmpObject, final BitSet bound, final Object[] oldValues) {
+    for (int i = bound.nextSetBit(0); i >= 0; i = bound.nextSetBit(i + 1)) {
+      IProperty field = bindingPlan.getProperty(i);
+      Object newValue = readValue(i, tmpObject);
+      Object oldValue = oldValues[i];
+      boolean modifiedInPlace = oldValue == newValue && (oldValue instanceof Collection || oldValue instanceof Map);
+      if (newEntity || modifiedInPlace || !Objects.deepEquals(oldValue, newValue)) {
+        changedProperties.add(field);
       }
-    });
+    }
   }
 
-  @SuppressWarnings({ "unchecked", "rawtypes" })
   protected void iterateObjectReferences(final Object tmpObject, final Handler<AsyncResult<Void>> handler) {
     LOGGER.debug("start iterateObjectReferences");
     if (getObjectReferences().isEmpty()) {
@@ -271,47 +522,35 @@ public class NetRelayStoreObject<T> implements IStoreObject<T, Map<String, Strin
       handler.handle(Future.succeededFuture());
       return;
     }
-    Collection<IObjectReference> refs = getObjectReferences();
-    List<Future> fl = new ArrayList<>(refs.size());
-
-    for (IObjectReference ref : refs) {
-      LOGGER.debug("handling object reference " + ref.getField().getFullName());
-      Future f = Future.future();
-      fl.add(f);
-      ref.getField().getPropertyMapper().fromObjectReference(tmpObject, ref, f.completer());
-    }
-    CompositeFuture cf = CompositeFuture.all(fl);
-    cf.setHandler(cfr -> {
-      if (cfr.failed()) {
-        handler.handle(Future.failedFuture(cfr.cause()));
-      } else {
-        handler.handle(Future.succeededFuture());
+    BindingBarrier barrier = new BindingBarrier(handler);
+    for (IObjectReference ref : getObjectReferences()) {
+      if (barrier.isDone()) {
+        break;
       }
-    });
+      if (LOGGER.isDebugEnabled())
+        LOGGER.debug("handling object reference " + ref.getField().getFullName());
+      // the former value of a reference is not known, so it is treated as changed
+      changedProperties.add(ref.getField());
+      ref.getField().getPropertyMapper().fromObjectReference(tmpObject, ref, barrier.add());
+    }
+    barrier.arm();
   }
 
   /**
-   * Initialize the internal entity into the StoreObject
+   * Initialize the internal entity into the StoreObject. If a {@link FieldSelection} is set, only the selected fields
+   * are converted
    * 
    * @param handler
    */
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   public void initFromEntity(final Handler<AsyncResult<Void>> handler) {
-    List<Future> fl = new ArrayList<>(mapper.getFieldNames().size());
-    for (String fieldName : mapper.getFieldNames()) {
-      IProperty field = mapper.getField(fieldName);
-      Future f = Future.future();
-      fl.add(f);
-      field.getPropertyMapper().intoStoreObject(entity, this, field, f.completer());
-    }
-    CompositeFuture cf = CompositeFuture.all(fl);
-    cf.setHandler(cfr -> {
-      if (cfr.failed()) {
-        handler.handle(Future.failedFuture(cfr.cause()));
-      } else {
-        handler.handle(Future.succeededFuture());
+    BindingBarrier barrier = new BindingBarrier(handler);
+    for (int i = 0; i < bindingPlan.size() && !barrier.isDone(); i++) {
+      IProperty field = bindingPlan.getProperty(i);
+      if (fieldSelection == null || fieldSelection.contains(field)) {
+        field.getPropertyMapper().intoStoreObject(entity, this, field, barrier.add());
       }
-    });
+    }
+    barrier.arm();
   }
 
   /*
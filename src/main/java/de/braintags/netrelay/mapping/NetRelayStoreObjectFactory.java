@@ -12,15 +12,24 @@
  */
 package de.braintags.netrelay.mapping;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.controller.Action;
+import de.braintags.netrelay.datastore.EntityWriter;
+import de.braintags.netrelay.datastore.KeyAllocator;
 import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
 import de.braintags.vertx.jomnigate.mapping.IStoreObject;
 import de.braintags.vertx.jomnigate.mapping.impl.AbstractStoreObjectFactory;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
 
 /**
  * The {@link NetRelayStoreObjectFactory} is used, when instances shall be created from the information of a request.
@@ -30,6 +39,7 @@ import io.vertx.core.Handler;
  */
 public class NetRelayStoreObjectFactory extends AbstractStoreObjectFactory<Map<String, String>> {
   private final NetRelay netRelay;
+  private final QueryDeadlineGuard queryDeadlineGuard = new QueryDeadlineGuard();
 
   public NetRelayStoreObjectFactory(final NetRelay netRelay) {
     this.netRelay = netRelay;
@@ -38,7 +48,25 @@ public class NetRelayStoreObjectFactory extends AbstractStoreObjectFactory<Map<S
   @Override
   public <T> void createStoreObject(final IMapper<T> mapper, final T entity,
       final Handler<AsyncResult<IStoreObject<T, Map<String, String>>>> handler) {
-    NetRelayStoreObject<T> storeObject = new NetRelayStoreObject<>(mapper, entity);
+    createStoreObject(mapper, entity, null, handler);
+  }
+
+  /**
+   * Creates an instance from the given entity, where only the fields of the given {@link FieldSelection} are converted
+   * 
+   * @param mapper
+   *          the mapper of the entity
+   * @param entity
+   *          the entity to be converted
+   * @param fieldSelection
+   *          the fields to be converted; if null, all fields are converted
+   * @param handler
+   *          the handler to be informed about the created instance
+   */
+  public <T> void createStoreObject(final IMapper<T> mapper, final T entity, final FieldSelection fieldSelection,
+      final Handler<AsyncResult<IStoreObject<T, Map<String, String>>>> handler) {
+    NetRelayStoreObject<T> storeObject = new NetRelayStoreObject<>(mapper, entity, netRelay);
+    storeObject.setFieldSelection(fieldSelection);
     storeObject.initFromEntity(initResult -> {
       if (initResult.failed()) {
         handler.handle(Future.failedFuture(initResult.cause()));
@@ -64,7 +92,52 @@ public class NetRelayStoreObjectFactory extends AbstractStoreObjectFactory<Map<S
    */
   public <T> void createStoreObject(final Map<String, String> storedObject, final T entity, final IMapper<T> mapper,
       final Handler<AsyncResult<IStoreObject<T, Map<String, String>>>> handler) {
-    NetRelayStoreObject<T> storeObject = new NetRelayStoreObject<>(storedObject, entity, mapper, netRelay);
+    createStoreObject(null, storedObject, entity, mapper, handler);
+  }
+
+  /**
+   * Creates an instance from the information of a request. The remaining time budget of the request is applied to
+   * the queries, which are executed to load the entity
+   * 
+   * @param context
+   *          the context of the current request, may be null
+   * @param storedObject
+   *          the information from the request
+   * @param entity
+   *          an existing entity or null
+   * @param mapper
+   *          the mapper to be used
+   * @param handler
+   *          the handler to be informed
+   */
+  public <T> void createStoreObject(final RoutingContext context, final Map<String, String> storedObject,
+      final T entity, final IMapper<T> mapper,
+      final Handler<AsyncResult<IStoreObject<T, Map<String, String>>>> handler) {
+    createStoreObject(context, Action.UPDATE, storedObject, entity, mapper, handler);
+  }
+
+  /**
+   * Creates an instance from the information of a request for the given action. Instances for
+   * {@link Action#DISPLAY} are loading their entity from a read replica, if one is defined
+   * 
+   * @param context
+   *          the context of the current request, may be null
+   * @param action
+   *          the action, for which the instance is used
+   * @param storedObject
+   *          the information from the request
+   * @param entity
+   *          an existing entity or null
+   * @param mapper
+   *          the mapper to be used
+   * @param handler
+   *          the handler to be informed
+   */
+  public <T> void createStoreObject(final RoutingContext context, final Action action,
+      final Map<String, String> storedObject, final T entity, final IMapper<T> mapper,
+      final Handler<AsyncResult<IStoreObject<T, Map<String, String>>>> handler) {
+    NetRelayStoreObject<T> storeObject = new NetRelayStoreObject<>(context, storedObject, entity, mapper, netRelay);
+    storeObject.setAction(action);
     storeObject.initToEntity(result -> {
       if (result.failed()) {
         handler.handle(Future.failedFuture(result.cause()));
@@ -74,4 +147,147 @@ public class NetRelayStoreObjectFactory extends AbstractStoreObjectFactory<Map<S
     });
   }
 
+  /**
+   * Creates instances from a list of request data of the same mapper in one pass. All instances are using the cached
+   * {@link MapperBindingPlan} of the mapper and the entities are loaded together by the {@link EntityBatchLoader} of
+   * the request. The result list has the same order as the list of request data. If one of the instances can't be
+   * created, the handler fails with the first error
+   * 
+   * @param context
+   *          the context of the current request, may be null
+   * @param storedObjects
+   *          the information from the request, one map per entity
+   * @param mapper
+   *          the mapper to be used
+   * @param handler
+   *          the handler to be informed
+   */
+  public <T> void createStoreObjects(final RoutingContext context, final List<Map<String, String>> storedObjects,
+      final IMapper<T> mapper, final Handler<AsyncResult<List<NetRelayStoreObject<T>>>> handler) {
+    List<NetRelayStoreObject<T>> storeObjects = new ArrayList<>(storedObjects.size());
+    for (Map<String, String> storedObject : storedObjects) {
+      storeObjects.add(new NetRelayStoreObject<>(context, storedObject, null, mapper, netRelay));
+    }
+    BindingBarrier barrier = new BindingBarrier(result -> {
+      if (result.failed()) {
+        handler.handle(Future.failedFuture(result.cause()));
+      } else {
+        handler.handle(Future.succeededFuture(storeObjects));
+      }
+    });
+    for (NetRelayStoreObject<T> storeObject : storeObjects) {
+      if (barrier.isDone()) {
+        break;
+      }
+      storeObject.initToEntity(barrier.add());
+    }
+    barrier.arm();
+  }
+
+  /**
+   * Saves the entities of the given instances by one write operation per datastore. Instances of existing entities
+   * without changes are skipped. Existing entities with changes are written by
+   * {@link EntityWriter#updateFields(RoutingContext, IMapper, Object, java.util.Collection, Handler)}, so that only
+   * their changed properties are written; if the datastore does not support this, they are saved completely together
+   * with the new entities. For sharded mappers the entities are written into the shard of their id, so that the
+   * id must be set before. New entities without id of mappers, which have a {@link KeyAllocator}, are getting their id
+   * from the allocator before. The entities are written by the {@link EntityWriter} of NetRelay
+   * 
+   * @param mapper
+   *          the mapper of the instances
+   * @param storeObjects
+   *          the instances, which were created by {@link #createStoreObjects(RoutingContext, List, IMapper, Handler)}
+   * @param handler
+   *          the handler to be informed with one {@link SaveResult} per instance, in the order of the given instances.
+   *          A failed write is reported by the result of the instance; the handler fails only, if no entity could be
+   *          written, because the keys of new entities could not be allocated
+   */
+  public <T> void saveStoreObjects(final IMapper<T> mapper, final List<NetRelayStoreObject<T>> storeObjects,
+      final Handler<AsyncResult<List<SaveResult<T>>>> handler) {
+    KeyAllocator allocator = netRelay.getKeyAllocator(mapper.getMapperClass());
+    if (allocator == null) {
+      writeStoreObjects(mapper, storeObjects, handler);
+      return;
+    }
+    IProperty idField = mapper.getIdInfo().getField();
+    List<Future> futures = new ArrayList<>();
+    for (NetRelayStoreObject<T> storeObject : storeObjects) {
+      T entity = storeObject.getEntity();
+      if (storeObject.isNewEntity() && idField.getPropertyAccessor().readData(entity) == null) {
+        Future<Long> f = Future.future();
+        futures.add(f);
+        allocator.nextKey(kr -> {
+          if (kr.succeeded()) {
+            idField.getPropertyAccessor().writeData(entity, IdNormalizer.normalize(idField, kr.result()));
+          }
+          f.handle(kr);
+        });
+      }
+    }
+    CompositeFuture.all(futures).setHandler(result -> {
+      if (result.failed()) {
+        handler.handle(Future.failedFuture(result.cause()));
+      } else {
+        writeStoreObjects(mapper, storeObjects, handler);
+      }
+    });
+  }
+
+  private <T> void writeStoreObjects(final IMapper<T> mapper, final List<NetRelayStoreObject<T>> storeObjects,
+      final Handler<AsyncResult<List<SaveResult<T>>>> handler) {
+    RoutingContext context = storeObjects.isEmpty() ? null : storeObjects.get(0).getContext();
+    EntityWriter writer = netRelay.getEntityWriter();
+    List<SaveResult<T>> results = new ArrayList<>(Collections.nCopies(storeObjects.size(), null));
+    List<Integer> written = new ArrayList<>();
+    List<Integer> updated = new ArrayList<>();
+    List<Future> updates = new ArrayList<>();
+    for (int i = 0; i < storeObjects.size(); i++) {
+      NetRelayStoreObject<T> storeObject = storeObjects.get(i);
+      if (storeObject.isNewEntity()) {
+        written.add(i);
+      } else if (storeObject.hasChanges()) {
+        Future<Void> f = Future.future();
+        updated.add(i);
+        updates.add(f);
+        writer.updateFields(context, mapper, storeObject.getEntity(), storeObject.getChangedProperties(), f);
+      } else {
+        results.set(i, new SaveResult<>(storeObject, SaveResult.State.UNCHANGED, null));
+      }
+    }
+    CompositeFuture.join(updates).setHandler(ur -> {
+      for (int k = 0; k < updates.size(); k++) {
+        int index = updated.get(k);
+        Throwable cause = updates.get(k).cause();
+        if (cause instanceof UnsupportedOperationException) {
+          written.add(index);
+        } else {
+          results.set(index, new SaveResult<>(storeObjects.get(index),
+              cause == null ? SaveResult.State.UPDATED : SaveResult.State.FAILED, cause));
+        }
+      }
+      List<T> entities = new ArrayList<>();
+      written.forEach(index -> entities.add(storeObjects.get(index).getEntity()));
+      writer.saveEach(context, mapper, entities, entityResults -> {
+        for (int k = 0; k < written.size(); k++) {
+          NetRelayStoreObject<T> storeObject = storeObjects.get(written.get(k));
+          AsyncResult<Void> result = entityResults.get(k);
+          SaveResult.State state = result.failed() ? SaveResult.State.FAILED
+              : storeObject.isNewEntity() ? SaveResult.State.INSERTED : SaveResult.State.SAVED;
+          results.set(written.get(k), new SaveResult<>(storeObject, state, result.cause()));
+        }
+        handler.handle(Future.succeededFuture(results));
+      });
+    });
+  }
+
+  /**
+   * The {@link QueryDeadlineGuard} which applies the deadlines of requests to queries and counts skipped, cancelled
+   * and late queries
+   * 
+   * @return the queryDeadlineGuard
+   */
+  public QueryDeadlineGuard getQueryDeadlineGuard() {
+    return queryDeadlineGuard;
+  }
+
 }
@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.mapping;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.braintags.netrelay.exception.DeadlineExceededException;
+import de.braintags.netrelay.util.RequestDeadline;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * The QueryDeadlineGuard applies the {@link RequestDeadline} of a request to the datastore queries, which are executed
+ * for it. Queries, where the deadline is reached before they are started, are skipped. Queries, which are running
+ * when the deadline is reached, are cancelled and their late result is dropped. All those cases are counted.
+ * <br>
+ * The guard of a running query is executed by the deadline itself, so that it follows a changed deadline and runs
+ * after the deadline answered the request with 503. In this case the caller is not informed anymore, so that the
+ * request is not failed twice; otherwise the caller is informed by a {@link DeadlineExceededException}.
+ * 
+ * @author Michael Remme
+ * 
+ */
+public class QueryDeadlineGuard {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(QueryDeadlineGuard.class);
+
+  private final AtomicLong skippedQueries = new AtomicLong();
+  private final AtomicLong cancelledQueries = new AtomicLong();
+  private final AtomicLong lateResults = new AtomicLong();
+
+  /**
+   * Checks wether the deadline of the given request is reached already. If so, the query is counted as skipped
+   * 
+   * @param context
+   *          the context of the current request, may be null
+   * @return true, if the deadline is reached and the query shall not be executed
+   */
+  public boolean isExpired(final RoutingContext context) {
+    RequestDeadline deadline = context == null ? null : RequestDeadline.get(context);
+    if (deadline != null && deadline.isExpired()) {
+      skippedQueries.incrementAndGet();
+      LOGGER.debug("skipping query, deadline reached");
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Creates a handler, which informs the given handler about the result of a query, if it arrives before the deadline
+   * of the request is reached. Otherwise the late result is dropped and the handler is informed about a
+   * {@link DeadlineExceededException} when the deadline is reached, if the request was not failed by the deadline
+   * 
+   * @param context
+   *          the context of the current request, may be null
+   * @param action
+   *          a description of the action for the error message
+   * @param handler
+   *          the handler to be informed
+   * @return the guarded handler or the given one, if the request has no deadline
+   */
+  public <R> Handler<AsyncResult<R>> guard(final RoutingContext context, final String action,
+      final Handler<AsyncResult<R>> handler) {
+    RequestDeadline deadline = context == null ? null : RequestDeadline.get(context);
+    if (deadline == null) {
+      return handler;
+    }
+    GuardedHandler<R> guarded = new GuardedHandler<>(context, deadline, action, handler);
+    deadline.addDeadlineHandler(guarded.deadlineHandler);
+    return guarded;
+  }
+
+  /**
+   * The number of queries, which were not executed, because the deadline was reached before
+   * 
+   * @return the skippedQueries
+   */
+  public long getSkippedQueries() {
+    return skippedQueries.get();
+  }
+
+  /**
+   * The number of queries, which were running when the deadline was reached
+   * 
+   * @return the cancelledQueries
+   */
+  public long getCancelledQueries() {
+    return cancelledQueries.get();
+  }
+
+  /**
+   * The number of query results, which arrived after the deadline was reached and were dropped
+   * 
+   * @return the lateResults
+   */
+  public long getLateResults() {
+    return lateResults.get();
+  }
+
+  private class GuardedHandler<R> implements Handler<AsyncResult<R>> {
+    private final RoutingContext context;
+    private final RequestDeadline deadline;
+    private final String action;
+    private final Handler<AsyncResult<R>> handler;
+    private final Handler<Void> deadlineHandler = v -> expire();
+    // set by the first of result and deadline, the other one is dropped
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    GuardedHandler(final RoutingContext context, final RequestDeadline deadline, final String action,
+        final Handler<AsyncResult<R>> handler) {
+      this.context = context;
+      this.deadline = deadline;
+      this.action = action;
+      this.handler = handler;
+    }
+
+    private void expire() {
+      if (!done.compareAndSet(false, true)) {
+        return;
+      }
+      cancelledQueries.incrementAndGet();
+      if (context.failed()) {
+        LOGGER.debug("cancelled " + action + ", request was answered by the deadline");
+      } else {
+        handler.handle(Future.failedFuture(new DeadlineExceededException(action)));
+      }
+    }
+
+    @Override
+    public void handle(final AsyncResult<R> result) {
+      if (done.compareAndSet(false, true)) {
+        deadline.removeDeadlineHandler(deadlineHandler);
+        handler.handle(result);
+      } else {
+        lateResults.incrementAndGet();
+        LOGGER.debug("dropping late result of " + action);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.mapping;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * The RequestIdentityMap contains the entities, which were loaded during one request, so that each pair of mapper and
+ * id is loaded at most once per request, even if several controllers are loading the same record or the request is
+ * rerouted. All callers are receiving the same instance of an entity. Together with the entity the values of its
+ * fields at the time of loading are stored, so that each caller can detect all changes of the request.
+ * <br>
+ * An instance is stored inside the {@link RoutingContext} under the property {@link #CONTEXT_PROPERTY} and ends with
+ * the request. It is NOT thread safe and must be used from the thread of the request.
+ *
+ * @author Michael Remme
+ *
+ */
+public class RequestIdentityMap {
+
+  /**
+   * The name of the property, by which the instance is stored inside the {@link RoutingContext}
+   */
+  public static final String CONTEXT_PROPERTY = "netrelayIdentityMap";
+
+  private final Map<Class<?>, Map<String, Object>> entities = new HashMap<>();
+  private final Map<Object, Object[]> originalValues = new IdentityHashMap<>();
+
+  private RequestIdentityMap() {
+    // created by get
+  }
+
+  /**
+   * Get the identity map of the current request. If none exists, it is created
+   *
+   * @param context
+   *          the context of the current request
+   * @return the identity map of the request
+   */
+  public static RequestIdentityMap get(final RoutingContext context) {
+    RequestIdentityMap map = context.get(CONTEXT_PROPERTY);
+    if (map == null) {
+      map = new RequestIdentityMap();
+      context.put(CONTEXT_PROPERTY, map);
+    }
+    return map;
+  }
+
+  /**
+   * Get the entity with the given id, if it was loaded during the current request
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the entity
+   * @return the entity or null
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(final Class<T> mapperClass, final Object id) {
+    Map<String, Object> map = entities.get(mapperClass);
+    return map == null ? null : (T) map.get(String.valueOf(id));
+  }
+
+  /**
+   * Register an entity, which was loaded during the current request
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the entity
+   * @param entity
+   *          the entity
+   */
+  public <T> void put(final Class<T> mapperClass, final Object id, final T entity) {
+    put(mapperClass, id, entity, null);
+  }
+
+  /**
+   * Register an entity, which was loaded during the current request, together with the values of its fields at the
+   * time of loading
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the entity
+   * @param entity
+   *          the entity
+   * @param values
+   *          the values of the fields in the order of the {@link MapperBindingPlan} of the mapper; may be null
+   */
+  public <T> void put(final Class<T> mapperClass, final Object id, final T entity, final Object[] values) {
+    entities.computeIfAbsent(mapperClass, c -> new HashMap<>()).put(String.valueOf(id), entity);
+    if (values != null) {
+      originalValues.put(entity, values);
+    }
+  }
+
+  /**
+   * Get the values of the fields of the given entity at the time, when it was loaded
+   *
+   * @param entity
+   *          the entity
+   * @return the values in the order of the {@link MapperBindingPlan} of the mapper or null, if not known
+   */
+  public Object[] getOriginalValues(final Object entity) {
+    return originalValues.get(entity);
+  }
+
+  /**
+   * Remove the entity with the given id, for instance, because it was deleted
+   *
+   * @param mapperClass
+   *          the class of the mapper
+   * @param id
+   *          the id of the entity
+   */
+  public void remove(final Class<?> mapperClass, final Object id) {
+    Map<String, Object> map = entities.get(mapperClass);
+    if (map != null) {
+      Object entity = map.remove(String.valueOf(id));
+      if (entity != null) {
+        originalValues.remove(entity);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.mapping;
+
+/**
+ * The result of saving one {@link NetRelayStoreObject} by the method saveStoreObjects of
+ * {@link NetRelayStoreObjectFactory}. It tells, whether the entity was inserted, written completely, written by its
+ * changed fields or skipped, because it had no changes
+ *
+ * @author Michael Remme
+ *
+ * @param <T>
+ *          the class of the entity
+ */
+public class SaveResult<T> {
+
+  /**
+   * The ways, in which a store object was saved
+   */
+  public enum State {
+    /**
+     * A new entity was inserted
+     */
+    INSERTED,
+    /**
+     * An existing entity was written completely
+     */
+    SAVED,
+    /**
+     * The changed fields of an existing entity were written
+     */
+    UPDATED,
+    /**
+     * An existing entity had no changes and was not written
+     */
+    UNCHANGED,
+    /**
+     * The write failed, see {@link SaveResult#getCause()}
+     */
+    FAILED
+  }
+
+  private final NetRelayStoreObject<T> storeObject;
+  private final State state;
+  private final Throwable cause;
+
+  SaveResult(final NetRelayStoreObject<T> storeObject, final State state, final Throwable cause) {
+    this.storeObject = storeObject;
+    this.state = state;
+    this.cause = cause;
+  }
+
+  /**
+   * The store object, which was saved
+   *
+   * @return the storeObject
+   */
+  public NetRelayStoreObject<T> getStoreObject() {
+    return storeObject;
+  }
+
+  /**
+   * The way, in which the store object was saved
+   *
+   * @return the state
+   */
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * The cause of a failed write
+   *
+   * @return the cause or null, if the write succeeded
+   */
+  public Throwable getCause() {
+    return cause;
+  }
+
+  /**
+   * Returns true, if the write failed
+   *
+   * @return true, if failed
+   */
+  public boolean failed() {
+    return state == State.FAILED;
+  }
+
+  @Override
+  public String toString() {
+    return state + (cause == null ? "" : ": " + cause.getMessage());
+  }
+
+}
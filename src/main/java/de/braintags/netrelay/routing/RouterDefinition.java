@@ -44,6 +44,7 @@ public class RouterDefinition {
   private boolean failureDefinition = false;
   private Properties handlerProperties = new Properties();
   private CaptureCollection[] captureCollection;
+  private long timeout = -1;
   private IController controllerInstance;
 
   /**
@@ -254,6 +255,29 @@ public class RouterDefinition {
     this.active = active;
   }
 
+  /**
+   * The timeout in milliseconds, which overrides the timeout of the TimeoutController for the routes of this
+   * definition. The timeout is calculated from the start of the request. A value <= 0 means, that the timeout of the
+   * TimeoutController is used
+   *
+   * @return the timeout
+   */
+  public final long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * The timeout in milliseconds, which overrides the timeout of the TimeoutController for the routes of this
+   * definition. The timeout is calculated from the start of the request. A value <= 0 means, that the timeout of the
+   * TimeoutController is used
+   *
+   * @param timeout
+   *          the timeout to set
+   */
+  public final void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
   /**
    * Get the instantiated controller of the current definition
    * 
@@ -17,6 +17,7 @@ import java.util.List;
 
 import de.braintags.netrelay.NetRelay;
 import de.braintags.netrelay.controller.IController;
+import de.braintags.netrelay.util.RequestDeadline;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.ext.web.Route;
@@ -52,12 +53,27 @@ public class RoutingInit {
   private static void initRegularDefinition(Vertx vertx, NetRelay netRelay, Router router, RouterDefinition def)
       throws Exception {
     IController controller = def.instantiateController(vertx, netRelay);
+    if (def.getTimeout() > 0) {
+      initTimeoutOverride(router, def);
+    }
     List<Route> routes = getRoutes(router, def);
     for (Route route : routes) {
       route.handler(controller);
     }
   }
 
+  /**
+   * Adds the routes of the definition a second time in front of the controller, to override the deadline of the
+   * request with the timeout of the definition
+   */
+  private static void initTimeoutOverride(Router router, RouterDefinition def) {
+    LOGGER.info("init timeout override of " + def.getTimeout() + " ms for definition: " + def.getName());
+    List<Route> routes = getRoutes(router, def);
+    for (Route route : routes) {
+      route.handler(RequestDeadline.createOverrideHandler(def.getTimeout()));
+    }
+  }
+
   private static void initFailureDefinition(Vertx vertx, NetRelay netRelay, Router router, RouterDefinition def)
       throws Exception {
     LOGGER.info("init Failure Definition: " + def.getName());
@@ -0,0 +1,287 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.typehandler;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import de.braintags.vertx.jomnigate.datatypes.geojson.GeoPoint;
+import de.braintags.vertx.jomnigate.datatypes.geojson.Position;
+import io.vertx.core.json.DecodeException;
+
+/**
+ * The CoordinateCodec reads and writes the coordinates of a {@link Position} in the form [x,y], like they are sent by
+ * forms and map apis. The numbers are read in place from the String into primitives, without building a json tree or
+ * substrings. Numbers with up to 15 significant digits and a small exponent, like all usual coordinates, are
+ * converted exactly by a single multiplication or division; only longer numbers are handed to
+ * {@link Double#parseDouble(String)}. Only arrays with at least two numbers, which are valid json numbers, are
+ * accepted. Numbers are written like {@link Double#toString()} does, so that a written value is parsed back to the
+ * same coordinates. {@link #appendTo(Position, StringBuilder)} writes without creating a String.
+ *
+ * @author Michael Remme
+ *
+ */
+public class CoordinateCodec {
+  private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(64));
+  private static final ThreadLocal<CoordinateReader> READER = ThreadLocal.withInitial(CoordinateReader::new);
+  private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+      1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+  private static final int MAX_EXACT_DIGITS = 15;
+
+  private CoordinateCodec() {
+    // noop
+  }
+
+  /**
+   * Parse a {@link GeoPoint} from the given coordinates
+   *
+   * @param source
+   *          the coordinates in the form [x,y]
+   * @return the GeoPoint
+   * @throws DecodeException
+   *           if the source is not a valid array of coordinates
+   */
+  public static GeoPoint parseGeoPoint(final String source) {
+    return new GeoPoint(parsePosition(source));
+  }
+
+  /**
+   * Parse a {@link Position} from the given coordinates
+   *
+   * @param source
+   *          the coordinates in the form [x,y]
+   * @return the Position
+   * @throws DecodeException
+   *           if the source is not a valid array of coordinates
+   */
+  public static Position parsePosition(final String source) {
+    int length = source.length();
+    int i = skipWhitespace(source, 0);
+    if (i >= length || source.charAt(i) != '[') {
+      throw invalid(source);
+    }
+    CoordinateReader reader = READER.get();
+    reader.reset();
+    i++;
+    while (true) {
+      i = skipWhitespace(source, i);
+      int end = scanNumber(source, i);
+      double value = parseNumber(source, i, end);
+      if (Double.isInfinite(value)) {
+        throw invalid(source);
+      }
+      reader.add(value);
+      i = skipWhitespace(source, end);
+      if (i < length && source.charAt(i) == ',') {
+        i++;
+      } else if (i < length && source.charAt(i) == ']') {
+        i++;
+        break;
+      } else {
+        throw invalid(source);
+      }
+    }
+    if (reader.size < 2 || skipWhitespace(source, i) != length) {
+      throw invalid(source);
+    }
+    return new Position(reader);
+  }
+
+  /**
+   * Write the coordinates of the given {@link GeoPoint} in the form [x,y]
+   *
+   * @param point
+   *          the GeoPoint
+   * @return the coordinates
+   */
+  public static String encode(final GeoPoint point) {
+    StringBuilder builder = BUILDER.get();
+    builder.setLength(0);
+    appendTo(point.getCoordinates(), builder);
+    return builder.toString();
+  }
+
+  /**
+   * Append the coordinates of the given {@link Position} in the form [x,y] to the builder
+   *
+   * @param position
+   *          the Position
+   * @param builder
+   *          the builder to append to
+   * @return the builder
+   */
+  public static StringBuilder appendTo(final Position position, final StringBuilder builder) {
+    builder.append('[');
+    List<Double> values = position.getValues();
+    for (int i = 0; i < values.size(); i++) {
+      double value = values.get(i);
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        throw new IllegalArgumentException("coordinates must be finite: " + values);
+      }
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append(value);
+    }
+    return builder.append(']');
+  }
+
+  private static int skipWhitespace(final String source, int index) {
+    while (index < source.length() && Character.isWhitespace(source.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * Scans a json number starting at the given index
+   *
+   * @return the index after the number
+   */
+  private static int scanNumber(final String source, final int start) {
+    int i = start;
+    if (i < source.length() && source.charAt(i) == '-') {
+      i++;
+    }
+    if (i < source.length() && source.charAt(i) == '0') {
+      i++;
+    } else {
+      i = scanDigits(source, i);
+    }
+    if (i < source.length() && source.charAt(i) == '.') {
+      i = scanDigits(source, i + 1);
+    }
+    if (i < source.length() && (source.charAt(i) == 'e' || source.charAt(i) == 'E')) {
+      i++;
+      if (i < source.length() && (source.charAt(i) == '+' || source.charAt(i) == '-')) {
+        i++;
+      }
+      i = scanDigits(source, i);
+    }
+    return i;
+  }
+
+  private static int scanDigits(final String source, final int start) {
+    int i = start;
+    while (i < source.length() && source.charAt(i) >= '0' && source.charAt(i) <= '9') {
+      i++;
+    }
+    if (i == start) {
+      throw invalid(source);
+    }
+    return i;
+  }
+
+  /**
+   * Converts the json number between start and end, which was validated by {@link #scanNumber(String, int)}
+   */
+  private static double parseNumber(final String source, final int start, final int end) {
+    int i = start;
+    boolean negative = source.charAt(i) == '-';
+    if (negative) {
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean fraction = false;
+    for (; i < end; i++) {
+      char c = source.charAt(i);
+      if (c == '.') {
+        fraction = true;
+      } else if (c == 'e' || c == 'E') {
+        break;
+      } else {
+        if (mantissa != 0 || c != '0') {
+          if (++digits > MAX_EXACT_DIGITS) {
+            return Double.parseDouble(source.substring(start, end));
+          }
+          mantissa = mantissa * 10 + (c - '0');
+        }
+        if (fraction) {
+          exponent--;
+        }
+      }
+    }
+    if (i < end) {
+      exponent += parseExponent(source, i + 1, end);
+    }
+    double value;
+    if (mantissa == 0) {
+      value = 0;
+    } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+      value = mantissa * POWERS_OF_TEN[exponent];
+    } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+      value = mantissa / POWERS_OF_TEN[-exponent];
+    } else {
+      return Double.parseDouble(source.substring(start, end));
+    }
+    return negative ? -value : value;
+  }
+
+  private static int parseExponent(final String source, final int start, final int end) {
+    int i = start;
+    boolean negative = source.charAt(i) == '-';
+    if (negative || source.charAt(i) == '+') {
+      i++;
+    }
+    int exponent = 0;
+    for (; i < end; i++) {
+      // larger exponents are out of the exact range anyway
+      exponent = Math.min(exponent * 10 + (source.charAt(i) - '0'), 1000);
+    }
+    return negative ? -exponent : exponent;
+  }
+
+  private static DecodeException invalid(final String source) {
+    return new DecodeException("invalid coordinates: " + source);
+  }
+
+  /**
+   * Collects the parsed coordinates of the current thread and hands them to the constructor of {@link Position}
+   */
+  private static class CoordinateReader implements Iterator<Double> {
+    private double[] values = new double[3];
+    private int size;
+    private int index;
+
+    void reset() {
+      size = 0;
+      index = 0;
+    }
+
+    void add(final double value) {
+      if (size == values.length) {
+        double[] newValues = new double[size * 2];
+        System.arraycopy(values, 0, newValues, 0, size);
+        values = newValues;
+      }
+      values[size++] = value;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index < size;
+    }
+
+    @Override
+    public Double next() {
+      if (index >= size) {
+        throw new NoSuchElementException();
+      }
+      return values[index++];
+    }
+  }
+
+}
@@ -13,17 +13,16 @@
 package de.braintags.netrelay.typehandler;
 
 import de.braintags.vertx.jomnigate.datatypes.geojson.GeoPoint;
-import de.braintags.vertx.jomnigate.datatypes.geojson.Position;
 import de.braintags.vertx.jomnigate.mapping.IProperty;
 import de.braintags.vertx.jomnigate.typehandler.AbstractTypeHandler;
 import de.braintags.vertx.jomnigate.typehandler.ITypeHandlerFactory;
 import de.braintags.vertx.jomnigate.typehandler.ITypeHandlerResult;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
-import io.vertx.core.json.JsonArray;
 
 /**
- * For http only the coordinates are sent and received as array
+ * For http only the coordinates are sent and received as array. They are read and written by the
+ * {@link CoordinateCodec}
  * 
  * @author Michael Remme
  * 
@@ -55,13 +54,11 @@ public class HttpGeoPointTypeHandler extends AbstractTypeHandler {
   }
 
   private String encode(GeoPoint source) {
-    return new JsonArray(source.getCoordinates().getValues()).encode();
+    return CoordinateCodec.encode(source);
   }
 
   private GeoPoint parse(String source) {
-    JsonArray js = new JsonArray(source);
-    Position pos = new Position(js.iterator());
-    return new GeoPoint(pos);
+    return CoordinateCodec.parseGeoPoint(source);
   }
 
 }
@@ -12,17 +12,31 @@
  */
 package de.braintags.netrelay.typehandler;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.jomnigate.typehandler.ITypeHandler;
 import de.braintags.vertx.jomnigate.typehandler.stringbased.StringTypeHandlerFactory;
 import de.braintags.vertx.jomnigate.typehandler.stringbased.handlers.BooleanTypeHandler;
 import de.braintags.vertx.jomnigate.typehandler.stringbased.handlers.GeoPointTypeHandler;
 
 /**
- * A TypeHandlerFactory, which reacts with information coming across http requests
+ * A TypeHandlerFactory, which reacts with information coming across http requests.
+ * The resolved type handlers are cached per property and per pair of data class and embedding class, so that only the
+ * first lookup has to scan the list of defined type handlers. Since the mappers of all mapping definitions are created
+ * at the start of NetRelay, the cache is filled with the handlers of all known properties at that point.
  * 
  * @author Michael Remme
  * 
  */
 public class HttpTypehandlerFactory extends StringTypeHandlerFactory {
+  private final Map<IProperty, ITypeHandler> propertyHandlers = new ConcurrentHashMap<>();
+  private final Map<TypeKey, ITypeHandler> classHandlers = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
 
   /*
    * (non-Javadoc)
@@ -36,4 +50,123 @@ public class HttpTypehandlerFactory extends StringTypeHandlerFactory {
     getDefinedTypeHandlers().add(0, new HttpBooleanTypeHandler(this));
     replace(GeoPointTypeHandler.class, new HttpGeoPointTypeHandler(this));
   }
+
+  @Override
+  public ITypeHandler getTypeHandler(final IProperty field) {
+    if (propertyHandlers == null) {
+      // called by the constructor of the super class
+      return super.getTypeHandler(field);
+    }
+    ITypeHandler th = propertyHandlers.get(field);
+    if (th != null) {
+      hits.increment();
+      return th;
+    }
+    misses.increment();
+    th = super.getTypeHandler(field);
+    if (th != null) {
+      propertyHandlers.putIfAbsent(field, th);
+    }
+    return th;
+  }
+
+  @Override
+  public ITypeHandler getTypeHandler(final Class<?> dataClass, final Class<?> embeddedBy) {
+    if (classHandlers == null) {
+      // called by the constructor of the super class
+      return super.getTypeHandler(dataClass, embeddedBy);
+    }
+    TypeKey key = new TypeKey(dataClass, embeddedBy);
+    ITypeHandler th = classHandlers.get(key);
+    if (th != null) {
+      hits.increment();
+      return th;
+    }
+    misses.increment();
+    th = super.getTypeHandler(dataClass, embeddedBy);
+    if (th != null) {
+      classHandlers.putIfAbsent(key, th);
+    }
+    return th;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see de.braintags.vertx.jomnigate.typehandler.AbstractTypeHandlerFactory#remove(java.lang.Class)
+   */
+  @Override
+  protected void remove(final Class<? extends ITypeHandler> typeHandlerClass) {
+    super.remove(typeHandlerClass);
+    clearCache();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see de.braintags.vertx.jomnigate.typehandler.AbstractTypeHandlerFactory#replace(java.lang.Class,
+   * de.braintags.vertx.jomnigate.typehandler.ITypeHandler)
+   */
+  @Override
+  protected void replace(final Class<? extends ITypeHandler> typeHandlerClass, final ITypeHandler typeHandler) {
+    super.replace(typeHandlerClass, typeHandler);
+    clearCache();
+  }
+
+  /**
+   * Removes all resolved type handlers from the cache. It is called by {@link #remove(Class)} and
+   * {@link #replace(Class, ITypeHandler)}; if the list of {@link #getDefinedTypeHandlers()} is changed directly after
+   * the factory was used, it must be called by the caller
+   */
+  public void clearCache() {
+    if (propertyHandlers == null) {
+      // called by the constructor of the super class
+      return;
+    }
+    propertyHandlers.clear();
+    classHandlers.clear();
+  }
+
+  /**
+   * The number of lookups, which were answered from the cache
+   * 
+   * @return the hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * The number of lookups, which had to scan the defined type handlers
+   * 
+   * @return the misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  private static class TypeKey {
+    private final Class<?> dataClass;
+    private final Class<?> embeddedBy;
+
+    TypeKey(final Class<?> dataClass, final Class<?> embeddedBy) {
+      this.dataClass = dataClass;
+      this.embeddedBy = embeddedBy;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof TypeKey)) {
+        return false;
+      }
+      TypeKey other = (TypeKey) obj;
+      return dataClass == other.dataClass && embeddedBy == other.embeddedBy;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Objects.hashCode(dataClass) + Objects.hashCode(embeddedBy);
+    }
+  }
+
 }
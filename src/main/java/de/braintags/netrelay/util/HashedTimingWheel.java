@@ -0,0 +1,273 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.util;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * A hashed timing wheel, which is used to schedule a large number of short living timeouts, like request timeouts.
+ * Instead of creating and cancelling a vert.x timer for each timeout, all timeouts of one context are stored inside
+ * the buckets of a wheel, which is advanced by one single periodic timer. The periodic timer is only running, as long
+ * as there are pending timeouts.
+ * <br>
+ * An instance is bound to the {@link Context} it was created in and is NOT thread safe; all methods must be called
+ * from the thread of this context. Use {@link #getInstance(Vertx)} to get the shared instance of the current context.
+ * The precision of a timeout is the tick duration of the wheel.
+ *
+ * @author Michael Remme
+ *
+ */
+public class HashedTimingWheel {
+  private static final io.vertx.core.logging.Logger LOGGER = io.vertx.core.logging.LoggerFactory
+      .getLogger(HashedTimingWheel.class);
+
+  /**
+   * The key, by which the shared instance is stored inside the {@link Context}
+   */
+  public static final String CONTEXT_KEY = HashedTimingWheel.class.getName();
+
+  /**
+   * The default duration of one tick in milliseconds
+   */
+  public static final long DEFAULT_TICK_DURATION = 100;
+
+  /**
+   * The default number of buckets of the wheel
+   */
+  public static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private final Vertx vertx;
+  private final long tickDuration;
+  private final WheelTimeout[] buckets;
+  private final int mask;
+  private final long startTime = System.nanoTime();
+  private long tick = 0;
+  private int pending = 0;
+  private long timerId = -1;
+
+  /**
+   * Create a new instance
+   *
+   * @param vertx
+   *          the instance of vertx to be used
+   * @param tickDuration
+   *          the duration of one tick in milliseconds
+   * @param wheelSize
+   *          the number of buckets; will be normalized to the next power of two
+   */
+  public HashedTimingWheel(final Vertx vertx, final long tickDuration, final int wheelSize) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("tickDuration must be > 0");
+    }
+    if (wheelSize <= 0 || wheelSize > 1 << 30) {
+      throw new IllegalArgumentException("wheelSize must be between 1 and 2^30");
+    }
+    this.vertx = vertx;
+    this.tickDuration = tickDuration;
+    int size = Integer.highestOneBit(wheelSize);
+    size = size < wheelSize ? size << 1 : size;
+    this.buckets = new WheelTimeout[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * Get the shared instance of the current {@link Context}. If none exists, it is created with the default tick
+   * duration
+   *
+   * @param vertx
+   *          the instance of vertx
+   * @return the shared instance
+   */
+  public static HashedTimingWheel getInstance(final Vertx vertx) {
+    HashedTimingWheel wheel = vertx.getOrCreateContext().get(CONTEXT_KEY);
+    return wheel != null ? wheel : getInstance(vertx, DEFAULT_TICK_DURATION);
+  }
+
+  /**
+   * Get the shared instance of the current {@link Context}. If none exists, it is created with the given tick duration.
+   * If an instance exists already, the tick duration of the existing instance is kept and a warning is logged, when it
+   * differs from the given one
+   *
+   * @param vertx
+   *          the instance of vertx
+   * @param tickDuration
+   *          the duration of one tick in milliseconds, used when the instance is created
+   * @return the shared instance
+   */
+  public static HashedTimingWheel getInstance(final Vertx vertx, final long tickDuration) {
+    Context context = vertx.getOrCreateContext();
+    HashedTimingWheel wheel = context.get(CONTEXT_KEY);
+    if (wheel == null) {
+      wheel = new HashedTimingWheel(vertx, tickDuration, DEFAULT_WHEEL_SIZE);
+      context.put(CONTEXT_KEY, wheel);
+    } else if (wheel.tickDuration != tickDuration) {
+      LOGGER.warn("requested tick duration of " + tickDuration + " ms is ignored, the shared wheel of this context "
+          + "is running with " + wheel.tickDuration + " ms");
+    }
+    return wheel;
+  }
+
+  /**
+   * Schedule the given task to be executed after the given delay
+   *
+   * @param delay
+   *          the delay in milliseconds
+   * @param task
+   *          the task to be executed
+   * @return the {@link WheelTimeout}, which can be used to cancel the execution
+   */
+  public WheelTimeout schedule(final long delay, final Handler<Void> task) {
+    if (pending == 0) {
+      // nothing pending, so we can skip the ticks, which were passed while the wheel was idle
+      tick = currentTick();
+    }
+    long expireTick = (elapsedMillis() + Math.max(delay, 0) + tickDuration - 1) / tickDuration;
+    WheelTimeout timeout = new WheelTimeout(Math.max(expireTick, tick + 1), task);
+    timeout.bucket = (int) (timeout.expireTick & mask);
+    timeout.next = buckets[timeout.bucket];
+    if (timeout.next != null) {
+      timeout.next.prev = timeout;
+    }
+    buckets[timeout.bucket] = timeout;
+    pending++;
+    if (timerId < 0) {
+      timerId = vertx.setPeriodic(tickDuration, id -> advance());
+    }
+    return timeout;
+  }
+
+  /**
+   * Get the number of timeouts, which are scheduled and not yet expired or cancelled
+   *
+   * @return the number of pending timeouts
+   */
+  public int getPending() {
+    return pending;
+  }
+
+  /**
+   * The duration of one tick in milliseconds
+   *
+   * @return the tickDuration
+   */
+  public long getTickDuration() {
+    return tickDuration;
+  }
+
+  private void advance() {
+    long target = currentTick();
+    while (tick < target && pending > 0) {
+      tick++;
+      expireBucket(buckets[(int) (tick & mask)]);
+    }
+    tick = target;
+    if (pending == 0 && timerId >= 0) {
+      vertx.cancelTimer(timerId);
+      timerId = -1;
+    }
+  }
+
+  private void expireBucket(WheelTimeout timeout) {
+    while (timeout != null) {
+      WheelTimeout next = timeout.next;
+      if (timeout.expireTick <= tick) {
+        remove(timeout);
+        timeout.expired = true;
+        try {
+          timeout.task.handle(null);
+        } catch (Exception e) {
+          LOGGER.error("error during execution of timeout", e);
+        }
+      }
+      timeout = next;
+    }
+  }
+
+  private void remove(final WheelTimeout timeout) {
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      buckets[timeout.bucket] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    pending--;
+  }
+
+  private long elapsedMillis() {
+    return (System.nanoTime() - startTime) / 1000000;
+  }
+
+  private long currentTick() {
+    return elapsedMillis() / tickDuration;
+  }
+
+  /**
+   * A timeout, which was scheduled inside a {@link HashedTimingWheel}
+   *
+   * @author Michael Remme
+   *
+   */
+  public class WheelTimeout {
+    private final long expireTick;
+    private final Handler<Void> task;
+    private int bucket;
+    private WheelTimeout prev;
+    private WheelTimeout next;
+    private boolean expired = false;
+    private boolean cancelled = false;
+
+    private WheelTimeout(final long expireTick, final Handler<Void> task) {
+      this.expireTick = expireTick;
+      this.task = task;
+    }
+
+    /**
+     * Cancel the execution of the task. If the task was executed or cancelled already, nothing happens
+     *
+     * @return true, if the timeout was cancelled by this call
+     */
+    public boolean cancel() {
+      if (expired || cancelled) {
+        return false;
+      }
+      cancelled = true;
+      remove(this);
+      return true;
+    }
+
+    /**
+     * Returns true, if the task of this timeout was executed
+     *
+     * @return the expired
+     */
+    public boolean isExpired() {
+      return expired;
+    }
+
+    /**
+     * Returns true, if the timeout was cancelled
+     *
+     * @return the cancelled
+     */
+    public boolean isCancelled() {
+      return cancelled;
+    }
+  }
+
+}
@@ -104,6 +104,16 @@ public class MockRoutingContext extends RoutingContextImpl {
     return statusCode;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see io.vertx.ext.web.impl.RoutingContextImpl#failed()
+   */
+  @Override
+  public boolean failed() {
+    return failed;
+  }
+
   public Throwable getException() {
     return exception;
   }
@@ -0,0 +1,186 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.util;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.MIMEHeader;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * The formats, in which objects can be sent to a client. JSON is the default format; the binary formats are used, if
+ * they are requested by the Accept header of a request. All formats are written by Jackson, so that the field names
+ * and the structure of the written data are the same for all formats.
+ *
+ * @author Michael Remme
+ *
+ */
+public enum PayloadFormat {
+  /**
+   * JSON, written by {@link Json#mapper}
+   */
+  JSON("application/json", null),
+  /**
+   * Concise Binary Object Representation, RFC 7049
+   */
+  CBOR("application/cbor", CBORFactory::new),
+  /**
+   * The binary JSON format of Jackson
+   */
+  SMILE("application/x-jackson-smile", SmileFactory::new),
+  /**
+   * MessagePack
+   */
+  MSGPACK("application/x-msgpack", MessagePackFactory::new);
+
+  private final String contentType;
+  private final Supplier<JsonFactory> factory;
+  private volatile ObjectMapper mapper;
+
+  PayloadFormat(final String contentType, final Supplier<JsonFactory> factory) {
+    this.contentType = contentType;
+    this.factory = factory;
+  }
+
+  /**
+   * Get the format, which is preferred by the Accept header of the current request. Media types with a higher quality
+   * are preferred; if no binary format is accepted, JSON is returned. The weight is checked directly instead of
+   * {@link MIMEHeader#isPermitted()}, because some releases of vertx-web answer the inverted value there
+   *
+   * @param context
+   *          the context of the current request
+   * @return the format to be used for the response
+   */
+  public static PayloadFormat negotiate(final RoutingContext context) {
+    List<MIMEHeader> accepted = context.parsedHeaders() == null ? null : context.parsedHeaders().accept();
+    PayloadFormat best = JSON;
+    float bestWeight = -1;
+    if (accepted != null) {
+      for (MIMEHeader header : accepted) {
+        PayloadFormat format = fromContentType(header.value());
+        if (format != null && header.weight() > 0 && header.weight() > bestWeight) {
+          best = format;
+          bestWeight = header.weight();
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Get the format of the given content type
+   *
+   * @param contentType
+   *          the content type without parameters
+   * @return the format or null, if the content type is not supported
+   */
+  public static PayloadFormat fromContentType(final String contentType) {
+    if ("application/msgpack".equalsIgnoreCase(contentType)) {
+      return MSGPACK;
+    }
+    for (PayloadFormat format : values()) {
+      if (format.contentType.equalsIgnoreCase(contentType)) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The content type of the format
+   *
+   * @return the contentType
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * Get the {@link ObjectMapper}, which writes the format. The mappers of the binary formats are created on first use
+   *
+   * @return the mapper
+   */
+  public ObjectMapper getMapper() {
+    if (factory == null) {
+      return Json.mapper;
+    }
+    ObjectMapper current = mapper;
+    if (current == null) {
+      synchronized (this) {
+        current = mapper;
+        if (current == null) {
+          current = createMapper(factory.get());
+          mapper = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  private static ObjectMapper createMapper(final JsonFactory factory) {
+    ObjectMapper om = new ObjectMapper(factory);
+    // like Json.mapper, JsonObject and JsonArray are written by their content, Instant as ISO-8601 String and byte[]
+    // as Base64 String, so that a client gets the same values in all formats
+    SimpleModule module = new SimpleModule();
+    module.addSerializer(JsonObject.class, new JsonSerializer<JsonObject>() {
+      @Override
+      public void serialize(final JsonObject value, final JsonGenerator generator,
+          final SerializerProvider provider) throws IOException {
+        generator.writeObject(value.getMap());
+      }
+    });
+    module.addSerializer(JsonArray.class, new JsonSerializer<JsonArray>() {
+      @Override
+      public void serialize(final JsonArray value, final JsonGenerator generator,
+          final SerializerProvider provider) throws IOException {
+        generator.writeObject(value.getList());
+      }
+    });
+    module.addSerializer(Instant.class, new JsonSerializer<Instant>() {
+      @Override
+      public void serialize(final Instant value, final JsonGenerator generator, final SerializerProvider provider)
+          throws IOException {
+        generator.writeString(DateTimeFormatter.ISO_INSTANT.format(value));
+      }
+    });
+    module.addSerializer(byte[].class, new JsonSerializer<byte[]>() {
+      @Override
+      public void serialize(final byte[] value, final JsonGenerator generator, final SerializerProvider provider)
+          throws IOException {
+        generator.writeString(Base64.getEncoder().encodeToString(value));
+      }
+    });
+    om.registerModule(module);
+    return om;
+  }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.braintags.netrelay.controller.TimeoutController;
+import de.braintags.netrelay.routing.RouterDefinition;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * The RequestDeadline defines the point in time, until when the processing of a request must be finished. It is
+ * created by the {@link TimeoutController} and stored inside the {@link RoutingContext} under the property
+ * {@link #DEADLINE_PROPERTY}, so that downstream controllers and datastore queries are able to read the remaining
+ * time budget. When the deadline is reached before the response was sent and the context was not failed before, the
+ * context is failed with the status 503.
+ * <br>
+ * The timeout is scheduled inside the {@link HashedTimingWheel} of the current context and it is cancelled, when the
+ * body of the response was sent. Because a reroute removes the body end handlers of the context, the handler is
+ * registered again, when the deadline is requested by {@link #start(RoutingContext, HashedTimingWheel, long)} or
+ * {@link #createOverrideHandler(long)} after a reroute.
+ *
+ * @author Michael Remme
+ *
+ */
+public class RequestDeadline {
+
+  /**
+   * The name of the property, by which the instance is stored inside the {@link RoutingContext}
+   */
+  public static final String DEADLINE_PROPERTY = "netrelayRequestDeadline";
+
+  private final RoutingContext context;
+  private final HashedTimingWheel wheel;
+  private final long startTime;
+  private long deadline;
+  private HashedTimingWheel.WheelTimeout timeout;
+  private int bodyEndHandlerId = -1;
+  private final List<Handler<Void>> deadlineHandlers = new ArrayList<>();
+
+  private RequestDeadline(final RoutingContext context, final HashedTimingWheel wheel, final long startTime) {
+    this.context = context;
+    this.wheel = wheel;
+    this.startTime = startTime;
+  }
+
+  /**
+   * Creates a new deadline for the given context and stores it inside the context. If a deadline exists already,
+   * like it is the case after a reroute, the existing one is returned unchanged, so that a reroute does not extend the
+   * time budget of a request. Only the handler, which cancels the timeout when the response was sent, is registered
+   * again
+   *
+   * @param context
+   *          the context of the current request
+   * @param wheel
+   *          the wheel, where the timeout shall be scheduled
+   * @param timeout
+   *          the timeout in milliseconds, starting now
+   * @return the deadline of the request
+   */
+  public static RequestDeadline start(final RoutingContext context, final HashedTimingWheel wheel,
+      final long timeout) {
+    RequestDeadline rd = get(context);
+    if (rd == null) {
+      rd = new RequestDeadline(context, wheel, System.currentTimeMillis());
+      context.put(DEADLINE_PROPERTY, rd);
+      rd.reschedule(timeout);
+    }
+    rd.registerBodyEndHandler();
+    return rd;
+  }
+
+  /**
+   * Get the deadline, which is stored inside the given context
+   *
+   * @param context
+   *          the context of the current request
+   * @return the deadline or null, if none was defined for the current request
+   */
+  public static RequestDeadline get(final RoutingContext context) {
+    return context.get(DEADLINE_PROPERTY);
+  }
+
+  /**
+   * Get the remaining time budget of the request in milliseconds
+   *
+   * @param context
+   *          the context of the current request
+   * @return the remaining milliseconds or {@link Long#MAX_VALUE}, if no deadline is defined for the request
+   */
+  public static long getRemaining(final RoutingContext context) {
+    RequestDeadline rd = context == null ? null : get(context);
+    return rd == null ? Long.MAX_VALUE : rd.getRemaining();
+  }
+
+  /**
+   * Creates a handler, which overrides the timeout of a request with the given value. This handler is used for
+   * instances of {@link RouterDefinition}, where a timeout is defined. The timeout is calculated from the start of the
+   * request. If no deadline exists yet, a new one is started
+   *
+   * @param timeout
+   *          the timeout in milliseconds
+   * @return a handler, which overrides the timeout and calls the next handler
+   */
+  public static Handler<RoutingContext> createOverrideHandler(final long timeout) {
+    return context -> {
+      RequestDeadline rd = get(context);
+      if (rd == null) {
+        start(context, HashedTimingWheel.getInstance(context.vertx()), timeout);
+      } else {
+        rd.reschedule(timeout);
+        rd.registerBodyEndHandler();
+      }
+      context.next();
+    };
+  }
+
+  /**
+   * Set the timeout of the request, calculated from the start of the request
+   *
+   * @param timeout
+   *          the timeout in milliseconds
+   */
+  public void reschedule(final long timeout) {
+    cancel();
+    deadline = startTime + timeout;
+    this.timeout = wheel.schedule(getRemaining(), v -> expire());
+  }
+
+  /**
+   * Add a handler, which shall be executed when the deadline is reached. This can be used by actions, which want to
+   * stop waiting for a result at the deadline. The handlers are executed by the timeout of the deadline after the
+   * request was failed, so that they are following a change by {@link #reschedule(long)} and are able to check by
+   * {@link RoutingContext#failed()}, wether the request was answered already
+   *
+   * @param handler
+   *          the handler to be executed
+   */
+  public void addDeadlineHandler(final Handler<Void> handler) {
+    deadlineHandlers.add(handler);
+  }
+
+  /**
+   * Remove a handler, which was added by {@link #addDeadlineHandler(Handler)}, because the action finished in time
+   *
+   * @param handler
+   *          the handler to be removed
+   * @return true, if the handler was removed
+   */
+  public boolean removeDeadlineHandler(final Handler<Void> handler) {
+    return deadlineHandlers.remove(handler);
+  }
+
+  /**
+   * Cancel the timeout of the request
+   */
+  public void cancel() {
+    if (timeout != null) {
+      timeout.cancel();
+      timeout = null;
+    }
+  }
+
+  /**
+   * Register the handler, which cancels the timeout when the body of the response was sent. A former registration is
+   * removed before, so that the handler is added only once during one routing pass. After a reroute the former
+   * registration is gone already and the handler is added again
+   */
+  private void registerBodyEndHandler() {
+    if (bodyEndHandlerId >= 0) {
+      context.removeBodyEndHandler(bodyEndHandlerId);
+    }
+    bodyEndHandlerId = context.addBodyEndHandler(v -> cancel());
+  }
+
+  private void expire() {
+    timeout = null;
+    if (!context.response().ended() && !context.response().closed() && !context.failed()) {
+      context.fail(HttpResponseStatus.SERVICE_UNAVAILABLE.code());
+    }
+    List<Handler<Void>> handlers = new ArrayList<>(deadlineHandlers);
+    deadlineHandlers.clear();
+    handlers.forEach(handler -> handler.handle(null));
+  }
+
+  /**
+   * The point in time in milliseconds, when the request processing must be finished
+   *
+   * @return the deadline
+   */
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * The point in time in milliseconds, when the request processing started
+   *
+   * @return the startTime
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * Get the remaining time budget in milliseconds
+   *
+   * @return the remaining milliseconds; 0 if the deadline is reached
+   */
+  public long getRemaining() {
+    return Math.max(deadline - System.currentTimeMillis(), 0);
+  }
+
+  /**
+   * Returns true, if the deadline is reached
+   *
+   * @return true, if expired
+   */
+  public boolean isExpired() {
+    return System.currentTimeMillis() >= deadline;
+  }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+/**
+ * An {@link OutputStream}, which writes into the {@link HttpServerResponse} of a request. The bytes are collected
+ * inside a {@link Buffer} of the size of one chunk, which is handed over to the response without copying. If the
+ * content is smaller than the chunk size, it is sent with one call of {@link HttpServerResponse#end(Buffer)}, so that
+ * the content-length is set. Otherwise the response is switched to chunked mode and each chunk is written, when it is
+ * filled.
+ * <br>
+ * {@link #close()} ends the response. An instance must be used from the context of the request.
+ *
+ * @author Michael Remme
+ *
+ */
+public class ResponseOutputStream extends OutputStream {
+  /**
+   * The default size of a chunk in bytes
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 16384;
+
+  private final HttpServerResponse response;
+  private final int chunkSize;
+  private Buffer buffer;
+  private boolean closed = false;
+
+  /**
+   * Create a new instance with the default chunk size
+   *
+   * @param response
+   *          the response to write into
+   */
+  public ResponseOutputStream(final HttpServerResponse response) {
+    this(response, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Create a new instance
+   *
+   * @param response
+   *          the response to write into
+   * @param chunkSize
+   *          the size of a chunk in bytes
+   */
+  public ResponseOutputStream(final HttpServerResponse response, final int chunkSize) {
+    this.response = response;
+    this.chunkSize = chunkSize;
+    this.buffer = allocate();
+  }
+
+  private Buffer allocate() {
+    return Buffer.buffer(chunkSize);
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    ensureOpen();
+    if (buffer.length() >= chunkSize) {
+      writeChunk();
+    }
+    buffer.appendByte((byte) b);
+  }
+
+  @Override
+  public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+    ensureOpen();
+    int written = 0;
+    while (written < length) {
+      if (buffer.length() >= chunkSize) {
+        writeChunk();
+      }
+      int count = Math.min(length - written, chunkSize - buffer.length());
+      buffer.appendBytes(bytes, offset + written, count);
+      written += count;
+    }
+  }
+
+  private void writeChunk() {
+    if (!response.isChunked()) {
+      response.setChunked(true);
+    }
+    response.write(buffer);
+    buffer = allocate();
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("stream is closed");
+    }
+  }
+
+  /**
+   * Discards the content, which was not yet written, without ending the response. This must be called instead of
+   * {@link #close()}, if an error occurred while writing
+   */
+  public void discard() {
+    if (!closed) {
+      closed = true;
+      buffer = null;
+    }
+  }
+
+  /**
+   * Writes the remaining content and ends the response
+   */
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      response.end(buffer);
+      buffer = null;
+    }
+  }
+
+}
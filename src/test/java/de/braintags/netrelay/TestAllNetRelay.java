@@ -17,11 +17,40 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 import de.braintags.netrelay.processor.TProcessorSuite;
+import de.braintags.netrelay.unit.TBindingBarrier;
+import de.braintags.netrelay.unit.TCoordinateCodec;
+import de.braintags.netrelay.unit.TDatastoreManager;
+import de.braintags.netrelay.unit.TEntityBatchLoader;
+import de.braintags.netrelay.unit.TEntityCache;
+import de.braintags.netrelay.unit.TEntityWriter;
+import de.braintags.netrelay.unit.TExportController;
 import de.braintags.netrelay.unit.TFailureController;
+import de.braintags.netrelay.unit.TFieldBinder;
+import de.braintags.netrelay.unit.TFieldSelection;
+import de.braintags.netrelay.unit.TGeoGridIndex;
+import de.braintags.netrelay.unit.TGeoIndexManager;
+import de.braintags.netrelay.unit.THashedTimingWheel;
+import de.braintags.netrelay.unit.THttpTypehandlerFactory;
+import de.braintags.netrelay.unit.TKeyAllocator;
+import de.braintags.netrelay.unit.TKeyAllocatorInsert;
+import de.braintags.netrelay.unit.TLruCache;
+import de.braintags.netrelay.unit.TMapperBindingPlan;
+import de.braintags.netrelay.unit.TNegativeCache;
+import de.braintags.netrelay.unit.TPrewarmMappers;
+import de.braintags.netrelay.unit.TQueryCache;
+import de.braintags.netrelay.unit.TQueryCacheKey;
+import de.braintags.netrelay.unit.TQueryDeadlineGuard;
+import de.braintags.netrelay.unit.TRecordController;
+import de.braintags.netrelay.unit.TRequestIdentityMap;
 import de.braintags.netrelay.unit.TRequestUtil;
+import de.braintags.netrelay.unit.TResponseOutputStream;
 import de.braintags.netrelay.unit.TSSL_SelfSigned;
 import de.braintags.netrelay.unit.TSettings;
+import de.braintags.netrelay.unit.TShardRouter;
 import de.braintags.netrelay.unit.TStandardRequests;
+import de.braintags.netrelay.unit.TStoreObjectChanges;
+import de.braintags.netrelay.unit.TWriteBehindQueue;
+import de.braintags.netrelay.unit.TWritePayload;
 import de.braintags.netrelay.util.MockHttpServerRequestTest;
 
 /**
@@ -32,7 +61,14 @@ import de.braintags.netrelay.util.MockHttpServerRequestTest;
  */
 @RunWith(Suite.class)
 @SuiteClasses({ TRequestUtil.class, TSettings.class, TStandardRequests.class, TFailureController.class,
-    TProcessorSuite.class, MockHttpServerRequestTest.class, TSSL_SelfSigned.class })
+    TProcessorSuite.class, MockHttpServerRequestTest.class, TSSL_SelfSigned.class, THashedTimingWheel.class,
+    TKeyAllocator.class, TFieldBinder.class, TLruCache.class, TQueryCacheKey.class, TShardRouter.class,
+    TQueryDeadlineGuard.class, TMapperBindingPlan.class, TBindingBarrier.class, TEntityCache.class,
+    TEntityBatchLoader.class, TRequestIdentityMap.class, TNegativeCache.class, TStoreObjectChanges.class,
+    TEntityWriter.class, TWriteBehindQueue.class, TQueryCache.class, TDatastoreManager.class,
+    TKeyAllocatorInsert.class, THttpTypehandlerFactory.class, TCoordinateCodec.class, TGeoGridIndex.class,
+    TGeoIndexManager.class, TExportController.class, TResponseOutputStream.class, TWritePayload.class,
+    TFieldSelection.class, TRecordController.class, TPrewarmMappers.class })
 
 public class TestAllNetRelay {
   // -DBlockedThreadCheckInterval=10000000 -DWarningExceptionTime=10000000 -DtestTimeout=5
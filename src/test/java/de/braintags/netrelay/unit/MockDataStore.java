@@ -0,0 +1,384 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.braintags.netrelay.datastore.IFieldUpdater;
+import de.braintags.netrelay.mapping.IdNormalizer;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.delete.IDelete;
+import de.braintags.vertx.jomnigate.dataaccess.delete.IDeleteResult;
+import de.braintags.vertx.jomnigate.dataaccess.query.IFieldCondition;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQueryCountResult;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQueryResult;
+import de.braintags.vertx.jomnigate.dataaccess.query.ISortDefinition;
+import de.braintags.vertx.jomnigate.dataaccess.query.QueryOperator;
+import de.braintags.vertx.jomnigate.dataaccess.query.SortArgument;
+import de.braintags.vertx.jomnigate.dataaccess.write.IWrite;
+import de.braintags.vertx.jomnigate.dataaccess.write.IWriteEntry;
+import de.braintags.vertx.jomnigate.dataaccess.write.IWriteResult;
+import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IMapperFactory;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.util.IteratorAsync;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * An in-memory {@link IDataStore} for the records of one mapper, created by dynamic proxies like the
+ * {@link MockMapper}. Queries are evaluating only a condition "larger" on the id, the sort by the id, start and limit;
+ * other search conditions can't be evaluated, so that all stored records are returned. All queries keep their
+ * definition, so that it can be read; writes and deletes are changing the records by their id and can be failed on
+ * demand.
+ *
+ * @author Michael Remme
+ *
+ */
+public class MockDataStore {
+  private final String name;
+  private final IMapper<?> mapper;
+  private final IProperty idField;
+  private final Map<Object, Object> records = new LinkedHashMap<>();
+  private final IDataStore<?, ?> datastore;
+  private Throwable failure;
+  private int queries;
+  private int writes;
+  private int deletes;
+  private int updates;
+
+  /**
+   * Create a new instance
+   *
+   * @param name
+   *          the name of the datastore, which is returned by toString
+   * @param mapper
+   *          the mapper of the stored records
+   */
+  public MockDataStore(String name, IMapper<?> mapper) {
+    this.name = name;
+    this.mapper = mapper;
+    this.idField = mapper.getIdInfo().getField();
+    IMapperFactory mapperFactory = MockMapper.proxy(IMapperFactory.class, name + ".mapperFactory",
+        (method, args) -> method.equals("getMapper") && args[0] == mapper.getMapperClass() ? mapper : null);
+    this.datastore = MockMapper.proxy(IDataStore.class, name, (method, args) -> {
+      switch (method) {
+      case "createQuery":
+        return createQuery();
+      case "createWrite":
+        return createWrite();
+      case "createDelete":
+        return createDelete();
+      case "getMapperFactory":
+        return mapperFactory;
+      default:
+        return null;
+      }
+    });
+  }
+
+  /**
+   * The datastore
+   *
+   * @return the datastore
+   */
+  public IDataStore<?, ?> getDatastore() {
+    return datastore;
+  }
+
+  /**
+   * Store a record without a write
+   *
+   * @param entity
+   *          the record
+   */
+  public void add(Object entity) {
+    records.put(IdNormalizer.normalize(idField, idField.getPropertyAccessor().readData(entity)), entity);
+  }
+
+  /**
+   * Get the stored record with the given id
+   *
+   * @param id
+   *          the id
+   * @return the record or null
+   */
+  public Object get(Object id) {
+    return records.get(IdNormalizer.normalize(idField, id));
+  }
+
+  /**
+   * The number of stored records
+   *
+   * @return the size
+   */
+  public int size() {
+    return records.size();
+  }
+
+  /**
+   * Let all following writes and deletes fail with the given cause
+   *
+   * @param failure
+   *          the cause or null, to let them succeed again
+   */
+  public void setFailure(Throwable failure) {
+    this.failure = failure;
+  }
+
+  /**
+   * The number of executed queries
+   *
+   * @return the number of queries
+   */
+  public int getQueries() {
+    return queries;
+  }
+
+  /**
+   * The number of executed writes
+   *
+   * @return the number of writes
+   */
+  public int getWrites() {
+    return writes;
+  }
+
+  /**
+   * The number of executed deletes
+   *
+   * @return the number of deletes
+   */
+  public int getDeletes() {
+    return deletes;
+  }
+
+  /**
+   * The number of executed partial updates of the {@link #fieldUpdater(MockDataStore...)}
+   *
+   * @return the number of updates
+   */
+  public int getUpdates() {
+    return updates;
+  }
+
+  /**
+   * Create an {@link IFieldUpdater}, which writes the fields into the stored records of the given datastores and
+   * fails with an UnsupportedOperationException for other datastores
+   *
+   * @param stores
+   *          the datastores, which support partial updates
+   * @return the updater
+   */
+  public static IFieldUpdater fieldUpdater(MockDataStore... stores) {
+    return (datastore, mapper, id, values, increments, handler) -> {
+      for (MockDataStore store : stores) {
+        if (store.datastore == datastore) {
+          store.update(id, values, increments, handler);
+          return;
+        }
+      }
+      handler.handle(Future.failedFuture(new UnsupportedOperationException("partial updates not supported")));
+    };
+  }
+
+  private void update(Object id, Map<IProperty, Object> values, Map<IProperty, Long> increments,
+      Handler<AsyncResult<Void>> handler) {
+    updates++;
+    Object record = get(id);
+    if (failure != null) {
+      handler.handle(Future.failedFuture(failure));
+    } else if (record == null) {
+      handler.handle(Future.failedFuture(new NoSuchRecordException("Could not find record with ID " + id)));
+    } else {
+      values.forEach((field, value) -> field.getPropertyAccessor().writeData(record, value));
+      increments.forEach((field, delta) -> {
+        Number current = (Number) field.getPropertyAccessor().readData(record);
+        field.getPropertyAccessor().writeData(record, (current == null ? 0L : current.longValue()) + delta);
+      });
+      handler.handle(Future.succeededFuture());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private IQuery<?> createQuery() {
+    Object[] definition = new Object[] { null, 0, 0 };
+    List<SortArgument> sortArguments = new ArrayList<>();
+    ISortDefinition<?> sort = MockMapper.proxy(ISortDefinition.class, name + ".sort",
+        (method, args) -> method.equals("isEmpty") ? sortArguments.isEmpty() : sortArguments);
+    IQuery<?>[] query = new IQuery[1];
+    query[0] = MockMapper.proxy(IQuery.class, name + ".query", (method, args) -> {
+      switch (method) {
+      case "execute":
+        queries++;
+        List<Object> result = select(definition[0], sortArguments, (Integer) definition[1],
+            (Integer) definition[2]);
+        ((Handler<AsyncResult<IQueryResult<?>>>) args[0]).handle(Future.succeededFuture(queryResult(result)));
+        return null;
+      case "executeCount":
+        queries++;
+        long count = records.size();
+        ((Handler<AsyncResult<IQueryCountResult>>) args[0]).handle(Future.succeededFuture(
+            MockMapper.proxy(IQueryCountResult.class, name + ".countResult", (m, a) -> count)));
+        return null;
+      case "setSearchCondition":
+        definition[0] = args[0];
+        return query[0];
+      case "setStart":
+        definition[1] = args[0];
+        return null;
+      case "setLimit":
+        definition[2] = args[0];
+        return null;
+      case "addSort":
+        sortArguments.add(new SortArgument((String) args[0], args.length < 2 || (Boolean) args[1]));
+        return sort;
+      case "getSearchCondition":
+        return definition[0];
+      case "getStart":
+        return definition[1];
+      case "getLimit":
+        return definition[2];
+      case "getSortDefinitions":
+        return sort;
+      case "getMapper":
+        return mapper;
+      case "getDataStore":
+        return datastore;
+      default:
+        return null;
+      }
+    });
+    return query[0];
+  }
+
+  /**
+   * Select the records of a query. Only a condition {@link QueryOperator#LARGER} on the id field and sorts by the id
+   * are evaluated, other conditions are returning all records
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private List<Object> select(Object condition, List<SortArgument> sortArguments, int start, int limit) {
+    List<Object> result = new ArrayList<>();
+    for (Entry<Object, Object> entry : records.entrySet()) {
+      if (isLargerIdCondition(condition)) {
+        Object value = IdNormalizer.normalize(idField, ((IFieldCondition) condition).getValue());
+        if (((Comparable) entry.getKey()).compareTo(value) <= 0) {
+          continue;
+        }
+      }
+      result.add(entry.getValue());
+    }
+    for (SortArgument sortArgument : sortArguments) {
+      if (sortArgument.getFieldName().equals(idField.getName())) {
+        Comparator<Object> comparator = Comparator
+            .comparing(entity -> (Comparable) IdNormalizer.normalize(idField, idField.getPropertyAccessor()
+                .readData(entity)));
+        result.sort(sortArgument.isAscending() ? comparator : comparator.reversed());
+      }
+    }
+    int from = Math.min(start, result.size());
+    int to = limit > 0 ? Math.min(from + limit, result.size()) : result.size();
+    return new ArrayList<>(result.subList(from, to));
+  }
+
+  private boolean isLargerIdCondition(Object condition) {
+    return condition instanceof IFieldCondition
+        && ((IFieldCondition) condition).getOperator() == QueryOperator.LARGER
+        && ((IFieldCondition) condition).getField().getFieldName().equals(idField.getName());
+  }
+
+  private IQueryResult<?> queryResult(List<Object> result) {
+    Iterator<Object> it = result.iterator();
+    IteratorAsync<?> iterator = MockMapper.proxy(IteratorAsync.class, name + ".iterator", (method, args) -> {
+      if (method.equals("hasNext")) {
+        return it.hasNext();
+      }
+      @SuppressWarnings("unchecked")
+      Handler<AsyncResult<Object>> handler = (Handler<AsyncResult<Object>>) args[0];
+      handler.handle(Future.succeededFuture(it.next()));
+      return null;
+    });
+    return MockMapper.proxy(IQueryResult.class, name + ".result",
+        (method, args) -> method.equals("iterator") ? iterator : method.equals("size") ? result.size() : null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private IWrite<?> createWrite() {
+    List<Object> entities = new ArrayList<>();
+    IWrite<?>[] write = new IWrite[1];
+    write[0] = MockMapper.proxy(IWrite.class, name + ".write", (method, args) -> {
+      if (method.equals("add")) {
+        entities.add(args[0]);
+        return write[0];
+      } else if (method.equals("save")) {
+        writes++;
+        Handler<AsyncResult<IWriteResult>> handler = (Handler<AsyncResult<IWriteResult>>) args[0];
+        if (failure != null) {
+          handler.handle(Future.failedFuture(failure));
+        } else {
+          List<IWriteEntry> entries = new ArrayList<>();
+          for (Object entity : entities) {
+            add(entity);
+            Object id = idField.getPropertyAccessor().readData(entity);
+            entries.add(MockMapper.proxy(IWriteEntry.class, "entry " + id,
+                (m, a) -> m.equals("getId") ? id : m.equals("getStoreObject") ? entity : null));
+          }
+          handler.handle(Future.succeededFuture(MockMapper.proxy(IWriteResult.class, name + ".writeResult",
+              (m, a) -> m.equals("iterator") ? entries.iterator() : m.equals("size") ? entries.size() : null)));
+        }
+      }
+      return null;
+    });
+    return write[0];
+  }
+
+  @SuppressWarnings("unchecked")
+  private IDelete<?> createDelete() {
+    List<Object> entities = new ArrayList<>();
+    IDelete<?>[] delete = new IDelete[1];
+    delete[0] = MockMapper.proxy(IDelete.class, name + ".delete", (method, args) -> {
+      if (method.equals("add")) {
+        entities.add(args[0]);
+        return delete[0];
+      } else if (method.equals("delete")) {
+        deletes++;
+        Handler<AsyncResult<IDeleteResult>> handler = (Handler<AsyncResult<IDeleteResult>>) args[0];
+        if (failure != null) {
+          handler.handle(Future.failedFuture(failure));
+        } else {
+          entities.forEach(entity -> records
+              .remove(IdNormalizer.normalize(idField, idField.getPropertyAccessor().readData(entity))));
+          handler.handle(Future.succeededFuture(MockMapper.proxy(IDeleteResult.class, name + ".deleteResult",
+              (m, a) -> null)));
+        }
+      }
+      return null;
+    });
+    return delete[0];
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+}
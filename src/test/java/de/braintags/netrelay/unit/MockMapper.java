@@ -0,0 +1,278 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.braintags.vertx.jomnigate.annotation.field.Id;
+import de.braintags.vertx.jomnigate.dataaccess.query.IIndexedField;
+import de.braintags.vertx.jomnigate.mapping.IIdInfo;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IObjectFactory;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.jomnigate.mapping.IPropertyAccessor;
+import de.braintags.vertx.jomnigate.mapping.IPropertyMapper;
+import de.braintags.vertx.jomnigate.mapping.IStoreObject;
+import de.braintags.vertx.jomnigate.mapping.ITableInfo;
+import de.braintags.vertx.jomnigate.typehandler.ITypeHandler;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * Creates an {@link IMapper} for a simple entity class by dynamic proxies, so that classes, which are working on a
+ * mapper, can be tested without a datastore. Each non static field of the class is a property, the field annotated
+ * with {@link Id} or named "id" is the id field. The properties are bound by a property mapper, which converts the
+ * String values of a store object into the type of the field.
+ *
+ * @author Michael Remme
+ *
+ */
+public class MockMapper {
+
+  private MockMapper() {
+  }
+
+  /**
+   * Create a mapper for the given class
+   *
+   * @param mapperClass
+   *          the class of the entities
+   * @return the mapper
+   */
+  public static <T> IMapper<T> create(Class<T> mapperClass) {
+    return create(mapperClass, Collections.emptyMap());
+  }
+
+  /**
+   * Create a mapper for the given class, where the properties are using the given type handlers
+   *
+   * @param mapperClass
+   *          the class of the entities
+   * @param typeHandlers
+   *          the type handlers by the name of the field
+   * @return the mapper
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> IMapper<T> create(Class<T> mapperClass, Map<String, ITypeHandler> typeHandlers) {
+    Map<String, IProperty> properties = new LinkedHashMap<>();
+    IProperty[] idField = new IProperty[1];
+    IMapper<T>[] mapper = new IMapper[1];
+    for (Class<?> cls = mapperClass; cls != Object.class; cls = cls.getSuperclass()) {
+      for (Field field : cls.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+          field.setAccessible(true);
+          IProperty property = createProperty(field, typeHandlers.get(field.getName()), mapper);
+          properties.put(field.getName(), property);
+          if (field.isAnnotationPresent(Id.class) || (idField[0] == null && field.getName().equals("id"))) {
+            idField[0] = property;
+          }
+        }
+      }
+    }
+    IIdInfo idInfo = proxy(IIdInfo.class, "IdInfo " + mapperClass.getSimpleName(), (method, args) -> {
+      return method.equals("getField") || method.equals("getIndexedField") ? idField[0] : null;
+    });
+    ITableInfo tableInfo = proxy(ITableInfo.class, "TableInfo " + mapperClass.getSimpleName(),
+        (method, args) -> method.equals("getName") ? mapperClass.getSimpleName() : null);
+    IObjectFactory objectFactory = proxy(IObjectFactory.class, "ObjectFactory", (method, args) -> {
+      try {
+        java.lang.reflect.Constructor<?> constructor = ((Class<?>) args[0]).getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    mapper[0] = proxy(IMapper.class, "Mapper " + mapperClass.getSimpleName(), (method, args) -> {
+      switch (method) {
+      case "getFieldNames":
+        return properties.keySet();
+      case "getField":
+        return properties.get(args[0]);
+      case "getIdInfo":
+        return idInfo;
+      case "getMapperClass":
+        return mapperClass;
+      case "getObjectFactory":
+        return objectFactory;
+      case "getTableInfo":
+        return tableInfo;
+      default:
+        return null;
+      }
+    });
+    return mapper[0];
+  }
+
+  private static IProperty createProperty(Field field, ITypeHandler typeHandler, IMapper<?>[] mapper) {
+    IPropertyAccessor accessor = proxy(IPropertyAccessor.class, "Accessor " + field.getName(), (method, args) -> {
+      try {
+        if (method.equals("readData")) {
+          return field.get(args[0]);
+        }
+        field.set(args[0], args[1]);
+        return null;
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    IProperty[] property = new IProperty[1];
+    IPropertyMapper propertyMapper = proxy(IPropertyMapper.class, "PropertyMapper " + field.getName(),
+        (method, args) -> {
+          @SuppressWarnings("unchecked")
+          Handler<AsyncResult<Void>> handler = (Handler<AsyncResult<Void>>) args[args.length - 1];
+          try {
+            if (method.equals("fromStoreObject")) {
+              Object value = ((IStoreObject<?, ?>) args[1]).get(property[0]);
+              accessor.writeData(args[0], convert(field.getType(), (String) value));
+            } else if (method.equals("intoStoreObject")) {
+              Object value = accessor.readData(args[0]);
+              if (value != null) {
+                ((IStoreObject<?, ?>) args[1]).put(property[0], value);
+              }
+            }
+            handler.handle(Future.succeededFuture());
+          } catch (RuntimeException e) {
+            handler.handle(Future.failedFuture(e));
+          }
+          return null;
+        });
+    String fullName = field.getDeclaringClass().getName() + "." + field.getName();
+    property[0] = (IProperty) Proxy.newProxyInstance(MockMapper.class.getClassLoader(),
+        new Class<?>[] { IProperty.class, IIndexedField.class }, handler(fullName, (method, args) -> {
+          switch (method) {
+          case "getName":
+          case "getFieldName":
+            return field.getName();
+          case "getFullName":
+            return fullName;
+          case "getType":
+            return field.getType();
+          case "getField":
+            return field;
+          case "getPropertyAccessor":
+            return accessor;
+          case "getPropertyMapper":
+            return propertyMapper;
+          case "getTypeHandler":
+            return typeHandler;
+          case "getMapper":
+            return mapper[0];
+          default:
+            return null;
+          }
+        }));
+    return property[0];
+  }
+
+  /**
+   * Convert a String into the given type, like a string based type handler does
+   *
+   * @param type
+   *          the type
+   * @param value
+   *          the String value
+   * @return the converted value
+   */
+  public static Object convert(Class<?> type, String value) {
+    if (value == null || type == String.class) {
+      return value;
+    } else if (type == Long.class || type == long.class) {
+      return Long.valueOf(value);
+    } else if (type == Integer.class || type == int.class) {
+      return Integer.valueOf(value);
+    } else if (type == Double.class || type == double.class) {
+      return Double.valueOf(value);
+    } else if (type == Boolean.class || type == boolean.class) {
+      return Boolean.valueOf(value);
+    }
+    throw new IllegalArgumentException("unsupported type " + type);
+  }
+
+  /**
+   * Create a proxy for the given interface
+   *
+   * @param iface
+   *          the interface
+   * @param name
+   *          the name, which is returned by toString
+   * @param implementation
+   *          the implementation, which gets the name of the method and the arguments
+   * @return the proxy
+   */
+  @SuppressWarnings("unchecked")
+  public static <I> I proxy(Class<I> iface, String name, MockMethod implementation) {
+    return (I) Proxy.newProxyInstance(MockMapper.class.getClassLoader(), new Class<?>[] { iface },
+        handler(name, implementation));
+  }
+
+  private static InvocationHandler handler(String name, MockMethod implementation) {
+    return (proxy, method, args) -> {
+      switch (method.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return name;
+      default:
+        Object result = implementation.invoke(method.getName(), args == null ? new Object[0] : args);
+        return result == null ? defaultValue(method.getReturnType()) : result;
+      }
+    };
+  }
+
+  private static final Map<Class<?>, Object> DEFAULTS = new HashMap<>();
+
+  static {
+    DEFAULTS.put(boolean.class, false);
+    DEFAULTS.put(int.class, 0);
+    DEFAULTS.put(long.class, 0L);
+    DEFAULTS.put(short.class, (short) 0);
+    DEFAULTS.put(byte.class, (byte) 0);
+    DEFAULTS.put(double.class, 0d);
+    DEFAULTS.put(float.class, 0f);
+    DEFAULTS.put(char.class, (char) 0);
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    return DEFAULTS.get(type);
+  }
+
+  /**
+   * The implementation of the methods of a proxy
+   */
+  @FunctionalInterface
+  public interface MockMethod {
+
+    /**
+     * Execute the method with the given name
+     *
+     * @param method
+     *          the name of the method
+     * @param args
+     *          the arguments
+     * @return the result; null is converted into the default value of primitive return types
+     */
+    Object invoke(String method, Object[] args);
+  }
+
+}
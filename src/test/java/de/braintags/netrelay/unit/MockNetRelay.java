@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.cache.CacheManager;
+import de.braintags.netrelay.datastore.DatastoreManager;
+import de.braintags.netrelay.datastore.EntityWriter;
+import de.braintags.netrelay.datastore.ShardDefinition;
+import de.braintags.netrelay.datastore.ShardRouter;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.netrelay.mapping.NetRelayStoreObjectFactory;
+import de.braintags.vertx.jomnigate.IDataStore;
+import io.vertx.core.Vertx;
+
+/**
+ * Creates an instance of {@link NetRelay}, which is not started, but holds the parts, which are needed by the unit
+ * tests of the data access: the datastores, the caches, the {@link EntityWriter} and the store object factory. The
+ * parts are set by reflection, so that no server and no real datastore are needed.
+ *
+ * @author Michael Remme
+ *
+ */
+public class MockNetRelay {
+
+  private MockNetRelay() {
+  }
+
+  /**
+   * Create a new instance
+   *
+   * @param vertx
+   *          the instance of vertx
+   * @param primary
+   *          the primary datastore
+   * @param settings
+   *          the settings, from where the caches are created
+   * @return the instance of NetRelay
+   */
+  public static NetRelay create(Vertx vertx, IDataStore<?, ?> primary, Settings settings) {
+    NetRelay netRelay = new NetRelay();
+    netRelay.init(vertx, vertx.getOrCreateContext());
+    set(netRelay, "settings", settings);
+    set(netRelay, "datastore", primary);
+    set(netRelay, "datastoreManager", new DatastoreManager(primary, 0));
+    set(netRelay, "cacheManager", new CacheManager(vertx, settings));
+    set(netRelay, "entityWriter", new EntityWriter(netRelay));
+    set(netRelay, "storeObjectFactory", new NetRelayStoreObjectFactory(netRelay));
+    return netRelay;
+  }
+
+  /**
+   * Distribute the records of the given mapper over the given datastores
+   *
+   * @param netRelay
+   *          the instance created by {@link #create(Vertx, IDataStore, Settings)}
+   * @param mapperClass
+   *          the class of the mapper
+   * @param shards
+   *          the datastores of the shards
+   */
+  @SuppressWarnings("unchecked")
+  public static void shard(NetRelay netRelay, Class<?> mapperClass, List<IDataStore<?, ?>> shards) {
+    Map<Class<?>, ShardRouter<IDataStore<?, ?>>> routers = (Map<Class<?>, ShardRouter<IDataStore<?, ?>>>) get(
+        netRelay.getDatastoreManager(), "shardRouters");
+    ShardDefinition definition = new ShardDefinition();
+    for (int i = 0; i < shards.size(); i++) {
+      definition.getDatastores().add("shard" + i);
+    }
+    routers.put(mapperClass, new ShardRouter<>(definition, shards));
+  }
+
+  /**
+   * Add read replicas to the {@link DatastoreManager} of the given instance
+   *
+   * @param netRelay
+   *          the instance created by {@link #create(Vertx, IDataStore, Settings)}
+   * @param readYourWritesWindow
+   *          the time in milliseconds after a write, in which a session reads from the primary datastore
+   * @param replicas
+   *          the datastores of the replicas
+   */
+  @SuppressWarnings("unchecked")
+  public static void replicate(NetRelay netRelay, long readYourWritesWindow, List<IDataStore<?, ?>> replicas) {
+    DatastoreManager manager = new DatastoreManager(netRelay.getDatastore(), readYourWritesWindow);
+    ((List<IDataStore<?, ?>>) get(manager, "replicas")).addAll(replicas);
+    set(netRelay, "datastoreManager", manager);
+  }
+
+  /**
+   * Set the value of a private field
+   *
+   * @param target
+   *          the object
+   * @param name
+   *          the name of the field
+   * @param value
+   *          the value
+   */
+  public static void set(Object target, String name, Object value) {
+    try {
+      field(target, name).set(target, value);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Get the value of a private field
+   *
+   * @param target
+   *          the object
+   * @param name
+   *          the name of the field
+   * @return the value
+   */
+  public static Object get(Object target, String name) {
+    try {
+      return field(target, name).get(target);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Field field(Object target, String name) throws NoSuchFieldException {
+    for (Class<?> cls = target.getClass(); cls != null; cls = cls.getSuperclass()) {
+      try {
+        Field field = cls.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+      } catch (NoSuchFieldException e) {
+        // try the super class
+      }
+    }
+    throw new NoSuchFieldException(name);
+  }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.braintags.netrelay.util.MockHttpServerResponse;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+/**
+ * A {@link MockHttpServerResponse}, which records the status, the headers and the written chunks, so that tests can
+ * check, what a controller has sent. The write queue can be set to full, to test the back pressure of a writer
+ *
+ * @author Michael Remme
+ *
+ */
+public class MockRecordingResponse extends MockHttpServerResponse {
+  private final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+  private final List<Buffer> chunks = new ArrayList<>();
+  private final Buffer body = Buffer.buffer();
+  private int statusCode = 200;
+  private boolean chunked;
+  private boolean ended;
+  private boolean closed;
+  private boolean writeQueueFull;
+  private Handler<Void> drainHandler;
+  private Handler<Void> closeHandler;
+
+  @Override
+  public HttpServerResponse putHeader(String name, String value) {
+    headers.set(name, value);
+    return this;
+  }
+
+  @Override
+  public HttpServerResponse putHeader(CharSequence name, CharSequence value) {
+    headers.set(name, value);
+    return this;
+  }
+
+  @Override
+  public MultiMap headers() {
+    return headers;
+  }
+
+  @Override
+  public HttpServerResponse setStatusCode(int statusCode) {
+    this.statusCode = statusCode;
+    return this;
+  }
+
+  @Override
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  @Override
+  public HttpServerResponse setChunked(boolean chunked) {
+    this.chunked = chunked;
+    return this;
+  }
+
+  @Override
+  public boolean isChunked() {
+    return chunked;
+  }
+
+  @Override
+  public HttpServerResponse write(Buffer data) {
+    if (ended) {
+      throw new IllegalStateException("response has already been written");
+    }
+    chunks.add(data.copy());
+    body.appendBuffer(data);
+    return this;
+  }
+
+  @Override
+  public HttpServerResponse write(String chunk) {
+    return write(Buffer.buffer(chunk));
+  }
+
+  @Override
+  public void end(String chunk) {
+    end(Buffer.buffer(chunk));
+  }
+
+  @Override
+  public void end(Buffer chunk) {
+    if (chunk.length() > 0) {
+      write(chunk);
+    }
+    end();
+  }
+
+  @Override
+  public void end() {
+    if (ended) {
+      throw new IllegalStateException("response has already been written");
+    }
+    ended = true;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (closeHandler != null) {
+      closeHandler.handle(null);
+    }
+  }
+
+  @Override
+  public boolean ended() {
+    return ended;
+  }
+
+  @Override
+  public boolean closed() {
+    return closed;
+  }
+
+  @Override
+  public HttpServerResponse closeHandler(Handler<Void> handler) {
+    this.closeHandler = handler;
+    return this;
+  }
+
+  @Override
+  public boolean writeQueueFull() {
+    return writeQueueFull;
+  }
+
+  @Override
+  public HttpServerResponse drainHandler(Handler<Void> handler) {
+    this.drainHandler = handler;
+    return this;
+  }
+
+  /**
+   * Set the state of the write queue. If the queue is not full anymore, the drain handler is called
+   *
+   * @param full
+   *          true, if the write queue shall be full
+   */
+  public void setWriteQueueFull(boolean full) {
+    this.writeQueueFull = full;
+    if (!full && drainHandler != null) {
+      drainHandler.handle(null);
+    }
+  }
+
+  /**
+   * The chunks, which were written, including the last one of end
+   *
+   * @return the chunks
+   */
+  public List<Buffer> getChunks() {
+    return chunks;
+  }
+
+  /**
+   * All written data
+   *
+   * @return the body
+   */
+  public Buffer getBody() {
+    return body;
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.mapping.BindingBarrier;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link BindingBarrier}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TBindingBarrier {
+  private static Vertx vertx;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testEmpty(TestContext context) {
+    AtomicInteger calls = new AtomicInteger();
+    BindingBarrier barrier = new BindingBarrier(result -> {
+      context.assertTrue(result.succeeded());
+      calls.incrementAndGet();
+    });
+    context.assertFalse(barrier.isDone());
+    barrier.arm();
+    context.assertTrue(barrier.isDone());
+    context.assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testSynchronous(TestContext context) {
+    AtomicInteger calls = new AtomicInteger();
+    BindingBarrier barrier = new BindingBarrier(result -> {
+      context.assertTrue(result.succeeded());
+      calls.incrementAndGet();
+    });
+    for (int i = 0; i < 5; i++) {
+      barrier.add().handle(Future.succeededFuture());
+    }
+    context.assertEquals(0, calls.get(), "handler must wait for arm");
+    barrier.arm();
+    context.assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testAsynchronous(TestContext context) {
+    Async async = context.async();
+    AtomicInteger calls = new AtomicInteger();
+    BindingBarrier barrier = new BindingBarrier(result -> {
+      context.assertTrue(result.succeeded());
+      context.assertEquals(1, calls.incrementAndGet());
+      async.complete();
+    });
+    barrier.add().handle(Future.succeededFuture());
+    for (int i = 0; i < 3; i++) {
+      Handler<AsyncResult<Void>> field = barrier.add();
+      vertx.setTimer(10 + i * 10, t -> field.handle(Future.succeededFuture()));
+    }
+    barrier.arm();
+    context.assertFalse(barrier.isDone());
+  }
+
+  @Test
+  public void testFailure(TestContext context) {
+    List<AsyncResult<Void>> results = new ArrayList<>();
+    BindingBarrier barrier = new BindingBarrier(results::add);
+    Handler<AsyncResult<Void>> first = barrier.add();
+    Handler<AsyncResult<Void>> second = barrier.add();
+    Handler<AsyncResult<Void>> third = barrier.add();
+    second.handle(Future.failedFuture(new IllegalArgumentException("binding failed")));
+    context.assertTrue(barrier.isDone(), "first failure must be reported immediately");
+    first.handle(Future.succeededFuture());
+    third.handle(Future.failedFuture(new IllegalStateException("second failure")));
+    barrier.arm();
+    context.assertEquals(1, results.size());
+    context.assertTrue(results.get(0).cause() instanceof IllegalArgumentException);
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.typehandler.CoordinateCodec;
+import de.braintags.vertx.jomnigate.datatypes.geojson.GeoPoint;
+import de.braintags.vertx.jomnigate.datatypes.geojson.Position;
+import io.vertx.core.json.DecodeException;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link CoordinateCodec}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TCoordinateCodec {
+  private static final List<String> INVALID = Arrays.asList("", "[]", "[1]", "1,2", "[1,2", "[1,2]x", "[1,,2]",
+      "[1,2,]", "[01,2]", "[1.,2]", "[.5,2]", "[+1,2]", "[1e,2]", "[1,2e+]", "[-,2]", "[NaN,2]", "[1,Infinity]",
+      "[1e400,2]", "[\"1\",2]", "[1 2]", "{1,2}");
+
+  @Test
+  public void testParse(TestContext context) {
+    assertPosition(context, "[13.404954,52.520008]", 13.404954, 52.520008);
+    assertPosition(context, " [ -0.1276 , 51.5072 ] ", -0.1276, 51.5072);
+    assertPosition(context, "[0,-0]", 0.0, -0.0);
+    assertPosition(context, "[1e2,2.5E-3]", 100.0, 0.0025);
+    assertPosition(context, "[1,2,3.5]", 1.0, 2.0, 3.5);
+    assertPosition(context, "[0.1234567890123456789,179.99999999999999]", 0.1234567890123456789,
+        179.99999999999999);
+    assertPosition(context, "[12345678901234567890e-10,1e-30]", 12345678901234567890e-10, 1e-30);
+  }
+
+  @Test
+  public void testInvalid(TestContext context) {
+    for (String source : INVALID) {
+      try {
+        CoordinateCodec.parsePosition(source);
+        context.fail("expected a DecodeException for " + source);
+      } catch (DecodeException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsParseDouble(TestContext context) {
+    Random random = new Random(4711);
+    for (int i = 0; i < 10000; i++) {
+      String x = randomNumber(random, 180);
+      String y = randomNumber(random, 90);
+      String source = "[" + x + "," + y + "]";
+      List<Double> values = CoordinateCodec.parsePosition(source).getValues();
+      context.assertEquals(Double.doubleToLongBits(Double.parseDouble(x)), Double.doubleToLongBits(values.get(0)),
+          source);
+      context.assertEquals(Double.doubleToLongBits(Double.parseDouble(y)), Double.doubleToLongBits(values.get(1)),
+          source);
+    }
+  }
+
+  @Test
+  public void testRoundTrip(TestContext context) {
+    Random random = new Random(815);
+    for (int i = 0; i < 10000; i++) {
+      double x = (random.nextDouble() - 0.5) * 360;
+      double y = (random.nextDouble() - 0.5) * 180;
+      GeoPoint point = CoordinateCodec.parseGeoPoint("[" + x + "," + y + "]");
+      String encoded = CoordinateCodec.encode(point);
+      context.assertEquals("[" + x + "," + y + "]", encoded);
+      List<Double> values = CoordinateCodec.parseGeoPoint(encoded).getCoordinates().getValues();
+      context.assertEquals(Double.doubleToLongBits(x), Double.doubleToLongBits(values.get(0)), encoded);
+      context.assertEquals(Double.doubleToLongBits(y), Double.doubleToLongBits(values.get(1)), encoded);
+    }
+  }
+
+  @Test
+  public void testAppendTo(TestContext context) {
+    Position position = CoordinateCodec.parsePosition("[1.5,-2]");
+    StringBuilder builder = new StringBuilder("point=");
+    context.assertTrue(builder == CoordinateCodec.appendTo(position, builder));
+    context.assertEquals("point=[1.5,-2.0]", builder.toString());
+  }
+
+  private static void assertPosition(TestContext context, String source, double... expected) {
+    List<Double> values = CoordinateCodec.parsePosition(source).getValues();
+    context.assertEquals(expected.length, values.size(), source);
+    for (int i = 0; i < expected.length; i++) {
+      context.assertEquals(Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(values.get(i)), source);
+    }
+  }
+
+  private static String randomNumber(Random random, int range) {
+    StringBuilder builder = new StringBuilder();
+    if (random.nextBoolean()) {
+      builder.append('-');
+    }
+    builder.append(random.nextInt(range));
+    int decimals = random.nextInt(19);
+    if (decimals > 0) {
+      builder.append('.');
+      for (int i = 0; i < decimals; i++) {
+        builder.append(random.nextInt(10));
+      }
+    }
+    if (random.nextInt(10) == 0) {
+      builder.append('e').append(random.nextInt(7) - 3);
+    }
+    return builder.toString();
+  }
+
+}
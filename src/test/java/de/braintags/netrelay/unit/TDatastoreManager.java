@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.controller.Action;
+import de.braintags.netrelay.datastore.DatastoreManager;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Tests for the routing of the {@link DatastoreManager} to read replicas and the read-your-writes window
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TDatastoreManager {
+  private static Vertx vertx;
+  private static final IMapper<Item> MAPPER = MockMapper.create(Item.class);
+  private MockDataStore primary;
+  private MockDataStore first;
+  private MockDataStore second;
+  private NetRelay netRelay;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Before
+  public void init() {
+    primary = new MockDataStore("primary", MAPPER);
+    first = new MockDataStore("first", MAPPER);
+    second = new MockDataStore("second", MAPPER);
+    netRelay = MockNetRelay.create(vertx, primary.getDatastore(), new Settings());
+    MockNetRelay.replicate(netRelay, 60000, Arrays.asList(first.getDatastore(), second.getDatastore()));
+  }
+
+  @Test
+  public void testReplicas(TestContext context) {
+    RoutingContext rc = routingContext();
+    context.assertTrue(netRelay.getDatastore(rc, Action.DISPLAY, Item.class) == first.getDatastore());
+    context.assertTrue(netRelay.getDatastore(rc, Action.DISPLAY, Item.class) == second.getDatastore());
+    context.assertTrue(netRelay.getDatastore(rc, Action.UPDATE, Item.class) == primary.getDatastore());
+    context.assertTrue(netRelay.getDatastore(rc, Action.INSERT, Item.class, 1L) == primary.getDatastore());
+    context.assertTrue(netRelay.getDatastores(rc, Action.DISPLAY, Item.class).get(0) != primary.getDatastore());
+  }
+
+  @Test
+  public void testReadYourWrites(TestContext context) {
+    RoutingContext rc = routingContext();
+    netRelay.getDatastoreManager().markWritten(rc);
+    context.assertTrue(netRelay.getDatastore(rc, Action.DISPLAY, Item.class) == primary.getDatastore());
+    context.assertTrue(netRelay.getDatastore(routingContext(), Action.DISPLAY, Item.class) != primary.getDatastore(),
+        "other requests are still using the replicas");
+  }
+
+  @Test
+  public void testEntityWriterMarks(TestContext context) {
+    RoutingContext rc = routingContext();
+    netRelay.getEntityWriter().save(rc, MAPPER, Arrays.asList(new Item(1L)), context.asyncAssertSuccess(results -> {
+      context.assertNotNull(primary.get(1L));
+      context.assertTrue(netRelay.getDatastore(rc, Action.DISPLAY, Item.class) == primary.getDatastore(),
+          "a request, which has written, must read from the primary");
+    }));
+  }
+
+  @Test
+  public void testWriteBehindDoesNotMark(TestContext context) {
+    RoutingContext rc = routingContext();
+    netRelay.getEntityWriter().fieldsWritten(null, Item.class, 1L, new HashMap<>());
+    context.assertTrue(netRelay.getDatastore(rc, Action.DISPLAY, Item.class) != primary.getDatastore());
+  }
+
+  @Test
+  public void testSharded(TestContext context) {
+    MockNetRelay.shard(netRelay, Item.class, Arrays.asList(first.getDatastore(), second.getDatastore()));
+    context.assertEquals(2, netRelay.getDatastores(routingContext(), Action.DISPLAY, Item.class).size());
+  }
+
+  private static RoutingContext routingContext() {
+    Map<String, Object> data = new HashMap<>();
+    return MockMapper.proxy(RoutingContext.class, "context", (method, args) -> {
+      if (method.equals("put")) {
+        data.put((String) args[0], args[1]);
+      } else if (method.equals("get")) {
+        return data.get(args[0]);
+      }
+      return null;
+    });
+  }
+
+  public static class Item {
+    public Long id;
+
+    public Item() {
+    }
+
+    Item(Long id) {
+      this.id = id;
+    }
+  }
+
+}
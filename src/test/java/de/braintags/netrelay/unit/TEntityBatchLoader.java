@@ -0,0 +1,210 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.cache.CacheDefinition;
+import de.braintags.netrelay.cache.CacheSettings;
+import de.braintags.netrelay.cache.EntityCache;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.netrelay.mapping.EntityBatchLoader;
+import de.braintags.netrelay.mapping.NetRelayStoreObject;
+import de.braintags.netrelay.util.MockRoutingContext;
+import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Tests for {@link EntityBatchLoader}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TEntityBatchLoader {
+  private static Vertx vertx;
+  private static NetRelay netRelay;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+    netRelay = new NetRelay();
+    netRelay.init(vertx, vertx.getOrCreateContext());
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testNumericIds(TestContext context) {
+    IMapper<LongEntity> mapper = MockMapper.create(LongEntity.class);
+    MockDataStore ds = new MockDataStore("numeric", mapper);
+    ds.add(new LongEntity(5L));
+    ds.add(new LongEntity(6L));
+    List<AsyncResult<LongEntity>> results = new ArrayList<>();
+    Async async = context.async();
+    // the loads of one tick of the event loop are collected into one query
+    vertx.runOnContext(v -> {
+      EntityBatchLoader loader = new EntityBatchLoader(netRelay);
+      loader.load(ds.getDatastore(), mapper, "05", results::add);
+      loader.load(ds.getDatastore(), mapper, 5L, results::add);
+      loader.load(ds.getDatastore(), mapper, " 6", results::add);
+      loader.load(ds.getDatastore(), mapper, "7", results::add);
+      vertx.runOnContext(v2 -> {
+        context.assertEquals(1, ds.getQueries(), "all ids must be loaded by one query");
+        context.assertEquals(4, results.size());
+        context.assertEquals(5L, results.get(0).result().id);
+        context.assertTrue(results.get(0).result() == results.get(1).result());
+        context.assertEquals(6L, results.get(2).result().id);
+        context.assertTrue(results.get(3).cause() instanceof NoSuchRecordException);
+        async.complete();
+      });
+    });
+  }
+
+  @Test
+  public void testLoadedHandler(TestContext context) {
+    IMapper<LongEntity> mapper = MockMapper.create(LongEntity.class);
+    MockDataStore ds = new MockDataStore("loaded", mapper);
+    ds.add(new LongEntity(5L, "stored"));
+    List<String> loaded = new ArrayList<>();
+    List<AsyncResult<LongEntity>> results = new ArrayList<>();
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      EntityBatchLoader loader = new EntityBatchLoader(netRelay);
+      loader.load(ds.getDatastore(), mapper, 5L, e -> loaded.add(e.name), res -> {
+        results.add(res);
+        res.result().name = "first";
+      });
+      loader.load(ds.getDatastore(), mapper, "5", e -> loaded.add("second"), results::add);
+      loader.flush();
+      context.assertEquals(2, results.size());
+      context.assertEquals(1, loaded.size(), "the loaded handler must be executed once per record");
+      context.assertEquals("stored", loaded.get(0), "the loaded handler must be executed before any handler");
+      async.complete();
+    });
+  }
+
+  @Test
+  public void testSharedRecordInCache(TestContext context) throws Exception {
+    CacheDefinition def = new CacheDefinition();
+    def.setMaxSize(100);
+    CacheSettings cacheSettings = new CacheSettings();
+    cacheSettings.getEntityCaches().put("LongEntity", def);
+    Settings settings = new Settings();
+    settings.getMappingDefinitions().addMapperDefinition("LongEntity", LongEntity.class);
+    settings.setCacheSettings(cacheSettings);
+    IMapper<LongEntity> mapper = MockMapper.create(LongEntity.class);
+    MockDataStore ds = new MockDataStore("shared", mapper);
+    ds.add(new LongEntity(5L, "stored"));
+    NetRelay cachingNetRelay = MockNetRelay.create(vertx, ds.getDatastore(), settings);
+    EntityCache<LongEntity> cache = cachingNetRelay.getCacheManager().getEntityCache(LongEntity.class);
+    RoutingContext rc = new MockRoutingContext(vertx, new URI("/test"));
+    NetRelayStoreObject<LongEntity> first = new NetRelayStoreObject<>(rc, request("5", "first"), null, mapper,
+        cachingNetRelay);
+    NetRelayStoreObject<LongEntity> second = new NetRelayStoreObject<>(rc, request("5", "second"), null, mapper,
+        cachingNetRelay);
+    Async async = context.async(2);
+    // both instances are loading the record in the same tick, so that they share the loaded instance
+    vertx.runOnContext(v -> {
+      first.initToEntity(context.asyncAssertSuccess(r -> async.countDown()));
+      second.initToEntity(context.asyncAssertSuccess(r -> async.countDown()));
+    });
+    async.awaitSuccess(5000);
+    context.assertEquals(1, ds.getQueries());
+    context.assertTrue(first.getEntity() == second.getEntity());
+    context.assertEquals("stored", cache.get(5L).name, "the cache must hold the stored record, not bound values");
+    context.assertTrue(first.hasChanges());
+    context.assertTrue(second.hasChanges(), "changes must be compared with the stored record");
+  }
+
+  private static Map<String, String> request(String id, String name) {
+    Map<String, String> map = new HashMap<>();
+    map.put("id", id);
+    map.put("name", name);
+    return map;
+  }
+
+  @Test
+  public void testInvalidId(TestContext context) {
+    IMapper<LongEntity> mapper = MockMapper.create(LongEntity.class);
+    MockDataStore ds = new MockDataStore("invalid", mapper);
+    EntityBatchLoader loader = new EntityBatchLoader(netRelay);
+    List<AsyncResult<LongEntity>> results = new ArrayList<>();
+    loader.load(ds.getDatastore(), mapper, "abc", results::add);
+    loader.flush();
+    context.assertEquals(1, results.size());
+    context.assertTrue(results.get(0).cause() instanceof NoSuchRecordException);
+    context.assertEquals(0, ds.getQueries(), "an invalid id must not be queried");
+  }
+
+  @Test
+  public void testStringIds(TestContext context) {
+    IMapper<StringEntity> mapper = MockMapper.create(StringEntity.class);
+    MockDataStore ds = new MockDataStore("string", mapper);
+    StringEntity entity = new StringEntity();
+    entity.id = "05";
+    ds.add(entity);
+    List<AsyncResult<StringEntity>> results = new ArrayList<>();
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      EntityBatchLoader loader = new EntityBatchLoader(netRelay);
+      loader.load(ds.getDatastore(), mapper, "05", results::add);
+      loader.load(ds.getDatastore(), mapper, "5", results::add);
+      loader.flush();
+      context.assertTrue(results.get(0).result() == entity);
+      context.assertTrue(results.get(1).cause() instanceof NoSuchRecordException);
+      async.complete();
+    });
+  }
+
+  public static class LongEntity {
+    public Long id;
+    public String name;
+
+    public LongEntity() {
+    }
+
+    LongEntity(Long id) {
+      this.id = id;
+    }
+
+    LongEntity(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+
+  public static class StringEntity {
+    public String id;
+  }
+
+}
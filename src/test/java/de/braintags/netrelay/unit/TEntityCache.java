@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import de.braintags.netrelay.cache.CacheDefinition;
+import de.braintags.netrelay.cache.EntityCache;
+import de.braintags.vertx.util.exception.InitException;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link EntityCache}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TEntityCache {
+
+  @Test
+  public void testCopy(TestContext context) {
+    CacheDefinition def = new CacheDefinition();
+    def.setMaxSize(10);
+    EntityCache<SimpleEntity> cache = new EntityCache<>(SimpleEntity.class, def);
+    SimpleEntity entity = new SimpleEntity();
+    entity.id = "1";
+    entity.name = "first";
+    cache.put(entity.id, entity);
+    entity.name = "changed";
+    SimpleEntity copy = cache.get("1");
+    context.assertEquals("first", copy.name);
+    copy.name = "changed";
+    context.assertEquals("first", cache.get("1").name);
+    cache.invalidate("1");
+    context.assertNull(cache.get("1"));
+  }
+
+  @Test
+  public void testOutdatedQuery(TestContext context) {
+    CacheDefinition def = new CacheDefinition();
+    def.setMaxSize(10);
+    EntityCache<SimpleEntity> cache = new EntityCache<>(SimpleEntity.class, def);
+    SimpleEntity entity = new SimpleEntity();
+    entity.id = "1";
+    long generation = cache.getGeneration();
+    // the record is written, while the query for it is running
+    cache.invalidate("1");
+    cache.put("1", entity, generation);
+    context.assertNull(cache.get("1"), "the result of an outdated query must not be stored");
+    cache.put("1", entity, cache.getGeneration());
+    context.assertNotNull(cache.get("1"));
+  }
+
+  @Test
+  public void testCacheable(TestContext context) {
+    EntityCache.checkCacheable(SimpleEntity.class);
+    assertNotCacheable(context, IgnoredField.class);
+    assertNotCacheable(context, PrivateField.class);
+    assertNotCacheable(context, Reference.class);
+  }
+
+  private void assertNotCacheable(TestContext context, Class<?> mapperClass) {
+    try {
+      EntityCache.checkCacheable(mapperClass);
+      context.fail("expected InitException for " + mapperClass.getSimpleName());
+    } catch (InitException e) {
+      // expected
+    }
+  }
+
+  public static class SimpleEntity {
+    public String id;
+    public String name;
+    public int visits;
+    public List<String> tags;
+    public transient Object ignored;
+  }
+
+  public static class IgnoredField {
+    public String id;
+    @JsonIgnore
+    public String secret;
+  }
+
+  public static class PrivateField {
+    public String id;
+    @SuppressWarnings("unused")
+    private String hidden;
+  }
+
+  public static class Reference {
+    public String id;
+    public SimpleEntity parent;
+  }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.cache.CacheDefinition;
+import de.braintags.netrelay.cache.CacheSettings;
+import de.braintags.netrelay.cache.EntityCache;
+import de.braintags.netrelay.cache.NegativeCache;
+import de.braintags.netrelay.datastore.EntityWriter;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.netrelay.mapping.SaveResult;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link EntityWriter}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TEntityWriter {
+  private static Vertx vertx;
+  private static final IMapper<Item> MAPPER = MockMapper.create(Item.class);
+  private MockDataStore even;
+  private MockDataStore odd;
+  private NetRelay netRelay;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Before
+  public void init() {
+    CacheDefinition def = new CacheDefinition();
+    def.setMaxSize(100);
+    CacheSettings cacheSettings = new CacheSettings();
+    cacheSettings.getEntityCaches().put("Item", def);
+    cacheSettings.getNegativeCaches().put("Item", def);
+    Settings settings = new Settings();
+    settings.getMappingDefinitions().addMapperDefinition("Item", Item.class);
+    settings.setCacheSettings(cacheSettings);
+    even = new MockDataStore("even", MAPPER);
+    odd = new MockDataStore("odd", MAPPER);
+    netRelay = MockNetRelay.create(vertx, even.getDatastore(), settings);
+    MockNetRelay.shard(netRelay, Item.class, Arrays.asList(even.getDatastore(), odd.getDatastore()));
+  }
+
+  @Test
+  public void testSave(TestContext context) {
+    List<Item> items = Arrays.asList(new Item(1L, "a"), new Item(2L, "b"), new Item(3L, "c"));
+    items.forEach(item -> entityCache().put(item.id, item));
+    negativeCache().markMissing(4L, negativeCache().getGeneration());
+    netRelay.getEntityWriter().save(null, MAPPER, items, context.asyncAssertSuccess(results -> {
+      context.assertEquals(2, results.size(), "one write per shard");
+      context.assertEquals(1, even.size());
+      context.assertEquals(2, odd.size());
+      context.assertEquals(0, entityCache().size(), "written records must be invalidated");
+      context.assertTrue(negativeCache().isMissing(4L));
+    }));
+  }
+
+  @Test
+  public void testPartialFailure(TestContext context) {
+    List<Item> items = Arrays.asList(new Item(1L, "a"), new Item(2L, "b"));
+    items.forEach(item -> entityCache().put(item.id, item));
+    odd.setFailure(new IllegalStateException("shard down"));
+    netRelay.getEntityWriter().save(null, MAPPER, items, context.asyncAssertFailure(e -> {
+      context.assertEquals("shard down", e.getMessage());
+      context.assertNotNull(even.get(2L));
+      context.assertNull(entityCache().get(2L), "records of the successful write must be invalidated");
+      context.assertNotNull(entityCache().get(1L), "the record of the failed write is unchanged");
+    }));
+  }
+
+  @Test
+  public void testDelete(TestContext context) {
+    Item item = new Item(2L, "b");
+    even.add(item);
+    entityCache().put(item.id, item);
+    netRelay.getEntityWriter().delete(null, MAPPER, Arrays.asList(item), context.asyncAssertSuccess(v -> {
+      context.assertEquals(1, even.getDeletes());
+      context.assertNull(even.get(2L));
+      context.assertNull(entityCache().get(2L));
+    }));
+  }
+
+  @Test
+  public void testSaveStoreObjects(TestContext context) {
+    odd.add(new Item(1L, "a"));
+    even.add(new Item(2L, "b"));
+    List<Map<String, String>> requests = Arrays.asList(request("1", "changed"), request("2", "b"));
+    netRelay.getStoreObjectFactory().createStoreObjects(null, requests, MAPPER, context.asyncAssertSuccess(sos -> {
+      context.assertEquals(2, sos.size());
+      context.assertTrue(sos.get(0).hasChanges());
+      context.assertFalse(sos.get(1).hasChanges());
+      netRelay.getStoreObjectFactory().saveStoreObjects(MAPPER, sos, context.asyncAssertSuccess(results -> {
+        context.assertEquals(2, results.size(), "one result per store object");
+        context.assertTrue(results.get(0).getStoreObject() == sos.get(0));
+        context.assertEquals(SaveResult.State.SAVED, results.get(0).getState());
+        context.assertEquals(SaveResult.State.UNCHANGED, results.get(1).getState(),
+            "only the changed record is written");
+        context.assertEquals(1, odd.getWrites());
+        context.assertEquals(0, even.getWrites());
+        context.assertEquals("changed", ((Item) odd.get(1L)).name);
+      }));
+    }));
+  }
+
+  @Test
+  public void testUpdateChangedFields(TestContext context) {
+    MockNetRelay.set(netRelay, "entityWriter", new EntityWriter(netRelay, MockDataStore.fieldUpdater(even, odd)));
+    Item stored = new Item(1L, "a");
+    odd.add(stored);
+    entityCache().put(1L, stored);
+    List<Map<String, String>> requests = Arrays.asList(request("1", "changed"));
+    netRelay.getStoreObjectFactory().createStoreObjects(null, requests, MAPPER, context.asyncAssertSuccess(sos -> {
+      // another instance changes a different field of the record in the meantime
+      Item concurrent = new Item(1L, "a");
+      concurrent.tag = "concurrent";
+      odd.add(concurrent);
+      netRelay.getStoreObjectFactory().saveStoreObjects(MAPPER, sos, context.asyncAssertSuccess(results -> {
+        context.assertEquals(SaveResult.State.UPDATED, results.get(0).getState());
+        context.assertEquals(0, odd.getWrites());
+        context.assertEquals(1, odd.getUpdates());
+        Item item = (Item) odd.get(1L);
+        context.assertEquals("changed", item.name);
+        context.assertEquals("concurrent", item.tag, "the concurrent change of another field must survive");
+        context.assertNull(entityCache().get(1L), "the updated record must be invalidated");
+      }));
+    }));
+  }
+
+  @Test
+  public void testUpdateUnsupported(TestContext context) {
+    // only the odd shard supports partial updates, the record of the even shard is saved completely
+    MockNetRelay.set(netRelay, "entityWriter", new EntityWriter(netRelay, MockDataStore.fieldUpdater(odd)));
+    odd.add(new Item(1L, "a"));
+    even.add(new Item(2L, "b"));
+    List<Map<String, String>> requests = Arrays.asList(request("1", "x"), request("2", "y"), request(null, "new"));
+    netRelay.getStoreObjectFactory().createStoreObjects(null, requests, MAPPER, context.asyncAssertSuccess(sos -> {
+      sos.get(2).getEntity().id = 4L;
+      netRelay.getStoreObjectFactory().saveStoreObjects(MAPPER, sos, context.asyncAssertSuccess(results -> {
+        context.assertEquals(1, odd.getUpdates());
+        context.assertEquals(0, odd.getWrites());
+        context.assertEquals(1, even.getWrites(), "the fallback and the new record are written together");
+        context.assertEquals(SaveResult.State.UPDATED, results.get(0).getState());
+        context.assertEquals(SaveResult.State.SAVED, results.get(1).getState());
+        context.assertEquals(SaveResult.State.INSERTED, results.get(2).getState());
+        context.assertEquals("y", ((Item) even.get(2L)).name);
+        context.assertEquals("new", ((Item) even.get(4L)).name);
+      }));
+    }));
+  }
+
+  @Test
+  public void testSaveStoreObjectsFailure(TestContext context) {
+    odd.add(new Item(1L, "a"));
+    even.add(new Item(2L, "b"));
+    odd.setFailure(new IllegalStateException("shard down"));
+    List<Map<String, String>> requests = Arrays.asList(request("1", "x"), request("2", "y"), request(null, "z"));
+    netRelay.getStoreObjectFactory().createStoreObjects(null, requests, MAPPER, context.asyncAssertSuccess(sos -> {
+      sos.get(2).getEntity().id = 4L;
+      netRelay.getStoreObjectFactory().saveStoreObjects(MAPPER, sos, context.asyncAssertSuccess(results -> {
+        context.assertEquals(3, results.size());
+        context.assertTrue(results.get(0).failed());
+        context.assertEquals("shard down", results.get(0).getCause().getMessage());
+        context.assertEquals(SaveResult.State.SAVED, results.get(1).getState());
+        context.assertEquals(SaveResult.State.INSERTED, results.get(2).getState());
+        context.assertEquals("y", ((Item) even.get(2L)).name, "the records of other datastores are written");
+      }));
+    }));
+  }
+
+  @Test
+  public void testEmpty(TestContext context) {
+    netRelay.getEntityWriter().save(null, MAPPER, Arrays.asList(), context.asyncAssertSuccess(results -> {
+      context.assertTrue(results.isEmpty());
+      context.assertEquals(0, even.getWrites() + odd.getWrites());
+    }));
+  }
+
+  private static Map<String, String> request(String id, String name) {
+    Map<String, String> map = new HashMap<>();
+    if (id != null) {
+      map.put("id", id);
+    }
+    map.put("name", name);
+    return map;
+  }
+
+  private EntityCache<Item> entityCache() {
+    return netRelay.getCacheManager().getEntityCache(Item.class);
+  }
+
+  private NegativeCache negativeCache() {
+    return netRelay.getCacheManager().getNegativeCache(Item.class);
+  }
+
+  public static class Item {
+    public Long id;
+    public String name;
+    public String tag;
+
+    public Item() {
+    }
+
+    Item(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.controller.ExportController;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.netrelay.mapping.NetRelayMapperFactory;
+import de.braintags.netrelay.routing.RouterDefinition;
+import de.braintags.netrelay.util.MockHttpServerRequest;
+import de.braintags.netrelay.util.MockRoutingContext;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link ExportController}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TExportController {
+  private static Vertx vertx;
+  private static final IMapper<Item> MAPPER = MockMapper.create(Item.class);
+  private MockDataStore datastore;
+  private ExportController controller;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Before
+  public void init() {
+    Settings settings = new Settings();
+    settings.getMappingDefinitions().addMapperDefinition("Item", Item.class);
+    settings.getMappingDefinitions().addMapperDefinition("Secret", Secret.class);
+    datastore = new MockDataStore("items", MAPPER);
+    NetRelay netRelay = MockNetRelay.create(vertx, datastore.getDatastore(), settings);
+    MockNetRelay.set(netRelay, "mapperFactory", new NetRelayMapperFactory(netRelay) {
+      @SuppressWarnings("unchecked")
+      @Override
+      public <T> IMapper<T> getMapper(Class<T> mapperClass) {
+        return mapperClass == Item.class ? (IMapper<T>) MAPPER : null;
+      }
+    });
+    RouterDefinition def = ExportController.createDefaultRouterDefinition("Item");
+    def.getHandlerProperties().put(ExportController.PAGE_SIZE_PROP, "2");
+    try {
+      controller = (ExportController) def.instantiateController(vertx, netRelay);
+    } catch (Exception e) {
+      throw new AssertionError("the default definition must be usable", e);
+    }
+    for (long id : new long[] { 4, 1, 5, 3, 2 }) {
+      datastore.add(new Item(id, "name" + id, (int) id * 10));
+    }
+  }
+
+  @Test
+  public void testDefaultDefinition(TestContext context) {
+    RouterDefinition def = ExportController.createDefaultRouterDefinition("Item");
+    context.assertEquals("Item", def.getHandlerProperties().get(ExportController.MAPPER_PROP));
+    context.assertEquals("/export", def.getRoutes()[0]);
+  }
+
+  @Test
+  public void testKeysetPaging(TestContext context) {
+    MockRecordingResponse response = export(context, "ndjson", null);
+    String[] lines = response.getBody().toString().split("\n");
+    context.assertEquals(5, lines.length);
+    for (int i = 0; i < lines.length; i++) {
+      context.assertEquals(i + 1L, new JsonObject(lines[i]).getLong("id"), "records must be sorted by the id");
+    }
+    context.assertEquals(3, datastore.getQueries(), "pages of 2, 2 and 1 records");
+    context.assertTrue(response.ended());
+    context.assertEquals("application/x-ndjson", response.headers().get("content-type"));
+  }
+
+  @Test
+  public void testMapperParameterIgnored(TestContext context) {
+    MockRecordingResponse response = new MockRecordingResponse();
+    MockHttpServerRequest request = new MockHttpServerRequest(URI.create("http://localhost/export"), response);
+    request.params().add(ExportController.MAPPER_PROP, "Secret");
+    MockRoutingContext rc = new MockRoutingContext(vertx, request, false);
+    controller.handle(rc);
+    context.assertFalse(rc.isFailed());
+    context.assertTrue(response.headers().get("Content-Disposition").contains("Item.ndjson"));
+    context.assertEquals(5, response.getBody().toString().split("\n").length);
+  }
+
+  @Test
+  public void testUnknownFormat(TestContext context) {
+    MockRecordingResponse response = new MockRecordingResponse();
+    MockRoutingContext rc = context(response, "xml", null);
+    controller.handle(rc);
+    context.assertTrue(rc.isFailed());
+    context.assertEquals(400, rc.statusCode());
+    context.assertEquals(0, response.getBody().length());
+  }
+
+  @Test
+  public void testUnknownField(TestContext context) {
+    MockRoutingContext rc = context(new MockRecordingResponse(), "json", "name,unknown");
+    controller.handle(rc);
+    context.assertTrue(rc.isFailed());
+    context.assertEquals(400, rc.statusCode());
+  }
+
+  @Test
+  public void testJson(TestContext context) {
+    JsonArray all = new JsonArray(export(context, "json", null).getBody().toString());
+    context.assertEquals(5, all.size());
+    context.assertEquals(new JsonObject().put("id", 1).put("name", "name1").put("count", 10), all.getJsonObject(0));
+    JsonArray selected = new JsonArray(export(context, "json", "name").getBody().toString());
+    context.assertEquals(new JsonObject().put("id", 1).put("name", "name1"), selected.getJsonObject(0),
+        "a selection must use the same representation");
+  }
+
+  @Test
+  public void testCsv(TestContext context) {
+    String[] lines = export(context, "csv", "count").getBody().toString().split("\r\n");
+    context.assertEquals(Arrays.asList("id,count", "1,10", "2,20", "3,30", "4,40", "5,50"), Arrays.asList(lines));
+  }
+
+  private MockRecordingResponse export(TestContext context, String format, String fields) {
+    MockRecordingResponse response = new MockRecordingResponse();
+    MockRoutingContext rc = context(response, format, fields);
+    controller.handle(rc);
+    context.assertFalse(rc.isFailed());
+    context.assertTrue(response.ended());
+    return response;
+  }
+
+  private MockRoutingContext context(MockRecordingResponse response, String format, String fields) {
+    MockHttpServerRequest request = new MockHttpServerRequest(URI.create("http://localhost/export"), response);
+    request.params().add(ExportController.FORMAT_PROP, format);
+    if (fields != null) {
+      request.params().add("fields", fields);
+    }
+    return new MockRoutingContext(vertx, request, false);
+  }
+
+  public static class Item {
+    public Long id;
+    public String name;
+    public int count;
+
+    public Item() {
+    }
+
+    Item(Long id, String name, int count) {
+      this.id = id;
+      this.name = name;
+      this.count = count;
+    }
+  }
+
+  public static class Secret {
+    public Long id;
+    public String password;
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.mapping.FieldBinder;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link FieldBinder}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TFieldBinder {
+
+  @Test
+  public void testBind(TestContext context) throws Exception {
+    BindEntity entity = new BindEntity();
+    context.assertTrue(binder("name").bind(entity, "test"));
+    context.assertEquals("test", entity.name);
+    context.assertTrue(binder("count").bind(entity, "12"));
+    context.assertEquals(12, entity.count);
+    context.assertTrue(binder("amount").bind(entity, "1.5"));
+    context.assertEquals(1.5, entity.amount);
+    context.assertTrue(binder("active").bind(entity, "on"));
+    context.assertTrue(entity.active);
+    context.assertTrue(binder("flag").bind(entity, null));
+    context.assertEquals(Boolean.FALSE, entity.flag);
+    context.assertEquals("test", binder("name").read(entity));
+    context.assertEquals(12, binder("count").read(entity));
+  }
+
+  @Test
+  public void testFallback(TestContext context) throws Exception {
+    BindEntity entity = new BindEntity();
+    context.assertFalse(binder("count").bind(entity, ""));
+    context.assertFalse(binder("count").bind(entity, "abc"));
+    context.assertFalse(binder("size").bind(entity, null));
+    context.assertEquals(0, entity.count);
+    context.assertNull(FieldBinder.create(BindEntity.class.getDeclaredField("tags")));
+    context.assertNull(FieldBinder.create(BindEntity.class.getDeclaredField("fixed")));
+  }
+
+  private static FieldBinder binder(String name) throws NoSuchFieldException {
+    return FieldBinder.create(BindEntity.class.getDeclaredField(name));
+  }
+
+  @SuppressWarnings("unused")
+  private static class BindEntity {
+    private String name;
+    private int count;
+    private Long size;
+    private double amount;
+    private boolean active;
+    private Boolean flag = Boolean.TRUE;
+    private String[] tags;
+    private final String fixed = "fixed";
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.exception.FieldNotFoundException;
+import de.braintags.netrelay.mapping.FieldSelection;
+import de.braintags.netrelay.util.MockHttpServerRequest;
+import de.braintags.netrelay.util.MockHttpServerResponse;
+import de.braintags.netrelay.util.MockRoutingContext;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link FieldSelection}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TFieldSelection {
+  private static Vertx vertx;
+  private static final IMapper<Item> MAPPER = MockMapper.create(Item.class);
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testParse(TestContext context) {
+    FieldSelection selection = FieldSelection.parse(MAPPER, " count , name,,count");
+    context.assertEquals(Arrays.asList("id", "count", "name"), Arrays.asList(selection.getFieldNames().toArray()),
+        "the id must be the first field, duplicates and empty names are ignored");
+  }
+
+  @Test
+  public void testEmpty(TestContext context) {
+    context.assertNull(FieldSelection.parse(MAPPER, null));
+    context.assertNull(FieldSelection.parse(MAPPER, " "));
+  }
+
+  @Test
+  public void testUnknownField(TestContext context) {
+    try {
+      FieldSelection.parse(MAPPER, "name,password");
+      context.fail("expected a FieldNotFoundException");
+    } catch (FieldNotFoundException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testAll(TestContext context) {
+    FieldSelection selection = FieldSelection.all(MAPPER);
+    context.assertEquals(3, selection.getFieldNames().size());
+    context.assertTrue(selection.getFieldNames().containsAll(Arrays.asList("id", "name", "count")));
+  }
+
+  @Test
+  public void testContains(TestContext context) {
+    FieldSelection selection = FieldSelection.parse(MAPPER, "name");
+    context.assertTrue(selection.contains(MAPPER.getField("id")));
+    context.assertTrue(selection.contains(MAPPER.getField("name")));
+    context.assertFalse(selection.contains(MAPPER.getField("count")));
+  }
+
+  @Test
+  public void testExtract(TestContext context) {
+    Map<String, Object> values = FieldSelection.parse(MAPPER, "count").extract(new Item(7L, "seven", 70));
+    context.assertEquals(2, values.size());
+    context.assertEquals(7L, values.get("id"));
+    context.assertEquals(70, values.get("count"));
+  }
+
+  @Test
+  public void testFromRequest(TestContext context) {
+    MockHttpServerRequest request = new MockHttpServerRequest(URI.create("http://localhost/test"),
+        new MockHttpServerResponse());
+    context.assertNull(FieldSelection.fromRequest(new MockRoutingContext(vertx, request, false), MAPPER));
+    request.params().add(FieldSelection.FIELDS_PARAMETER, "name");
+    FieldSelection selection = FieldSelection.fromRequest(new MockRoutingContext(vertx, request, false), MAPPER);
+    context.assertEquals(Arrays.asList("id", "name"), Arrays.asList(selection.getFieldNames().toArray()));
+  }
+
+  public static class Item {
+    public Long id;
+    public String name;
+    public int count;
+
+    public Item() {
+    }
+
+    Item(Long id, String name, int count) {
+      this.id = id;
+      this.name = name;
+      this.count = count;
+    }
+  }
+
+}
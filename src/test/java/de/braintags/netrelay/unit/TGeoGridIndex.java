@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.geo.GeoGridIndex;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link GeoGridIndex}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TGeoGridIndex {
+
+  @Test
+  public void testRadius(TestContext context) {
+    GeoGridIndex index = cities();
+    // Berlin - Potsdam ~27 km, Berlin - Hamburg ~255 km
+    context.assertEquals(Arrays.asList("berlin", "potsdam"), index.findWithinRadius(13.405, 52.52, 50000));
+    context.assertEquals(Arrays.asList("berlin", "potsdam", "hamburg"), index.findWithinRadius(13.405, 52.52,
+        300000));
+    context.assertTrue(index.findWithinRadius(0, 0, 1000).isEmpty());
+  }
+
+  @Test
+  public void testBox(TestContext context) {
+    GeoGridIndex index = cities();
+    context.assertEquals(new HashSet<>(Arrays.asList("berlin", "potsdam")),
+        new HashSet<>(index.findWithinBox(12.5, 52, 14, 53)));
+    context.assertEquals(new HashSet<>(Arrays.asList("berlin", "potsdam", "hamburg")),
+        new HashSet<>(index.findWithinBox(9, 52, 14, 54)));
+    context.assertTrue(index.findWithinBox(0, 0, 1, 1).isEmpty());
+  }
+
+  @Test
+  public void testAntimeridian(TestContext context) {
+    GeoGridIndex index = new GeoGridIndex(1);
+    index.put("fiji", 179.5, -17);
+    index.put("samoa", -179.5, -17);
+    index.put("hawaii", -157.8, 21.3);
+    context.assertEquals(new HashSet<>(Arrays.asList("fiji", "samoa")),
+        new HashSet<>(index.findWithinBox(179, -18, -179, -16)), "box crossing the antimeridian");
+    // 1 degree of longitude at 17 degrees south are ~106 km
+    context.assertEquals(Arrays.asList("fiji", "samoa"), index.findWithinRadius(179.9, -17, 150000));
+    context.assertEquals(Arrays.asList("samoa", "fiji"), index.findNearest(-179.9, -17, 2));
+  }
+
+  @Test
+  public void testNearest(TestContext context) {
+    GeoGridIndex index = cities();
+    context.assertEquals(Arrays.asList("potsdam", "berlin"), index.findNearest(13.0, 52.4, 2));
+    List<Object> all = index.findNearest(-74, 40.7, 10);
+    context.assertEquals(Arrays.asList("newyork", "hamburg", "potsdam", "berlin"), all,
+        "must extend the search until all points are found");
+    context.assertTrue(new GeoGridIndex(1).findNearest(0, 0, 5).isEmpty());
+  }
+
+  @Test
+  public void testMoveAndRemove(TestContext context) {
+    GeoGridIndex index = cities();
+    index.put("potsdam", -74.1, 40.7);
+    context.assertEquals(4, index.size());
+    context.assertEquals(Arrays.asList("berlin"), index.findWithinRadius(13.405, 52.52, 50000));
+    context.assertTrue(index.remove("berlin"));
+    context.assertFalse(index.remove("berlin"));
+    context.assertTrue(index.findWithinRadius(13.405, 52.52, 50000).isEmpty());
+    context.assertEquals(3, index.size());
+  }
+
+  @Test
+  public void testInvalidPosition(TestContext context) {
+    GeoGridIndex index = cities();
+    context.assertFalse(index.put("invalid", 200, 100));
+    context.assertFalse(index.put("nan", Double.NaN, 0));
+    context.assertFalse(index.put("berlin", 13.405, -91), "an invalid move removes the old point");
+    context.assertEquals(3, index.size());
+    context.assertTrue(index.put("pole", 180, 90));
+  }
+
+  @Test
+  public void testDistance(TestContext context) {
+    double distance = GeoGridIndex.distance(13.405, 52.52, 9.9937, 53.5511);
+    context.assertTrue(Math.abs(distance - 255000) < 2000, "Berlin - Hamburg: " + distance);
+    context.assertEquals(0d, GeoGridIndex.distance(1, 2, 1, 2));
+  }
+
+  private static GeoGridIndex cities() {
+    GeoGridIndex index = new GeoGridIndex(0.5);
+    index.put("berlin", 13.405, 52.52);
+    index.put("potsdam", 13.0645, 52.3906);
+    index.put("hamburg", 9.9937, 53.5511);
+    index.put("newyork", -74.006, 40.7128);
+    return index;
+  }
+
+}
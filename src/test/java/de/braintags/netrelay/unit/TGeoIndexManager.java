@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.Arrays;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.geo.GeoIndexDefinition;
+import de.braintags.netrelay.geo.GeoIndexManager;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.vertx.jomnigate.datatypes.geojson.GeoPoint;
+import de.braintags.vertx.jomnigate.datatypes.geojson.Position;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link GeoIndexManager}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TGeoIndexManager {
+  private static Vertx vertx;
+  private static final IMapper<Place> MAPPER = MockMapper.create(Place.class);
+  private MockDataStore datastore;
+  private NetRelay netRelay;
+  private GeoIndexManager manager;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Before
+  public void init() {
+    GeoIndexDefinition definition = new GeoIndexDefinition();
+    definition.setMapper("Place");
+    definition.setField("location");
+    definition.setCellSize(1);
+    Settings settings = new Settings();
+    settings.getMappingDefinitions().addMapperDefinition("Place", Place.class);
+    settings.getGeoIndexDefinitions().add(definition);
+    datastore = new MockDataStore("places", MAPPER);
+    netRelay = MockNetRelay.create(vertx, datastore.getDatastore(), settings);
+    manager = new GeoIndexManager(netRelay);
+    MockNetRelay.set(netRelay, "geoIndexManager", manager);
+  }
+
+  @Test
+  public void testInvalidRecord(TestContext context) {
+    datastore.add(new Place(1L, 13.405, 52.52));
+    datastore.add(new Place(2L, 200, 100));
+    datastore.add(new Place(3L, 9.9937, 53.5511));
+    manager.init(netRelay.getSettings().getGeoIndexDefinitions(), context.asyncAssertSuccess(v -> {
+      context.assertEquals(2, manager.getIndex(Place.class, "location").size(),
+          "invalid record must be skipped without failing the init");
+    }));
+  }
+
+  @Test
+  public void testWriteAndDelete(TestContext context) {
+    manager.init(netRelay.getSettings().getGeoIndexDefinitions(), context.asyncAssertSuccess(v -> {
+      Place place = new Place(1L, 13.405, 52.52);
+      Place invalid = new Place(2L, 200, 100);
+      netRelay.getEntityWriter().save(null, MAPPER, Arrays.asList(place, invalid), context.asyncAssertSuccess(r -> {
+        context.assertEquals(Arrays.asList(1L), manager.getIndex(Place.class, "location").findNearest(13, 52, 5));
+        netRelay.getEntityWriter().delete(null, MAPPER, Arrays.asList(place), context.asyncAssertSuccess(d -> {
+          context.assertEquals(0, manager.getIndex(Place.class, "location").size(),
+              "deleted record must be removed from the index");
+        }));
+      }));
+    }));
+  }
+
+  public static class Place {
+    public Long id;
+    public GeoPoint location;
+
+    public Place() {
+    }
+
+    Place(Long id, double lon, double lat) {
+      this.id = id;
+      this.location = new GeoPoint(new Position(Arrays.asList(lon, lat).iterator()));
+    }
+  }
+
+}
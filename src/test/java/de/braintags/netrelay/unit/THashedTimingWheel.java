@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.util.HashedTimingWheel;
+import de.braintags.netrelay.util.HashedTimingWheel.WheelTimeout;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link HashedTimingWheel}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class THashedTimingWheel {
+  private static Vertx vertx;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testExpire(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      HashedTimingWheel wheel = new HashedTimingWheel(vertx, 10, 8);
+      long start = System.currentTimeMillis();
+      wheel.schedule(50, e -> {
+        context.assertTrue(System.currentTimeMillis() - start >= 40, "expired too early");
+        context.assertEquals(0, wheel.getPending());
+        async.complete();
+      });
+      context.assertEquals(1, wheel.getPending());
+    });
+  }
+
+  @Test
+  public void testCancel(TestContext context) {
+    Async async = context.async();
+    AtomicInteger executed = new AtomicInteger();
+    vertx.runOnContext(v -> {
+      HashedTimingWheel wheel = new HashedTimingWheel(vertx, 10, 8);
+      WheelTimeout cancelled = wheel.schedule(20, e -> context.fail("cancelled timeout was executed"));
+      // delay is longer than one round of the wheel
+      WheelTimeout kept = wheel.schedule(150, e -> executed.incrementAndGet());
+      context.assertTrue(cancelled.cancel());
+      context.assertFalse(cancelled.cancel());
+      context.assertEquals(1, wheel.getPending());
+      vertx.setTimer(300, t -> {
+        context.assertEquals(1, executed.get());
+        context.assertTrue(kept.isExpired());
+        context.assertFalse(kept.cancel());
+        context.assertEquals(0, wheel.getPending());
+        async.complete();
+      });
+    });
+  }
+
+  @Test
+  public void testSharedInstance(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      HashedTimingWheel wheel = HashedTimingWheel.getInstance(vertx);
+      context.assertTrue(wheel == HashedTimingWheel.getInstance(vertx, 5));
+      context.assertEquals(HashedTimingWheel.DEFAULT_TICK_DURATION, wheel.getTickDuration());
+      async.complete();
+    });
+  }
+
+}
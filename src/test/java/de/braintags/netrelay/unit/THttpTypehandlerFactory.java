@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.typehandler.HttpBooleanTypeHandler;
+import de.braintags.netrelay.typehandler.HttpTypehandlerFactory;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.jomnigate.typehandler.ITypeHandler;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for the cache of {@link HttpTypehandlerFactory}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class THttpTypehandlerFactory {
+
+  @Test
+  public void testClassCache(TestContext context) {
+    HttpTypehandlerFactory factory = new HttpTypehandlerFactory();
+    ITypeHandler th = factory.getTypeHandler(String.class, null);
+    context.assertNotNull(th);
+    long misses = factory.getMisses();
+    long hits = factory.getHits();
+    context.assertTrue(th == factory.getTypeHandler(String.class, null), "cached instance expected");
+    context.assertEquals(hits + 1, factory.getHits());
+    context.assertEquals(misses, factory.getMisses());
+    context.assertNotNull(factory.getTypeHandler(String.class, TypedEntity.class));
+    context.assertEquals(misses + 1, factory.getMisses(), "embedding class is part of the key");
+  }
+
+  @Test
+  public void testPropertyCache(TestContext context) {
+    HttpTypehandlerFactory factory = new HttpTypehandlerFactory();
+    IProperty property = MockMapper.create(TypedEntity.class).getField("name");
+    ITypeHandler th = factory.getTypeHandler(property);
+    context.assertNotNull(th);
+    long misses = factory.getMisses();
+    context.assertTrue(th == factory.getTypeHandler(property), "cached instance expected");
+    context.assertEquals(misses, factory.getMisses());
+  }
+
+  @Test
+  public void testClearCache(TestContext context) {
+    HttpTypehandlerFactory factory = new HttpTypehandlerFactory();
+    IProperty property = MockMapper.create(TypedEntity.class).getField("name");
+    factory.getTypeHandler(property);
+    factory.getTypeHandler(Long.class, null);
+    long misses = factory.getMisses();
+    factory.clearCache();
+    factory.getTypeHandler(property);
+    context.assertTrue(factory.getMisses() > misses, "property must be resolved again");
+    misses = factory.getMisses();
+    factory.getTypeHandler(Long.class, null);
+    context.assertEquals(misses + 1, factory.getMisses(), "class must be resolved again");
+  }
+
+  @Test
+  public void testReplaceClearsCache(TestContext context) {
+    ReplacingFactory factory = new ReplacingFactory();
+    factory.getTypeHandler(Long.class, null);
+    factory.replaceHandler();
+    long misses = factory.getMisses();
+    factory.getTypeHandler(Long.class, null);
+    context.assertEquals(misses + 1, factory.getMisses(), "replace must clear the cache");
+  }
+
+  private static class ReplacingFactory extends HttpTypehandlerFactory {
+    void replaceHandler() {
+      replace(HttpBooleanTypeHandler.class, new HttpBooleanTypeHandler(this));
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private static class TypedEntity {
+    private String id;
+    private String name;
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.datastore.KeyAllocator;
+import de.braintags.vertx.keygenerator.KeyGeneratorVerticle;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link KeyAllocator}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TKeyAllocator {
+  private static Vertx vertx;
+  private static final AtomicLong leases = new AtomicLong();
+  private static final String INVALID = "TKeyAllocator.invalid";
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+    vertx.eventBus().<String> consumer(KeyGeneratorVerticle.SERVICE_NAME, message -> {
+      if (message.body().equals(INVALID)) {
+        message.reply("no number");
+      } else {
+        message.reply(leases.incrementAndGet());
+      }
+    });
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testUniqueKeys(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      KeyAllocator allocator = new KeyAllocator(vertx, "TKeyAllocator.hilo", 8);
+      long leasesBefore = leases.get();
+      Set<Long> keys = new HashSet<>();
+      int count = 50;
+      for (int i = 0; i < count; i++) {
+        allocator.nextKey(context.asyncAssertSuccess(key -> {
+          context.assertTrue(keys.add(key), "duplicate key " + key);
+          if (keys.size() == count) {
+            // 50 keys need at least 7 blocks of 8 keys
+            context.assertTrue(leases.get() - leasesBefore >= 7);
+            async.complete();
+          }
+        }));
+      }
+    });
+  }
+
+  @Test
+  public void testMinKey(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      // the next two leased blocks are below the minimum
+      long minKey = (leases.get() + 3) * 10 + 5;
+      KeyAllocator allocator = new KeyAllocator(vertx, "TKeyAllocator.min", 10, minKey);
+      allocator.nextKey(context.asyncAssertSuccess(first -> {
+        context.assertEquals(minKey, first);
+        allocator.nextKey(context.asyncAssertSuccess(second -> {
+          context.assertEquals(minKey + 1, second);
+          async.complete();
+        }));
+      }));
+    });
+  }
+
+  @Test
+  public void testInvalidReply(TestContext context) {
+    Async async = context.async(3);
+    vertx.runOnContext(v -> {
+      KeyAllocator allocator = new KeyAllocator(vertx, INVALID, 10);
+      for (int i = 0; i < 3; i++) {
+        allocator.nextKey(context.asyncAssertFailure(e -> {
+          context.assertTrue(e instanceof IllegalStateException);
+          async.countDown();
+        }));
+      }
+    });
+  }
+
+}
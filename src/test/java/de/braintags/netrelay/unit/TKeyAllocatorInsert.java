@@ -0,0 +1,99 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.braintags.netrelay.datastore.KeyAllocator;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.netrelay.mapping.NetRelayStoreObject;
+import de.braintags.netrelay.mapping.SaveResult;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.annotation.Entity;
+import de.braintags.vertx.jomnigate.annotation.field.Id;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.dataaccess.query.ISearchCondition;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+
+/**
+ * Saves new records, whose keys are created by a {@link KeyAllocator}, into the datastore of NetRelay and checks, that
+ * the records with the pre-assigned keys were inserted
+ *
+ * @author Michael Remme
+ *
+ */
+public class TKeyAllocatorInsert extends NetRelayBaseTest {
+  private static final String MAPPER_NAME = "HiLoRecord";
+
+  @Test
+  public void testInsert(TestContext context) {
+    IDataStore<?, ?> datastore = netRelay.getDatastore(HiLoRecord.class);
+    IMapper<HiLoRecord> mapper = datastore.getMapperFactory().getMapper(HiLoRecord.class);
+    KeyAllocator allocator = netRelay.getKeyAllocator(HiLoRecord.class);
+    context.assertNotNull(allocator);
+    List<Map<String, String>> requests = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      requests.add(request("record " + i));
+    }
+    Async async = context.async();
+    vertx.runOnContext(v -> netRelay.getStoreObjectFactory().createStoreObjects(null, requests, mapper,
+        context.asyncAssertSuccess(storeObjects -> netRelay.getStoreObjectFactory().saveStoreObjects(mapper,
+            storeObjects, context.asyncAssertSuccess(results -> {
+              results.forEach(result -> context.assertEquals(SaveResult.State.INSERTED, result.getState()));
+              Set<Long> ids = new HashSet<>();
+              for (NetRelayStoreObject<HiLoRecord> storeObject : storeObjects) {
+                Long id = storeObject.getEntity().id;
+                context.assertNotNull(id, "the id must be assigned before the save");
+                context.assertTrue(id >= allocator.getMinKey(), "keys must be above the existing records");
+                ids.add(id);
+              }
+              context.assertEquals(5, ids.size());
+              IQuery<HiLoRecord> query = datastore.createQuery(HiLoRecord.class);
+              query.setSearchCondition(ISearchCondition.in(mapper.getIdInfo().getIndexedField(), ids));
+              query.executeCount(context.asyncAssertSuccess(count -> {
+                context.assertEquals(5L, count.getCount(), "all records must be inserted");
+                async.complete();
+              }));
+            })))));
+  }
+
+  @Override
+  public void modifySettings(TestContext context, Settings settings) {
+    super.modifySettings(context, settings);
+    settings.getMappingDefinitions().addMapperDefinition(MAPPER_NAME, HiLoRecord.class);
+    settings.getKeyBlockSizes().put(MAPPER_NAME, 4);
+  }
+
+  private static Map<String, String> request(String name) {
+    Map<String, String> map = new HashMap<>();
+    map.put("name", name);
+    return map;
+  }
+
+  @Entity
+  public static class HiLoRecord {
+    @Id
+    public Long id;
+    public String name;
+  }
+
+}
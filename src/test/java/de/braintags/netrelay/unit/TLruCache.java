@@ -0,0 +1,70 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.cache.CacheStatistics;
+import de.braintags.netrelay.cache.LruCache;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link LruCache}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TLruCache {
+
+  @Test
+  public void testEviction(TestContext context) {
+    LruCache<String, String> cache = new LruCache<>(2, 0, new CacheStatistics("test"));
+    cache.put("a", "1");
+    cache.put("b", "2");
+    // access a, so that b is the eldest entry
+    context.assertEquals("1", cache.get("a"));
+    cache.put("c", "3");
+    context.assertEquals(2, cache.size());
+    context.assertNull(cache.get("b"));
+    context.assertEquals("3", cache.get("c"));
+    CacheStatistics stats = cache.getStatistics();
+    context.assertEquals(2L, stats.getHits());
+    context.assertEquals(1L, stats.getMisses());
+    context.assertEquals(1L, stats.getEvictions());
+  }
+
+  @Test
+  public void testTimeToLive(TestContext context) throws InterruptedException {
+    LruCache<String, String> cache = new LruCache<>(10, 20, new CacheStatistics("test"));
+    cache.put("a", "1");
+    context.assertEquals("1", cache.get("a"));
+    Thread.sleep(40);
+    context.assertNull(cache.get("a"));
+    context.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testRemove(TestContext context) {
+    LruCache<String, String> cache = new LruCache<>(10, 0, new CacheStatistics("test"));
+    cache.put("a", "1");
+    cache.put("b", "2");
+    context.assertTrue(cache.remove("a"));
+    context.assertFalse(cache.remove("a"));
+    cache.removeIf(k -> k.startsWith("b"));
+    context.assertEquals(0, cache.size());
+  }
+
+}
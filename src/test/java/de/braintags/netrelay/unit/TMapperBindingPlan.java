@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.mapping.FieldBinder;
+import de.braintags.netrelay.mapping.MapperBindingPlan;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import de.braintags.vertx.jomnigate.typehandler.ITypeHandler;
+import de.braintags.vertx.jomnigate.typehandler.ITypeHandlerFactory;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link MapperBindingPlan}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TMapperBindingPlan {
+
+  @Test
+  public void testPlan(TestContext context) {
+    IMapper<PlanEntity> mapper = MockMapper.create(PlanEntity.class);
+    MapperBindingPlan<PlanEntity> plan = new MapperBindingPlan<>(mapper);
+    List<String> fieldNames = new ArrayList<>(mapper.getFieldNames());
+    context.assertEquals(fieldNames.size(), plan.size());
+    for (int i = 0; i < plan.size(); i++) {
+      IProperty property = mapper.getField(fieldNames.get(i));
+      context.assertTrue(property == plan.getProperty(i), "order of the mapper must be kept");
+      context.assertEquals(fieldNames.get(i).toLowerCase(), plan.getKey(i));
+      context.assertEquals(plan.getKey(i), plan.getKey(property));
+    }
+    context.assertTrue(mapper == plan.getMapper());
+  }
+
+  @Test
+  public void testBinders(TestContext context) {
+    IMapper<PlanEntity> mapper = MockMapper.create(PlanEntity.class);
+    MapperBindingPlan<PlanEntity> plan = new MapperBindingPlan<>(mapper);
+    for (int i = 0; i < plan.size(); i++) {
+      String name = plan.getProperty(i).getName();
+      if (name.equals("id")) {
+        context.assertNull(plan.getBinder(i), "id must be bound by its type handler");
+      } else if (name.equals("tags")) {
+        context.assertNull(plan.getBinder(i), "unsupported type");
+      } else {
+        context.assertNotNull(plan.getBinder(i), name);
+        context.assertEquals(name, plan.getBinder(i).getField().getName());
+      }
+    }
+  }
+
+  @Test
+  public void testAccessorMethods(TestContext context) {
+    MapperBindingPlan<AccessorEntity> plan = new MapperBindingPlan<>(MockMapper.create(AccessorEntity.class));
+    context.assertNull(binder(plan, "name"), "setter must be used by the property accessor");
+    context.assertNull(binder(plan, "active"), "getter must be used by the property accessor");
+    context.assertNotNull(binder(plan, "count"));
+  }
+
+  @Test
+  public void testTypeHandler(TestContext context) {
+    ITypeHandler defaultHandler = MockMapper.proxy(ITypeHandler.class, "DefaultHandler", (method, args) -> null);
+    ITypeHandler customHandler = MockMapper.proxy(ITypeHandler.class, "CustomHandler", (method, args) -> null);
+    ITypeHandlerFactory factory = MockMapper.proxy(ITypeHandlerFactory.class, "TypeHandlerFactory",
+        (method, args) -> defaultHandler);
+
+    IMapper<PlanEntity> custom = MockMapper.create(PlanEntity.class,
+        Collections.singletonMap("userName", customHandler));
+    context.assertNull(binder(new MapperBindingPlan<>(custom, factory), "userName"), "custom type handler");
+    context.assertNotNull(binder(new MapperBindingPlan<>(custom, factory), "visits"));
+
+    IMapper<PlanEntity> standard = MockMapper.create(PlanEntity.class,
+        Collections.singletonMap("userName", defaultHandler));
+    context.assertNotNull(binder(new MapperBindingPlan<>(standard, factory), "userName"), "default type handler");
+    context.assertNull(binder(new MapperBindingPlan<>(standard), "userName"), "no factory to compare with");
+  }
+
+  private static FieldBinder binder(MapperBindingPlan<?> plan, String name) {
+    for (int i = 0; i < plan.size(); i++) {
+      if (plan.getProperty(i).getName().equals(name)) {
+        return plan.getBinder(i);
+      }
+    }
+    throw new IllegalArgumentException(name);
+  }
+
+  @Test
+  public void testForeignProperty(TestContext context) {
+    MapperBindingPlan<PlanEntity> plan = new MapperBindingPlan<>(MockMapper.create(PlanEntity.class));
+    IProperty foreign = MockMapper.create(OtherEntity.class).getField("otherName");
+    context.assertEquals("othername", plan.getKey(foreign));
+  }
+
+  @SuppressWarnings("unused")
+  private static class PlanEntity {
+    private Long id;
+    private String userName;
+    private int visits;
+    private List<String> tags;
+  }
+
+  @SuppressWarnings("unused")
+  private static class AccessorEntity {
+    private String name;
+    private boolean active;
+    private int count;
+
+    public void setName(String name) {
+      this.name = name == null ? null : name.trim();
+    }
+
+    public boolean isActive() {
+      return active;
+    }
+  }
+
+  @SuppressWarnings("unused")
+  private static class OtherEntity {
+    private String id;
+    private String otherName;
+  }
+
+}
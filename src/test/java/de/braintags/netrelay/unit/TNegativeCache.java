@@ -0,0 +1,61 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.cache.CacheDefinition;
+import de.braintags.netrelay.cache.NegativeCache;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link NegativeCache}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TNegativeCache {
+
+  @Test
+  public void testMissing(TestContext context) {
+    NegativeCache cache = createCache();
+    cache.markMissing(5L, cache.getGeneration());
+    context.assertTrue(cache.isMissing(5L));
+    context.assertTrue(cache.isMissing("5"));
+    cache.invalidate(5L);
+    context.assertFalse(cache.isMissing(5L));
+  }
+
+  @Test
+  public void testInsertDuringQuery(TestContext context) {
+    NegativeCache cache = createCache();
+    long generation = cache.getGeneration();
+    // the record is inserted, while the query for it is running
+    cache.invalidate(5L);
+    cache.markMissing(5L, generation);
+    context.assertFalse(cache.isMissing(5L), "a miss of an outdated query must not be stored");
+    cache.markMissing(6L, cache.getGeneration());
+    cache.clear();
+    context.assertFalse(cache.isMissing(6L));
+  }
+
+  private static NegativeCache createCache() {
+    CacheDefinition def = new CacheDefinition();
+    def.setMaxSize(10);
+    return new NegativeCache(TNegativeCache.class, def);
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.netrelay.mapping.NetRelayMapperFactory;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.init.DataStoreSettings;
+import de.braintags.vertx.jomnigate.init.IDataStoreInit;
+import de.braintags.vertx.jomnigate.mapping.IMapperFactory;
+import de.braintags.vertx.util.exception.InitException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.Router;
+
+/**
+ * Tests, that NetRelay creates the mappers of all mapping definitions during its start. The servers are not bound,
+ * instead the state of the mappers is recorded, when NetRelay would bind them
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TPrewarmMappers {
+  private static Vertx vertx;
+  private static final List<Class<?>> REQUESTED = new CopyOnWriteArrayList<>();
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Before
+  public void init() {
+    REQUESTED.clear();
+  }
+
+  @Test
+  public void testMappersBeforeBind(TestContext context) {
+    PrewarmNetRelay netRelay = new PrewarmNetRelay(Item.class);
+    vertx.deployVerticle(netRelay, context.asyncAssertSuccess(id -> {
+      context.assertTrue(netRelay.bound);
+      context.assertTrue(netRelay.requestedBeforeBind.contains(Item.class), netRelay.requestedBeforeBind.toString());
+      context.assertTrue(netRelay.planBeforeBind);
+    }));
+  }
+
+  @Test
+  public void testUncreatableMapper(TestContext context) {
+    PrewarmNetRelay netRelay = new PrewarmNetRelay(Item.class, Broken.class);
+    vertx.deployVerticle(netRelay, context.asyncAssertFailure(e -> {
+      context.assertTrue(e instanceof InitException, e.toString());
+      context.assertFalse(netRelay.bound);
+    }));
+  }
+
+  /**
+   * Records the mappers, which exist, when the http server would be bound
+   */
+  public static class PrewarmNetRelay extends NetRelay {
+    private final Class<?>[] mapperClasses;
+    private boolean bound;
+    private List<Class<?>> requestedBeforeBind;
+    private boolean planBeforeBind;
+
+    PrewarmNetRelay(Class<?>... mapperClasses) {
+      this.mapperClasses = mapperClasses;
+    }
+
+    @Override
+    protected Settings initSettings() {
+      Settings settings = new Settings();
+      DataStoreSettings datastoreSettings = new DataStoreSettings();
+      datastoreSettings.setDatastoreInit(Init.class);
+      settings.setDatastoreSettings(datastoreSettings);
+      for (Class<?> mapperClass : mapperClasses) {
+        settings.getMappingDefinitions().addMapperDefinition(mapperClass.getSimpleName(), mapperClass);
+      }
+      return settings;
+    }
+
+    @Override
+    protected void initHttpServer(Router router, Handler<AsyncResult<Void>> handler) {
+      bound = true;
+      requestedBeforeBind = new ArrayList<>(REQUESTED);
+      NetRelayMapperFactory mapperFactory = getNetRelayMapperFactory();
+      planBeforeBind = ((Map<?, ?>) MockNetRelay.get(mapperFactory, "bindingPlans"))
+          .containsKey(mapperFactory.getMapper(Item.class));
+      handler.handle(Future.succeededFuture());
+    }
+  }
+
+  /**
+   * Creates a datastore, whose mapper factory records the requested mappers and can't create the mapper of
+   * {@link Broken}
+   */
+  public static class Init implements IDataStoreInit {
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void initDataStore(Vertx vertx, DataStoreSettings settings, Handler<AsyncResult<IDataStore>> handler) {
+      IMapperFactory mapperFactory = MockMapper.proxy(IMapperFactory.class, "prewarm.mapperFactory",
+          (method, args) -> {
+            if (method.equals("getMapper")) {
+              if (args[0] == Broken.class) {
+                throw new IllegalArgumentException("no id field in " + Broken.class.getName());
+              }
+              REQUESTED.add((Class<?>) args[0]);
+              return MockMapper.create((Class<?>) args[0]);
+            }
+            return null;
+          });
+      handler.handle(Future.succeededFuture(MockMapper.proxy(IDataStore.class, "prewarm", (method, args) -> {
+        if (method.equals("getMapperFactory")) {
+          return mapperFactory;
+        } else if (method.equals("shutdown")) {
+          ((Handler<AsyncResult<Void>>) args[0]).handle(Future.succeededFuture());
+        }
+        return null;
+      })));
+    }
+  }
+
+  public static class Item {
+    public Long id;
+    public String name;
+  }
+
+  public static class Broken {
+    public String name;
+  }
+
+}
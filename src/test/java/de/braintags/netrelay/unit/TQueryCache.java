@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.cache.QueryCache;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.netrelay.mapping.EntityBatchLoader;
+import de.braintags.vertx.jomnigate.dataaccess.query.IIndexedField;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.dataaccess.query.ISearchCondition;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link QueryCache}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TQueryCache {
+  private static Vertx vertx;
+  private static final IMapper<Item> MAPPER = MockMapper.create(Item.class);
+  private MockDataStore primary;
+  private MockDataStore named;
+  private NetRelay netRelay;
+  private QueryCache cache;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Before
+  public void init() {
+    primary = new MockDataStore("primary", MAPPER);
+    named = new MockDataStore("named", MAPPER);
+    named.add(new Item(1L, "a"));
+    named.add(new Item(2L, "b"));
+    netRelay = MockNetRelay.create(vertx, primary.getDatastore(), new Settings());
+    cache = new QueryCache(100000, 0);
+  }
+
+  @Test
+  public void testHit(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> cache.find(query(), new EntityBatchLoader(netRelay), context.asyncAssertSuccess(first -> {
+      context.assertEquals(2, first.size());
+      context.assertEquals(1L, cache.getStatistics().getMisses());
+      cache.find(query(), new EntityBatchLoader(netRelay), context.asyncAssertSuccess(second -> {
+        context.assertEquals(1L, cache.getStatistics().getHits());
+        context.assertEquals(2, second.size(), "the records must be loaded from the datastore of the query");
+        context.assertEquals(1L, second.get(0).id);
+        context.assertEquals(2L, second.get(1).id);
+        context.assertEquals(0, primary.getQueries());
+        async.complete();
+      }));
+    })));
+  }
+
+  @Test
+  public void testInvalidate(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> cache.find(query(), new EntityBatchLoader(netRelay), context.asyncAssertSuccess(first -> {
+      context.assertTrue(cache.getMemory() > 0);
+      cache.invalidate(Item.class);
+      context.assertEquals(0L, cache.getMemory());
+      cache.find(query(), new EntityBatchLoader(netRelay), context.asyncAssertSuccess(second -> {
+        context.assertEquals(0L, cache.getStatistics().getHits());
+        context.assertEquals(2, named.getQueries(), "the query must be executed again");
+        async.complete();
+      }));
+    })));
+  }
+
+  @Test
+  public void testUnknownCondition(TestContext context) {
+    IQuery<Item> query = named.getDatastore().createQuery(Item.class);
+    query.setSearchCondition(new ISearchCondition() {
+    });
+    cache.find(query, new EntityBatchLoader(netRelay), context.asyncAssertSuccess(records -> {
+      context.assertEquals(2, records.size());
+      context.assertEquals(0L, cache.getMemory(), "the result must not be cached");
+    }));
+  }
+
+  @Test
+  public void testCount(TestContext context) {
+    cache.count(query(), context.asyncAssertSuccess(first -> {
+      context.assertEquals(2L, first);
+      cache.count(query(), context.asyncAssertSuccess(second -> {
+        context.assertEquals(2L, second);
+        context.assertEquals(1, named.getQueries());
+      }));
+    }));
+  }
+
+  private IQuery<Item> query() {
+    IQuery<Item> query = named.getDatastore().createQuery(Item.class);
+    query.setSearchCondition(ISearchCondition.isEqual((IIndexedField) MAPPER.getField("name"), "a"));
+    query.addSort("id");
+    query.setLimit(10);
+    return query;
+  }
+
+  public static class Item {
+    public Long id;
+    public String name;
+
+    public Item() {
+    }
+
+    Item(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+
+}
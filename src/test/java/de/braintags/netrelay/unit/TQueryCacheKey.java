@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.cache.QueryCacheKey;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.dataaccess.query.IIndexedField;
+import de.braintags.vertx.jomnigate.dataaccess.query.IQuery;
+import de.braintags.vertx.jomnigate.dataaccess.query.ISearchCondition;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link QueryCacheKey}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TQueryCacheKey {
+  private static final IMapper<Item> MAPPER = MockMapper.create(Item.class);
+  private static final IIndexedField NAME = (IIndexedField) MAPPER.getField("name");
+  private static final IIndexedField AGE = (IIndexedField) MAPPER.getField("age");
+  private final IDataStore<?, ?> datastore = new MockDataStore("first", MAPPER).getDatastore();
+
+  @Test
+  public void testSameQuery(TestContext context) {
+    QueryCacheKey key = QueryCacheKey.of(query(datastore, "x", 3, true, 10));
+    context.assertEquals(key, QueryCacheKey.of(query(datastore, "x", 3, true, 10)));
+    context.assertEquals(key.hashCode(), QueryCacheKey.of(query(datastore, "x", 3, true, 10)).hashCode());
+    context.assertNotEquals(key, key.forCount());
+    context.assertEquals(key.forCount(), QueryCacheKey.of(query(datastore, "x", 3, true, 10)).forCount());
+  }
+
+  @Test
+  public void testDifferentQuery(TestContext context) {
+    QueryCacheKey key = QueryCacheKey.of(query(datastore, "x", 3, true, 10));
+    context.assertNotEquals(key, QueryCacheKey.of(query(datastore, "y", 3, true, 10)), "value");
+    context.assertNotEquals(key, QueryCacheKey.of(query(datastore, "x", 4, true, 10)), "value of the second field");
+    context.assertNotEquals(key, QueryCacheKey.of(query(datastore, "x", 3, false, 10)), "sort order");
+    context.assertNotEquals(key, QueryCacheKey.of(query(datastore, "x", 3, true, 20)), "limit");
+    IDataStore<?, ?> other = new MockDataStore("second", MAPPER).getDatastore();
+    context.assertNotEquals(key, QueryCacheKey.of(query(other, "x", 3, true, 10)), "datastore");
+  }
+
+  @Test
+  public void testStart(TestContext context) {
+    IQuery<Item> first = query(datastore, "x", 3, true, 10);
+    IQuery<Item> second = query(datastore, "x", 3, true, 10);
+    second.setStart(10);
+    context.assertNotEquals(QueryCacheKey.of(first), QueryCacheKey.of(second));
+  }
+
+  @Test
+  public void testUnknownCondition(TestContext context) {
+    IQuery<Item> query = datastore.createQuery(Item.class);
+    query.setSearchCondition(new ISearchCondition() {
+    });
+    context.assertNull(QueryCacheKey.of(query), "a condition, which can't be described, must not be cached");
+  }
+
+  private static IQuery<Item> query(IDataStore<?, ?> datastore, String name, int age, boolean ascending, int limit) {
+    IQuery<Item> query = datastore.createQuery(Item.class);
+    query.setSearchCondition(ISearchCondition.and(ISearchCondition.isEqual(NAME, name),
+        ISearchCondition.larger(AGE, age)));
+    query.addSort("name", ascending);
+    query.setLimit(limit);
+    return query;
+  }
+
+  public static class Item {
+    public Long id;
+    public String name;
+    public int age;
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.exception.DeadlineExceededException;
+import de.braintags.netrelay.mapping.QueryDeadlineGuard;
+import de.braintags.netrelay.util.HashedTimingWheel;
+import de.braintags.netrelay.util.MockHttpServerRequest;
+import de.braintags.netrelay.util.MockHttpServerResponse;
+import de.braintags.netrelay.util.MockRoutingContext;
+import de.braintags.netrelay.util.RequestDeadline;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link QueryDeadlineGuard}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TQueryDeadlineGuard {
+  private static Vertx vertx;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testSkipExpired(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      MockRoutingContext rc = createContext();
+      QueryDeadlineGuard guard = new QueryDeadlineGuard();
+      context.assertFalse(guard.isExpired(rc), "no deadline defined");
+      RequestDeadline.start(rc, new HashedTimingWheel(vertx, 10, 8), 0);
+      context.assertTrue(guard.isExpired(rc));
+      context.assertEquals(1L, guard.getSkippedQueries());
+      async.complete();
+    });
+  }
+
+  @Test
+  public void testResultInTime(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      MockRoutingContext rc = createContext();
+      RequestDeadline.start(rc, new HashedTimingWheel(vertx, 10, 8), 50);
+      QueryDeadlineGuard guard = new QueryDeadlineGuard();
+      AtomicInteger calls = new AtomicInteger();
+      Handler<AsyncResult<String>> guarded = guard.guard(rc, "test", res -> {
+        context.assertTrue(res.succeeded());
+        calls.incrementAndGet();
+      });
+      guarded.handle(Future.succeededFuture("result"));
+      vertx.setTimer(150, t -> {
+        context.assertEquals(1, calls.get());
+        context.assertEquals(0L, guard.getCancelledQueries());
+        context.assertEquals(503, rc.statusCode(), "deadline of the request itself must still fire");
+        async.complete();
+      });
+    });
+  }
+
+  @Test
+  public void testFailedOnlyOnce(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      MockRoutingContext rc = createContext();
+      RequestDeadline.start(rc, new HashedTimingWheel(vertx, 10, 8), 30);
+      QueryDeadlineGuard guard = new QueryDeadlineGuard();
+      Handler<AsyncResult<String>> guarded = guard.guard(rc, "test",
+          res -> context.fail("handler must not be informed after the request was answered with 503"));
+      vertx.setTimer(150, t -> {
+        context.assertTrue(rc.isFailed());
+        context.assertEquals(503, rc.statusCode());
+        context.assertEquals(1L, guard.getCancelledQueries());
+        guarded.handle(Future.succeededFuture("late"));
+        context.assertEquals(1L, guard.getLateResults());
+        async.complete();
+      });
+    });
+  }
+
+  @Test
+  public void testFollowsOverride(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      MockRoutingContext rc = createContext();
+      RequestDeadline deadline = RequestDeadline.start(rc, new HashedTimingWheel(vertx, 10, 8), 30);
+      QueryDeadlineGuard guard = new QueryDeadlineGuard();
+      AtomicInteger calls = new AtomicInteger();
+      Handler<AsyncResult<String>> guarded = guard.guard(rc, "test", res -> {
+        context.assertTrue(res.succeeded(), "guard must follow the extended deadline");
+        calls.incrementAndGet();
+      });
+      deadline.reschedule(1000);
+      vertx.setTimer(150, t -> {
+        context.assertFalse(rc.isFailed());
+        guarded.handle(Future.succeededFuture("result"));
+        context.assertEquals(1, calls.get());
+        context.assertEquals(0L, guard.getCancelledQueries());
+        deadline.cancel();
+        async.complete();
+      });
+    });
+  }
+
+  @Test
+  public void testInformedWhenResponseEnded(TestContext context) {
+    Async async = context.async();
+    vertx.runOnContext(v -> {
+      // a response, which was ended already, is not failed by the deadline, so the caller must be informed
+      MockHttpServerResponse response = new MockHttpServerResponse() {
+        @Override
+        public boolean ended() {
+          return true;
+        }
+      };
+      MockRoutingContext rc = new MockRoutingContext(vertx,
+          new MockHttpServerRequest(URI.create("http://localhost/test"), response), false);
+      RequestDeadline.start(rc, new HashedTimingWheel(vertx, 10, 8), 30);
+      QueryDeadlineGuard guard = new QueryDeadlineGuard();
+      guard.guard(rc, "test", res -> {
+        context.assertTrue(res.cause() instanceof DeadlineExceededException);
+        context.assertFalse(rc.isFailed());
+        context.assertEquals(1L, guard.getCancelledQueries());
+        async.complete();
+      });
+    });
+  }
+
+  private static MockRoutingContext createContext() {
+    return new MockRoutingContext(vertx, URI.create("http://localhost/test"), false);
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.net.URI;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.controller.RecordController;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.netrelay.mapping.FieldSelection;
+import de.braintags.netrelay.mapping.NetRelayMapperFactory;
+import de.braintags.netrelay.routing.RouterDefinition;
+import de.braintags.netrelay.util.MockHttpServerRequest;
+import de.braintags.netrelay.util.MockRoutingContext;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for the pages of {@link RecordController}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TRecordController {
+  private static Vertx vertx;
+  private static final IMapper<Item> MAPPER = MockMapper.create(Item.class);
+  private RecordController controller;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Before
+  public void init() {
+    Settings settings = new Settings();
+    settings.getMappingDefinitions().addMapperDefinition("Item", Item.class);
+    MockDataStore datastore = new MockDataStore("items", MAPPER);
+    NetRelay netRelay = MockNetRelay.create(vertx, datastore.getDatastore(), settings);
+    MockNetRelay.set(netRelay, "mapperFactory", new NetRelayMapperFactory(netRelay) {
+      @SuppressWarnings("unchecked")
+      @Override
+      public <T> IMapper<T> getMapper(Class<T> mapperClass) {
+        return mapperClass == Item.class ? (IMapper<T>) MAPPER : null;
+      }
+    });
+    try {
+      controller = (RecordController) RecordController.createDefaultRouterDefinition("Item")
+          .instantiateController(vertx, netRelay);
+    } catch (Exception e) {
+      throw new AssertionError("the default definition must be usable", e);
+    }
+    for (long id : new long[] { 3, 1, 2 }) {
+      datastore.add(new Item(id, "name" + id, (int) id * 10));
+    }
+  }
+
+  @Test
+  public void testDefaultDefinition(TestContext context) {
+    RouterDefinition def = RecordController.createDefaultRouterDefinition("Item");
+    context.assertEquals("Item", def.getHandlerProperties().get(RecordController.MAPPER_PROP));
+    context.assertEquals("/record", def.getRoutes()[0]);
+  }
+
+  @Test
+  public void testPage(TestContext context) {
+    JsonArray records = new JsonArray(list(context, null).getBody().toString());
+    context.assertEquals(3, records.size());
+    context.assertEquals(new JsonObject().put("id", 1).put("name", "name1").put("count", 10),
+        records.getJsonObject(0));
+  }
+
+  @Test
+  public void testFieldSelection(TestContext context) {
+    JsonArray records = new JsonArray(list(context, "count").getBody().toString());
+    context.assertEquals(3, records.size());
+    context.assertEquals(new JsonObject().put("id", 1).put("count", 10), records.getJsonObject(0));
+    context.assertEquals(new JsonObject().put("id", 3).put("count", 30), records.getJsonObject(2));
+  }
+
+  @Test
+  public void testUnknownField(TestContext context) {
+    MockRecordingResponse response = new MockRecordingResponse();
+    MockRoutingContext rc = context(response, "name,password");
+    controller.handle(rc);
+    context.assertTrue(rc.isFailed());
+    context.assertEquals(400, rc.statusCode());
+    context.assertEquals(0, response.getBody().length());
+  }
+
+  @Test
+  public void testStartOutOfRange(TestContext context) {
+    assertBadStart(context, String.valueOf(RecordController.DEFAULT_MAX_START + 1));
+    assertBadStart(context, String.valueOf(Integer.MAX_VALUE));
+    assertBadStart(context, "-1");
+  }
+
+  private void assertBadStart(TestContext context, String start) {
+    MockRecordingResponse response = new MockRecordingResponse();
+    MockRoutingContext rc = context(response, null);
+    rc.request().params().add(RecordController.START_PARAMETER, start);
+    controller.handle(rc);
+    context.assertTrue(rc.isFailed());
+    context.assertEquals(400, rc.statusCode());
+  }
+
+  private MockRecordingResponse list(TestContext context, String fields) {
+    MockRecordingResponse response = new MockRecordingResponse();
+    MockRoutingContext rc = context(response, fields);
+    controller.handle(rc);
+    context.assertFalse(rc.isFailed());
+    context.assertTrue(response.ended());
+    return response;
+  }
+
+  private MockRoutingContext context(MockRecordingResponse response, String fields) {
+    MockHttpServerRequest request = new MockHttpServerRequest(URI.create("http://localhost/records"), response);
+    if (fields != null) {
+      request.params().add(FieldSelection.FIELDS_PARAMETER, fields);
+    }
+    return new MockRoutingContext(vertx, request, false);
+  }
+
+  public static class Item {
+    public Long id;
+    public String name;
+    public int count;
+
+    public Item() {
+    }
+
+    Item(Long id, String name, int count) {
+      this.id = id;
+      this.name = name;
+      this.count = count;
+    }
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.mapping.NetRelayStoreObject;
+import de.braintags.netrelay.mapping.RequestIdentityMap;
+import de.braintags.netrelay.util.MockRoutingContext;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Tests for {@link RequestIdentityMap} and the binding of entities, which are shared by several store objects of one
+ * request
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TRequestIdentityMap {
+  private static Vertx vertx;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testSameEntity(TestContext context) throws Exception {
+    RoutingContext rc = new MockRoutingContext(vertx, new URI("/test"));
+    RequestIdentityMap map = RequestIdentityMap.get(rc);
+    context.assertTrue(map == RequestIdentityMap.get(rc));
+    Person person = new Person(1L, "a");
+    map.put(Person.class, 1L, person);
+    context.assertTrue(person == map.get(Person.class, "1"));
+    context.assertNull(map.getOriginalValues(person));
+    map.remove(Person.class, 1);
+    context.assertNull(map.get(Person.class, 1L));
+  }
+
+  @Test
+  public void testChangesOfSharedEntity(TestContext context) throws Exception {
+    IMapper<Person> mapper = MockMapper.create(Person.class);
+    RoutingContext rc = new MockRoutingContext(vertx, new URI("/test"));
+    Person person = new Person(1L, "a");
+    register(rc, mapper, person);
+
+    NetRelayStoreObject<Person> first = new NetRelayStoreObject<>(rc, request("1", "b", null), null, mapper, null);
+    first.initToEntity(context.asyncAssertSuccess());
+    context.assertTrue(person == first.getEntity());
+    context.assertTrue(first.hasChanges());
+
+    // the second instance binds the same value, which is a change against the loaded record as well
+    NetRelayStoreObject<Person> second = new NetRelayStoreObject<>(rc, request("1", "b", null), null, mapper, null);
+    second.initToEntity(context.asyncAssertSuccess());
+    context.assertTrue(person == second.getEntity());
+    context.assertTrue(second.hasChanges(), "changes of a shared entity must be detected");
+  }
+
+  @Test
+  public void testFailedBinding(TestContext context) throws Exception {
+    IMapper<Person> mapper = MockMapper.create(Person.class);
+    RoutingContext rc = new MockRoutingContext(vertx, new URI("/test"));
+    Person person = new Person(1L, "a");
+    person.visits = 3;
+    register(rc, mapper, person);
+
+    NetRelayStoreObject<Person> so = new NetRelayStoreObject<>(rc, request("1", "b", "abc"), null, mapper, null);
+    so.initToEntity(context.asyncAssertFailure());
+    context.assertEquals("a", person.name, "a failed binding must reset the shared entity");
+    context.assertEquals(3, person.visits);
+  }
+
+  private static void register(RoutingContext rc, IMapper<Person> mapper, Person person) {
+    NetRelayStoreObject<Person> reader = new NetRelayStoreObject<>(mapper, person);
+    Object[] values = new Object[reader.getBindingPlan().size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = reader.getBindingPlan().getProperty(i).getPropertyAccessor().readData(person);
+    }
+    RequestIdentityMap.get(rc).put(Person.class, person.id, person, values);
+  }
+
+  private static Map<String, String> request(String id, String name, String visits) {
+    Map<String, String> map = new HashMap<>();
+    map.put("id", id);
+    map.put("name", name);
+    if (visits != null) {
+      map.put("visits", visits);
+    }
+    return map;
+  }
+
+  public static class Person {
+    public Long id;
+    public String name;
+    public Integer visits;
+
+    public Person() {
+    }
+
+    Person(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+
+}
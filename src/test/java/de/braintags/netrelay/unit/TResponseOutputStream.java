@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.util.ResponseOutputStream;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link ResponseOutputStream}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TResponseOutputStream {
+
+  @Test
+  public void testSmallContent(TestContext context) throws IOException {
+    MockRecordingResponse response = new MockRecordingResponse();
+    ResponseOutputStream out = new ResponseOutputStream(response, 16);
+    out.write("small".getBytes(StandardCharsets.UTF_8));
+    context.assertTrue(response.getChunks().isEmpty(), "nothing is written before close");
+    out.close();
+    context.assertFalse(response.isChunked(), "small content must be sent with a content-length");
+    context.assertTrue(response.ended());
+    context.assertEquals(1, response.getChunks().size());
+    context.assertEquals("small", response.getBody().toString());
+  }
+
+  @Test
+  public void testChunks(TestContext context) throws IOException {
+    MockRecordingResponse response = new MockRecordingResponse();
+    ResponseOutputStream out = new ResponseOutputStream(response, 8);
+    byte[] bytes = "0123456789abcdefghij".getBytes(StandardCharsets.UTF_8);
+    out.write(bytes, 0, 10);
+    out.write(bytes, 10, 10);
+    out.close();
+    context.assertTrue(response.isChunked());
+    context.assertEquals(3, response.getChunks().size());
+    context.assertEquals("01234567", response.getChunks().get(0).toString());
+    context.assertEquals("89abcdef", response.getChunks().get(1).toString());
+    context.assertEquals("ghij", response.getChunks().get(2).toString());
+    context.assertEquals("0123456789abcdefghij", response.getBody().toString());
+  }
+
+  @Test
+  public void testSingleBytes(TestContext context) throws IOException {
+    MockRecordingResponse response = new MockRecordingResponse();
+    ResponseOutputStream out = new ResponseOutputStream(response, 4);
+    for (byte b : "abcdefghi".getBytes(StandardCharsets.UTF_8)) {
+      out.write(b);
+    }
+    out.close();
+    context.assertEquals(3, response.getChunks().size());
+    context.assertEquals("abcdefghi", response.getBody().toString());
+  }
+
+  @Test
+  public void testExactChunkSize(TestContext context) throws IOException {
+    MockRecordingResponse response = new MockRecordingResponse();
+    ResponseOutputStream out = new ResponseOutputStream(response, 4);
+    out.write("abcd".getBytes(StandardCharsets.UTF_8));
+    out.close();
+    context.assertFalse(response.isChunked(), "a full last chunk is sent by end");
+    context.assertEquals("abcd", response.getBody().toString());
+  }
+
+  @Test
+  public void testClosed(TestContext context) throws IOException {
+    MockRecordingResponse response = new MockRecordingResponse();
+    ResponseOutputStream out = new ResponseOutputStream(response, 4);
+    out.close();
+    out.close();
+    context.assertTrue(response.ended());
+    try {
+      out.write('a');
+      context.fail("expected an IOException");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDiscard(TestContext context) throws IOException {
+    MockRecordingResponse response = new MockRecordingResponse();
+    ResponseOutputStream out = new ResponseOutputStream(response, 4);
+    out.write("abcdef".getBytes(StandardCharsets.UTF_8));
+    out.discard();
+    out.close();
+    context.assertFalse(response.ended(), "a discarded stream must not end the response");
+    context.assertEquals("abcd", response.getBody().toString(), "only the full chunk was written");
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.datastore.ShardDefinition;
+import de.braintags.netrelay.datastore.ShardRouter;
+import de.braintags.netrelay.datastore.ShardStrategy;
+import de.braintags.netrelay.datastore.ShardedQuery;
+import de.braintags.vertx.jomnigate.IDataStore;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link ShardRouter} and {@link ShardedQuery}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TShardRouter {
+
+  @Test
+  public void testHash(TestContext context) {
+    ShardDefinition def = new ShardDefinition();
+    def.setDatastores(Arrays.asList("a", "b", "c"));
+    ShardRouter<String> router = new ShardRouter<>(def, def.getDatastores());
+    context.assertEquals("b", router.getShard(4L));
+    context.assertEquals("b", router.getShard("4"));
+    context.assertEquals(router.getShard("abc"), router.getShard("abc"));
+  }
+
+  @Test
+  public void testRange(TestContext context) {
+    ShardDefinition def = new ShardDefinition();
+    def.setStrategy(ShardStrategy.RANGE);
+    def.setDatastores(Arrays.asList("a", "b", "c"));
+    def.setRangeBounds(Arrays.asList(100L, 200L));
+    ShardRouter<String> router = new ShardRouter<>(def, def.getDatastores());
+    context.assertEquals("a", router.getShard(99));
+    context.assertEquals("b", router.getShard(100));
+    context.assertEquals("c", router.getShard("5000"));
+    try {
+      router.getShard("abc");
+      context.fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMerge(TestContext context) {
+    List<List<Integer>> lists = Arrays.asList(Arrays.asList(1, 4, 7), Arrays.asList(2, 5), Arrays.asList(3, 6, 8));
+    context.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8),
+        ShardedQuery.merge(lists, Comparator.naturalOrder(), 0));
+    context.assertEquals(Arrays.asList(1, 2, 3, 4), ShardedQuery.merge(lists, Comparator.naturalOrder(), 4));
+    context.assertEquals(Arrays.asList(1, 4, 7, 2), ShardedQuery.merge(lists, null, 4));
+  }
+
+  @Test
+  public void testFind(TestContext context) {
+    IMapper<Item> mapper = MockMapper.create(Item.class);
+    MockDataStore even = new MockDataStore("even", mapper);
+    MockDataStore odd = new MockDataStore("odd", mapper);
+    for (long id = 1; id <= 6; id++) {
+      (id % 2 == 0 ? even : odd).add(new Item(id));
+    }
+    List<IDataStore<?, ?>> shards = Arrays.asList(even.getDatastore(), odd.getDatastore());
+    ShardedQuery.find(shards, Item.class, query -> query.addSort("id"), Comparator.comparing(item -> item.id), 4,
+        context.asyncAssertSuccess(items -> {
+          context.assertEquals(4, items.size());
+          for (int i = 0; i < items.size(); i++) {
+            context.assertEquals(i + 1L, items.get(i).id);
+          }
+          context.assertEquals(1, even.getQueries());
+          context.assertEquals(1, odd.getQueries());
+        }));
+  }
+
+  public static class Item {
+    public Long id;
+
+    public Item() {
+    }
+
+    Item(Long id) {
+      this.id = id;
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.mapping.NetRelayStoreObject;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for the tracking of changed properties of {@link NetRelayStoreObject}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TStoreObjectChanges {
+  private static final IMapper<Article> MAPPER = MockMapper.create(Article.class);
+
+  @Test
+  public void testNewEntity(TestContext context) {
+    NetRelayStoreObject<Article> so = bind(null, "title", "first", "views", "0");
+    context.assertTrue(so.isNewEntity());
+    context.assertEquals(names("title", "views"), names(so.getChangedProperties()));
+  }
+
+  @Test
+  public void testUnchanged(TestContext context) {
+    NetRelayStoreObject<Article> so = bind(new Article(1L, "first", 3), "title", "first", "views", "3");
+    context.assertFalse(so.isNewEntity());
+    context.assertFalse(so.hasChanges(), so.getChangedProperties().toString());
+  }
+
+  @Test
+  public void testChanged(TestContext context) {
+    Article article = new Article(1L, "first", 3);
+    NetRelayStoreObject<Article> so = bind(article, "title", "first", "views", "4");
+    context.assertEquals(4, article.views);
+    context.assertTrue(so.hasChanges());
+    context.assertEquals(names("views"), names(so.getChangedProperties()));
+  }
+
+  @Test
+  public void testUnboundFields(TestContext context) {
+    NetRelayStoreObject<Article> so = bind(new Article(1L, "first", 3), "id", "1");
+    context.assertFalse(so.hasChanges(), "fields without request data are not changed");
+  }
+
+  private static NetRelayStoreObject<Article> bind(Article article, String... keyValues) {
+    Map<String, String> request = new HashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      request.put(keyValues[i], keyValues[i + 1]);
+    }
+    NetRelayStoreObject<Article> so = new NetRelayStoreObject<>(null, request, article, MAPPER, null);
+    so.initToEntity(result -> {
+      if (result.failed()) {
+        throw new AssertionError(result.cause());
+      }
+    });
+    return so;
+  }
+
+  private static Set<String> names(String... names) {
+    Set<String> set = new HashSet<>();
+    for (String name : names) {
+      set.add(name);
+    }
+    return set;
+  }
+
+  private static Set<String> names(Set<IProperty> properties) {
+    Set<String> set = new HashSet<>();
+    properties.forEach(p -> set.add(p.getName()));
+    return set;
+  }
+
+  public static class Article {
+    public Long id;
+    public String title;
+    public Integer views;
+
+    public Article() {
+    }
+
+    Article(Long id, String title, Integer views) {
+      this.id = id;
+      this.title = title;
+      this.views = views;
+    }
+  }
+
+}
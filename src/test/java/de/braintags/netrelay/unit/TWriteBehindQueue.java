@@ -0,0 +1,245 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.NetRelay;
+import de.braintags.netrelay.cache.CacheDefinition;
+import de.braintags.netrelay.cache.CacheSettings;
+import de.braintags.netrelay.cache.EntityCache;
+import de.braintags.netrelay.datastore.WriteBehindQueue;
+import de.braintags.netrelay.datastore.WriteBehindSettings;
+import de.braintags.netrelay.init.Settings;
+import de.braintags.vertx.jomnigate.exception.NoSuchRecordException;
+import de.braintags.vertx.jomnigate.mapping.IMapper;
+import de.braintags.vertx.jomnigate.mapping.IProperty;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests for {@link WriteBehindQueue}. The updates are written by a recording field updater
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TWriteBehindQueue {
+  private static Vertx vertx;
+  private static final IMapper<Item> MAPPER = MockMapper.create(Item.class);
+  private NetRelay netRelay;
+  private WriteBehindQueue queue;
+  private List<Update> updates;
+  private AsyncResult<Void> result;
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Before
+  public void init() {
+    CacheDefinition def = new CacheDefinition();
+    def.setMaxSize(100);
+    CacheSettings cacheSettings = new CacheSettings();
+    cacheSettings.getEntityCaches().put("Item", def);
+    Settings settings = new Settings();
+    settings.getMappingDefinitions().addMapperDefinition("Item", Item.class);
+    settings.setCacheSettings(cacheSettings);
+    netRelay = MockNetRelay.create(vertx, new MockDataStore("primary", MAPPER).getDatastore(), settings);
+    updates = new ArrayList<>();
+    result = Future.succeededFuture();
+    queue = new WriteBehindQueue(netRelay, settings(), (datastore, mapper, id, values, increments, handler) -> {
+      updates.add(new Update(id, values, increments));
+      handler.handle(result);
+    });
+  }
+
+  @Test
+  public void testCoalesceIds(TestContext context) {
+    queue.increment(Item.class, "5", "views", 1);
+    queue.increment(Item.class, 5L, "views", 2);
+    queue.increment(Item.class, "05", "views", 3);
+    context.assertEquals(1, queue.getPendingUpdates());
+    queue.flush(context.asyncAssertSuccess(v -> {
+      context.assertEquals(1, updates.size());
+      context.assertEquals(5L, updates.get(0).id);
+      context.assertEquals(6L, updates.get(0).increment("views"));
+      context.assertTrue(updates.get(0).values.isEmpty(), "increments are not written as values");
+    }));
+  }
+
+  @Test
+  public void testSetThenIncrement(TestContext context) {
+    queue.set(Item.class, 1L, "name", "first");
+    queue.set(Item.class, 1L, "name", "second");
+    queue.set(Item.class, 1L, "views", 10L);
+    queue.increment(Item.class, 1L, "views", 5);
+    context.assertEquals(2, queue.getPendingUpdates());
+    queue.flush(context.asyncAssertSuccess(v -> {
+      context.assertEquals(1, updates.size());
+      context.assertEquals("second", updates.get(0).value("name"));
+      context.assertEquals(15L, updates.get(0).value("views"));
+      context.assertTrue(updates.get(0).increments.isEmpty());
+    }));
+  }
+
+  @Test
+  public void testRequeue(TestContext context) {
+    result = Future.failedFuture(new IllegalStateException("datastore down"));
+    queue.increment(Item.class, 1L, "views", 2);
+    queue.flush(context.asyncAssertFailure(e -> {
+      context.assertEquals(1, queue.getPendingUpdates(), "failed updates are queued again");
+      result = Future.succeededFuture();
+      queue.increment(Item.class, 1L, "views", 3);
+      queue.flush(context.asyncAssertSuccess(v -> {
+        context.assertEquals(2, updates.size());
+        context.assertEquals(5L, updates.get(1).increment("views"));
+        context.assertEquals(0, queue.getPendingUpdates());
+      }));
+    }));
+  }
+
+  @Test
+  public void testMissingRecord(TestContext context) {
+    result = Future.failedFuture(new NoSuchRecordException("no record"));
+    queue.increment(Item.class, 1L, "views", 1);
+    queue.flush(context.asyncAssertSuccess(v -> {
+      context.assertEquals(1, updates.size());
+      context.assertEquals(0, queue.getPendingUpdates(), "updates of missing records are dropped");
+    }));
+  }
+
+  @Test
+  public void testClose(TestContext context) {
+    queue.increment(Item.class, 1L, "views", 1);
+    queue.close(context.asyncAssertSuccess(v -> {
+      context.assertEquals(1, updates.size(), "pending updates are written on close");
+      try {
+        queue.increment(Item.class, 1L, "views", 1);
+        context.fail("updates after close must be rejected");
+      } catch (IllegalStateException e) {
+        context.assertEquals(0, queue.getPendingUpdates());
+      }
+    }));
+  }
+
+  @Test
+  public void testInvalidate(TestContext context) {
+    EntityCache<Item> cache = netRelay.getCacheManager().getEntityCache(Item.class);
+    cache.put(1L, new Item(1L, "a"));
+    cache.put(2L, new Item(2L, "b"));
+    queue.increment(Item.class, "1", "views", 1);
+    queue.flush(context.asyncAssertSuccess(v -> {
+      context.assertNull(cache.get(1L), "the written record must be invalidated");
+      context.assertNotNull(cache.get(2L));
+    }));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIncrementNotNumeric() {
+    queue.increment(Item.class, 1L, "name", 1);
+  }
+
+  @Test
+  public void testSetWrongType(TestContext context) {
+    for (Object value : new Object[] { "ten", 10 }) {
+      try {
+        queue.set(Item.class, 1L, "views", value);
+        context.fail("a value of the wrong type must be rejected");
+      } catch (IllegalArgumentException e) {
+        context.assertEquals(0, queue.getPendingUpdates());
+      }
+    }
+    queue.set(Item.class, 1L, "views", null);
+    context.assertEquals(1, queue.getPendingUpdates());
+  }
+
+  @Test
+  public void testFailingRecord(TestContext context) {
+    queue = new WriteBehindQueue(netRelay, settings(), (datastore, mapper, id, values, increments, handler) -> {
+      if (id.equals(1L)) {
+        throw new IllegalStateException("can't be written");
+      }
+      updates.add(new Update(id, values, increments));
+      handler.handle(result);
+    });
+    queue.increment(Item.class, 1L, "views", 1);
+    queue.increment(Item.class, 2L, "views", 1);
+    queue.flush(context.asyncAssertSuccess(v -> {
+      context.assertEquals(1, updates.size(), "the other records are written");
+      context.assertEquals(0, queue.getPendingUpdates(), "the updates of the failing record are dropped");
+      queue.increment(Item.class, 2L, "views", 1);
+      queue.close(context.asyncAssertSuccess(v2 -> context.assertEquals(2, updates.size(),
+          "the queue must not be blocked by the failed record")));
+    }));
+  }
+
+  private static WriteBehindSettings settings() {
+    WriteBehindSettings queueSettings = new WriteBehindSettings();
+    queueSettings.setFlushInterval(0);
+    queueSettings.setMaxPendingUpdates(0);
+    return queueSettings;
+  }
+
+  private static class Update {
+    private final Object id;
+    private final Map<IProperty, Object> values;
+    private final Map<IProperty, Long> increments;
+
+    Update(Object id, Map<IProperty, Object> values, Map<IProperty, Long> increments) {
+      this.id = id;
+      this.values = values;
+      this.increments = increments;
+    }
+
+    Object value(String fieldName) {
+      return values.get(MAPPER.getField(fieldName));
+    }
+
+    Long increment(String fieldName) {
+      return increments.get(MAPPER.getField(fieldName));
+    }
+  }
+
+  public static class Item {
+    public Long id;
+    public String name;
+    public Long views;
+
+    public Item() {
+    }
+
+    Item(Long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * netrelay
+ * %%
+ * Copyright (C) 2015 Braintags GmbH
+ * %%
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * #L%
+ */
+package de.braintags.netrelay.unit;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import de.braintags.netrelay.controller.AbstractController;
+import de.braintags.netrelay.util.MockHttpServerRequest;
+import de.braintags.netrelay.util.MockRoutingContext;
+import de.braintags.netrelay.util.PayloadFormat;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Tests for the methods writeJson and writePayload of {@link AbstractController}
+ *
+ * @author Michael Remme
+ *
+ */
+@RunWith(VertxUnitRunner.class)
+public class TWritePayload {
+  private static Vertx vertx;
+  private static final PayloadController CONTROLLER = new PayloadController();
+
+  @BeforeClass
+  public static void startup() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterClass
+  public static void shutdown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testSmallJson(TestContext context) {
+    MockRecordingResponse response = new MockRecordingResponse();
+    CONTROLLER.writeJson(context(response), new JsonObject().put("name", "test").put("count", 3), 201);
+    context.assertTrue(response.headers().get("content-type").startsWith("application/json"));
+    context.assertEquals(201, response.getStatusCode());
+    context.assertTrue(response.ended());
+    context.assertFalse(response.isChunked(), "small content must be sent with a content-length");
+    context.assertEquals(new JsonObject().put("name", "test").put("count", 3),
+        new JsonObject(response.getBody().toString()));
+  }
+
+  @Test
+  public void testLargeJson(TestContext context) {
+    List<String> values = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      values.add("value number " + i);
+    }
+    MockRecordingResponse response = new MockRecordingResponse();
+    CONTROLLER.writeJson(context(response), values, 200);
+    context.assertTrue(response.isChunked());
+    context.assertTrue(response.getChunks().size() > 1);
+    context.assertTrue(response.ended());
+    context.assertEquals(new JsonArray(values), new JsonArray(response.getBody().toString()));
+  }
+
+  @Test
+  public void testBinaryFormat(TestContext context) throws Exception {
+    MockRecordingResponse response = new MockRecordingResponse();
+    CONTROLLER.writePayload(context(response), Collections.singletonMap("name", "test"), 200, PayloadFormat.CBOR);
+    context.assertEquals("application/cbor", response.headers().get("content-type"));
+    Map<?, ?> result = PayloadFormat.CBOR.getMapper().readValue(response.getBody().getBytes(), Map.class);
+    context.assertEquals("test", result.get("name"));
+  }
+
+  @Test
+  public void testNegotiatedFormat(TestContext context) throws Exception {
+    MockRecordingResponse response = new MockRecordingResponse();
+    CONTROLLER.writePayload(context(response, "application/json;q=0.5, application/cbor"),
+        Collections.singletonMap("name", "test"), 200);
+    context.assertEquals("application/cbor", response.headers().get("content-type"));
+    context.assertEquals("Accept", response.headers().get("Vary"));
+    Map<?, ?> result = PayloadFormat.CBOR.getMapper().readValue(response.getBody().getBytes(), Map.class);
+    context.assertEquals("test", result.get("name"));
+  }
+
+  @Test
+  public void testNegotiatedDefault(TestContext context) {
+    MockRecordingResponse response = new MockRecordingResponse();
+    CONTROLLER.writePayload(context(response, "text/html, application/cbor;q=0"),
+        Collections.singletonMap("name", "test"), 200);
+    context.assertTrue(response.headers().get("content-type").startsWith("application/json"));
+    context.assertEquals(new JsonObject().put("name", "test"), new JsonObject(response.getBody().toString()));
+  }
+
+  @Test
+  public void testBinarySerializers(TestContext context) throws Exception {
+    Map<String, Object> value = new HashMap<>();
+    value.put("time", Instant.ofEpochSecond(1500000000L, 123000000L));
+    value.put("data", new byte[] { 1, 2, 3, (byte) 255 });
+    JsonObject json = new JsonObject(Json.mapper.writeValueAsString(value));
+    Map<?, ?> cbor = PayloadFormat.CBOR.getMapper().readValue(PayloadFormat.CBOR.getMapper().writeValueAsBytes(value),
+        Map.class);
+    Map<?, ?> smile = PayloadFormat.SMILE.getMapper()
+        .readValue(PayloadFormat.SMILE.getMapper().writeValueAsBytes(value), Map.class);
+    context.assertEquals(json.getMap(), cbor);
+    context.assertEquals(json.getMap(), smile);
+  }
+
+  @Test
+  public void testFailureBeforeFirstChunk(TestContext context) {
+    MockRecordingResponse response = new MockRecordingResponse();
+    try {
+      CONTROLLER.writeJson(context(response), Arrays.asList("a", new Failing()), 200);
+      context.fail("expected an EncodeException");
+    } catch (EncodeException e) {
+      // expected
+    }
+    context.assertFalse(response.ended(), "the response must be left to the error handling");
+    context.assertEquals(0, response.getBody().length());
+  }
+
+  @Test
+  public void testFailureAfterFirstChunk(TestContext context) {
+    List<Object> values = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      values.add("value number " + i);
+    }
+    values.add(new Failing());
+    MockRecordingResponse response = new MockRecordingResponse();
+    CONTROLLER.writeJson(context(response), values, 200);
+    context.assertTrue(response.closed(), "a started response must be closed");
+    context.assertFalse(response.ended());
+  }
+
+  private static RoutingContext context(MockRecordingResponse response) {
+    return context(response, null);
+  }
+
+  private static RoutingContext context(MockRecordingResponse response, String accept) {
+    MockHttpServerRequest request = new MockHttpServerRequest(URI.create("http://localhost/test"), response);
+    if (accept != null) {
+      request.headers().add("Accept", accept);
+    }
+    return new MockRoutingContext(vertx, request, false);
+  }
+
+  public static class Failing {
+    public String getValue() {
+      throw new IllegalStateException("not serializable");
+    }
+  }
+
+  private static class PayloadController extends AbstractController {
+
+    @Override
+    protected void handleController(RoutingContext context) {
+    }
+
+    @Override
+    public void initProperties(Properties properties) {
+    }
+
+    @Override
+    protected void writeJson(RoutingContext context, Object value, int statusCode) {
+      super.writeJson(context, value, statusCode);
+    }
+
+    @Override
+    protected void writePayload(RoutingContext context, Object value, int statusCode, PayloadFormat format) {
+      super.writePayload(context, value, statusCode, format);
+    }
+
+    @Override
+    protected void writePayload(RoutingContext context, Object value, int statusCode) {
+      super.writePayload(context, value, statusCode);
+    }
+  }
+
+}